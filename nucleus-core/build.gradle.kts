@@ -65,6 +65,19 @@ tasks {
         dependsOn(rootProject.tasks["gitHash"])
     }
 
+    test {
+        exclude("**/benchmark/**")
+    }
+
+    register<Test>("benchmark") {
+        description = "Runs the benchmarks, which are not part of the unit tests."
+        group = "verification"
+        testClassesDirs = sourceSets["test"].output.classesDirs
+        classpath = sourceSets["test"].runtimeClasspath
+        include("**/benchmark/**")
+        testLogging.showStandardStreams = true
+    }
+
 }
 
 blossom {
@@ -57,6 +57,7 @@ import org.spongepowered.api.command.source.ConsoleSource;
 import org.spongepowered.api.config.ConfigDir;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.game.state.GameAboutToStartServerEvent;
 import org.spongepowered.api.event.game.state.GameInitializationEvent;
 import org.spongepowered.api.event.game.state.GamePostInitializationEvent;
 import org.spongepowered.api.event.game.state.GamePreInitializationEvent;
@@ -539,6 +540,22 @@ public class NucleusBootstrap {
         }
     }
 
+    @Listener(order = Order.FIRST)
+    public void onGameAboutToStart(GameAboutToStartServerEvent event) {
+        if (this.docgenOnly || !this.isServer || this.isErrored != null) {
+            return;
+        }
+
+        try {
+            // Before the worlds load, as that reads world data.
+            this.serviceCollection.storageManager().prepareForStart(this.serviceCollection);
+        } catch (Exception e) {
+            this.isErrored = e;
+            disable();
+            e.printStackTrace();
+        }
+    }
+
     @Listener(order = Order.EARLY)
     public void onGameStartingEarly(GameStartingServerEvent event) {
         if (this.docgenOnly) {
@@ -560,6 +577,7 @@ public class NucleusBootstrap {
     private void allChange() throws Exception {
         this.serviceCollection.storageManager().saveAndInvalidateAllCaches();
         resetDataPath();
+        this.serviceCollection.storageManager().prepareForStart(this.serviceCollection);
         IReloadableService reloadableService = this.serviceCollection.reloadableService();
         reloadableService.fireDataFileReloadables(this.serviceCollection);
         reloadableService.fireReloadables(this.serviceCollection);
@@ -600,7 +618,7 @@ public class NucleusBootstrap {
         IMessageProviderService messageProvider = this.serviceCollection.messageProvider();
         if (this.isErrored == null) {
             try {
-                this.serviceCollection.getServiceUnchecked(UniqueUserService.class).resetUniqueUserCount();
+                this.serviceCollection.getServiceUnchecked(UniqueUserService.class).buildIfMissing();
                 this.serviceCollection.getServiceUnchecked(UUIDChangeService.class).setStateAndReload(this.serviceCollection);
                 this.serviceCollection.commandMetadataService().activate();
 
@@ -688,17 +706,26 @@ public class NucleusBootstrap {
 
     private void saveData() {
         IStorageManager ism = this.serviceCollection.storageManager();
-        ism.getUserService().ensureSaved();
-        ism.getWorldService().ensureSaved();
+        if (!ism.flushForShutdown()) {
+            // The write-behind threads may not survive the server stopping, so write what they hold now.
+            ism.stopWriteBehind();
+            ism.getUserService().ensureSaved();
+            ism.getWorldService().ensureSaved();
+        }
 
         if (Sponge.getGame().getState().ordinal() > GameState.SERVER_ABOUT_TO_START.ordinal()) {
             try {
                 ism.getGeneralService().ensureSaved();
                 this.serviceCollection.userCacheService().save();
+                this.serviceCollection.cooldownService().save();
+                this.serviceCollection.getServiceUnchecked(UniqueUserService.class).saveIfChanged();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+
+        // Let the saves queued above finish.
+        ism.stopExecutor();
     }
 
     private void resetDataPath() throws IOException {
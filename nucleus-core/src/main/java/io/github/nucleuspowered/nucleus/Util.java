@@ -217,14 +217,18 @@ public class Util {
     }
 
     public static boolean isLocationInWorldBorder(Vector3d location, World world) {
+        return isLocationInWorldBorder(location, world.getWorldBorder().getCenter(), world.getWorldBorder().getDiameter());
+    }
+
+    public static boolean isLocationInWorldBorder(Vector3d location, Vector3d borderCentre, double borderDiameter) {
 
         // Diameter, not radius - we'll want the radius later. We use long, we want the floor!
-        long radius = (long)Math.floor(world.getWorldBorder().getDiameter() / 2.0);
+        long radius = (long)Math.floor(borderDiameter / 2.0);
 
         // We get the current position and subtract the border centre. This gives us an effective distance from the
         // centre in all three dimensions. We just care about the magnitude in the x and z directions, so we get the
         // positive amount.
-        Vector3d displacement = location.sub(world.getWorldBorder().getCenter()).abs();
+        Vector3d displacement = location.sub(borderCentre).abs();
 
         // Check that we're not too far out.
         return !(displacement.getX() > radius || displacement.getZ() > radius);
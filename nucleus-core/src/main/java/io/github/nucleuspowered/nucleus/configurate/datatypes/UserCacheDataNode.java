@@ -38,6 +38,12 @@ public class UserCacheDataNode {
         set(x);
     }
 
+    public UserCacheDataNode(@Nullable String ipAddress, @Nullable String jail, boolean isMuted) {
+        this.ipAddress = ipAddress;
+        this.jail = jail;
+        this.isMuted = isMuted;
+    }
+
     public void set(IUserDataObject x) {
         this.ipAddress = x.get(CoreKeys.IP_ADDRESS).map(y -> y.replace("/", "")).orElse(null);
         this.jail = x.get(JailKeys.JAIL_DATA).map(JailData::getJailName).orElse(null);
@@ -20,6 +20,14 @@ public abstract class EndTimestamp implements TimedEntry {
     @Setting
     protected Long timeFromNextLogin;
 
+    /**
+     * Creates a copy of this entry, so that changes to one are not seen in
+     * the other.
+     *
+     * @return The copy
+     */
+    public abstract EndTimestamp copy();
+
     /**
      * Gets the timestamp for the end of the mute.
      *
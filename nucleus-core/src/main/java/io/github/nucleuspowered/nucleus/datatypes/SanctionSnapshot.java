@@ -0,0 +1,86 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.datatypes;
+
+import org.spongepowered.api.service.context.Context;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable copy of whether a user is under a timed sanction (such as a jail
+ * or mute) and when it ends, so that event listeners can check it without going
+ * to storage.
+ */
+public final class SanctionSnapshot {
+
+    public static final SanctionSnapshot NONE = new SanctionSnapshot(false, null, null, null);
+
+    private final boolean sanctioned;
+    @Nullable private final Long endTimestamp;
+    @Nullable private final Long timeFromNextLogin;
+    @Nullable private final Context context;
+
+    public static SanctionSnapshot of(@Nullable EndTimestamp entry) {
+        return of(entry, null);
+    }
+
+    public static SanctionSnapshot of(@Nullable EndTimestamp entry, @Nullable Context context) {
+        if (entry == null) {
+            return NONE;
+        }
+
+        return new SanctionSnapshot(true, entry.endtimestamp, entry.timeFromNextLogin, context);
+    }
+
+    private SanctionSnapshot(boolean sanctioned, @Nullable Long endTimestamp, @Nullable Long timeFromNextLogin, @Nullable Context context) {
+        this.sanctioned = sanctioned;
+        this.endTimestamp = endTimestamp;
+        this.timeFromNextLogin = timeFromNextLogin;
+        this.context = context;
+    }
+
+    /**
+     * Gets whether the user had the sanction when this was taken, even if it has since expired.
+     *
+     * @return true if so
+     */
+    public boolean isSanctioned() {
+        return this.sanctioned;
+    }
+
+    /**
+     * Gets whether the user has the sanction and it has not expired.
+     *
+     * @return true if so
+     */
+    public boolean isActive() {
+        return this.sanctioned && !expired();
+    }
+
+    /**
+     * Gets whether the user has the sanction but it has run out, mirroring
+     * {@link EndTimestamp#expired()}.
+     *
+     * @return true if so
+     */
+    public boolean expired() {
+        if (!this.sanctioned) {
+            return false;
+        }
+
+        if (this.endTimestamp != null) {
+            return !Instant.ofEpochSecond(this.endTimestamp).isAfter(Instant.now());
+        }
+
+        return this.timeFromNextLogin != null && this.timeFromNextLogin <= 0;
+    }
+
+    public Optional<Context> getContext() {
+        return Optional.ofNullable(this.context);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.datatypes;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * What is known about a player from the time their data is loaded as they
+ * connect until they disconnect, so that login and join listeners can get
+ * what they need without going to storage.
+ *
+ * <p>Modules add the values they need at join to this as the user data is
+ * loaded, which happens off the main thread.</p>
+ */
+public final class UserSession {
+
+    private static final Object ABSENT = new Object();
+
+    private final UUID uuid;
+    private final boolean firstJoinProcessed;
+    private final long created = System.currentTimeMillis();
+    private final Map<Key<?>, Object> values = new ConcurrentHashMap<>();
+    private volatile boolean joined = false;
+
+    public UserSession(UUID uuid, boolean firstJoinProcessed) {
+        this.uuid = uuid;
+        this.firstJoinProcessed = firstJoinProcessed;
+    }
+
+    public UUID getUniqueId() {
+        return this.uuid;
+    }
+
+    /**
+     * Gets whether the user's first join had been processed when their data was loaded.
+     *
+     * @return true if so
+     */
+    public boolean isFirstJoinProcessed() {
+        return this.firstJoinProcessed;
+    }
+
+    public long getCreated() {
+        return this.created;
+    }
+
+    public boolean isJoined() {
+        return this.joined;
+    }
+
+    public void setJoined() {
+        this.joined = true;
+    }
+
+    /**
+     * Sets the value for a key. A null value records that there is no value,
+     * which is not the same as the key not having been loaded.
+     *
+     * @param key The key
+     * @param value The value
+     * @param <T> The type of value
+     */
+    public <T> void put(Key<T> key, @Nullable T value) {
+        this.values.put(key, value == null ? ABSENT : value);
+    }
+
+    public boolean isLoaded(Key<?> key) {
+        return this.values.containsKey(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> get(Key<T> key) {
+        Object value = this.values.get(key);
+        return value == null || value == ABSENT ? Optional.empty() : Optional.of((T) value);
+    }
+
+    /**
+     * A value that a module keeps in a session. Keys are compared by identity.
+     *
+     * @param <T> The type of value
+     */
+    public static final class Key<T> {
+
+        private final String id;
+
+        public static <T> Key<T> of(String id) {
+            return new Key<>(id);
+        }
+
+        private Key(String id) {
+            this.id = id;
+        }
+
+        @Override public String toString() {
+            return this.id;
+        }
+    }
+}
@@ -26,4 +26,9 @@ public class BasicAFKListener extends AbstractAFKListener {
         update(player);
     }
 
+    @Listener(order = Order.POST)
+    public void onPlayerQuit(final ClientConnectionEvent.Disconnect event, @Getter("getTargetEntity") Player player) {
+        remove(player);
+    }
+
 }
@@ -23,7 +23,6 @@ import io.github.nucleuspowered.nucleus.services.interfaces.IPermissionService;
 import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
 import io.github.nucleuspowered.nucleus.util.CauseStackHelper;
 import io.github.nucleuspowered.nucleus.util.PermissionMessageChannel;
-import io.github.nucleuspowered.nucleus.util.Tuples;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.data.key.Keys;
 import org.spongepowered.api.entity.living.player.Player;
@@ -39,13 +38,19 @@ import org.spongepowered.api.text.chat.ChatTypes;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -58,6 +63,7 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
 
     private final Map<UUID, AFKData> data = Maps.newConcurrentMap();
     private final INucleusServiceCollection serviceCollection;
+    private final LongSupplier clock;
     private AFKConfig config = new AFKConfig();
 
     @GuardedBy("lock")
@@ -68,12 +74,33 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
     private final Object lock = new Object();
     private final Object lock2 = new Object();
 
+    // The next time each player needs to be looked at, so that a tick only
+    // touches the players whose AFK or kick time has come. Each player has at
+    // most one entry of each type that is current, see AFKData#afkDue.
+    @GuardedBy("deadlines")
+    private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>(Comparator.comparingLong((Deadline x) -> x.due));
+
+    // Players whose permissions need to be checked again on the next tick.
+    private final Set<UUID> toRefresh = ConcurrentHashMap.newKeySet();
+
     private final String afkOption = "nucleus.afk.toggletime";
     private final String afkKickOption = "nucleus.afk.kicktime";
 
     @Inject
     public AFKHandler(INucleusServiceCollection serviceCollection) {
+        this(serviceCollection, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates the handler with the given source of the current time, in
+     * milliseconds, so that deadlines can be tested without waiting for them.
+     *
+     * @param serviceCollection The service collection
+     * @param clock The source of the current time
+     */
+    public AFKHandler(INucleusServiceCollection serviceCollection, LongSupplier clock) {
         this.serviceCollection = serviceCollection;
+        this.clock = clock;
     }
 
     public void stageUserActivityUpdate(Player player) {
@@ -96,65 +123,138 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
 
     public void onTick() {
         synchronized (this.lock) {
-            this.activity.forEach(u -> this.data.compute(u, ((uuid, afkData) -> afkData == null ? new AFKData(uuid) : updateActivity(uuid, afkData))));
+            this.activity.forEach(u -> {
+                if (Sponge.getServer().getPlayer(u).isPresent()) {
+                    schedule(this.data.compute(u, ((uuid, afkData) -> afkData == null ? new AFKData(uuid) : updateActivity(uuid, afkData))));
+                }
+            });
             this.activity.clear();
         }
 
-        List<UUID> uuidList = Sponge.getServer().getOnlinePlayers().stream().map(Player::getUniqueId).collect(Collectors.toList());
+        if (!this.toRefresh.isEmpty()) {
+            for (Iterator<UUID> iterator = this.toRefresh.iterator(); iterator.hasNext(); ) {
+                AFKData afkData = this.data.get(iterator.next());
+                iterator.remove();
+                if (afkData != null) {
+                    afkData.updateFromPermissions();
+                    schedule(afkData);
+                }
+            }
+        }
 
-        // Remove all offline players.
-        Set<Map.Entry<UUID, AFKData>> entries = this.data.entrySet();
-        entries.removeIf(refactor -> !uuidList.contains(refactor.getKey()));
-        entries.stream().filter(x -> !x.getValue().cacheValid).forEach(x -> x.getValue().updateFromPermissions());
+        long now = this.clock.getAsLong();
+        List<Deadline> due = new ArrayList<>();
+        synchronized (this.deadlines) {
+            while (!this.deadlines.isEmpty() && this.deadlines.peek().due <= now) {
+                Deadline deadline = this.deadlines.poll();
+                AFKData afkData = this.data.get(deadline.uuid);
+                if (afkData != null && deadline.isCurrent(afkData)) {
+                    deadline.clear(afkData);
+                    due.add(deadline);
+                }
+            }
+        }
 
-        long now = System.currentTimeMillis();
+        for (Deadline deadline : due) {
+            AFKData afkData = this.data.get(deadline.uuid);
+            Optional<Player> player = Sponge.getServer().getPlayer(deadline.uuid);
+            if (afkData == null) {
+                continue;
+            } else if (!player.isPresent()) {
+                // They've gone, but we missed it.
+                this.data.remove(deadline.uuid);
+                continue;
+            }
 
-        // Check AFK status.
-        entries.stream().filter(x -> x.getValue().isKnownAfk && !x.getValue().willKick && x.getValue().timeToKick > 0).forEach(e -> {
-            if (now - e.getValue().lastActivityTime > e.getValue().timeToKick) {
-                // Kick them
-                e.getValue().willKick = true;
-                NucleusTextTemplateImpl message = this.config.getMessages().getKickMessage();
-                TextRepresentable t;
-                if (message == null || message.isEmpty()) {
-                    t = this.serviceCollection.messageProvider().getMessageForDefault("afk.kickreason");
-                } else {
-                    t = message;
+            if (deadline.kick) {
+                // Check kick status.
+                if (afkData.isKnownAfk && !afkData.willKick && afkData.timeToKick > 0 && now - afkData.lastActivityTime > afkData.timeToKick) {
+                    kick(afkData, player.get());
                 }
+            } else if (!afkData.isKnownAfk && afkData.timeToAfk > 0 && now - afkData.lastActivityTime > afkData.timeToAfk) {
+                // Check AFK status.
+                setAfkInternal(player.get());
+            }
 
-                final NucleusTextTemplateImpl messageToServer = this.config.getMessages().getOnKick();
-
-                Sponge.getServer().getPlayer(e.getKey()).ifPresent(player -> {
-                    MessageChannel mc;
-                    if (this.config.isBroadcastOnKick()) {
-                        mc = MessageChannel.TO_ALL;
-                    } else {
-                        mc = new PermissionMessageChannel(serviceCollection.permissionService(), AFKPermissions.AFK_NOTIFY);
-                    }
-
-                    AFKEvents.Kick events = new AFKEvents.Kick(player, messageToServer.getForCommandSource(player), mc);
-                    if (Sponge.getEventManager().post(events)) {
-                        // Cancelled.
-                        return;
-                    }
-
-                    Text toSend = t instanceof NucleusTextTemplateImpl ? ((NucleusTextTemplateImpl) t).getForCommandSource(player) : t.toText();
-                    Sponge.getScheduler().createSyncExecutor(this.serviceCollection.pluginContainer()).execute(() -> player.kick(toSend));
-                    events.getMessage().ifPresent(m -> events.getChannel().send(player, m, ChatTypes.SYSTEM));
-                });
+            // If activity moved the time on, or the player didn't go AFK, this puts them back at the right time.
+            schedule(afkData);
+        }
+    }
+
+    private void kick(AFKData afkData, Player player) {
+        afkData.willKick = true;
+        NucleusTextTemplateImpl message = this.config.getMessages().getKickMessage();
+        TextRepresentable t;
+        if (message == null || message.isEmpty()) {
+            t = this.serviceCollection.messageProvider().getMessageForDefault("afk.kickreason");
+        } else {
+            t = message;
+        }
+
+        final NucleusTextTemplateImpl messageToServer = this.config.getMessages().getOnKick();
+        MessageChannel mc;
+        if (this.config.isBroadcastOnKick()) {
+            mc = MessageChannel.TO_ALL;
+        } else {
+            mc = new PermissionMessageChannel(this.serviceCollection.permissionService(), AFKPermissions.AFK_NOTIFY);
+        }
+
+        final Text renderedToServer = messageToServer.getForCommandSource(player);
+        AFKEvents.Kick events = new AFKEvents.Kick(player, renderedToServer, mc);
+        if (Sponge.getEventManager().post(events)) {
+            // Cancelled.
+            return;
+        }
+
+        Text toSend = t instanceof NucleusTextTemplateImpl ? ((NucleusTextTemplateImpl) t).getForCommandSource(player) : t.toText();
+        Sponge.getScheduler().createSyncExecutor(this.serviceCollection.pluginContainer()).execute(() -> player.kick(toSend));
+        events.getMessage().ifPresent(m -> broadcast(events, messageToServer, renderedToServer, m));
+    }
+
+    /**
+     * Makes sure that the player will be looked at when they are next due to
+     * go AFK or be kicked.
+     *
+     * @param afkData The player's data
+     */
+    private void schedule(AFKData afkData) {
+        synchronized (this.deadlines) {
+            if (!afkData.isKnownAfk && afkData.timeToAfk > 0) {
+                long due = afkData.lastActivityTime + afkData.timeToAfk + 1;
+                if (afkData.afkDue == -1 || due < afkData.afkDue) {
+                    afkData.afkDue = due;
+                    this.deadlines.add(new Deadline(afkData.uuid, due, false));
+                }
             }
-        });
 
-        // Check AFK status.
-        entries.stream().filter(x -> !x.getValue().isKnownAfk && x.getValue().timeToAfk > 0).forEach(e -> {
-            if (now - e.getValue().lastActivityTime  > e.getValue().timeToAfk) {
-                Sponge.getServer().getPlayer(e.getKey()).ifPresent(this::setAfkInternal);
+            if (afkData.isKnownAfk && !afkData.willKick && afkData.timeToKick > 0) {
+                long due = afkData.lastActivityTime + afkData.timeToKick + 1;
+                if (afkData.kickDue == -1 || due < afkData.kickDue) {
+                    afkData.kickDue = due;
+                    this.deadlines.add(new Deadline(afkData.uuid, due, true));
+                }
             }
-        });
+        }
+    }
+
+    /**
+     * Stops tracking the player when they leave.
+     *
+     * @param uuid The {@link UUID} of the player
+     */
+    public void removePlayer(UUID uuid) {
+        this.data.remove(uuid);
+        this.toRefresh.remove(uuid);
+        synchronized (this.lock) {
+            this.activity.remove(uuid);
+        }
     }
 
     public void invalidateAfkCache() {
-        this.data.forEach((k, v) -> v.cacheValid = false);
+        this.data.forEach((k, v) -> {
+            v.cacheValid = false;
+            this.toRefresh.add(k);
+        });
     }
 
     private boolean isAFK(UUID uuid) {
@@ -188,12 +288,14 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
                 this.activity.remove(uuid);
             }
 
-            Tuples.NullableTuple<Text, MessageChannel> ttmc = getAFKMessage(player, true);
-            AFKEvents.To event = new AFKEvents.To(player, ttmc.getFirstUnwrapped(), ttmc.getSecondUnwrapped(), cause);
+            NucleusTextTemplateImpl template = getAFKMessage(player, true);
+            Text message = template == null ? null : template.getForCommandSource(player);
+            AFKEvents.To event = new AFKEvents.To(player, message, template == null ? MessageChannel.TO_NONE : MessageChannel.TO_ALL, cause);
             Sponge.getEventManager().post(event);
-            actionEvent(event, "command.afk.to.nobc", "command.afk.to.console");
+            actionEvent(event, template, message, "command.afk.to.nobc", "command.afk.to.console");
 
             a.isKnownAfk = true;
+            schedule(a);
             return true;
         }
 
@@ -212,15 +314,17 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
     }
 
     private AFKData updateActivity(UUID uuid, AFKData data, Cause cause) {
-        data.lastActivityTime = System.currentTimeMillis();
+        data.lastActivityTime = this.clock.getAsLong();
         if (data.isKnownAfk) {
             data.isKnownAfk = false;
             data.willKick = false;
             Sponge.getServer().getPlayer(uuid).ifPresent(x -> {
-                Tuples.NullableTuple<Text, MessageChannel> ttmc = getAFKMessage(x, false);
-                AFKEvents.From event = new AFKEvents.From(x, ttmc.getFirstUnwrapped(), ttmc.getSecondUnwrapped(), cause);
+                NucleusTextTemplateImpl template = getAFKMessage(x, false);
+                Text message = template == null ? null : template.getForCommandSource(x);
+                AFKEvents.From event =
+                        new AFKEvents.From(x, message, template == null ? MessageChannel.TO_NONE : MessageChannel.TO_ALL, cause);
                 Sponge.getEventManager().post(event);
-                actionEvent(event, "command.afk.from.nobc", "command.afk.from.console");
+                actionEvent(event, template, message, "command.afk.from.nobc", "command.afk.from.console");
             });
 
         }
@@ -228,11 +332,12 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
         return data;
     }
 
-    private void actionEvent(AFKEvents event, String key, @Nullable String consoleKey) {
+    private void actionEvent(AFKEvents event, @Nullable NucleusTextTemplateImpl template, @Nullable Text rendered, String key,
+            @Nullable String consoleKey) {
         Optional<Text> message = event.getMessage()
                 .filter(x -> !x.isEmpty() && !x.toPlain().matches("^\\s*$"));
         if (message.isPresent()) {
-            event.getChannel().send(event.getTargetEntity(), message.get(), ChatTypes.SYSTEM);
+            broadcast(event, template, rendered, message.get());
         } else {
             this.serviceCollection.messageProvider().sendMessageTo(event.getTargetEntity(), key);
             if (consoleKey != null) {
@@ -242,13 +347,22 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
         }
     }
 
-    private Tuples.NullableTuple<Text, MessageChannel> getAFKMessage(Player player, boolean isAfk) {
-        if (this.config.isBroadcastAfkOnVanish() || !player.get(Keys.VANISH).orElse(false)) {
-            NucleusTextTemplateImpl template = isAfk ? this.config.getMessages().getAfkMessage() : this.config.getMessages().getReturnAfkMessage();
-            return Tuples.ofNullable(template.getForCommandSource(player), MessageChannel.TO_ALL);
+    private void broadcast(AFKEvents event, @Nullable NucleusTextTemplateImpl template, @Nullable Text rendered, Text message) {
+        if (template != null && message == rendered) {
+            // No listener has replaced the message, so the template can be sent to the whole channel in one go.
+            template.sendTo(event.getChannel(), event.getTargetEntity(), event.getTargetEntity(), null);
         } else {
-            return Tuples.ofNullable(null, MessageChannel.TO_NONE);
+            event.getChannel().send(event.getTargetEntity(), message, ChatTypes.SYSTEM);
+        }
+    }
+
+    @Nullable
+    private NucleusTextTemplateImpl getAFKMessage(Player player, boolean isAfk) {
+        if (this.config.isBroadcastAfkOnVanish() || !player.get(Keys.VANISH).orElse(false)) {
+            return isAfk ? this.config.getMessages().getAfkMessage() : this.config.getMessages().getReturnAfkMessage();
         }
+
+        return null;
     }
 
     @Override public boolean canGoAFK(User user) {
@@ -270,7 +384,9 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
         if (isAfk) {
             return setAfkInternal(player, cause, false);
         } else {
-            return !updateActivity(player.getUniqueId(), data, cause).isKnownAfk;
+            AFKData updated = updateActivity(player.getUniqueId(), data, cause);
+            schedule(updated);
+            return !updated.isKnownAfk;
         }
     }
 
@@ -279,7 +395,8 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
     }
 
     @Override public Instant lastActivity(Player player) {
-        return Instant.ofEpochMilli(this.data.computeIfAbsent(player.getUniqueId(), AFKData::new).lastActivityTime);
+        AFKData afkData = this.data.get(player.getUniqueId());
+        return Instant.ofEpochMilli(afkData == null ? this.clock.getAsLong() : afkData.lastActivityTime);
     }
 
     @Override public Optional<Duration> timeForInactivity(User user) {
@@ -354,7 +471,7 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
 
         private final UUID uuid;
 
-        private long lastActivityTime = System.currentTimeMillis();
+        private long lastActivityTime = AFKHandler.this.clock.getAsLong();
         boolean isKnownAfk = false;
         private boolean willKick = false;
 
@@ -362,6 +479,10 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
         private long timeToAfk = -1;
         private long timeToKick = -1;
 
+        // When the current entries in the deadline queue are due, or -1 if there are none.
+        @GuardedBy("deadlines") private long afkDue = -1;
+        @GuardedBy("deadlines") private long kickDue = -1;
+
         private AFKData(UUID uuid) {
             this(uuid, true);
         }
@@ -374,13 +495,11 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
         }
 
         private boolean canGoAfk() {
-            this.cacheValid = false;
             updateFromPermissions();
             return this.timeToAfk > 0;
         }
 
         private boolean canBeKicked() {
-            this.cacheValid = false;
             updateFromPermissions();
             return this.timeToKick > 0;
         }
@@ -411,4 +530,29 @@ public class AFKHandler implements NucleusAFKService, IReloadableService.Reloada
             }
         }
     }
+
+    private static final class Deadline {
+
+        private final UUID uuid;
+        private final long due;
+        private final boolean kick;
+
+        private Deadline(UUID uuid, long due, boolean kick) {
+            this.uuid = uuid;
+            this.due = due;
+            this.kick = kick;
+        }
+
+        private boolean isCurrent(AFKData afkData) {
+            return (this.kick ? afkData.kickDue : afkData.afkDue) == this.due;
+        }
+
+        private void clear(AFKData afkData) {
+            if (this.kick) {
+                afkData.kickDue = -1;
+            } else {
+                afkData.afkDue = -1;
+            }
+        }
+    }
 }
@@ -55,10 +55,8 @@ public class ConnectionMessagesListener implements IReloadableService.Reloadable
                 !this.cmc.getPriorNameMessage().isEmpty() &&
                 !lastKnown.orElseGet(pl::getName).equalsIgnoreCase(pl.getName())) {
                     // Name change!
-                    joinEvent.getChannel().orElse(MessageChannel.TO_ALL).send(this.pluginContainer,
-                            this.cmc.getPriorNameMessage()
-                                    .getForCommandSource(pl,
-                                            ImmutableMap.of("previousname", cs -> Optional.of(Text.of(lastKnown.get())))));
+                    this.cmc.getPriorNameMessage().sendTo(joinEvent.getChannel().orElse(MessageChannel.TO_ALL), pl, this.pluginContainer,
+                            ImmutableMap.of("previousname", cs -> Optional.of(Text.of(lastKnown.get()))));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -76,7 +74,7 @@ public class ConnectionMessagesListener implements IReloadableService.Reloadable
     @Listener
     public void onPlayerFirstJoin(NucleusFirstJoinEvent event, @Getter("getTargetEntity") Player pl) {
         if (this.cmc.isShowFirstTimeMessage() && !this.cmc.getFirstTimeMessage().isEmpty()) {
-            MessageChannel.TO_ALL.send(this.pluginContainer, this.cmc.getFirstTimeMessage().getForCommandSource(pl));
+            this.cmc.getFirstTimeMessage().sendTo(MessageChannel.TO_ALL, pl, this.pluginContainer, null);
         }
     }
 
@@ -39,6 +39,9 @@ public class CorePermissions {
     @PermissionMetadata(descriptionKey = "permission.base", replacements = { "debug refreshuniquevisitors" }, level = SuggestedLevel.ADMIN)
     public static final String BASE_DEBUG_REFRESHUNIQUEVISITORS = "nucleus.nucleus.debug.refreshuniquevisitors.base";
 
+    @PermissionMetadata(descriptionKey = "permission.base", replacements = { "debug storage" }, level = SuggestedLevel.ADMIN)
+    public static final String BASE_DEBUG_STORAGE = "nucleus.nucleus.debug.storage.base";
+
     @PermissionMetadata(descriptionKey = "permission.base", replacements = { "nucleus getuser" }, level = SuggestedLevel.NONE)
     public static final String BASE_NUCLEUS_GETUSER = "nucleus.nucleus.getuser.base";
 
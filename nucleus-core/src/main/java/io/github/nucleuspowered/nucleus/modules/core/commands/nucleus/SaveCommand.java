@@ -13,6 +13,8 @@ import io.github.nucleuspowered.nucleus.scaffold.command.annotation.Command;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
+import java.util.concurrent.CompletionException;
+
 @NonnullByDefault
 @Command(
         aliases = "save",
@@ -26,7 +28,13 @@ public class SaveCommand implements ICommandExecutor<CommandSource> {
     @Override
     public ICommandResult execute(ICommandContext<? extends CommandSource> context) {
         context.sendMessage("command.nucleus.save.start");
-        context.getServiceCollection().storageManager().saveAll().join();
+        try {
+            context.getServiceCollection().storageManager().saveAll().join();
+        } catch (CompletionException e) {
+            // The keys that could not be saved have been logged.
+            return context.errorResult("command.nucleus.save.failed");
+        }
+
         context.sendMessage("command.nucleus.save.complete");
         return context.successResult();
     }
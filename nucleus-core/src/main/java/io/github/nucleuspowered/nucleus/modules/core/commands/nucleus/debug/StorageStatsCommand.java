@@ -0,0 +1,137 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.core.commands.nucleus.debug;
+
+import io.github.nucleuspowered.nucleus.modules.core.CorePermissions;
+import io.github.nucleuspowered.nucleus.modules.core.commands.nucleus.DebugCommand;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandContext;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandExecutor;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandResult;
+import io.github.nucleuspowered.nucleus.scaffold.command.annotation.Command;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import io.github.nucleuspowered.nucleus.services.interfaces.IStorageManager;
+import io.github.nucleuspowered.storage.persistence.IJournalledRepository;
+import io.github.nucleuspowered.storage.services.MainThreadProfiler;
+import io.github.nucleuspowered.storage.services.ServicesUtil;
+import io.github.nucleuspowered.storage.services.StorageExecutor;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.text.DecimalFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@NonnullByDefault
+@Command(
+        aliases = "storage",
+        basePermission = CorePermissions.BASE_DEBUG_STORAGE,
+        commandDescriptionKey = "nucleus.debug.storage",
+        parentCommand = DebugCommand.class
+)
+public class StorageStatsCommand implements ICommandExecutor<CommandSource> {
+
+    private static final DecimalFormat MILLIS_FORMAT = new DecimalFormat("0.00");
+    private static final int CALL_SITES_TO_SHOW = 10;
+
+    @Override public CommandElement[] parameters(INucleusServiceCollection serviceCollection) {
+        return new CommandElement[] {
+            GenericArguments.flags().flag("r", "-reset").buildWith(GenericArguments.none())
+        };
+    }
+
+    @Override public ICommandResult execute(ICommandContext<? extends CommandSource> context) {
+        Optional<StorageExecutor> optionalExecutor = ServicesUtil.getExecutor();
+        if (optionalExecutor.isPresent()) {
+            sendExecutorStats(context, optionalExecutor.get());
+        } else {
+            context.sendMessage("command.nucleus.debug.storage.executor.none");
+        }
+
+        IStorageManager storageManager = context.getServiceCollection().storageManager();
+        sendJournalStats(context, "users", storageManager.getUserRepository());
+        sendJournalStats(context, "worlds", storageManager.getWorldRepository());
+
+        context.sendMessage("command.nucleus.debug.storage.preferences",
+                context.getServiceCollection().userPreferenceService().getMainThreadMisses());
+
+        Optional<MainThreadProfiler> optionalProfiler = ServicesUtil.getProfiler();
+        if (optionalProfiler.isPresent()) {
+            sendProfilerStats(context, optionalProfiler.get());
+            if (context.hasAny("r")) {
+                optionalProfiler.get().reset();
+                context.sendMessage("command.nucleus.debug.storage.profiler.reset");
+            }
+        } else {
+            context.sendMessage("command.nucleus.debug.storage.profiler.disabled");
+        }
+
+        return context.successResult();
+    }
+
+    private void sendProfilerStats(ICommandContext<? extends CommandSource> context, MainThreadProfiler profiler) {
+        List<Map.Entry<String, MainThreadProfiler.Stats>> stats = profiler.getStats();
+        if (stats.isEmpty()) {
+            context.sendMessage("command.nucleus.debug.storage.profiler.none");
+            return;
+        }
+
+        context.sendMessage("command.nucleus.debug.storage.profiler.title", Math.min(CALL_SITES_TO_SHOW, stats.size()), stats.size());
+        for (Map.Entry<String, MainThreadProfiler.Stats> entry : stats.subList(0, Math.min(CALL_SITES_TO_SHOW, stats.size()))) {
+            MainThreadProfiler.Stats stat = entry.getValue();
+            context.sendMessage("command.nucleus.debug.storage.profiler.entry",
+                    entry.getKey(),
+                    stat.getCount(),
+                    MILLIS_FORMAT.format(stat.getTotalNanos() / 1_000_000.0),
+                    MILLIS_FORMAT.format(stat.getTotalNanos() / (stat.getCount() * 1_000_000.0)),
+                    MILLIS_FORMAT.format(stat.getMaxNanos() / 1_000_000.0));
+
+            long[] histogram = stat.getHistogram();
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < histogram.length; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+
+                if (i < MainThreadProfiler.BUCKETS.length) {
+                    builder.append("<").append(MainThreadProfiler.BUCKETS[i]);
+                } else {
+                    builder.append(MainThreadProfiler.BUCKETS[i - 1]).append("+");
+                }
+
+                builder.append("ms: ").append(histogram[i]);
+            }
+
+            context.sendMessage("command.nucleus.debug.storage.profiler.histogram", builder.toString());
+        }
+    }
+
+    private void sendJournalStats(ICommandContext<? extends CommandSource> context, String name, Object repository) {
+        if (repository instanceof IJournalledRepository) {
+            IJournalledRepository journalled = (IJournalledRepository) repository;
+            context.sendMessage("command.nucleus.debug.storage.journal",
+                    name,
+                    journalled.getJournalSize(),
+                    journalled.getCheckpointCount(),
+                    journalled.getLastCheckpointMillis(),
+                    journalled.getBytesWrittenLastMinute());
+        }
+    }
+
+    private void sendExecutorStats(ICommandContext<? extends CommandSource> context, StorageExecutor executor) {
+        context.sendMessage("command.nucleus.debug.storage.executor.title");
+        context.sendMessage("command.nucleus.debug.storage.executor.threads", executor.getWorkers(), executor.getActiveCount());
+        context.sendMessage("command.nucleus.debug.storage.executor.queue",
+                executor.getQueueDepth(), executor.getQueueSize(), executor.getPeakQueueDepth());
+        context.sendMessage("command.nucleus.debug.storage.executor.tasks",
+                executor.getCompleted(), executor.getSubmitted(), executor.getRejected());
+        context.sendMessage("command.nucleus.debug.storage.executor.wait",
+                MILLIS_FORMAT.format(executor.getAverageWaitMillis()), MILLIS_FORMAT.format(executor.getMaxWaitMillis()));
+        context.sendMessage("command.nucleus.debug.storage.executor.run",
+                MILLIS_FORMAT.format(executor.getAverageRunMillis()), MILLIS_FORMAT.format(executor.getMaxRunMillis()));
+    }
+}
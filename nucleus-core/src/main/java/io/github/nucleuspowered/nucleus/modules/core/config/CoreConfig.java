@@ -82,6 +82,12 @@ public class CoreConfig {
     @Setting(value = "check-first-date-played-on-first-joined", comment = "config.core.firstdateplayed")
     private boolean checkFirstDatePlayed = true;
 
+    @Setting(value = "persist-cooldowns-longer-than", comment = "config.core.persistcooldowns")
+    private long persistCooldownsLongerThan = 0;
+
+    @Setting(value = "storage", comment = "config.core.storage")
+    private StorageConfig storageConfig = new StorageConfig();
+
     public boolean isDebugmode() {
         return this.debugmode;
     }
@@ -165,4 +171,12 @@ public class CoreConfig {
     public boolean isCheckFirstDatePlayed() {
         return this.checkFirstDatePlayed;
     }
+
+    public long getPersistCooldownsLongerThan() {
+        return this.persistCooldownsLongerThan;
+    }
+
+    public StorageConfig getStorageConfig() {
+        return this.storageConfig;
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.core.config;
+
+import ninja.leaping.configurate.objectmapping.Setting;
+import ninja.leaping.configurate.objectmapping.serialize.ConfigSerializable;
+
+@ConfigSerializable
+public class StorageConfig {
+
+    @Setting(value = "data-store", comment = "config.core.storage.datastore")
+    private String dataStore = "nucleus:flatfile";
+
+    @Setting(value = "compact-json", comment = "config.core.storage.compactjson")
+    private boolean compactJson = false;
+
+    @Setting(value = "write-behind", comment = "config.core.storage.writebehind")
+    private WriteBehindConfig writeBehindConfig = new WriteBehindConfig();
+
+    @Setting(value = "executor", comment = "config.core.storage.executor")
+    private ExecutorConfig executorConfig = new ExecutorConfig();
+
+    @Setting(value = "profile-main-thread", comment = "config.core.storage.profile")
+    private boolean profileMainThread = false;
+
+    @Setting(value = "shutdown-flush", comment = "config.core.storage.shutdownflush")
+    private ShutdownFlushConfig shutdownFlushConfig = new ShutdownFlushConfig();
+
+    @Setting(value = "journal", comment = "config.core.storage.journal")
+    private JournalConfig journalConfig = new JournalConfig();
+
+    public String getDataStore() {
+        return this.dataStore;
+    }
+
+    public boolean isCompactJson() {
+        return this.compactJson;
+    }
+
+    public WriteBehindConfig getWriteBehindConfig() {
+        return this.writeBehindConfig;
+    }
+
+    public ExecutorConfig getExecutorConfig() {
+        return this.executorConfig;
+    }
+
+    public boolean isProfileMainThread() {
+        return this.profileMainThread;
+    }
+
+    public ShutdownFlushConfig getShutdownFlushConfig() {
+        return this.shutdownFlushConfig;
+    }
+
+    public JournalConfig getJournalConfig() {
+        return this.journalConfig;
+    }
+
+    @ConfigSerializable
+    public static class WriteBehindConfig {
+
+        @Setting(value = "enabled", comment = "config.core.storage.writebehind.enabled")
+        private boolean enabled = false;
+
+        @Setting(value = "max-latency-millis", comment = "config.core.storage.writebehind.maxlatency")
+        private long maxLatencyMillis = 2000;
+
+        @Setting(value = "max-batch-size", comment = "config.core.storage.writebehind.maxbatch")
+        private int maxBatchSize = 50;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public long getMaxLatencyMillis() {
+            return Math.max(50, this.maxLatencyMillis);
+        }
+
+        public int getMaxBatchSize() {
+            return Math.max(1, this.maxBatchSize);
+        }
+    }
+
+    @ConfigSerializable
+    public static class ExecutorConfig {
+
+        @Setting(value = "worker-threads", comment = "config.core.storage.executor.workers")
+        private int workerThreads = 4;
+
+        @Setting(value = "queue-size", comment = "config.core.storage.executor.queuesize")
+        private int queueSize = 1000;
+
+        public int getWorkerThreads() {
+            return Math.max(1, this.workerThreads);
+        }
+
+        public int getQueueSize() {
+            return Math.max(1, this.queueSize);
+        }
+    }
+
+    @ConfigSerializable
+    public static class ShutdownFlushConfig {
+
+        @Setting(value = "enabled", comment = "config.core.storage.shutdownflush.enabled")
+        private boolean enabled = false;
+
+        @Setting(value = "threads", comment = "config.core.storage.shutdownflush.threads")
+        private int threads = 4;
+
+        @Setting(value = "deadline-seconds", comment = "config.core.storage.shutdownflush.deadline")
+        private int deadlineSeconds = 30;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public int getThreads() {
+            return Math.max(1, this.threads);
+        }
+
+        public int getDeadlineSeconds() {
+            return Math.max(1, this.deadlineSeconds);
+        }
+    }
+
+    @ConfigSerializable
+    public static class JournalConfig {
+
+        @Setting(value = "checkpoint-interval-seconds", comment = "config.core.storage.journal.interval")
+        private int checkpointIntervalSeconds = 60;
+
+        @Setting(value = "max-journal-size-mb", comment = "config.core.storage.journal.maxsize")
+        private int maxJournalSizeMb = 16;
+
+        public int getCheckpointIntervalSeconds() {
+            return Math.max(1, this.checkpointIntervalSeconds);
+        }
+
+        public int getMaxJournalSizeMb() {
+            return Math.max(1, this.maxJournalSizeMb);
+        }
+    }
+}
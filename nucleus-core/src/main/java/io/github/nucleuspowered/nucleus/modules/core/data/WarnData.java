@@ -78,6 +78,17 @@ public class WarnData extends EndTimestamp implements Warning {
         this.date = date.toEpochMilli();
     }
 
+    @Override public WarnData copy() {
+        WarnData copy = new WarnData();
+        copy.warner = this.warner;
+        copy.reason = this.reason;
+        copy.date = this.date;
+        copy.expired = this.expired;
+        copy.endtimestamp = this.endtimestamp;
+        copy.timeFromNextLogin = this.timeFromNextLogin;
+        return copy;
+    }
+
     @Override public String getReason() {
         return this.reason;
     }
@@ -4,6 +4,7 @@
  */
 package io.github.nucleuspowered.nucleus.modules.core.events;
 
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
 import org.spongepowered.api.event.cause.Cause;
 import org.spongepowered.api.event.impl.AbstractEvent;
@@ -14,12 +15,14 @@ public class UserDataLoadedEvent extends AbstractEvent {
     private final Cause cause;
     private final IUserDataObject dataObject;
     private final GameProfile gameProfile;
+    private final UserSession session;
     private boolean markedAsToSave = false;
 
-    public UserDataLoadedEvent(Cause cause, IUserDataObject dataObject, GameProfile gameProfile) {
+    public UserDataLoadedEvent(Cause cause, IUserDataObject dataObject, GameProfile gameProfile, UserSession session) {
         this.cause = cause;
         this.dataObject = dataObject;
         this.gameProfile = gameProfile;
+        this.session = session;
     }
 
     @Override
@@ -35,6 +38,17 @@ public class UserDataLoadedEvent extends AbstractEvent {
         return this.gameProfile;
     }
 
+    /**
+     * Gets the session for the user. Listeners should put anything they need
+     * when the player logs in or joins into it, once any changes have been
+     * made to the data (that is, at {@link org.spongepowered.api.event.Order#LATE}).
+     *
+     * @return The {@link UserSession}
+     */
+    public UserSession getSession() {
+        return this.session;
+    }
+
     public boolean shouldSave() {
         return this.markedAsToSave;
     }
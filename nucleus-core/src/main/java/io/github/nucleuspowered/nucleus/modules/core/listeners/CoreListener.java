@@ -8,12 +8,14 @@ import com.google.common.collect.Lists;
 import io.github.nucleuspowered.nucleus.Util;
 import io.github.nucleuspowered.nucleus.api.core.event.NucleusFirstJoinEvent;
 import io.github.nucleuspowered.nucleus.api.text.NucleusTextTemplate;
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
 import io.github.nucleuspowered.nucleus.modules.core.CoreKeys;
 import io.github.nucleuspowered.nucleus.modules.core.config.CoreConfig;
 import io.github.nucleuspowered.nucleus.modules.core.events.NucleusOnLoginEvent;
 import io.github.nucleuspowered.nucleus.modules.core.events.OnFirstLoginEvent;
 import io.github.nucleuspowered.nucleus.modules.core.events.UserDataLoadedEvent;
 import io.github.nucleuspowered.nucleus.modules.core.services.UniqueUserService;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
 import io.github.nucleuspowered.nucleus.scaffold.listener.ListenerBase;
 import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
@@ -31,6 +33,7 @@ import org.spongepowered.api.event.CauseStackManager;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
 import org.spongepowered.api.event.filter.Getter;
+import org.spongepowered.api.event.filter.IsCancelled;
 import org.spongepowered.api.event.game.GameReloadEvent;
 import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
 import org.spongepowered.api.event.network.ClientConnectionEvent;
@@ -40,6 +43,7 @@ import org.spongepowered.api.service.pagination.PaginationService;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.action.TextActions;
 import org.spongepowered.api.text.format.TextColors;
+import org.spongepowered.api.util.Tristate;
 
 import java.net.InetAddress;
 import java.net.MalformedURLException;
@@ -57,6 +61,7 @@ import javax.inject.Inject;
 public class CoreListener implements IReloadableService.Reloadable, ListenerBase {
 
     private final INucleusServiceCollection serviceCollection;
+    private final UserSessionService sessionService;
     @Nullable private NucleusTextTemplate getKickOnStopMessage = null;
     @Nullable private final URL url;
     private boolean warnOnWildcard = true;
@@ -65,6 +70,7 @@ public class CoreListener implements IReloadableService.Reloadable, ListenerBase
     @Inject
     public CoreListener(INucleusServiceCollection serviceCollection) {
         this.serviceCollection = serviceCollection;
+        this.sessionService = serviceCollection.getServiceUnchecked(UserSessionService.class);
         URL u = null;
         try {
             u = new URL("https://ore.spongepowered.org/Nucleus/Nucleus/pages/The-Permissions-Wildcard-(And-Why-You-Shouldn't-Use-It)");
@@ -85,18 +91,32 @@ public class CoreListener implements IReloadableService.Reloadable, ListenerBase
         // As this is already async, load on thread.
         final IUserDataObject dataObject = this.serviceCollection.storageManager().getUserService().getOrNewOnThread(userId);
 
+        // The session keeps the data in memory until they leave, and holds
+        // anything modules want to have ready for when they join.
+        final UserSession session = this.sessionService.create(userId, dataObject);
+
         // Fire the event, which will be async too, perhaps unsurprisingly.
-        // The main use for this will be migrations.
+        // The main use for this will be migrations, and filling the session.
         UserDataLoadedEvent eventToFire = new UserDataLoadedEvent(
                 event.getCause().with(this.serviceCollection.pluginContainer()),
                 dataObject,
-                event.getProfile()
+                event.getProfile(),
+                session
         );
         Sponge.getEventManager().post(eventToFire);
         if (eventToFire.shouldSave()) {
             this.serviceCollection.storageManager().getUserService().save(userId, dataObject);
         }
         this.serviceCollection.messageProvider().invalidateLocaleCacheFor(userId);
+        this.serviceCollection.userPreferenceService().preload(userId, dataObject);
+    }
+
+    @Listener(order = Order.POST)
+    @IsCancelled(Tristate.TRUE)
+    public void onPlayerLoginCancelled(final ClientConnectionEvent.Login event, @Getter("getTargetUser") User user) {
+        // They never join, so they never quit - drop what was loaded for them at auth.
+        this.serviceCollection.userPreferenceService().unload(user.getUniqueId());
+        this.sessionService.remove(user.getUniqueId());
     }
 
     /* (non-Javadoc)
@@ -106,7 +126,7 @@ public class CoreListener implements IReloadableService.Reloadable, ListenerBase
     public void onPlayerLoginLast(final ClientConnectionEvent.Login event, @Getter("getProfile") GameProfile profile,
         @Getter("getTargetUser") User user) {
 
-        IUserDataObject udo = this.serviceCollection.storageManager().getUserService().getOrNewOnThread(user.getUniqueId());
+        IUserDataObject udo = this.sessionService.getDataObject(user.getUniqueId());
 
         if (event.getFromTransform().equals(event.getToTransform())) {
             try (CauseStackManager.StackFrame frame = Sponge.getCauseStackManager().pushCauseFrame()) {
@@ -130,7 +150,8 @@ public class CoreListener implements IReloadableService.Reloadable, ListenerBase
     @Listener(order = Order.FIRST)
     public void onPlayerJoinFirst(final ClientConnectionEvent.Join event, @Getter("getTargetEntity") final Player player) {
         try {
-            IUserDataObject qsu = this.serviceCollection.storageManager().getUserService().getOrNewOnThread(player.getUniqueId());
+            this.sessionService.get(player.getUniqueId()).ifPresent(UserSession::setJoined);
+            IUserDataObject qsu = this.sessionService.getDataObject(player.getUniqueId());
             qsu.set(CoreKeys.LAST_LOGIN, Instant.now());
             if (this.serviceCollection.platformService().isServer()) {
                 qsu.set(CoreKeys.IP_ADDRESS, player.getConnection().getAddress().getAddress().toString());
@@ -150,13 +171,14 @@ public class CoreListener implements IReloadableService.Reloadable, ListenerBase
         final UUID uuid = player.getUniqueId();
         final IStorageService.Keyed.KeyedData<UUID, IUserQueryObject, IUserDataObject> userService =
                 this.serviceCollection.storageManager().getUserService();
-        if (!userService
-                .getOnThread(uuid)
-                .flatMap(x -> x.get(CoreKeys.FIRST_JOIN_PROCESSED))
-                .orElse(false)) {
+        final boolean firstJoinProcessed = this.sessionService.get(uuid)
+                .map(UserSession::isFirstJoinProcessed)
+                .orElseGet(() -> userService.getOnThread(uuid).flatMap(x -> x.get(CoreKeys.FIRST_JOIN_PROCESSED)).orElse(false));
+        if (!firstJoinProcessed) {
 
+            // Whether or not Sponge has seen them before, they have now visited.
+            this.serviceCollection.getServiceUnchecked(UniqueUserService.class).addUniqueUser(uuid);
             if (!this.checkSponge || !Util.hasPlayedBeforeSponge(player)) {
-                this.serviceCollection.getServiceUnchecked(UniqueUserService.class).resetUniqueUserCount();
 
                 NucleusFirstJoinEvent firstJoinEvent = new OnFirstLoginEvent(
                         event.getCause(), player, event.getOriginalChannel(), event.getChannel().orElse(null), event.getOriginalMessage(),
@@ -207,6 +229,7 @@ public class CoreListener implements IReloadableService.Reloadable, ListenerBase
         // There is an issue in Sponge where the connection may not even exist, because they were disconnected before the connection was
         // completely established.
         //noinspection ConstantConditions
+        this.serviceCollection.userPreferenceService().unload(player.getUniqueId());
         if (player.getConnection() == null || player.getConnection().getAddress() == null) {
             return;
         }
@@ -215,15 +238,28 @@ public class CoreListener implements IReloadableService.Reloadable, ListenerBase
 
     }
 
+    @Listener(order = Order.POST)
+    public void onPlayerQuitPost(final ClientConnectionEvent.Disconnect event, @Getter("getTargetEntity") final Player player) {
+        // Everything else has had a chance to use the session by now.
+        this.sessionService.remove(player.getUniqueId());
+    }
+
     private void onPlayerQuit(Player player, IUserDataObject udo) {
+        if (updateOnQuit(player, udo)) {
+            this.serviceCollection.storageManager().getUserService().save(player.getUniqueId(), udo);
+        }
+    }
+
+    private boolean updateOnQuit(Player player, IUserDataObject udo) {
         final InetAddress address = player.getConnection().getAddress().getAddress();
 
         try {
             udo.set(CoreKeys.IP_ADDRESS, address.toString());
             this.serviceCollection.userCacheService().updateCacheForPlayer(player.getUniqueId(), udo);
-            this.serviceCollection.storageManager().getUserService().save(player.getUniqueId(), udo);
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
+            return false;
         }
     }
 
@@ -236,8 +272,14 @@ public class CoreListener implements IReloadableService.Reloadable, ListenerBase
 
     @Listener
     public void onServerAboutToStop(final GameStoppingServerEvent event) {
+        final boolean flushOnStop = this.serviceCollection.storageManager().isShutdownFlushEnabled();
         for (Player player : Sponge.getServer().getOnlinePlayers()) {
-            this.serviceCollection.storageManager().getUserOnThread(player.getUniqueId()).ifPresent(x -> onPlayerQuit(player, x));
+            if (flushOnStop) {
+                // Only updated here, everything that has changed is saved together when the server stops.
+                this.serviceCollection.storageManager().getUserOnThread(player.getUniqueId()).ifPresent(x -> updateOnQuit(player, x));
+            } else {
+                this.serviceCollection.storageManager().getUserOnThread(player.getUniqueId()).ifPresent(x -> onPlayerQuit(player, x));
+            }
         }
 
         if (this.getKickOnStopMessage != null) {
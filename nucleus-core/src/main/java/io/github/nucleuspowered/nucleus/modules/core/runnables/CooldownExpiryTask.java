@@ -0,0 +1,44 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.core.runnables;
+
+import com.google.inject.Inject;
+import io.github.nucleuspowered.nucleus.scaffold.task.TaskBase;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Removes command cooldowns that have ended.
+ */
+@NonnullByDefault
+public class CooldownExpiryTask implements TaskBase {
+
+    private final INucleusServiceCollection serviceCollection;
+
+    @Inject
+    public CooldownExpiryTask(INucleusServiceCollection serviceCollection) {
+        this.serviceCollection = serviceCollection;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public Duration interval() {
+        return Duration.of(1, ChronoUnit.SECONDS);
+    }
+
+    @Override
+    public void accept(Task task) {
+        this.serviceCollection.cooldownService().expireCooldowns();
+    }
+
+}
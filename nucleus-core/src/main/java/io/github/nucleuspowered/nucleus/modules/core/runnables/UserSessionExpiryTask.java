@@ -0,0 +1,46 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.core.runnables;
+
+import com.google.inject.Inject;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
+import io.github.nucleuspowered.nucleus.scaffold.task.TaskBase;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Removes the sessions of players that connected but never joined, so that
+ * their data does not stay pinned until the next player connects.
+ */
+@NonnullByDefault
+public class UserSessionExpiryTask implements TaskBase {
+
+    private final UserSessionService sessionService;
+
+    @Inject
+    public UserSessionExpiryTask(INucleusServiceCollection serviceCollection) {
+        this.sessionService = serviceCollection.getServiceUnchecked(UserSessionService.class);
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public Duration interval() {
+        return Duration.of(30, ChronoUnit.SECONDS);
+    }
+
+    @Override
+    public void accept(Task task) {
+        this.sessionService.removeAbandoned();
+    }
+
+}
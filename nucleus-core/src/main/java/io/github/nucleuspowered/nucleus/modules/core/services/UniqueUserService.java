@@ -17,20 +17,38 @@ import org.spongepowered.api.profile.GameProfile;
 import org.spongepowered.api.scheduler.Task;
 import org.spongepowered.api.service.user.UserStorageService;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+/**
+ * Keeps track of the users that have visited the server, for the unique
+ * visitor count.
+ *
+ * <p>The users are kept in a file, and users that join for the first time
+ * are appended to a log next to it. The set is only built from all known
+ * users if there is no file, or if asked for by the refresh unique visitors
+ * command, as this requires checking every user that Sponge knows about.</p>
+ */
 @Singleton
-public class UniqueUserService implements ServiceBase, IReloadableService.Reloadable {
+public class UniqueUserService implements ServiceBase, IReloadableService.Reloadable, IReloadableService.DataLocationReloadable {
 
     public static UniqueUserService INSTANCE;
     private final INucleusServiceCollection serviceCollection;
+    private final UniqueVisitorSet visitors = new UniqueVisitorSet();
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private volatile boolean loaded = false;
     private boolean isMoreAccurate = false;
 
     @Inject
@@ -43,25 +61,48 @@ public class UniqueUserService implements ServiceBase, IReloadableService.Reload
 
     private static boolean ERROR_REPORTED = false;
 
-    // This is a session variable - does not get saved on restart.
-    private long userCount = 0;
-    private boolean userCountIsDirty = false;
-
     public long getUniqueUserCount() {
-        if (this.userCountIsDirty) {
-            return this.userCount + 1;
+        return this.visitors.size();
+    }
+
+    /**
+     * Adds a user that has joined for the first time, writing them to disk
+     * off the main thread if they are new to the set.
+     *
+     * @param uuid The {@link UUID} of the user
+     */
+    public void addUniqueUser(UUID uuid) {
+        if (this.visitors.add(uuid)) {
+            Task.builder().async().execute(() -> {
+                try {
+                    this.visitors.log(getFile(), uuid);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }).submit(this.serviceCollection.pluginContainer());
         }
+    }
 
-        return this.userCount;
+    /**
+     * Builds the set from all known users if there was no saved set to load.
+     */
+    public void buildIfMissing() {
+        if (!this.loaded) {
+            resetUniqueUserCount();
+        }
     }
 
     public void resetUniqueUserCount() {
         resetUniqueUserCount(null);
     }
 
+    /**
+     * Rebuilds the set from all known users.
+     *
+     * @param resultConsumer Given the new count once done, if the set was not already being rebuilt
+     */
     public void resetUniqueUserCount(@Nullable final Consumer<Long> resultConsumer) {
-        if (!this.userCountIsDirty) {
-            this.userCountIsDirty = true;
+        if (this.rebuilding.compareAndSet(false, true)) {
             ERROR_REPORTED = false;
 
             if (Sponge.getServer().isMainThread()) {
@@ -72,14 +113,37 @@ public class UniqueUserService implements ServiceBase, IReloadableService.Reload
         }
     }
 
+    /**
+     * Merges any users added since the set was last saved into the saved set.
+     */
+    public void saveIfChanged() {
+        if (this.visitors.hasUnsaved()) {
+            save();
+        }
+    }
+
     private void doTask(@Nullable final Consumer<Long> resultConsumer) {
+        try {
+            this.visitors.replace(findUniqueUsers());
+            this.loaded = true;
+            save();
+        } finally {
+            this.rebuilding.set(false);
+        }
+
+        if (resultConsumer != null) {
+            resultConsumer.accept(getUniqueUserCount());
+        }
+    }
+
+    private List<UUID> findUniqueUsers() {
         UserStorageService uss = Sponge.getServiceManager().provideUnchecked(UserStorageService.class);
         IStorageService.Keyed<UUID, IUserQueryObject, IUserDataObject> service =
                 this.serviceCollection.storageManager().getUserService();
 
         // This could be slow...
         if (this.isMoreAccurate) {
-            this.userCount = uss.getAll().stream().filter(GameProfile::isFilled)
+            return uss.getAll().stream().filter(GameProfile::isFilled)
                     .map(uss::get).filter(Optional::isPresent)
                     .filter(x -> {
                         boolean ret = x.get().getPlayer().isPresent() || service.exists(x.get().getUniqueId()).join(); // already async
@@ -102,14 +166,38 @@ public class UniqueUserService implements ServiceBase, IReloadableService.Reload
                         }
 
                         return ret;
-                    }).count();
+                    })
+                    .map(x -> x.get().getUniqueId())
+                    .collect(Collectors.toList());
         } else {
-            this.userCount = uss.getAll().stream().filter(GameProfile::isFilled).filter(x -> service.exists(x.getUniqueId()).join()).count();
+            return uss.getAll().stream().filter(GameProfile::isFilled).filter(x -> service.exists(x.getUniqueId()).join())
+                    .map(GameProfile::getUniqueId)
+                    .collect(Collectors.toList());
         }
+    }
 
-        this.userCountIsDirty = false;
-        if (resultConsumer != null) {
-            resultConsumer.accept(this.userCount);
+    private void save() {
+        try {
+            this.visitors.save(getFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path getFile() {
+        return this.serviceCollection.dataDir().get().resolve("uniquevisitors.dat");
+    }
+
+    @Override public void onDataFileLocationChange(INucleusServiceCollection serviceCollection) {
+        Path file = getFile();
+        this.loaded = false;
+        try {
+            // Anyone in the log is kept if there is no saved set and it has to be built.
+            this.visitors.load(file);
+            this.loaded = Files.exists(file);
+        } catch (IOException e) {
+            this.serviceCollection.logger().warn("Could not read the unique visitor file, the count will be rebuilt.");
+            e.printStackTrace();
         }
     }
 
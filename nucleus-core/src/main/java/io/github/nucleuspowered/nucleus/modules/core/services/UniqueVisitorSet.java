@@ -0,0 +1,257 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.core.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The {@link UUID}s of every user that has visited the server.
+ *
+ * <p>Most of the set is held as a sorted array of the two halves of each
+ * {@link UUID}, which is a lot smaller than a {@link java.util.HashSet} with
+ * hundreds of thousands of users in it. Users added since the set was loaded
+ * or last saved are held separately, and merged in when it is saved.</p>
+ *
+ * <p>On disk, the saved set is the version, the number of users and then the
+ * halves of each {@link UUID} in order. Users added since are appended to a
+ * log next to it, so that a new user only adds 16 bytes to what is on disk.
+ * The log is merged into the saved set once it gets long.</p>
+ */
+public final class UniqueVisitorSet {
+
+    private static final int VERSION = 1;
+    private static final int RECORD_LENGTH = 16;
+
+    // The number of users in the log that causes it to be merged into the saved set.
+    public static final int MERGE_AFTER = 4096;
+
+    // most, least, most, least...
+    private long[] sorted = new long[0];
+    private final Set<UUID> added = new HashSet<>();
+
+    // Only one save at a time, without holding up additions while writing.
+    private final Object saveLock = new Object();
+
+    // Guarded by saveLock.
+    private int logged = 0;
+
+    public synchronized int size() {
+        return this.sorted.length / 2 + this.added.size();
+    }
+
+    /**
+     * Adds a user to the set.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @return true if they were not in the set already
+     */
+    public synchronized boolean add(UUID uuid) {
+        return indexOf(uuid) < 0 && this.added.add(uuid);
+    }
+
+    /**
+     * Replaces the set with the given users, keeping any that have been added
+     * since it was last saved.
+     *
+     * @param uuids The users
+     */
+    public synchronized void replace(Collection<UUID> uuids) {
+        List<UUID> all = new ArrayList<>(uuids);
+        all.addAll(this.added);
+        this.sorted = toSortedArray(all);
+        this.added.clear();
+    }
+
+    public synchronized boolean hasUnsaved() {
+        return !this.added.isEmpty();
+    }
+
+    /**
+     * Loads the saved set and the log of users added since, if either exist.
+     *
+     * @param file The file the set is saved to
+     * @throws IOException if the set could not be read
+     */
+    public void load(Path file) throws IOException {
+        long[] loaded = new long[0];
+        if (Files.exists(file)) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (input.readInt() != VERSION) {
+                    throw new IOException("Unknown unique visitor file version");
+                }
+
+                loaded = new long[input.readInt() * 2];
+                for (int i = 0; i < loaded.length; i++) {
+                    loaded[i] = input.readLong();
+                }
+            }
+        }
+
+        List<UUID> fromLog = readLog(logFor(file));
+        synchronized (this.saveLock) {
+            synchronized (this) {
+                this.sorted = loaded;
+                this.added.clear();
+                for (UUID uuid : fromLog) {
+                    if (indexOf(uuid) < 0) {
+                        this.added.add(uuid);
+                    }
+                }
+            }
+
+            this.logged = fromLog.size();
+        }
+    }
+
+    /**
+     * Writes a user that was added to the set to disk, by adding them to the
+     * log, or by saving the whole set if the log is long enough to merge.
+     *
+     * @param file The file the set is saved to
+     * @param uuid The {@link UUID} of the user that was added
+     * @throws IOException if the user could not be written
+     */
+    public void log(Path file, UUID uuid) throws IOException {
+        synchronized (this.saveLock) {
+            if (this.logged >= MERGE_AFTER) {
+                saveInternal(file);
+                return;
+            }
+
+            Files.createDirectories(file.getParent());
+            ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+            record.flip();
+            try (FileChannel channel = FileChannel.open(logFor(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+
+            this.logged++;
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        synchronized (this.saveLock) {
+            saveInternal(file);
+        }
+    }
+
+    // Must hold the save lock.
+    private void saveInternal(Path file) throws IOException {
+        long[] toSave;
+        synchronized (this) {
+            if (!this.added.isEmpty()) {
+                List<UUID> all = new ArrayList<>(this.sorted.length / 2 + this.added.size());
+                for (int i = 0; i < this.sorted.length; i += 2) {
+                    all.add(new UUID(this.sorted[i], this.sorted[i + 1]));
+                }
+
+                all.addAll(this.added);
+                this.sorted = toSortedArray(all);
+                this.added.clear();
+            }
+
+            toSave = this.sorted;
+        }
+
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(VERSION);
+            output.writeInt(toSave.length / 2);
+            for (long value : toSave) {
+                output.writeLong(value);
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Everything in the log is in the saved set now. If this is not deleted, it is read again harmlessly.
+        Files.deleteIfExists(logFor(file));
+        this.logged = 0;
+    }
+
+    private static List<UUID> readLog(Path log) throws IOException {
+        List<UUID> result = new ArrayList<>();
+        if (!Files.exists(log)) {
+            return result;
+        }
+
+        long length = Files.size(log);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+            for (long i = 0; i < length / RECORD_LENGTH; i++) {
+                result.add(new UUID(input.readLong(), input.readLong()));
+            }
+        }
+
+        if (length % RECORD_LENGTH != 0) {
+            // The server stopped while a user was being written, drop what there is of them.
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                channel.truncate(length - length % RECORD_LENGTH);
+            }
+        }
+
+        return result;
+    }
+
+    private static Path logFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".log");
+    }
+
+    private int indexOf(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        int low = 0;
+        int high = this.sorted.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = compare(this.sorted[mid * 2], this.sorted[mid * 2 + 1], most, least);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    private static long[] toSortedArray(Collection<UUID> uuids) {
+        // UUID#compareTo compares the halves as signed longs, as we do.
+        List<UUID> list = new ArrayList<>(new HashSet<>(uuids));
+        list.sort(null);
+        long[] result = new long[list.size() * 2];
+        for (int i = 0; i < list.size(); i++) {
+            result[i * 2] = list.get(i).getMostSignificantBits();
+            result[i * 2 + 1] = list.get(i).getLeastSignificantBits();
+        }
+
+        return result;
+    }
+
+    private static int compare(long mostA, long leastA, long mostB, long leastB) {
+        int result = Long.compare(mostA, mostB);
+        return result == 0 ? Long.compare(leastA, leastB) : result;
+    }
+}
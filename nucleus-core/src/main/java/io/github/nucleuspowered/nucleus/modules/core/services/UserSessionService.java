@@ -0,0 +1,115 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.core.services;
+
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
+import io.github.nucleuspowered.nucleus.modules.core.CoreKeys;
+import io.github.nucleuspowered.nucleus.scaffold.service.ServiceBase;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Holds the {@link UserSession}s of players that are connecting or online.
+ * A session pins the user's data in memory until it is removed. The data is
+ * looked up each time it is asked for rather than kept in the session, as
+ * the user service may replace the pinned object with a newer one.
+ */
+@Singleton
+public class UserSessionService implements ServiceBase {
+
+    // A player that has not joined this long after their data was loaded never will.
+    private static final long ABANDONED_AFTER = TimeUnit.MINUTES.toMillis(1);
+
+    private final INucleusServiceCollection serviceCollection;
+    private final Map<UUID, UserSession> sessions = new ConcurrentHashMap<>();
+
+    @Inject
+    public UserSessionService(INucleusServiceCollection serviceCollection) {
+        this.serviceCollection = serviceCollection;
+    }
+
+    /**
+     * Starts a session for the user, replacing any that exists.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @param dataObject The user's data
+     * @return The session
+     */
+    public UserSession create(UUID uuid, IUserDataObject dataObject) {
+        removeAbandoned();
+        UserSession session = new UserSession(uuid, dataObject.get(CoreKeys.FIRST_JOIN_PROCESSED).orElse(false));
+        this.serviceCollection.storageManager().getUserService().pin(uuid, dataObject);
+        this.sessions.put(uuid, session);
+        return session;
+    }
+
+    public Optional<UserSession> get(UUID uuid) {
+        return Optional.ofNullable(this.sessions.get(uuid));
+    }
+
+    /**
+     * Gets a value from the user's session if it was loaded, otherwise gets it
+     * from the supplier.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @param key The key
+     * @param otherwise Gets the value if it is not in the session
+     * @param <T> The type of value
+     * @return The value
+     */
+    public <T> Optional<T> get(UUID uuid, UserSession.Key<T> key, Supplier<Optional<T>> otherwise) {
+        UserSession session = this.sessions.get(uuid);
+        if (session != null && session.isLoaded(key)) {
+            return session.get(key);
+        }
+
+        return otherwise.get();
+    }
+
+    /**
+     * Gets the user's data, which is in memory if they have a session, or
+     * from storage if not.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @return The user's data
+     */
+    public IUserDataObject getDataObject(UUID uuid) {
+        return this.serviceCollection.storageManager().getUserService().getOrNewOnThread(uuid);
+    }
+
+    public void remove(UUID uuid) {
+        if (this.sessions.remove(uuid) != null) {
+            this.serviceCollection.storageManager().getUserService().unpin(uuid);
+        }
+    }
+
+    /**
+     * Removes the sessions of players that had their data loaded but have not
+     * joined since. Players can drop off between their data loading and
+     * logging in, and then no other event fires for them.
+     */
+    public void removeAbandoned() {
+        long abandoned = System.currentTimeMillis() - ABANDONED_AFTER;
+        this.sessions.values().removeIf(x -> {
+            if (!x.isJoined() && x.getCreated() < abandoned) {
+                this.serviceCollection.storageManager().getUserService().unpin(x.getUniqueId());
+                this.serviceCollection.userPreferenceService().unload(x.getUniqueId());
+                return true;
+            }
+
+            return false;
+        });
+    }
+}
@@ -4,6 +4,7 @@
  */
 package io.github.nucleuspowered.nucleus.modules.ignore;
 
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
 import io.github.nucleuspowered.nucleus.util.TypeTokens;
 import io.github.nucleuspowered.storage.dataobjects.keyed.DataKey;
@@ -15,4 +16,6 @@ public class IgnoreKeys {
 
     public static DataKey<List<UUID>, IUserDataObject> IGNORED = DataKey.of(TypeTokens.UUID_LIST, IUserDataObject.class, "ignoreList");
 
+    public static final UserSession.Key<List<UUID>> SESSION_IGNORED = UserSession.Key.of("ignoreList");
+
 }
@@ -4,10 +4,14 @@
  */
 package io.github.nucleuspowered.nucleus.modules.ignore.listeners;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import io.github.nucleuspowered.nucleus.Util;
 import io.github.nucleuspowered.nucleus.api.module.mail.event.NucleusMailEvent;
 import io.github.nucleuspowered.nucleus.api.module.message.event.NucleusMessageEvent;
+import io.github.nucleuspowered.nucleus.modules.core.events.UserDataLoadedEvent;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
+import io.github.nucleuspowered.nucleus.modules.ignore.IgnoreKeys;
 import io.github.nucleuspowered.nucleus.modules.ignore.IgnorePermissions;
 import io.github.nucleuspowered.nucleus.modules.ignore.services.IgnoreService;
 import io.github.nucleuspowered.nucleus.scaffold.listener.ListenerBase;
@@ -18,8 +22,10 @@ import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.filter.Getter;
 import org.spongepowered.api.event.filter.cause.Root;
 import org.spongepowered.api.event.message.MessageChannelEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
 import org.spongepowered.api.text.channel.MessageReceiver;
 import org.spongepowered.api.text.channel.MutableMessageChannel;
 
@@ -32,16 +38,30 @@ import javax.inject.Inject;
 public class IgnoreListener implements ListenerBase {
 
     private final IgnoreService service;
+    private final UserSessionService sessionService;
     private final IPermissionService permissionService;
     private final IChatMessageFormatterService chatMessageFormatterService;
 
     @Inject
     public IgnoreListener(INucleusServiceCollection serviceCollection) {
         this.service = serviceCollection.getServiceUnchecked(IgnoreService.class);
+        this.sessionService = serviceCollection.getServiceUnchecked(UserSessionService.class);
         this.permissionService = serviceCollection.permissionService();
         this.chatMessageFormatterService = serviceCollection.chatMessageFormatter();
     }
 
+    @Listener(order = Order.LATE)
+    public void onUserDataLoaded(UserDataLoadedEvent event) {
+        event.getSession().put(IgnoreKeys.SESSION_IGNORED, event.getDataObject().get(IgnoreKeys.IGNORED).orElse(null));
+    }
+
+    @Listener
+    public void onJoin(ClientConnectionEvent.Join event, @Getter("getTargetEntity") Player player) {
+        this.sessionService.get(player.getUniqueId())
+                .filter(x -> x.isLoaded(IgnoreKeys.SESSION_IGNORED))
+                .ifPresent(x -> this.service.preload(player.getUniqueId(), x.get(IgnoreKeys.SESSION_IGNORED).orElseGet(ImmutableList::of)));
+    }
+
     @Listener(order = Order.LAST)
     public void onChat(MessageChannelEvent.Chat event) {
         Util.onPlayerSimulatedOrPlayer(event, this::onChat);
@@ -37,6 +37,18 @@ public class IgnoreService implements ServiceBase {
         this.ignoredBy.remove(player);
     }
 
+    /**
+     * Sets the ignore list that was loaded for a player, unless we already have it.
+     *
+     * @param player The player
+     * @param ignored The players they ignore
+     */
+    public void preload(UUID player, List<UUID> ignored) {
+        if (!this.ignoredBy.containsKey(player)) {
+            addPlayer(player, ignored);
+        }
+    }
+
     public void ignore(UUID ignorer, UUID ignoree) {
         List<UUID> uuid = get(ignorer);
         if (!uuid.contains(ignoree)) {
@@ -5,6 +5,7 @@
 package io.github.nucleuspowered.nucleus.modules.jail;
 
 import io.github.nucleuspowered.nucleus.api.util.data.NamedLocation;
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
 import io.github.nucleuspowered.nucleus.modules.jail.data.JailData;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IGeneralDataObject;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
@@ -21,4 +22,8 @@ public class JailKeys {
 
     public static final DataKey.MapKey<String, NamedLocation, IGeneralDataObject> JAILS =
             DataKey.ofMap(TypeTokens.STRING, TypeTokens.NAMEDLOCATION, IGeneralDataObject.class, "jails");
+
+    public static final UserSession.Key<JailData> SESSION_JAIL_DATA = UserSession.Key.of("jailData");
+
+    public static final UserSession.Key<Boolean> SESSION_JAIL_ON_NEXT_LOGIN = UserSession.Key.of("jailOnNextLogin");
 }
@@ -78,6 +78,21 @@ public final class JailData extends EndTimestamp implements Jailing {
         this.previousz = previousLocation.getZ();
     }
 
+    @Override public JailData copy() {
+        JailData copy = new JailData();
+        copy.jailer = this.jailer;
+        copy.jailName = this.jailName;
+        copy.reason = this.reason;
+        copy.previousx = this.previousx;
+        copy.previousy = this.previousy;
+        copy.previousz = this.previousz;
+        copy.world = this.world;
+        copy.creationTime = this.creationTime;
+        copy.endtimestamp = this.endtimestamp;
+        copy.timeFromNextLogin = this.timeFromNextLogin;
+        return copy;
+    }
+
     @Override public String getReason() {
         return this.reason;
     }
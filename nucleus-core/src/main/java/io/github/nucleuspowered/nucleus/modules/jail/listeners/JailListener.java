@@ -9,7 +9,10 @@ import io.github.nucleuspowered.nucleus.api.module.spawn.event.NucleusSendToSpaw
 import io.github.nucleuspowered.nucleus.api.teleport.event.NucleusTeleportEvent;
 import io.github.nucleuspowered.nucleus.api.util.data.NamedLocation;
 import io.github.nucleuspowered.nucleus.modules.core.events.NucleusOnLoginEvent;
+import io.github.nucleuspowered.nucleus.modules.core.events.UserDataLoadedEvent;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
 import io.github.nucleuspowered.nucleus.modules.fly.FlyKeys;
+import io.github.nucleuspowered.nucleus.modules.jail.JailKeys;
 import io.github.nucleuspowered.nucleus.modules.jail.JailPermissions;
 import io.github.nucleuspowered.nucleus.modules.jail.config.JailConfig;
 import io.github.nucleuspowered.nucleus.modules.jail.data.JailData;
@@ -53,6 +56,7 @@ public class JailListener implements IReloadableService.Reloadable, ListenerBase
     private final IMessageProviderService messageProviderService;
     private final IPlayerDisplayNameService playerDisplayNameService;
     private final JailHandler handler;
+    private final UserSessionService sessionService;
     private List<String> allowedCommands;
     private PluginContainer pluginContainer;
 
@@ -62,13 +66,20 @@ public class JailListener implements IReloadableService.Reloadable, ListenerBase
         this.messageProviderService = serviceCollection.messageProvider();
         this.playerDisplayNameService = serviceCollection.playerDisplayNameService();
         this.handler = serviceCollection.getServiceUnchecked(JailHandler.class);
+        this.sessionService = serviceCollection.getServiceUnchecked(UserSessionService.class);
         this.pluginContainer = serviceCollection.pluginContainer();
     }
 
+    @Listener(order = Order.LATE)
+    public void onUserDataLoaded(UserDataLoadedEvent event) {
+        event.getSession().put(JailKeys.SESSION_JAIL_DATA, event.getDataObject().get(JailKeys.JAIL_DATA).orElse(null));
+        event.getSession().put(JailKeys.SESSION_JAIL_ON_NEXT_LOGIN, event.getDataObject().get(JailKeys.JAIL_ON_NEXT_LOGIN).orElse(false));
+    }
+
     // fires after spawn login event
     @Listener
     public void onPlayerLogin(final NucleusOnLoginEvent event, @Getter("getTargetUser") User user, @Getter("getUserService") IUserDataObject qs) {
-        Optional<JailData> optionalJailData = this.handler.getPlayerJailDataInternal(user);
+        Optional<JailData> optionalJailData = getJailData(user);
         if (!optionalJailData.isPresent()) {
             return;
         }
@@ -76,7 +87,7 @@ public class JailListener implements IReloadableService.Reloadable, ListenerBase
         JailData jd = optionalJailData.get();
 
         // Send them back to where they should be.
-        Optional<NamedLocation> owl = this.handler.getWarpLocation(user);
+        Optional<NamedLocation> owl = this.handler.getWarpLocation(jd);
         if (!owl.isPresent()) {
             new PermissionMessageChannel(this.permissionService, JailPermissions.JAIL_NOTIFY)
                     .send(Text.of(TextColors.RED, "WARNING: No jail is defined. Jailed players are going free!"));
@@ -88,7 +99,7 @@ public class JailListener implements IReloadableService.Reloadable, ListenerBase
         event.setTo(owl.get().getTransform().get());
 
         // Jailing the subject if we need to.
-        if (this.handler.shouldJailOnNextLogin(user)) {
+        if (shouldJailOnNextLogin(user)) {
             try (CauseStackManager.StackFrame frame = Sponge.getCauseStackManager().pushCauseFrame()) {
                 frame.addContext(EventContexts.IS_JAILING_ACTION, true);
                 // only set previous location if the player hasn't been moved to the jail before.
@@ -112,13 +123,13 @@ public class JailListener implements IReloadableService.Reloadable, ListenerBase
         final Player user = event.getTargetEntity();
 
         // Jailing the subject if we need to.
-        Optional<JailData> data = this.handler.getPlayerJailDataInternal(user);
-        if (this.handler.shouldJailOnNextLogin(user) && data.isPresent()) {
+        Optional<JailData> data = getJailData(user);
+        if (shouldJailOnNextLogin(user) && data.isPresent()) {
             try (CauseStackManager.StackFrame frame = Sponge.getCauseStackManager().pushCauseFrame()) {
                 frame.addContext(EventContexts.IS_JAILING_ACTION, true);
                 // It exists.
-                NamedLocation owl = this.handler.getWarpLocation(user).get();
                 JailData jd = data.get();
+                NamedLocation owl = this.handler.getWarpLocation(jd).get();
                 Optional<Duration> timeLeft = jd.getRemainingTime();
                 Text message = timeLeft.map(duration ->
                         this.messageProviderService.getMessageFor(
@@ -144,6 +155,7 @@ public class JailListener implements IReloadableService.Reloadable, ListenerBase
             if (omd.isPresent()) {
                 JailData md = omd.get();
                 md.nextLoginToTimestamp();
+                this.handler.updateJailSnapshot(user, md);
 
                 if (md.expired()) {
                     // free.
@@ -156,6 +168,24 @@ public class JailListener implements IReloadableService.Reloadable, ListenerBase
         }).submit(this.pluginContainer);
     }
 
+    // Uses what was loaded with their data while they are connecting.
+    private Optional<JailData> getJailData(User user) {
+        Optional<JailData> data = this.sessionService.get(user.getUniqueId(), JailKeys.SESSION_JAIL_DATA,
+                () -> this.handler.getPlayerJailDataInternal(user));
+        this.handler.updateJailSnapshot(user, data.orElse(null));
+        return data;
+    }
+
+    private boolean shouldJailOnNextLogin(User user) {
+        return this.sessionService.get(user.getUniqueId(), JailKeys.SESSION_JAIL_ON_NEXT_LOGIN,
+                () -> Optional.of(this.handler.shouldJailOnNextLogin(user))).orElse(false);
+    }
+
+    @Listener(order = Order.POST)
+    public void onPlayerQuit(final ClientConnectionEvent.Disconnect event, @Getter("getTargetEntity") Player player) {
+        this.handler.removeJailSnapshot(player.getUniqueId());
+    }
+
     @Listener
     public void onRequestSent(NucleusTeleportEvent.Request event, @Root Player cause, @Getter("getTargetEntity") Player player) {
         if (this.handler.isPlayerJailed(cause)) {
@@ -36,8 +36,7 @@ public class JailTask implements TaskBase {
         Sponge.getServer()
                 .getOnlinePlayers()
                 .stream()
-                .filter(x -> this.jailHandler.isPlayerJailedCached(x))
-                .filter(x -> this.jailHandler.getPlayerJailDataInternal(x).map(y -> y.expired()).orElse(false))
+                .filter(x -> this.jailHandler.isJailExpiredCached(x))
                 .forEach(x -> this.jailHandler.unjailPlayer(x, Cause.of(EventContext.empty(), this.pluginContainer)));
     }
 
@@ -7,7 +7,6 @@ package io.github.nucleuspowered.nucleus.modules.jail.services;
 import com.flowpowered.math.vector.Vector3d;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
 import io.github.nucleuspowered.nucleus.Util;
 import io.github.nucleuspowered.nucleus.api.EventContexts;
 import io.github.nucleuspowered.nucleus.api.core.exception.NoSuchLocationException;
@@ -15,8 +14,9 @@ import io.github.nucleuspowered.nucleus.api.module.jail.NucleusJailService;
 import io.github.nucleuspowered.nucleus.api.module.jail.data.Jailing;
 import io.github.nucleuspowered.nucleus.api.teleport.data.TeleportScanners;
 import io.github.nucleuspowered.nucleus.api.util.data.NamedLocation;
-import io.github.nucleuspowered.nucleus.datatypes.EndTimestamp;
 import io.github.nucleuspowered.nucleus.datatypes.LocationData;
+import io.github.nucleuspowered.nucleus.datatypes.SanctionSnapshot;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
 import io.github.nucleuspowered.nucleus.modules.fly.FlyKeys;
 import io.github.nucleuspowered.nucleus.modules.jail.JailKeys;
 import io.github.nucleuspowered.nucleus.modules.jail.data.JailData;
@@ -56,6 +56,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -65,17 +66,20 @@ import javax.inject.Inject;
 public class JailHandler implements NucleusJailService, ContextCalculator<Subject>, ServiceBase {
 
     @Nullable private Map<String, NamedLocation> jailLocations = null;
+    private final INucleusServiceCollection serviceCollection;
     private final IStorageManager storageManager;
     private final INucleusTeleportService teleportService;
     private final IMessageProviderService messageProviderService;
 
-    // Used for the context calculator
-    private final Map<UUID, Context> jailDataCache = Maps.newHashMap();
+    // Used for the context calculator and the listener checks, so that they
+    // don't need to go to storage.
+    private final Map<UUID, SanctionSnapshot> jailSnapshots = new ConcurrentHashMap<>();
     private final static Context jailContext = new Context(NucleusJailService.JAILED_CONTEXT, "true");
     private final PluginContainer pluginContainer;
 
     @Inject
     public JailHandler(INucleusServiceCollection serviceCollection) {
+        this.serviceCollection = serviceCollection;
         this.storageManager = serviceCollection.storageManager();
         this.teleportService = serviceCollection.teleportService();
         this.messageProviderService = serviceCollection.messageProvider();
@@ -141,12 +145,23 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
     }
 
     public boolean isPlayerJailedCached(User user) {
-        return this.jailDataCache.containsKey(user.getUniqueId());
+        return this.jailSnapshots.containsKey(user.getUniqueId());
+    }
+
+    /**
+     * Gets whether the user is known to be jailed and their time is up,
+     * without going to storage.
+     *
+     * @param user The user
+     * @return true if so
+     */
+    public boolean isJailExpiredCached(User user) {
+        return this.jailSnapshots.getOrDefault(user.getUniqueId(), SanctionSnapshot.NONE).expired();
     }
 
     @Override
     public boolean isPlayerJailed(User user) {
-        return getPlayerJailDataInternal(user).isPresent();
+        return getJailSnapshot(user).isSanctioned();
     }
 
     @Override
@@ -158,12 +173,7 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
         try {
             Optional<JailData> data = this.storageManager.getUserOnThread(user.getUniqueId())
                     .flatMap(y -> y.get(JailKeys.JAIL_DATA));
-            if (data.isPresent()) {
-                this.jailDataCache.put(user.getUniqueId(), new Context(NucleusJailService.JAIL_CONTEXT, data.get().getJailName()));
-            } else {
-                this.jailDataCache.put(user.getUniqueId(), null);
-            }
-
+            updateJailSnapshot(user, data.orElse(null));
             return data;
         } catch (Exception e) {
             e.printStackTrace();
@@ -171,6 +181,42 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
         }
     }
 
+    private SanctionSnapshot getJailSnapshot(User user) {
+        SanctionSnapshot snapshot = this.jailSnapshots.get(user.getUniqueId());
+        if (snapshot == null) {
+            return createJailSnapshot(getPlayerJailDataInternal(user).orElse(null));
+        }
+
+        return snapshot;
+    }
+
+    private SanctionSnapshot createJailSnapshot(@Nullable JailData data) {
+        if (data == null) {
+            return SanctionSnapshot.NONE;
+        }
+
+        return SanctionSnapshot.of(data, new Context(NucleusJailService.JAIL_CONTEXT, data.getJailName()));
+    }
+
+    /**
+     * Updates the in memory copy of the user's jail state. This must be called
+     * whenever the jail data for a user changes.
+     *
+     * @param user The user
+     * @param data The jail data, or null if the user is not jailed
+     */
+    public void updateJailSnapshot(User user, @Nullable JailData data) {
+        this.jailSnapshots.put(user.getUniqueId(), createJailSnapshot(data));
+
+        // They may be jailed or released while they are connecting.
+        this.serviceCollection.getServiceUnchecked(UserSessionService.class).get(user.getUniqueId())
+                .ifPresent(x -> x.put(JailKeys.SESSION_JAIL_DATA, data));
+    }
+
+    public void removeJailSnapshot(UUID uuid) {
+        this.jailSnapshots.remove(uuid);
+    }
+
     public boolean shouldJailOnNextLogin(User user) {
         return this.storageManager.getOrCreateUserOnThread(user.getUniqueId()).get(JailKeys.JAIL_ON_NEXT_LOGIN).orElse(false);
     }
@@ -235,8 +281,7 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
         }
 
         this.storageManager.saveUser(user.getUniqueId(), udo);
-        this.jailDataCache.put(user.getUniqueId(), new Context(NucleusJailService.JAIL_CONTEXT, data.getJailName()));
-        this.storageManager.saveUser(user.getUniqueId(), udo);
+        updateJailSnapshot(user, data);
 
         Sponge.getEventManager().post(new JailEvent.Jailed(
                 user,
@@ -252,6 +297,7 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
         IUserDataObject udo = this.storageManager.getOrCreateUserOnThread(user.getUniqueId());
         udo.set(JailKeys.JAIL_DATA, data);
         this.storageManager.saveUser(user.getUniqueId(), udo);
+        updateJailSnapshot(user, data);
     }
 
     // Test
@@ -268,7 +314,7 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
         }
 
         Optional<Location<World>> ow = ojd.get().getPreviousLocation();
-        this.jailDataCache.put(user.getUniqueId(), null);
+        updateJailSnapshot(user, null);
         if (user.isOnline()) {
             Player player = user.getPlayer().get();
             Sponge.getScheduler().createSyncExecutor(this.pluginContainer).execute(() -> {
@@ -304,7 +350,11 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
             return Optional.empty();
         }
 
-        Optional<NamedLocation> owl = getJail(getPlayerJailDataInternal(user).get().getJailName());
+        return getWarpLocation(getPlayerJailDataInternal(user).get());
+    }
+
+    public Optional<NamedLocation> getWarpLocation(JailData data) {
+        Optional<NamedLocation> owl = getJail(data.getJailName());
         if (!owl.isPresent()) {
             Collection<NamedLocation> wl = getJails().values();
             if (wl.isEmpty()) {
@@ -319,16 +369,10 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
 
     @Override public void accumulateContexts(Subject calculable, Set<Context> accumulator) {
         if (calculable instanceof User) {
-            UUID c = ((User) calculable).getUniqueId();
-            if (!this.jailDataCache.containsKey(c)) {
-                getPlayerJailDataInternal((User) calculable);
-            }
-
-            Context co = this.jailDataCache.get(c);
-            if (co != null) {
+            getJailSnapshot((User) calculable).getContext().ifPresent(co -> {
                 accumulator.add(co);
                 accumulator.add(jailContext);
-            }
+            });
         }
     }
 
@@ -336,12 +380,12 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
         if (context.getKey().equals(NucleusJailService.JAIL_CONTEXT)) {
             if (subject instanceof User) {
                 UUID u = ((User) subject).getUniqueId();
-                return context.equals(this.jailDataCache.get(u));
+                return this.jailSnapshots.getOrDefault(u, SanctionSnapshot.NONE).getContext().map(context::equals).orElse(false);
             }
         } else if (context.getKey().equals(NucleusJailService.JAILED_CONTEXT)) {
             if (subject instanceof User) {
                 UUID u = ((User) subject).getUniqueId();
-                return this.jailDataCache.get(u) != null;
+                return this.jailSnapshots.getOrDefault(u, SanctionSnapshot.NONE).isSanctioned();
             }
         }
 
@@ -350,7 +394,7 @@ public class JailHandler implements NucleusJailService, ContextCalculator<Subjec
 
     public boolean checkJail(final User player, boolean sendMessage) {
         // if the jail doesn't exist, treat it as expired.
-        if (!getPlayerJailDataInternal(player).map(EndTimestamp::expired).orElse(true)) {
+        if (getJailSnapshot(player).isActive()) {
             if (sendMessage) {
                 IUserDataObject udo = this.storageManager.getOrCreateUserOnThread(player.getUniqueId());
                 udo.set(FlyKeys.FLY_TOGGLE, false);
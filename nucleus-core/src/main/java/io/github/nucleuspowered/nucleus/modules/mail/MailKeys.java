@@ -5,6 +5,7 @@
 package io.github.nucleuspowered.nucleus.modules.mail;
 
 import io.github.nucleuspowered.nucleus.api.module.mail.data.MailMessage;
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
 import io.github.nucleuspowered.nucleus.util.TypeTokens;
 import io.github.nucleuspowered.storage.dataobjects.keyed.DataKey;
@@ -14,4 +15,6 @@ public class MailKeys {
     public static final DataKey.ListKey<MailMessage, IUserDataObject> MAIL_DATA =
             DataKey.ofList(TypeTokens.MAIL_MESSAGE, IUserDataObject.class, "mailData");
 
+    public static final UserSession.Key<Integer> SESSION_MAIL_COUNT = UserSession.Key.of("mailCount");
+
 }
@@ -23,6 +23,9 @@ public class MailPermissions {
     @PermissionMetadata(descriptionKey = "permission.base", replacements = { "mail send" }, level = SuggestedLevel.USER)
     public static final String BASE_MAIL_SEND = "nucleus.mail.send.base";
 
+    @PermissionMetadata(descriptionKey = "permission.base", replacements = { "mail sendall" }, level = SuggestedLevel.ADMIN)
+    public static final String BASE_MAIL_SENDALL = "nucleus.mail.sendall.base";
+
     @PermissionMetadata(descriptionKey = "permission.exempt.cost", replacements = { "mail send" }, level = SuggestedLevel.ADMIN)
     public static final String EXEMPT_COST_MAIL_SEND = "nucleus.mail.send.exempt.cost";
 
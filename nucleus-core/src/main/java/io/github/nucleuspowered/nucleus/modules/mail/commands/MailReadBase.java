@@ -4,6 +4,8 @@
  */
 package io.github.nucleuspowered.nucleus.modules.mail.commands;
 
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
 import io.github.nucleuspowered.nucleus.Util;
 import io.github.nucleuspowered.nucleus.api.module.mail.NucleusMailService;
 import io.github.nucleuspowered.nucleus.api.module.mail.data.MailMessage;
@@ -25,7 +27,9 @@ import org.spongepowered.api.util.Identifiable;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -38,10 +42,41 @@ public class MailReadBase {
 
     static final String FILTERS = "filters";
 
+    // Above this, mail is shown a page at a time.
+    private static final int RENDER_ALL_LIMIT = 100;
+
+    // The number of mails read from the mailbox at a time when it is shown a page at a time.
+    private static final int READ_PAGE_SIZE = 50;
+
     public ICommandResult executeCommand(ICommandContext<? extends CommandSource> context,
             final User target,
             Collection<NucleusMailService.MailFilter> lmf) throws CommandException {
         MailHandler handler = context.getServiceCollection().getServiceUnchecked(MailHandler.class);
+        if (lmf.isEmpty() && context.is(Player.class) && handler.getMailCount(target.getUniqueId()) > RENDER_ALL_LIMIT) {
+            // The mailbox is kept in the order the mail was sent, so it can be read a page at a time as the pages are
+            // looked at. The pagination service does not count the pages of an iterable that is not a list.
+            return sendMail(context, target, false, () -> new AbstractIterator<Text>() {
+
+                private Iterator<MailMessage> page = Collections.emptyIterator();
+                private int read = 0;
+
+                @Override
+                protected Text computeNext() {
+                    if (!this.page.hasNext()) {
+                        List<MailMessage> next = handler.getMailPage(target, this.read, READ_PAGE_SIZE);
+                        if (next.isEmpty()) {
+                            return endOfData();
+                        }
+
+                        this.read += next.size();
+                        this.page = next.iterator();
+                    }
+
+                    return createMessage(context, this.page.next(), target);
+                }
+            });
+        }
+
         List<MailMessage> lmd;
         if (!lmf.isEmpty()) {
             lmd = handler.getMailInternal(target, lmf.toArray(new NucleusMailService.MailFilter[0]));
@@ -59,12 +94,23 @@ public class MailReadBase {
             return context.successResult();
         }
 
-        List<Text> mails = lmd.stream().sorted(Comparator.comparing(MailMessage::getDate))
-                        .map(x -> createMessage(context, x, target)).collect(Collectors.toList());
+        List<MailMessage> sorted = lmd.stream().sorted(Comparator.comparing(MailMessage::getDate)).collect(Collectors.toList());
+        Iterable<Text> mails;
+        if (sorted.size() > RENDER_ALL_LIMIT && context.is(Player.class)) {
+            // Only create the lines for the pages that are looked at. The pagination
+            // service does not count the pages of an iterable that is not a list.
+            mails = Iterables.transform(sorted, x -> createMessage(context, x, target));
+        } else {
+            mails = sorted.stream().map(x -> createMessage(context, x, target)).collect(Collectors.toList());
+        }
+
+        return sendMail(context, target, !lmf.isEmpty(), mails);
+    }
 
+    private ICommandResult sendMail(ICommandContext<? extends CommandSource> context, User target, boolean isFiltered, Iterable<Text> mails) {
         // Paginate the mail.
         PaginationList.Builder b = Util.getPaginationBuilder(context.getCommandSource()).padding(Text.of(TextColors.GREEN, "-")).title(
-                getHeader(context, target, !lmf.isEmpty())).contents(mails);
+                getHeader(context, target, isFiltered)).contents(mails);
         if (!context.is(Player.class)) {
             b.linesPerPage(-1);
         } else {
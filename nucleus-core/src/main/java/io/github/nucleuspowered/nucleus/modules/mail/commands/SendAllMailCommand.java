@@ -0,0 +1,65 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.mail.commands;
+
+import io.github.nucleuspowered.nucleus.modules.mail.MailPermissions;
+import io.github.nucleuspowered.nucleus.modules.mail.services.MailHandler;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandContext;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandExecutor;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandResult;
+import io.github.nucleuspowered.nucleus.scaffold.command.NucleusParameters;
+import io.github.nucleuspowered.nucleus.scaffold.command.annotation.Command;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@NonnullByDefault
+@Command(
+        aliases = { "sendall" },
+        basePermission = MailPermissions.BASE_MAIL_SENDALL,
+        commandDescriptionKey = "mail.sendall",
+        async = true,
+        parentCommand = MailCommand.class
+)
+public class SendAllMailCommand implements ICommandExecutor<CommandSource> {
+
+    @Override
+    public CommandElement[] parameters(INucleusServiceCollection serviceCollection) {
+        return new CommandElement[] {
+                NucleusParameters.MESSAGE
+        };
+    }
+
+    @Override
+    public ICommandResult execute(ICommandContext<? extends CommandSource> context) throws CommandException {
+        String m = context.getOne(NucleusParameters.Keys.MESSAGE, String.class)
+                .orElseThrow(() -> context.createException("args.message.none"));
+
+        // Not to the sender, and only to online players that can read them. Offline users are not checked, as that would
+        // load each of their permissions - whether they can read it is checked when they use /mail. Everyone is taken from
+        // the user cache, rather than every profile the server has, as only users that have joined can read mail.
+        UUID sender = context.is(Player.class) ? context.getIfPlayer().getUniqueId() : null;
+        List<UUID> recipients = context.getServiceCollection().userCacheService().getKnownUsers().stream()
+                .filter(x -> !x.equals(sender))
+                .filter(x -> Sponge.getServer().getPlayer(x).map(y -> context.testPermissionFor(y, MailPermissions.BASE_MAIL)).orElse(true))
+                .collect(Collectors.toList());
+        if (recipients.isEmpty()) {
+            return context.errorResult("command.mail.sendall.none");
+        }
+
+        MailHandler handler = context.getServiceCollection().getServiceUnchecked(MailHandler.class);
+        int sent = handler.sendMailToAll(context.is(Player.class) ? context.getIfPlayer() : null, recipients, m);
+        context.sendMessage("command.mail.sendall.successful", sent);
+        return context.successResult();
+    }
+}
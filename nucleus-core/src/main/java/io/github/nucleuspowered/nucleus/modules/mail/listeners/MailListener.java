@@ -4,6 +4,9 @@
  */
 package io.github.nucleuspowered.nucleus.modules.mail.listeners;
 
+import io.github.nucleuspowered.nucleus.modules.core.events.UserDataLoadedEvent;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
+import io.github.nucleuspowered.nucleus.modules.mail.MailKeys;
 import io.github.nucleuspowered.nucleus.modules.mail.services.MailHandler;
 import io.github.nucleuspowered.nucleus.scaffold.listener.ListenerBase;
 import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
@@ -11,7 +14,9 @@ import io.github.nucleuspowered.nucleus.services.interfaces.IMessageProviderServ
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
 import org.spongepowered.api.event.filter.Getter;
+import org.spongepowered.api.event.game.state.GameStoppedServerEvent;
 import org.spongepowered.api.event.network.ClientConnectionEvent;
 import org.spongepowered.api.plugin.PluginContainer;
 import org.spongepowered.api.text.Text;
@@ -19,6 +24,7 @@ import org.spongepowered.api.text.action.TextActions;
 import org.spongepowered.api.text.format.TextColors;
 import org.spongepowered.api.text.format.TextStyles;
 
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -27,19 +33,28 @@ public class MailListener implements ListenerBase {
 
     private final PluginContainer pluginContainer;
     private final MailHandler handler;
+    private final UserSessionService sessionService;
     private final IMessageProviderService messageProvider;
 
     @Inject
     public MailListener(INucleusServiceCollection serviceCollection) {
         this.messageProvider = serviceCollection.messageProvider();
         this.handler = serviceCollection.getServiceUnchecked(MailHandler.class);
+        this.sessionService = serviceCollection.getServiceUnchecked(UserSessionService.class);
         this.pluginContainer = serviceCollection.pluginContainer();
     }
 
+    // This also moves any mail kept in their user data into the mailbox store before they join.
+    @Listener(order = Order.LATE)
+    public void onUserDataLoaded(UserDataLoadedEvent event) {
+        event.getSession().put(MailKeys.SESSION_MAIL_COUNT, this.handler.getMailCount(event.getSession().getUniqueId()));
+    }
+
     @Listener
     public void onPlayerJoin(ClientConnectionEvent.Join event, @Getter("getTargetEntity") Player player) {
         Sponge.getScheduler().createAsyncExecutor(this.pluginContainer).schedule(() -> {
-            int mailCount = this.handler.getMailInternal(event.getTargetEntity()).size();
+            int mailCount = this.sessionService.get(player.getUniqueId(), MailKeys.SESSION_MAIL_COUNT,
+                    () -> Optional.of(this.handler.getMailCount(player.getUniqueId()))).orElse(0);
             if (mailCount > 0) {
                 this.messageProvider.sendMessageTo(player, "mail.login", String.valueOf(mailCount));
                 player.sendMessage(Text.builder()
@@ -57,4 +72,9 @@ public class MailListener implements ListenerBase {
             }
         } , 1, TimeUnit.SECONDS);
     }
+
+    @Listener
+    public void onServerStopped(GameStoppedServerEvent event) {
+        this.handler.saveIndex();
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.mail.runnables;
+
+import com.google.inject.Inject;
+import io.github.nucleuspowered.nucleus.modules.mail.services.MailHandler;
+import io.github.nucleuspowered.nucleus.scaffold.task.TaskBase;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Saves the mailbox index if it has changed.
+ */
+@NonnullByDefault
+public class MailIndexSaveTask implements TaskBase {
+
+    private final MailHandler handler;
+
+    @Inject
+    public MailIndexSaveTask(INucleusServiceCollection serviceCollection) {
+        this.handler = serviceCollection.getServiceUnchecked(MailHandler.class);
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public Duration interval() {
+        return Duration.of(1, ChronoUnit.MINUTES);
+    }
+
+    @Override
+    public void accept(Task task) {
+        this.handler.saveIndex();
+    }
+
+}
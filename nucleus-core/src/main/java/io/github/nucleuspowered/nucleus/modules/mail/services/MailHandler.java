@@ -17,26 +17,39 @@ import io.github.nucleuspowered.nucleus.scaffold.service.annotations.APIService;
 import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
 import io.github.nucleuspowered.nucleus.services.interfaces.IMessageProviderService;
+import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
 import io.github.nucleuspowered.nucleus.services.interfaces.IStorageManager;
 import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.text.Text;
+import org.spongepowered.api.util.Identifiable;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+/**
+ * Mail is kept in a {@link MailboxStore}. Mail that was kept in user data by
+ * older versions is moved into the store the first time the user's mailbox is
+ * read, so sending mail never needs to load the recipient's user data.
+ */
 @SuppressWarnings("UnstableApiUsage")
 @APIService(NucleusMailService.class)
-public class MailHandler implements NucleusMailService, ServiceBase {
+public class MailHandler implements NucleusMailService, ServiceBase, IReloadableService.DataLocationReloadable {
 
     private final INucleusServiceCollection serviceCollection;
+    private final MailboxStore store = new MailboxStore();
 
     @Inject
     public MailHandler(INucleusServiceCollection serviceCollection) {
@@ -49,10 +62,8 @@ public class MailHandler implements NucleusMailService, ServiceBase {
     }
 
     public final List<MailMessage> getMailInternal(User player, MailFilter... filters) {
-        List<MailMessage> data = this.serviceCollection.storageManager().getUserService()
-                .getOrNewOnThread(player.getUniqueId())
-                .getNullable(MailKeys.MAIL_DATA);
-        if (data == null || data.isEmpty()) {
+        List<MailData> data = getMailbox(player.getUniqueId());
+        if (data.isEmpty()) {
             return ImmutableList.of();
         }
 
@@ -64,52 +75,82 @@ public class MailHandler implements NucleusMailService, ServiceBase {
         return data.stream().filter(lmf).collect(ImmutableList.toImmutableList());
     }
 
+    /**
+     * Gets some of the user's mail, oldest first, without copying the rest.
+     *
+     * @param player The user
+     * @param offset The number of mails to skip
+     * @param limit The most mails to return
+     * @return The mail
+     */
+    public List<MailMessage> getMailPage(User player, int offset, int limit) {
+        ensureImported(player.getUniqueId());
+        return ImmutableList.copyOf(this.store.getMail(player.getUniqueId(), offset, limit));
+    }
+
+    /**
+     * Gets the number of mails the user has, without reading them.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @return The number of mails
+     */
+    public int getMailCount(UUID uuid) {
+        ensureImported(uuid);
+        return this.store.count(uuid);
+    }
+
     @Override
     public boolean removeMail(User player, MailMessage mailData) {
-        IUserDataObject dataObject = this.serviceCollection.storageManager().getUserService().getOrNewOnThread(player.getUniqueId());
-        List<MailMessage> data = dataObject.get(MailKeys.MAIL_DATA).orElseGet(ArrayList::new);
-        boolean result = data.removeIf(x ->
+        ensureImported(player.getUniqueId());
+        return this.store.remove(player.getUniqueId(), x ->
                 mailData.getDate().equals(x.getDate()) &&
                 mailData.getMessage().equalsIgnoreCase(x.getMessage()) &&
-                Objects.equals(mailData.getSender().orElse(null), x.getSender().orElse(null)));
-
-        if (result) {
-            dataObject.set(MailKeys.MAIL_DATA, data);
-            this.serviceCollection.storageManager().getUserService().save(player.getUniqueId(), dataObject);
-        }
-
-        return result;
+                Objects.equals(getSenderUuid(mailData), x.getUuid()));
     }
 
     @Override
     public void sendMail(@Nullable User playerFrom, User playerTo, String message) {
-        IUserDataObject dataObject = this.serviceCollection.storageManager().getUserService().getOrNewOnThread(playerTo.getUniqueId());
-
         // Message is about to be sent. Send the event out. If canceled, then
         // that's that.
-        IMessageProviderService messageProvider = this.serviceCollection.messageProvider();
         if (Sponge.getEventManager().post(new InternalNucleusMailEvent(playerFrom, playerTo, message))) {
-            if (playerFrom == null) {
-                messageProvider.sendMessageTo(
-                        Sponge.getServer().getConsole(),
-                        "message.cancel");
-            } else {
-                playerFrom.getPlayer()
-                        .ifPresent(x -> messageProvider.sendMessageTo(x, "message.cancel"));
-            }
+            sendCancelled(playerFrom);
             return;
         }
 
-        List<MailMessage> messages = dataObject.get(MailKeys.MAIL_DATA).orElseGet(ArrayList::new);
-        MailData md = new MailData(playerFrom == null ? Util.CONSOLE_FAKE_UUID : playerFrom.getUniqueId(), Instant.now(), message);
-        messages.add(md);
-        dataObject.set(MailKeys.MAIL_DATA, messages);
-        this.serviceCollection.storageManager().getUserService().save(playerTo.getUniqueId(), dataObject);
+        this.store.append(playerTo.getUniqueId(), createMail(playerFrom, message));
+        notifyRecipient(playerFrom, playerTo);
+    }
 
-        Text from = playerFrom == null ? Text.of(Sponge.getServer().getConsole().getName()) :
-                this.serviceCollection.playerDisplayNameService().getDisplayName(playerFrom);
-        playerTo.getPlayer().ifPresent(x ->
-                x.sendMessage(Text.builder().append(messageProvider.getMessageFor(x, "mail.youvegotmail")).append(Text.of(" ", from)).build()));
+    /**
+     * Sends the same mail to all the given users, writing the mailbox index
+     * once at the end rather than for each user.
+     *
+     * <p>Only online players are given the chance to cancel their mail with
+     * an event, as the event needs the {@link User}, which would mean loading
+     * every offline user.</p>
+     *
+     * @param playerFrom The sender, or null if it is the console
+     * @param uuidsTo The {@link UUID}s of the users to send the mail to
+     * @param message The message
+     * @return The number of users the mail was sent to
+     */
+    public int sendMailToAll(@Nullable User playerFrom, Collection<UUID> uuidsTo, String message) {
+        List<UUID> recipients = new ArrayList<>();
+        for (UUID uuid : uuidsTo) {
+            Optional<Player> player = Sponge.getServer().getPlayer(uuid);
+            if (!player.isPresent() || !Sponge.getEventManager().post(new InternalNucleusMailEvent(playerFrom, player.get(), message))) {
+                recipients.add(uuid);
+            }
+        }
+
+        if (recipients.isEmpty()) {
+            sendCancelled(playerFrom);
+            return 0;
+        }
+
+        this.store.appendToAll(recipients, createMail(playerFrom, message));
+        recipients.forEach(x -> Sponge.getServer().getPlayer(x).ifPresent(player -> notifyRecipient(playerFrom, player)));
+        return recipients.size();
     }
 
     @Override
@@ -119,14 +160,69 @@ public class MailHandler implements NucleusMailService, ServiceBase {
 
     @Override
     public boolean clearUserMail(User player) {
-        IStorageManager storageManager = this.serviceCollection.storageManager();
-        IUserDataObject dataObject = storageManager.getUserService().getOrNewOnThread(player.getUniqueId());
-        if (dataObject.getNullable(MailKeys.MAIL_DATA) != null) {
+        ensureImported(player.getUniqueId());
+        return this.store.clear(player.getUniqueId());
+    }
+
+    public void saveIndex() {
+        this.store.saveIndexIfDirty();
+    }
+
+    @Override public void onDataFileLocationChange(INucleusServiceCollection serviceCollection) {
+        this.store.setDirectory(serviceCollection.dataDir().get().resolve("mail"));
+    }
+
+    private List<MailData> getMailbox(UUID uuid) {
+        ensureImported(uuid);
+        return this.store.getMail(uuid);
+    }
+
+    private void ensureImported(UUID uuid) {
+        this.store.importIfRequired(uuid, () -> {
+            IStorageManager storageManager = this.serviceCollection.storageManager();
+            IUserDataObject dataObject = storageManager.getUserService().getOrNewOnThread(uuid);
+            List<MailMessage> data = dataObject.getNullable(MailKeys.MAIL_DATA);
+            if (data == null) {
+                return ImmutableList.of();
+            }
+
             dataObject.remove(MailKeys.MAIL_DATA);
-            storageManager.getUserService().save(player.getUniqueId(), dataObject);
-            return true;
+            storageManager.getUserService().save(uuid, dataObject);
+            return data.stream()
+                    .map(x -> x instanceof MailData ? (MailData) x : new MailData(getSenderUuid(x), x.getDate(), x.getMessage()))
+                    .collect(Collectors.toList());
+        });
+    }
+
+    private MailData createMail(@Nullable User playerFrom, String message) {
+        return new MailData(playerFrom == null ? Util.CONSOLE_FAKE_UUID : playerFrom.getUniqueId(), Instant.now(), message);
+    }
+
+    private UUID getSenderUuid(MailMessage message) {
+        if (message instanceof MailData) {
+            return ((MailData) message).getUuid();
         }
 
-        return false;
+        return message.getSender().map(Identifiable::getUniqueId).orElse(Util.CONSOLE_FAKE_UUID);
+    }
+
+    private void sendCancelled(@Nullable User playerFrom) {
+        IMessageProviderService messageProvider = this.serviceCollection.messageProvider();
+        if (playerFrom == null) {
+            messageProvider.sendMessageTo(
+                    Sponge.getServer().getConsole(),
+                    "message.cancel");
+        } else {
+            playerFrom.getPlayer()
+                    .ifPresent(x -> messageProvider.sendMessageTo(x, "message.cancel"));
+        }
+    }
+
+    private void notifyRecipient(@Nullable User playerFrom, User playerTo) {
+        IMessageProviderService messageProvider = this.serviceCollection.messageProvider();
+        Text from = playerFrom == null ? Text.of(Sponge.getServer().getConsole().getName()) :
+                this.serviceCollection.playerDisplayNameService().getDisplayName(playerFrom);
+        playerTo.getPlayer().ifPresent(x ->
+                x.sendMessage(Text.builder().append(messageProvider.getMessageFor(x, "mail.youvegotmail")).append(Text.of(" ", from)).build()));
     }
 }
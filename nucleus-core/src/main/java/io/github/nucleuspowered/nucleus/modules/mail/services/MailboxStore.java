@@ -0,0 +1,545 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.mail.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.Striped;
+import io.github.nucleuspowered.nucleus.modules.mail.data.MailData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+/**
+ * Keeps each user's mail in its own append-only file, rather than in their
+ * user data, so that sending mail only writes the new message.
+ *
+ * <p>Each file is a list of records: a message being added or a message being
+ * removed. The messages in a mailbox are worked out by replaying its file when
+ * they are first needed, and the file is rewritten without the removed
+ * messages when they start to outnumber the rest. Records are built in memory
+ * before they are written, and anything left of a record that was not
+ * completely written is cut off before more are added.</p>
+ *
+ * <p>The number of messages in each mailbox is kept in an index, which is
+ * updated with every write, so that the count is always given from memory.
+ * The index also has the length of each file, so that when it is loaded any
+ * mailbox that was written after the index was last saved can be counted
+ * again, and records whether mail from older versions has been imported into
+ * the mailbox.</p>
+ */
+public final class MailboxStore {
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int INDEX_VERSION = 2;
+    private static final int COMPACT_THRESHOLD = 32;
+    private static final String INDEX_FILE = "index.dat";
+    private static final String MAILBOX_SUFFIX = ".mail";
+
+    private final Striped<Lock> locks = Striped.lock(64);
+    private final Cache<UUID, Mailbox> mailboxes = Caffeine.newBuilder().expireAfterAccess(5, TimeUnit.MINUTES).build();
+    private final Map<UUID, IndexEntry> index = new ConcurrentHashMap<>();
+    private volatile boolean indexDirty = false;
+    @Nullable private volatile Path directory;
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+        this.mailboxes.invalidateAll();
+        this.index.clear();
+        this.indexDirty = false;
+        loadIndex(directory);
+    }
+
+    /**
+     * Imports mail from elsewhere if it has not been imported into the user's
+     * mailbox yet. The supplier is only called if so. Imported mail is put
+     * before anything already in the mailbox, as it was sent before it.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @param existing Supplies the mail to import
+     */
+    public void importIfRequired(UUID uuid, Supplier<List<MailData>> existing) {
+        IndexEntry entry = this.index.get(uuid);
+        if (entry != null && entry.imported) {
+            return;
+        }
+
+        Lock lock = this.locks.get(uuid);
+        lock.lock();
+        try {
+            entry = this.index.get(uuid);
+            if (entry != null && entry.imported) {
+                return;
+            }
+
+            List<MailData> messages = existing.get();
+            if (!messages.isEmpty()) {
+                Mailbox mailbox = getMailbox(uuid);
+                LinkedHashMap<Long, MailData> merged = new LinkedHashMap<>();
+                for (MailData message : messages) {
+                    merged.put(ThreadLocalRandom.current().nextLong(), message);
+                }
+
+                merged.putAll(mailbox.messages);
+                mailbox.messages.clear();
+                mailbox.messages.putAll(merged);
+                compact(uuid, mailbox);
+                updateIndex(uuid, mailbox.messages.size());
+            }
+
+            entry = this.index.get(uuid);
+            this.index.put(uuid, new IndexEntry(entry == null ? 0 : entry.count, length(uuid), true));
+            this.indexDirty = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int count(UUID uuid) {
+        IndexEntry entry = this.index.get(uuid);
+        return entry == null ? 0 : entry.count;
+    }
+
+    /**
+     * Gets the messages in the user's mailbox, oldest first.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @return The messages
+     */
+    public List<MailData> getMail(UUID uuid) {
+        Lock lock = this.locks.get(uuid);
+        lock.lock();
+        try {
+            return ImmutableList.copyOf(getMailbox(uuid).messages.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets some of the messages in the user's mailbox, oldest first, without
+     * copying the rest.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @param offset The number of messages to skip
+     * @param limit The most messages to return
+     * @return The messages
+     */
+    public List<MailData> getMail(UUID uuid, int offset, int limit) {
+        Lock lock = this.locks.get(uuid);
+        lock.lock();
+        try {
+            return getMailbox(uuid).messages.values().stream()
+                    .skip(offset)
+                    .limit(limit)
+                    .collect(ImmutableList.toImmutableList());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void append(UUID uuid, MailData message) {
+        append(uuid, ImmutableList.of(message));
+    }
+
+    /**
+     * Adds the given messages to the end of the user's mailbox. The mailbox
+     * is not read to do this unless it is already in memory, or the file has
+     * changed since it was last looked at, in which case it is read to cut
+     * off anything left of a record that was not completely written.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @param messages The messages to add
+     */
+    public void append(UUID uuid, Collection<MailData> messages) {
+        Lock lock = this.locks.get(uuid);
+        lock.lock();
+        try {
+            Path file = file(uuid);
+            long oldLength = length(uuid);
+            Mailbox mailbox = this.mailboxes.getIfPresent(uuid);
+            IndexEntry entry = this.index.get(uuid);
+            if (mailbox == null && oldLength != 0 && (entry == null || entry.length != oldLength)) {
+                mailbox = getMailbox(uuid);
+                oldLength = length(uuid);
+            }
+
+            Map<Long, MailData> added = new LinkedHashMap<>();
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            for (MailData message : messages) {
+                long id = ThreadLocalRandom.current().nextLong();
+                records.write(encodeAdd(id, message));
+                added.put(id, message);
+            }
+
+            write(file, oldLength, records.toByteArray());
+            if (mailbox != null) {
+                mailbox.messages.putAll(added);
+                updateIndex(uuid, mailbox.messages.size());
+            } else {
+                updateIndex(uuid, count(uuid) + added.size());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a message to the end of each of the given users' mailboxes, saving
+     * the index once at the end.
+     *
+     * @param uuids The {@link UUID}s of the users
+     * @param message The message to add
+     */
+    public void appendToAll(Collection<UUID> uuids, MailData message) {
+        List<MailData> messages = ImmutableList.of(message);
+        for (UUID uuid : uuids) {
+            append(uuid, messages);
+        }
+
+        saveIndex();
+    }
+
+    public boolean remove(UUID uuid, Predicate<MailData> predicate) {
+        Lock lock = this.locks.get(uuid);
+        lock.lock();
+        try {
+            Mailbox mailbox = getMailbox(uuid);
+            List<Long> toRemove = new ArrayList<>();
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            for (Map.Entry<Long, MailData> entry : mailbox.messages.entrySet()) {
+                if (predicate.test(entry.getValue())) {
+                    records.write(encodeRemove(entry.getKey()));
+                    toRemove.add(entry.getKey());
+                }
+            }
+
+            if (toRemove.isEmpty()) {
+                return false;
+            }
+
+            write(file(uuid), length(uuid), records.toByteArray());
+            toRemove.forEach(mailbox.messages::remove);
+            mailbox.dead += 2 * toRemove.size();
+            if (mailbox.dead > mailbox.messages.size() + COMPACT_THRESHOLD) {
+                compact(uuid, mailbox);
+            }
+
+            updateIndex(uuid, mailbox.messages.size());
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean clear(UUID uuid) {
+        Lock lock = this.locks.get(uuid);
+        lock.lock();
+        try {
+            boolean hadMail = count(uuid) > 0;
+            Files.deleteIfExists(file(uuid));
+            this.mailboxes.put(uuid, new Mailbox());
+            updateIndex(uuid, 0);
+            return hadMail;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void saveIndexIfDirty() {
+        if (this.indexDirty) {
+            saveIndex();
+        }
+    }
+
+    public void saveIndex() {
+        Path directory = this.directory;
+        if (directory == null) {
+            return;
+        }
+
+        this.indexDirty = false;
+        try {
+            Files.createDirectories(directory);
+            Path temp = directory.resolve(INDEX_FILE + ".tmp");
+            Map<UUID, IndexEntry> entries = new LinkedHashMap<>(this.index);
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                output.writeInt(INDEX_VERSION);
+                output.writeInt(entries.size());
+                for (Map.Entry<UUID, IndexEntry> entry : entries.entrySet()) {
+                    output.writeLong(entry.getKey().getMostSignificantBits());
+                    output.writeLong(entry.getKey().getLeastSignificantBits());
+                    output.writeInt(entry.getValue().count);
+                    output.writeLong(entry.getValue().length);
+                    output.writeBoolean(entry.getValue().imported);
+                }
+            }
+
+            Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            this.indexDirty = true;
+            e.printStackTrace();
+        }
+    }
+
+    private void loadIndex(Path directory) {
+        Path file = directory.resolve(INDEX_FILE);
+        if (Files.exists(file)) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                // Anything else is rebuilt from the mailboxes below.
+                if (input.readInt() == INDEX_VERSION) {
+                    int size = input.readInt();
+                    for (int i = 0; i < size; i++) {
+                        UUID uuid = new UUID(input.readLong(), input.readLong());
+                        this.index.put(uuid, new IndexEntry(input.readInt(), input.readLong(), input.readBoolean()));
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        reconcileIndex(directory);
+    }
+
+    // Recounts any mailbox that was written after the index was saved, so that the index can be trusted from here on.
+    private void reconcileIndex(Path directory) {
+        Map<UUID, Long> lengths = new HashMap<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> mailboxFiles = Files.newDirectoryStream(directory, "*" + MAILBOX_SUFFIX)) {
+                for (Path mailboxFile : mailboxFiles) {
+                    String name = mailboxFile.getFileName().toString();
+                    try {
+                        lengths.put(UUID.fromString(name.substring(0, name.length() - MAILBOX_SUFFIX.length())), Files.size(mailboxFile));
+                    } catch (IllegalArgumentException e) {
+                        // not a mailbox
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        for (Map.Entry<UUID, IndexEntry> entry : new ArrayList<>(this.index.entrySet())) {
+            if (!lengths.containsKey(entry.getKey()) && (entry.getValue().count != 0 || entry.getValue().length != 0)) {
+                this.index.put(entry.getKey(), new IndexEntry(0, 0, entry.getValue().imported));
+                this.indexDirty = true;
+            }
+        }
+
+        for (Map.Entry<UUID, Long> length : lengths.entrySet()) {
+            IndexEntry entry = this.index.get(length.getKey());
+            if (entry == null || entry.count < 0 || entry.length != length.getValue()) {
+                int count = read(length.getKey()).messages.size();
+                this.index.put(length.getKey(), new IndexEntry(count, length(length.getKey()), entry != null && entry.imported));
+                this.indexDirty = true;
+            }
+        }
+    }
+
+    // Must hold the lock for the user.
+    private Mailbox getMailbox(UUID uuid) {
+        Mailbox mailbox = this.mailboxes.getIfPresent(uuid);
+        if (mailbox == null) {
+            mailbox = read(uuid);
+            this.mailboxes.put(uuid, mailbox);
+            updateIndex(uuid, mailbox.messages.size());
+        }
+
+        return mailbox;
+    }
+
+    private Mailbox read(UUID uuid) {
+        Mailbox mailbox = new Mailbox();
+        Path file = file(uuid);
+        if (!Files.exists(file)) {
+            return mailbox;
+        }
+
+        long goodLength = 0;
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+                DataInputStream input = new DataInputStream(counting)) {
+            long fileLength = Files.size(file);
+            while (true) {
+                int type = input.read();
+                if (type == -1) {
+                    break;
+                } else if (type == ADD) {
+                    long id = input.readLong();
+                    UUID sender = new UUID(input.readLong(), input.readLong());
+                    long date = input.readLong();
+                    int length = input.readInt();
+                    if (length < 0 || length > fileLength - counting.getCount()) {
+                        // Only a record that was cut short can claim to be longer than the file.
+                        throw new EOFException();
+                    }
+
+                    byte[] message = new byte[length];
+                    input.readFully(message);
+                    mailbox.messages.put(id, new MailData(sender, Instant.ofEpochMilli(date), new String(message, StandardCharsets.UTF_8)));
+                } else if (type == REMOVE) {
+                    if (mailbox.messages.remove(input.readLong()) != null) {
+                        mailbox.dead += 2;
+                    }
+                } else {
+                    throw new IOException("Unknown mail record type " + type + " in " + file);
+                }
+
+                goodLength = counting.getCount();
+            }
+        } catch (EOFException e) {
+            // The server stopped while a record was being written, drop what there is of it.
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(goodLength);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return mailbox;
+    }
+
+    private void compact(UUID uuid, Mailbox mailbox) throws IOException {
+        Path file = file(uuid);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(file.getParent());
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            for (Map.Entry<Long, MailData> entry : mailbox.messages.entrySet()) {
+                output.write(encodeAdd(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mailbox.dead = 0;
+    }
+
+    private void updateIndex(UUID uuid, int count) {
+        IndexEntry entry = this.index.get(uuid);
+        this.index.put(uuid, new IndexEntry(count, length(uuid), entry != null && entry.imported));
+        this.indexDirty = true;
+    }
+
+    /**
+     * Writes records to the end of the file, which must be the given length.
+     * If they cannot all be written, the file is cut back to that length so
+     * that no part of a record is left behind.
+     */
+    private static void write(Path file, long length, byte[] records) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                long position = length;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                channel.truncate(length);
+                throw e;
+            }
+        }
+    }
+
+    private static byte[] encodeAdd(long id, MailData message) {
+        byte[] text = message.getMessage().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 4 * Long.BYTES + Integer.BYTES + text.length)
+                .put(ADD)
+                .putLong(id)
+                .putLong(message.getUuid().getMostSignificantBits())
+                .putLong(message.getUuid().getLeastSignificantBits())
+                .putLong(message.getDate().toEpochMilli())
+                .putInt(text.length)
+                .put(text)
+                .array();
+    }
+
+    private static byte[] encodeRemove(long id) {
+        return ByteBuffer.allocate(1 + Long.BYTES).put(REMOVE).putLong(id).array();
+    }
+
+    private long length(UUID uuid) {
+        try {
+            Path file = file(uuid);
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private Path file(UUID uuid) {
+        Path directory = this.directory;
+        if (directory == null) {
+            throw new IllegalStateException("The mail directory has not been set");
+        }
+
+        return directory.resolve(uuid.toString() + MAILBOX_SUFFIX);
+    }
+
+    private static final class Mailbox {
+
+        private final LinkedHashMap<Long, MailData> messages = new LinkedHashMap<>();
+
+        // Records in the file that are not live messages: removed messages and their removal records.
+        private int dead = 0;
+    }
+
+    private static final class IndexEntry {
+
+        private final int count;
+        private final long length;
+        private final boolean imported;
+
+        private IndexEntry(int count, long length, boolean imported) {
+            this.count = count;
+            this.length = length;
+            this.imported = imported;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.message.listeners;
+
+import io.github.nucleuspowered.nucleus.modules.message.services.MessageHandler;
+import io.github.nucleuspowered.nucleus.scaffold.listener.ListenerBase;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.filter.Getter;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+
+import javax.inject.Inject;
+
+public class SocialSpyListener implements ListenerBase {
+
+    private final MessageHandler handler;
+
+    @Inject
+    public SocialSpyListener(INucleusServiceCollection serviceCollection) {
+        this.handler = serviceCollection.getServiceUnchecked(MessageHandler.class);
+    }
+
+    @Listener(order = Order.LATE)
+    public void onPlayerJoin(final ClientConnectionEvent.Join event, @Getter("getTargetEntity") Player player) {
+        this.handler.refreshSocialSpy(player);
+    }
+
+    @Listener(order = Order.POST)
+    public void onPlayerQuit(final ClientConnectionEvent.Disconnect event, @Getter("getTargetEntity") Player player) {
+        this.handler.removeSocialSpy(player.getUniqueId());
+    }
+
+}
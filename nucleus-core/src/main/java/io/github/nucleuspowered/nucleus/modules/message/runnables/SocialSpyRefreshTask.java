@@ -0,0 +1,49 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.message.runnables;
+
+import io.github.nucleuspowered.nucleus.modules.message.services.MessageHandler;
+import io.github.nucleuspowered.nucleus.scaffold.task.TaskBase;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.scheduler.Task;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+import javax.inject.Inject;
+
+/**
+ * Permission changes don't fire an event, so the social spy registry is
+ * periodically checked against the permissions of online players.
+ *
+ * <p>This runs on the main thread, as permission and option lookups on
+ * players are not safe to make from another thread.</p>
+ */
+public class SocialSpyRefreshTask implements TaskBase {
+
+    private final MessageHandler handler;
+
+    @Inject
+    public SocialSpyRefreshTask(INucleusServiceCollection serviceCollection) {
+        this.handler = serviceCollection.getServiceUnchecked(MessageHandler.class);
+    }
+
+    @Override
+    public void accept(Task task) {
+        Sponge.getServer().getOnlinePlayers().forEach(this.handler::refreshSocialSpy);
+    }
+
+    @Override
+    public boolean isAsync() {
+        return false;
+    }
+
+    @Override
+    public Duration interval() {
+        return Duration.of(30, ChronoUnit.SECONDS);
+    }
+
+}
@@ -35,11 +35,13 @@ import org.spongepowered.api.util.Tristate;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -60,6 +62,10 @@ public class MessageHandler implements NucleusPrivateMessagingService, IReloadab
     private final Map<UUID, CustomMessageTarget<? extends CommandSource>> targets = Maps.newHashMap();
     private final Map<String, UUID> targetNames = Maps.newHashMap();
 
+    // Online players who are using social spy, and their social spy level, so
+    // that sending a message only needs to look at the players who are spying.
+    private final Map<UUID, Integer> socialSpies = new ConcurrentHashMap<>();
+
     @Inject
     public MessageHandler(INucleusServiceCollection serviceCollection) {
         this.serviceCollection = serviceCollection;
@@ -72,6 +78,48 @@ public class MessageHandler implements NucleusPrivateMessagingService, IReloadab
         this.useLevels = this.messageConfig.isSocialSpyLevels();
         this.sameLevel = this.messageConfig.isSocialSpySameLevel();
         this.serverLevel = this.messageConfig.getServerLevel();
+        if (Sponge.getGame().isServerAvailable()) {
+            Sponge.getServer().getOnlinePlayers().forEach(this::refreshSocialSpy);
+        }
+    }
+
+    /**
+     * Re-checks whether the player is using social spy, and at what level.
+     *
+     * @param player The player
+     */
+    public void refreshSocialSpy(Player player) {
+        updateSocialSpy(player, isSocialSpy(player));
+    }
+
+    /**
+     * Updates the registry of spying players after the social spy preference
+     * for a user has been changed.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @param preference The new preference, or null if it was removed
+     */
+    public void onSocialSpyPreferenceChange(UUID uuid, @Nullable Boolean preference) {
+        Sponge.getServer().getPlayer(uuid).ifPresent(player -> {
+            Tristate ts = forcedSocialSpyState(player);
+            if (ts == Tristate.UNDEFINED) {
+                updateSocialSpy(player, preference == null ? NucleusKeysProvider.SOCIAL_SPY.getDefaultValue().orElse(false) : preference);
+            } else {
+                updateSocialSpy(player, ts.asBoolean());
+            }
+        });
+    }
+
+    public void removeSocialSpy(UUID uuid) {
+        this.socialSpies.remove(uuid);
+    }
+
+    private void updateSocialSpy(Player player, boolean isSocialSpy) {
+        if (isSocialSpy && player.isOnline()) {
+            this.socialSpies.put(player.getUniqueId(), getSocialSpyLevel(player));
+        } else {
+            this.socialSpies.remove(player.getUniqueId());
+        }
     }
 
     @Override
@@ -125,6 +173,7 @@ public class MessageHandler implements NucleusPrivateMessagingService, IReloadab
         }
 
         this.serviceCollection.userPreferenceService().set(user.getUniqueId(), NucleusKeysProvider.SOCIAL_SPY, isSocialSpy);
+        user.getPlayer().ifPresent(player -> updateSocialSpy(player, isSocialSpy));
         return true;
     }
 
@@ -166,26 +215,18 @@ public class MessageHandler implements NucleusPrivateMessagingService, IReloadab
         Set<UUID> uuidsToSpyOn = toSpyOn.stream().map(x -> x instanceof User ? ((User)x).getUniqueId() : Util.CONSOLE_FAKE_UUID)
                 .collect(Collectors.toSet());
 
-        // Get those who aren't the subjects and have social spy on.
-        Set<CommandSource> sources = Sponge.getServer().getOnlinePlayers().stream()
-                .filter(x -> !uuidsToSpyOn.contains(x.getUniqueId()))
-                .filter(this::isSocialSpy)
-                .collect(Collectors.toSet());
+        // Get the highest level from the sources to spy on.
+        int highestLevel = this.useLevels ? toSpyOn.stream().mapToInt(this::getSocialSpyLevelForSource).max().orElse(0) : 0;
 
-        if (!this.useLevels) {
-            if (includeConsole) {
-                sources.add(Sponge.getServer().getConsole());
+        // Get those who aren't the subjects and have social spy on.
+        Set<CommandSource> sources = new HashSet<>();
+        for (Map.Entry<UUID, Integer> spy : this.socialSpies.entrySet()) {
+            if (!uuidsToSpyOn.contains(spy.getKey())
+                    && (!this.useLevels || (this.sameLevel ? spy.getValue() >= highestLevel : spy.getValue() > highestLevel))) {
+                Sponge.getServer().getPlayer(spy.getKey()).ifPresent(sources::add);
             }
-
-            return sources;
         }
 
-        // Get the highest level from the sources to spy on.
-        int highestLevel = toSpyOn.stream().mapToInt(this::getSocialSpyLevelForSource).max().orElse(0);
-        sources = sources.stream()
-            .filter(x -> this.sameLevel ? getSocialSpyLevelForSource(x) >= highestLevel : getSocialSpyLevelForSource(x) > highestLevel)
-            .collect(Collectors.toSet());
-
         if (includeConsole) {
             sources.add(Sponge.getServer().getConsole());
         }
@@ -4,6 +4,7 @@
  */
 package io.github.nucleuspowered.nucleus.modules.mute;
 
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
 import io.github.nucleuspowered.nucleus.modules.mute.data.MuteData;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
 import io.github.nucleuspowered.nucleus.util.TypeTokens;
@@ -13,4 +14,6 @@ public class MuteKeys {
 
     public static final DataKey<MuteData, IUserDataObject> MUTE_DATA =
             DataKey.of(TypeTokens.MUTE_DATA, IUserDataObject.class, "muteData");
+
+    public static final UserSession.Key<MuteData> SESSION_MUTE_DATA = UserSession.Key.of("muteData");
 }
@@ -64,6 +64,14 @@ public final class MuteData extends EndTimestamp implements Mute {
         }
     }
 
+    @Override public MuteData copy() {
+        MuteData copy = new MuteData(this.muter, this.reason);
+        copy.endtimestamp = this.endtimestamp;
+        copy.timeFromNextLogin = this.timeFromNextLogin;
+        copy.creationTime = this.creationTime;
+        return copy;
+    }
+
     @Override public String getReason() {
         return this.reason;
     }
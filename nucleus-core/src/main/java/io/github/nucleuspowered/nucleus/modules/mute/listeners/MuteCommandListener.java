@@ -49,7 +49,7 @@ public class MuteCommandListener implements ListenerBase.Conditional {
      */
     @Listener(order = Order.FIRST)
     public void onPlayerSendCommand(SendCommandEvent event, @Root Player player) {
-        if (!this.handler.isMutedCached(player)) {
+        if (!this.handler.getMuteSnapshot(player).isSanctioned()) {
             return;
         }
 
@@ -6,8 +6,11 @@ package io.github.nucleuspowered.nucleus.modules.mute.listeners;
 
 import io.github.nucleuspowered.nucleus.Util;
 import io.github.nucleuspowered.nucleus.api.module.message.event.NucleusMessageEvent;
-import io.github.nucleuspowered.nucleus.datatypes.EndTimestamp;
+import io.github.nucleuspowered.nucleus.datatypes.SanctionSnapshot;
+import io.github.nucleuspowered.nucleus.modules.core.events.UserDataLoadedEvent;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
 import io.github.nucleuspowered.nucleus.modules.message.events.InternalNucleusHelpOpEvent;
+import io.github.nucleuspowered.nucleus.modules.mute.MuteKeys;
 import io.github.nucleuspowered.nucleus.modules.mute.MutePermissions;
 import io.github.nucleuspowered.nucleus.modules.mute.config.MuteConfig;
 import io.github.nucleuspowered.nucleus.modules.mute.data.MuteData;
@@ -39,6 +42,7 @@ import javax.inject.Inject;
 public class MuteListener implements IReloadableService.Reloadable, ListenerBase {
 
     private final MuteHandler handler;
+    private final UserSessionService sessionService;
     private final IMessageProviderService messageProvider;
     private final IPermissionService permissionService;
     private MuteConfig muteConfig = new MuteConfig();
@@ -47,6 +51,7 @@ public class MuteListener implements IReloadableService.Reloadable, ListenerBase
     @Inject
     public MuteListener(INucleusServiceCollection serviceCollection) {
         this.handler = serviceCollection.getServiceUnchecked(MuteHandler.class);
+        this.sessionService = serviceCollection.getServiceUnchecked(UserSessionService.class);
         this.messageProvider = serviceCollection.messageProvider();
         this.permissionService = serviceCollection.permissionService();
         this.pluginContainer = serviceCollection.pluginContainer();
@@ -59,6 +64,12 @@ public class MuteListener implements IReloadableService.Reloadable, ListenerBase
      */
     @Listener
     public void onPlayerLogin(final ClientConnectionEvent.Join event) {
+        // Have the mute state ready for chat without going to storage, the task will update it.
+        Player player = event.getTargetEntity();
+        this.handler.updateMuteSnapshot(player,
+                this.sessionService.get(player.getUniqueId(), MuteKeys.SESSION_MUTE_DATA, () -> this.handler.getPlayerMuteData(player))
+                        .orElse(null));
+
         // Kick off a scheduled task.
         Sponge.getScheduler().createTaskBuilder().async().delay(500, TimeUnit.MILLISECONDS).execute(() -> {
             Player user = event.getTargetEntity();
@@ -66,6 +77,7 @@ public class MuteListener implements IReloadableService.Reloadable, ListenerBase
             if (omd.isPresent()) {
                 MuteData md = omd.get();
                 md.nextLoginToTimestamp();
+                this.handler.updateMuteSnapshot(user, md);
 
                 if (isMuted(user)) {
                     this.handler.onMute(md, event.getTargetEntity());
@@ -74,6 +86,17 @@ public class MuteListener implements IReloadableService.Reloadable, ListenerBase
         }).submit(this.pluginContainer);
     }
 
+    // Keeps the mute data as the user's data loads, so the join listener doesn't go to storage for it.
+    @Listener(order = Order.LATE)
+    public void onUserDataLoaded(UserDataLoadedEvent event) {
+        event.getSession().put(MuteKeys.SESSION_MUTE_DATA, event.getDataObject().get(MuteKeys.MUTE_DATA).orElse(null));
+    }
+
+    @Listener(order = Order.POST)
+    public void onPlayerQuit(final ClientConnectionEvent.Disconnect event, @Getter("getTargetEntity") Player player) {
+        this.handler.removeMuteSnapshot(player.getUniqueId());
+    }
+
     @Listener(order = Order.LATE)
     public void onChat(MessageChannelEvent.Chat event) {
         Util.onPlayerSimulatedOrPlayer(event, this::onChat);
@@ -162,9 +185,10 @@ public class MuteListener implements IReloadableService.Reloadable, ListenerBase
     }
 
     private boolean isMuted(Player player) {
-        if (!this.handler.isMutedCached(player)) {
+        SanctionSnapshot snapshot = this.handler.getMuteSnapshot(player);
+        if (!snapshot.isSanctioned()) {
             return false;
-        } else if (this.handler.getPlayerMuteData(player).map(EndTimestamp::expired).orElse(true)) { // true indicates expiry
+        } else if (snapshot.expired()) {
             this.handler.unmutePlayer(player);
             return false;
         }
@@ -4,7 +4,6 @@
  */
 package io.github.nucleuspowered.nucleus.modules.mute.runnables;
 
-import io.github.nucleuspowered.nucleus.datatypes.EndTimestamp;
 import io.github.nucleuspowered.nucleus.modules.mute.services.MuteHandler;
 import io.github.nucleuspowered.nucleus.scaffold.task.TaskBase;
 import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
@@ -30,8 +29,7 @@ public class MuteTask implements TaskBase {
         Sponge.getServer()
                 .getOnlinePlayers()
                 .stream()
-                .filter(this.muteHandler::isMutedCached)
-                .filter(x -> this.muteHandler.getPlayerMuteData(x).map(EndTimestamp::expired).orElse(false))
+                .filter(this.muteHandler::isMuteExpiredCached)
                 .forEach(this.muteHandler::unmutePlayer);
     }
 
@@ -6,10 +6,11 @@ package io.github.nucleuspowered.nucleus.modules.mute.services;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import io.github.nucleuspowered.nucleus.Util;
 import io.github.nucleuspowered.nucleus.api.module.mute.NucleusMuteService;
 import io.github.nucleuspowered.nucleus.api.module.mute.data.Mute;
+import io.github.nucleuspowered.nucleus.datatypes.SanctionSnapshot;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
 import io.github.nucleuspowered.nucleus.modules.mute.MuteKeys;
 import io.github.nucleuspowered.nucleus.modules.mute.data.MuteData;
 import io.github.nucleuspowered.nucleus.modules.mute.events.MuteEvent;
@@ -38,6 +39,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -45,10 +47,13 @@ import javax.inject.Inject;
 @APIService(NucleusMuteService.class)
 public class MuteHandler implements ContextCalculator<Subject>, NucleusMuteService, ServiceBase {
 
+    private final INucleusServiceCollection serviceCollection;
     private final IMessageProviderService messageProviderService;
     private final IStorageManager storageManager;
     private final PluginContainer pluginContainer;
-    private final Map<UUID, Boolean> muteContextCache = Maps.newHashMap();
+    // Used for the context calculator and the listener checks, so that they
+    // don't need to go to storage.
+    private final Map<UUID, SanctionSnapshot> muteSnapshots = new ConcurrentHashMap<>();
     private final Context mutedContext = new Context(NucleusMuteService.MUTED_CONTEXT, "true");
 
     private boolean globalMuteEnabled = false;
@@ -56,6 +61,7 @@ public class MuteHandler implements ContextCalculator<Subject>, NucleusMuteServi
 
     @Inject
     public MuteHandler(INucleusServiceCollection serviceCollection) {
+        this.serviceCollection = serviceCollection;
         this.messageProviderService = serviceCollection.messageProvider();
         this.storageManager = serviceCollection.storageManager();
         this.pluginContainer = serviceCollection.pluginContainer();
@@ -75,7 +81,7 @@ public class MuteHandler implements ContextCalculator<Subject>, NucleusMuteServi
     }
 
     @Override public boolean isMuted(User user) {
-        return getPlayerMuteData(user).isPresent();
+        return getMuteSnapshot(user).isSanctioned();
     }
 
     @Override public Optional<Mute> getPlayerMuteInfo(User user) {
@@ -85,10 +91,49 @@ public class MuteHandler implements ContextCalculator<Subject>, NucleusMuteServi
     // Internal
     public Optional<MuteData> getPlayerMuteData(User user) {
         Optional<MuteData> nu = this.storageManager.getOrCreateUserOnThread(user.getUniqueId()).get(MuteKeys.MUTE_DATA);
-        this.muteContextCache.put(user.getUniqueId(), nu.isPresent());
+        updateMuteSnapshot(user, nu.orElse(null));
         return nu;
     }
 
+    /**
+     * Gets the in memory copy of the user's mute state, going to storage only
+     * if we haven't seen the user yet.
+     *
+     * @param user The user
+     * @return The {@link SanctionSnapshot}
+     */
+    public SanctionSnapshot getMuteSnapshot(User user) {
+        SanctionSnapshot snapshot = this.muteSnapshots.get(user.getUniqueId());
+        if (snapshot == null) {
+            return SanctionSnapshot.of(getPlayerMuteData(user).orElse(null));
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Updates the in memory copy of the user's mute state. This must be called
+     * whenever the mute data for a user changes.
+     *
+     * @param user The user
+     * @param data The mute data, or null if the user is not muted
+     */
+    public void updateMuteSnapshot(User user, @Nullable MuteData data) {
+        this.muteSnapshots.put(user.getUniqueId(), SanctionSnapshot.of(data));
+
+        // They may be muted or unmuted while they are connecting.
+        this.serviceCollection.getServiceUnchecked(UserSessionService.class).get(user.getUniqueId())
+                .ifPresent(x -> x.put(MuteKeys.SESSION_MUTE_DATA, data));
+    }
+
+    public void removeMuteSnapshot(UUID uuid) {
+        this.muteSnapshots.remove(uuid);
+    }
+
+    public boolean isMuteExpiredCached(User user) {
+        return this.muteSnapshots.getOrDefault(user.getUniqueId(), SanctionSnapshot.NONE).expired();
+    }
+
     @Override public boolean mutePlayer(User user, String reason, @Nullable Duration duration, Cause cause) {
         UUID first = cause.first(User.class).map(Identifiable::getUniqueId).orElse(Util.CONSOLE_FAKE_UUID);
         return mutePlayer(user, new MuteData(first, reason, duration), cause);
@@ -116,7 +161,7 @@ public class MuteHandler implements ContextCalculator<Subject>, NucleusMuteServi
 
         u.set(MuteKeys.MUTE_DATA, data);
         this.storageManager.saveUser(user.getUniqueId(), u);
-        this.muteContextCache.put(user.getUniqueId(), true);
+        updateMuteSnapshot(user, data);
         Sponge.getEventManager().post(new MuteEvent.Muted(
                 cause,
                 user,
@@ -140,7 +185,7 @@ public class MuteHandler implements ContextCalculator<Subject>, NucleusMuteServi
                 IUserDataObject udo = o.get();
                 udo.remove(MuteKeys.MUTE_DATA);
                 this.storageManager.saveUser(user.getUniqueId(), udo);
-                this.muteContextCache.put(user.getUniqueId(), false);
+                updateMuteSnapshot(user, null);
                 Sponge.getEventManager().post(new MuteEvent.Unmuted(
                         cause,
                         user,
@@ -181,8 +226,7 @@ public class MuteHandler implements ContextCalculator<Subject>, NucleusMuteServi
 
     @Override public void accumulateContexts(Subject calculable, Set<Context> accumulator) {
         if (calculable instanceof User) {
-            UUID u = ((User) calculable).getUniqueId();
-            if (this.muteContextCache.computeIfAbsent(u, k -> isMuted((User) calculable))) {
+            if (getMuteSnapshot((User) calculable).isSanctioned()) {
                 accumulator.add(this.mutedContext);
             }
         }
@@ -190,10 +234,10 @@ public class MuteHandler implements ContextCalculator<Subject>, NucleusMuteServi
 
     @Override public boolean matches(Context context, Subject subject) {
         return context.getKey().equals(NucleusMuteService.MUTED_CONTEXT) && subject instanceof User &&
-                this.muteContextCache.computeIfAbsent(((User) subject).getUniqueId(), k -> isMuted((User) subject));
+                getMuteSnapshot((User) subject).isSanctioned();
     }
 
     public boolean isMutedCached(User x) {
-        return this.muteContextCache.containsKey(x.getUniqueId());
+        return this.muteSnapshots.containsKey(x.getUniqueId());
     }
 }
@@ -5,8 +5,10 @@
 package io.github.nucleuspowered.nucleus.modules.nickname;
 
 import com.google.common.reflect.TypeToken;
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
 import io.github.nucleuspowered.storage.dataobjects.keyed.DataKey;
+import org.spongepowered.api.text.Text;
 
 public class NicknameKeys {
 
@@ -15,4 +17,6 @@ public class NicknameKeys {
             IUserDataObject.class,
             "nickname-text"
     );
+
+    public static final UserSession.Key<Text> SESSION_NICKNAME = UserSession.Key.of("nickname");
 }
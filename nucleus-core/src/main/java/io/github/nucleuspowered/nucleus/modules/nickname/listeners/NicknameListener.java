@@ -4,6 +4,9 @@
  */
 package io.github.nucleuspowered.nucleus.modules.nickname.listeners;
 
+import io.github.nucleuspowered.nucleus.modules.core.events.UserDataLoadedEvent;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
+import io.github.nucleuspowered.nucleus.modules.nickname.NicknameKeys;
 import io.github.nucleuspowered.nucleus.modules.nickname.services.NicknameService;
 import io.github.nucleuspowered.nucleus.scaffold.listener.ListenerBase;
 import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
@@ -14,6 +17,7 @@ import org.spongepowered.api.event.Order;
 import org.spongepowered.api.event.filter.cause.Root;
 import org.spongepowered.api.event.network.ClientConnectionEvent;
 import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.serializer.TextSerializers;
 
 import java.util.Optional;
 
@@ -22,15 +26,25 @@ import javax.inject.Inject;
 public class NicknameListener implements ListenerBase {
 
     private final NicknameService nicknameService;
+    private final UserSessionService sessionService;
 
     @Inject
     public NicknameListener(INucleusServiceCollection serviceCollection) {
         this.nicknameService = serviceCollection.getServiceUnchecked(NicknameService.class);
+        this.sessionService = serviceCollection.getServiceUnchecked(UserSessionService.class);
+    }
+
+    // Deserialise the nickname before they join, off the main thread.
+    @Listener(order = Order.LATE)
+    public void onUserDataLoaded(UserDataLoadedEvent event) {
+        event.getSession().put(NicknameKeys.SESSION_NICKNAME,
+                event.getDataObject().get(NicknameKeys.USER_NICKNAME_JSON).map(TextSerializers.JSON::deserialize).orElse(null));
     }
 
     @Listener(order = Order.FIRST)
     public void onPlayerJoin(ClientConnectionEvent.Join event, @Root Player player) {
-        Optional<Text> nickname = this.nicknameService.getNickname(player);
+        Optional<Text> nickname = this.sessionService.get(player.getUniqueId(), NicknameKeys.SESSION_NICKNAME,
+                () -> this.nicknameService.getNickname(player));
         this.nicknameService.markRead(player.getUniqueId());
         nickname.ifPresent(text -> {
             this.nicknameService.updateCache(player.getUniqueId(), text);
@@ -32,4 +32,7 @@ public class RTPPermissions {
     @PermissionMetadata(descriptionKey = "permission.rtp.worlds", level = SuggestedLevel.ADMIN)
     public static final String RTP_WORLDS = "nucleus.rtp.worlds";
 
+    @PermissionMetadata(descriptionKey = "permission.base", replacements = { "rtpstats" }, level = SuggestedLevel.ADMIN)
+    public static final String BASE_RTPSTATS = "nucleus.rtpstats.base";
+
 }
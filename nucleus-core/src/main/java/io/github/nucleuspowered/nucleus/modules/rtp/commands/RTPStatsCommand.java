@@ -0,0 +1,82 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.rtp.commands;
+
+import io.github.nucleuspowered.nucleus.modules.rtp.RTPPermissions;
+import io.github.nucleuspowered.nucleus.modules.rtp.services.RTPMetrics;
+import io.github.nucleuspowered.nucleus.modules.rtp.services.RTPService;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandContext;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandExecutor;
+import io.github.nucleuspowered.nucleus.scaffold.command.ICommandResult;
+import io.github.nucleuspowered.nucleus.scaffold.command.annotation.Command;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.text.DecimalFormat;
+import java.util.Map;
+
+@NonnullByDefault
+@Command(
+        aliases = "rtpstats",
+        basePermission = RTPPermissions.BASE_RTPSTATS,
+        commandDescriptionKey = "rtpstats"
+)
+public class RTPStatsCommand implements ICommandExecutor<CommandSource> {
+
+    private static final DecimalFormat MILLIS_FORMAT = new DecimalFormat("0.00");
+    private static final DecimalFormat PERCENT_FORMAT = new DecimalFormat("0.0");
+
+    @Override public ICommandResult execute(ICommandContext<? extends CommandSource> context) {
+        RTPService service = context.getServiceCollection().getServiceUnchecked(RTPService.class);
+        sendPoolStats(context, service);
+
+        Map<String, RTPMetrics.KernelStats> stats = service.getMetrics().getStats();
+        if (stats.isEmpty()) {
+            context.sendMessage("command.rtpstats.none");
+            return context.successResult();
+        }
+
+        context.sendMessage("command.rtpstats.title");
+        for (Map.Entry<String, RTPMetrics.KernelStats> entry : stats.entrySet()) {
+            RTPMetrics.KernelStats stat = entry.getValue();
+            context.sendMessage("command.rtpstats.kernel",
+                    entry.getKey(),
+                    stat.getSuccessfulSearches(),
+                    stat.getSearches(),
+                    MILLIS_FORMAT.format(stat.getAverageSuccessfulSearchMillis()));
+            context.sendMessage("command.rtpstats.checks",
+                    stat.getChecks(),
+                    stat.getSuccessfulChecks(),
+                    MILLIS_FORMAT.format(stat.getAverageCheckMillis()),
+                    MILLIS_FORMAT.format(stat.getMaxCheckMillis()));
+        }
+
+        return context.successResult();
+    }
+
+    private void sendPoolStats(ICommandContext<? extends CommandSource> context, RTPService service) {
+        if (service.getPoolSize() <= 0) {
+            context.sendMessage("command.rtpstats.pool.disabled");
+            return;
+        }
+
+        RTPMetrics metrics = service.getMetrics();
+        long requests = metrics.getPoolHits() + metrics.getPoolMisses();
+        context.sendMessage("command.rtpstats.pool.title",
+                metrics.getPoolHits(),
+                requests,
+                PERCENT_FORMAT.format(requests == 0 ? 0 : metrics.getPoolHits() * 100.0 / requests),
+                MILLIS_FORMAT.format(metrics.getPoolAddedPerMinute()));
+        RTPMetrics.KernelStats checks = metrics.getPoolStats();
+        context.sendMessage("command.rtpstats.checks",
+                checks.getChecks(),
+                checks.getSuccessfulChecks(),
+                MILLIS_FORMAT.format(checks.getAverageCheckMillis()),
+                MILLIS_FORMAT.format(checks.getMaxCheckMillis()));
+        for (Map.Entry<String, Integer> entry : service.getPoolFill().entrySet()) {
+            context.sendMessage("command.rtpstats.pool.world", entry.getKey(), entry.getValue(), service.getPoolSize());
+        }
+    }
+}
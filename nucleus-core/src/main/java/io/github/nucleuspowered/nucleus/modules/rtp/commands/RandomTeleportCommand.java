@@ -6,12 +6,16 @@ package io.github.nucleuspowered.nucleus.modules.rtp.commands;
 
 import co.aikar.timings.Timing;
 import co.aikar.timings.Timings;
+import com.flowpowered.math.vector.Vector3d;
 import io.github.nucleuspowered.nucleus.api.module.rtp.NucleusRTPService;
 import io.github.nucleuspowered.nucleus.api.module.rtp.kernel.RTPKernel;
 import io.github.nucleuspowered.nucleus.modules.rtp.RTPPermissions;
 import io.github.nucleuspowered.nucleus.modules.rtp.config.RTPConfig;
 import io.github.nucleuspowered.nucleus.modules.rtp.events.RTPSelectedLocationEvent;
+import io.github.nucleuspowered.nucleus.modules.rtp.kernels.DefaultKernel;
+import io.github.nucleuspowered.nucleus.modules.rtp.kernels.RTPSearch;
 import io.github.nucleuspowered.nucleus.modules.rtp.options.RTPOptions;
+import io.github.nucleuspowered.nucleus.modules.rtp.services.RTPMetrics;
 import io.github.nucleuspowered.nucleus.modules.rtp.services.RTPService;
 import io.github.nucleuspowered.nucleus.scaffold.command.ICommandContext;
 import io.github.nucleuspowered.nucleus.scaffold.command.ICommandExecutor;
@@ -40,6 +44,8 @@ import org.spongepowered.api.world.World;
 import org.spongepowered.api.world.storage.WorldProperties;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -117,6 +123,7 @@ public class RandomTeleportCommand implements ICommandExecutor<CommandSource>, I
         context.sendMessage("command.rtp.searching");
 
         RTPOptions options = new RTPOptions(this.rc, currentWorld.getName());
+        RTPService rtpService = context.getServiceCollection().getServiceUnchecked(RTPService.class);
         RTPTask rtask = new RTPTask(
                 context.getServiceCollection().pluginContainer(),
                 currentWorld,
@@ -124,7 +131,8 @@ public class RandomTeleportCommand implements ICommandExecutor<CommandSource>, I
                 player,
                 this.rc.getNoOfAttempts(),
                 options,
-                context.getServiceCollection().getServiceUnchecked(RTPService.class).getKernel(wp),
+                rtpService.getKernel(wp),
+                rtpService,
                 context.is(player) ? context.getCost() : 0);
         Task task = Sponge.getScheduler().createTaskBuilder().execute(rtask).submit(context.getServiceCollection().pluginContainer());
         this.cachedTasks.put(task, player.getUniqueId());
@@ -142,9 +150,15 @@ public class RandomTeleportCommand implements ICommandExecutor<CommandSource>, I
      * The RTPTask class encapsulates the logic for the /rtp. Because TeleportHelper#getSafeLocation(Location) can be slow, particularly if there is a
      * large area to check, we opt for smaller areas, but to try multiple times. We separate each check by a couple of ticks so that the server
      * still gets to keep ticking, avoiding timeouts and too much lag.
+     *
+     * If a location was found for the world ahead of time, that is used first. For our own kernels, the candidate locations are picked off the main thread and only the safety checks are made on it. Candidates in chunks
+     * that are already loaded are checked first, and only a few candidates that need a chunk to be loaded are checked each time.
      */
     private class RTPTask extends CostCancellableTask {
 
+        private static final int CANDIDATES_PER_ATTEMPT = 10;
+        private static final int UNLOADED_CHECKS_PER_ATTEMPT = 2;
+
         private final PluginContainer pluginContainer;
         private final Cause cause;
         private final World targetWorld;
@@ -156,6 +170,9 @@ public class RandomTeleportCommand implements ICommandExecutor<CommandSource>, I
         private final int maxCount;
         private final NucleusRTPService.RTPOptions options;
         private final RTPKernel kernel;
+        private final RTPService service;
+        private final RTPMetrics metrics;
+        private final long startTime = System.nanoTime();
 
         private RTPTask(
                 PluginContainer pluginContainer,
@@ -165,6 +182,7 @@ public class RandomTeleportCommand implements ICommandExecutor<CommandSource>, I
                 int maxCount,
                 NucleusRTPService.RTPOptions options,
                 RTPKernel kernel,
+                RTPService service,
                 double cost) {
             super(source.getServiceCollection(), target1, cost);
             this.logger = source.getServiceCollection().logger();
@@ -178,6 +196,8 @@ public class RandomTeleportCommand implements ICommandExecutor<CommandSource>, I
             this.count = maxCount;
             this.options = options;
             this.kernel = kernel;
+            this.service = service;
+            this.metrics = service.getMetrics();
         }
 
         @Override public void accept(Task task) {
@@ -187,65 +207,72 @@ public class RandomTeleportCommand implements ICommandExecutor<CommandSource>, I
                 return;
             }
 
-            try (Timing dummy = TIMINGS.startTiming()) {
-                this.logger.debug(String.format("RTP of %s, attempt %s of %s", this.target.getName(), this.maxCount - this.count, this.maxCount));
+            this.logger.debug(String.format("RTP of %s, attempt %s of %s", this.target.getName(), this.maxCount - this.count, this.maxCount));
+            if (this.count == this.maxCount - 1) {
+                Optional<Location<World>> pooled = this.service.takePooledLocation(this.targetWorld);
+                if (pooled.isPresent() && teleport(task, pooled.get(), false)) {
+                    return;
+                }
+            }
 
+            if (this.kernel instanceof DefaultKernel && ((DefaultKernel) this.kernel).canSearch()) {
+                RTPSearch search = ((DefaultKernel) this.kernel).createSearch(this.target.getLocation(), this.targetWorld, this.options);
+                submit(Sponge.getScheduler().createTaskBuilder().async().execute(asyncTask -> {
+                    List<Vector3d> candidates = search.getCandidates(CANDIDATES_PER_ATTEMPT);
+                    submit(Sponge.getScheduler().createTaskBuilder().execute(syncTask -> checkCandidates(syncTask, search, candidates)), asyncTask);
+                }), task);
+                return;
+            }
+
+            try (Timing dummy = TIMINGS.startTiming()) {
                 int counter = 0;
                 while (++counter <= 10) {
                     try {
+                        long start = System.nanoTime();
                         Optional<Location<World>> optionalLocation =
                                 this.kernel.getLocation(this.target.getLocation(), this.targetWorld, this.options);
-                        if (optionalLocation.isPresent()) {
-                            Location<World> targetLocation = optionalLocation.get();
-                            if (Sponge.getEventManager().post(new RTPSelectedLocationEvent(
-                                    targetLocation,
-                                    this.target,
-                                    this.cause
-                            ))) {
-                                continue;
-                            }
-
-                            this.source.getServiceCollection().logger().debug(String.format("RTP of %s, found location %s, %s, %s",
-                                    this.target.getName(),
-                                    String.valueOf(targetLocation.getBlockX()),
-                                    String.valueOf(targetLocation.getBlockY()),
-                                    String.valueOf(targetLocation.getBlockZ())));
-                            if (this.source.getServiceCollection().teleportService().setLocation(this.target, targetLocation)) {
-                                if (!this.isSelf) {
-                                    this.source.sendMessageTo(this.target, "command.rtp.other");
-                                    this.source.sendMessage("command.rtp.successother",
-                                            this.target.getName(),
-                                            targetLocation.getBlockX(),
-                                            targetLocation.getBlockY(),
-                                            targetLocation.getBlockZ());
-                                }
-
-                                this.source.sendMessageTo(this.target, "command.rtp.success",
-                                        targetLocation.getBlockX(),
-                                        targetLocation.getBlockY(),
-                                        targetLocation.getBlockZ());
-                                if (this.isSelf) {
-                                    this.source.getServiceCollection()
-                                            .cooldownService()
-                                            .setCooldown(
-                                                    this.source.getCommandKey(),
-                                                    this.target,
-                                                    Duration.ofSeconds(this.source.getServiceCollection()
-                                                            .commandMetadataService()
-                                                            .getControl(RandomTeleportCommand.class)
-                                                            .orElseThrow(IllegalStateException::new)
-                                                            .getCooldown(this.target))
-                                            );
-                                    synchronized (RandomTeleportCommand.this.cachedTasks) {
-                                        RandomTeleportCommand.this.cachedTasks.remove(task);
-                                    }
-                                }
-                                return;
-                            } else {
-                                this.source.sendMessage("command.rtp.cancelled");
-                                onCancel();
-                                return;
-                            }
+                        this.metrics.recordCheck(this.kernel.getId(), optionalLocation.isPresent(), System.nanoTime() - start);
+                        if (optionalLocation.isPresent() && teleport(task, optionalLocation.get(), true)) {
+                            return;
+                        }
+                    } catch (PositionOutOfBoundsException ignore) {
+                        // treat as fail.
+                    }
+                }
+
+                onUnsuccesfulAttempt(task);
+            }
+        }
+
+        private void checkCandidates(Task task, RTPSearch search, List<Vector3d> candidates) {
+            if (!this.target.isOnline()) {
+                onCancel();
+                return;
+            }
+
+            try (Timing dummy = TIMINGS.startTiming()) {
+                List<Vector3d> loaded = new ArrayList<>();
+                List<Vector3d> unloaded = new ArrayList<>();
+                for (Vector3d candidate : candidates) {
+                    if (this.targetWorld.getChunkAtBlock(candidate.toInt()).isPresent()) {
+                        loaded.add(candidate);
+                    } else {
+                        unloaded.add(candidate);
+                    }
+                }
+
+                if (unloaded.size() > UNLOADED_CHECKS_PER_ATTEMPT) {
+                    unloaded = unloaded.subList(0, UNLOADED_CHECKS_PER_ATTEMPT);
+                }
+
+                loaded.addAll(unloaded);
+                for (Vector3d candidate : loaded) {
+                    try {
+                        long start = System.nanoTime();
+                        Optional<Location<World>> optionalLocation = search.check(candidate);
+                        this.metrics.recordCheck(search.getKernelId(), optionalLocation.isPresent(), System.nanoTime() - start);
+                        if (optionalLocation.isPresent() && teleport(task, optionalLocation.get(), true)) {
+                            return;
                         }
                     } catch (PositionOutOfBoundsException ignore) {
                         // treat as fail.
@@ -256,11 +283,77 @@ public class RandomTeleportCommand implements ICommandExecutor<CommandSource>, I
             }
         }
 
+        // Returns false if the location was rejected and the search should carry on.
+        private boolean teleport(Task task, Location<World> targetLocation, boolean searched) {
+            if (Sponge.getEventManager().post(new RTPSelectedLocationEvent(
+                    targetLocation,
+                    this.target,
+                    this.cause
+            ))) {
+                return false;
+            }
+
+            this.source.getServiceCollection().logger().debug(String.format("RTP of %s, found location %s, %s, %s",
+                    this.target.getName(),
+                    String.valueOf(targetLocation.getBlockX()),
+                    String.valueOf(targetLocation.getBlockY()),
+                    String.valueOf(targetLocation.getBlockZ())));
+            if (this.source.getServiceCollection().teleportService().setLocation(this.target, targetLocation)) {
+                if (searched) {
+                    this.metrics.recordSearch(this.kernel.getId(), true, System.nanoTime() - this.startTime);
+                }
+
+                if (!this.isSelf) {
+                    this.source.sendMessageTo(this.target, "command.rtp.other");
+                    this.source.sendMessage("command.rtp.successother",
+                            this.target.getName(),
+                            targetLocation.getBlockX(),
+                            targetLocation.getBlockY(),
+                            targetLocation.getBlockZ());
+                }
+
+                this.source.sendMessageTo(this.target, "command.rtp.success",
+                        targetLocation.getBlockX(),
+                        targetLocation.getBlockY(),
+                        targetLocation.getBlockZ());
+                if (this.isSelf) {
+                    this.source.getServiceCollection()
+                            .cooldownService()
+                            .setCooldown(
+                                    this.source.getCommandKey(),
+                                    this.target,
+                                    Duration.ofSeconds(this.source.getServiceCollection()
+                                            .commandMetadataService()
+                                            .getControl(RandomTeleportCommand.class)
+                                            .orElseThrow(IllegalStateException::new)
+                                            .getCooldown(this.target))
+                            );
+                    synchronized (RandomTeleportCommand.this.cachedTasks) {
+                        RandomTeleportCommand.this.cachedTasks.remove(task);
+                    }
+                }
+            } else {
+                this.source.sendMessage("command.rtp.cancelled");
+                onCancel();
+            }
+
+            return true;
+        }
+
+        // Submits the next step of the search before forgetting the current one, so that the player always has a task in progress.
+        private void submit(Task.Builder builder, Task current) {
+            synchronized (RandomTeleportCommand.this.cachedTasks) {
+                RandomTeleportCommand.this.cachedTasks.put(builder.submit(this.pluginContainer), this.target.getUniqueId());
+                RandomTeleportCommand.this.cachedTasks.remove(current);
+            }
+        }
+
         private void onUnsuccesfulAttempt(Task task) {
             synchronized (RandomTeleportCommand.this.cachedTasks) {
                 if (this.count <= 0) {
                     this.source.getServiceCollection().logger()
                             .debug(String.format("RTP of %s was unsuccessful", this.target.getName()));
+                    this.metrics.recordSearch(this.kernel.getId(), false, System.nanoTime() - this.startTime);
                     this.source.sendMessage("command.rtp.error");
                     onCancel();
                 } else {
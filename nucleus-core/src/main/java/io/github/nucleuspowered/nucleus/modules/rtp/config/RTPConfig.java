@@ -66,6 +66,12 @@ public class RTPConfig {
             BiomeTypes.FROZEN_OCEAN.getId()
     );
 
+    @Setting(value = "location-pool-size", comment = "config.rtp.poolsize")
+    private int poolSize = 0;
+
+    @Setting(value = "location-pool-millis-per-tick", comment = "config.rtp.pooltime")
+    private double poolMillisPerTick = 1.0;
+
     private ImmutableSet<BiomeType> lazyLoadProhbitedBiomes;
 
     public int getNoOfAttempts() {
@@ -125,6 +131,14 @@ public class RTPConfig {
         return this.defaultRTPKernel;
     }
 
+    public int getPoolSize() {
+        return Math.max(0, this.poolSize);
+    }
+
+    public long getPoolNanosPerTick() {
+        return (long) (Math.max(0, this.poolMillisPerTick) * 1_000_000);
+    }
+
     @ConfigSerializable
     public static class PerWorldRTPConfig {
         @Setting(value = "radius")
@@ -17,6 +17,7 @@ import org.spongepowered.api.world.World;
 import org.spongepowered.api.world.teleport.TeleportHelperFilter;
 import org.spongepowered.api.world.teleport.TeleportHelperFilters;
 
+import java.util.List;
 import java.util.Optional;
 
 import javax.annotation.Nullable;
@@ -25,21 +26,44 @@ public class DefaultKernel implements RTPKernel {
 
     public static final DefaultKernel INSTANCE = new DefaultKernel();
 
+    private final boolean canSearch = !overridesGetLocation(getClass());
+
     @Override
     public Optional<Location<World>> getLocation(@Nullable Location<World> currentLocation, World target, NucleusRTPService.RTPOptions options) {
         // from world spawn
-        Vector3d location;
-        int count = 25;
-        do {
-            if (--count < 0) {
-                // We found nothing in the timeframe.
-                return Optional.empty();
-            }
+        List<Vector3d> candidates = createSearch(currentLocation, target, options).getCandidates(1);
+        if (candidates.isEmpty()) {
+            // We found nothing in the timeframe.
+            return Optional.empty();
+        }
 
-            location = KernelHelper.INSTANCE.getLocationWithOffset(getCentralLocation(currentLocation, target), options);
-        } while (!Util.isLocationInWorldBorder(location.toDouble(), target));
+        return checkCandidate(target, candidates.get(0), options);
+    }
+
+    /**
+     * Starts a search that can pick candidate locations off the main thread.
+     * This must be called on the main thread.
+     *
+     * @param currentLocation The current location of the entity to teleport, if appropriate
+     * @param target The target world for teleport
+     * @param options The options to consider when teleporting
+     * @return The search
+     */
+    public RTPSearch createSearch(@Nullable Location<World> currentLocation, World target, NucleusRTPService.RTPOptions options) {
+        return new RTPSearch(this, target, options, getCentralLocation(currentLocation, target));
+    }
 
-        Location<World> worldLocation = getStartingLocation(new Location<>(target, location));
+    /**
+     * Checks whether a candidate picked by a {@link RTPSearch} is safe to
+     * teleport to. This must be called on the main thread.
+     *
+     * @param target The target world
+     * @param candidate The candidate location
+     * @param options The options to consider when teleporting
+     * @return The location to teleport to, if any
+     */
+    Optional<Location<World>> checkCandidate(World target, Vector3d candidate, NucleusRTPService.RTPOptions options) {
+        Location<World> worldLocation = getStartingLocation(new Location<>(target, candidate));
         if (worldLocation == null) {
             return Optional.empty();
         }
@@ -65,6 +89,29 @@ public class DefaultKernel implements RTPKernel {
         return Optional.empty();
     }
 
+    /**
+     * Gets whether locations for this kernel can be found with a
+     * {@link RTPSearch}, which picks candidates off the main thread. Kernels
+     * that extend this one and replace {@link #getLocation} cannot, as the
+     * search would skip their replacement.
+     *
+     * @return true if so
+     */
+    public boolean canSearch() {
+        return this.canSearch;
+    }
+
+    /**
+     * Gets whether locations found by this kernel can be found ahead of time
+     * and used for anyone, that is, they do not depend on where the player
+     * is.
+     *
+     * @return true if so
+     */
+    public boolean canPool() {
+        return true;
+    }
+
     TeleportHelperFilter filterToUse() {
         return TeleportHelperFilters.DEFAULT;
     }
@@ -74,6 +121,15 @@ public class DefaultKernel implements RTPKernel {
     }
 
     @Nullable Location<World> getStartingLocation(Location<World> world) {
+        if (this.canSearch) {
+            // Everything above the height map is air, so start from there rather than walking down to it. Kernels that
+            // replace getLocation may depend on the walk from where they started, so they still get it.
+            int highest = world.getExtent().getHighestYAt(world.getBlockX(), world.getBlockZ());
+            if (world.getBlockY() > highest) {
+                world = new Location<>(world.getExtent(), world.getBlockX(), highest, world.getBlockZ());
+            }
+        }
+
         while (world.getBlockType() == BlockTypes.AIR) {
             if (world.getY() < 1) {
                 return null;
@@ -88,6 +144,16 @@ public class DefaultKernel implements RTPKernel {
         return true;
     }
 
+    private static boolean overridesGetLocation(Class<?> kernelClass) {
+        try {
+            return kernelClass.getMethod("getLocation", Location.class, World.class, NucleusRTPService.RTPOptions.class)
+                    .getDeclaringClass() != DefaultKernel.class;
+        } catch (NoSuchMethodException e) {
+            e.printStackTrace();
+            return true;
+        }
+    }
+
     @Override public String getId() {
         return "nucleus:default";
     }
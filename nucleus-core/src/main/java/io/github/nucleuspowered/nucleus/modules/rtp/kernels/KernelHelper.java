@@ -8,7 +8,7 @@ import com.flowpowered.math.vector.Vector3d;
 import com.flowpowered.math.vector.Vector3i;
 import io.github.nucleuspowered.nucleus.api.module.rtp.NucleusRTPService;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class KernelHelper {
 
@@ -16,14 +16,13 @@ public class KernelHelper {
 
     protected KernelHelper() {}
 
-    private final Random random = new Random();
-
+    // Candidates are picked on more than one thread at a time, so each gets its own.
     public int getRandomBetween(int min, int max) {
-        return random.nextInt(max - min) + min;
+        return ThreadLocalRandom.current().nextInt(max - min) + min;
     }
 
     public int randomSign(int in) {
-        return random.nextInt(2) == 0 ? -in : in;
+        return ThreadLocalRandom.current().nextInt(2) == 0 ? -in : in;
     }
 
     public Vector3d getLocationWithOffset(Vector3i centre, NucleusRTPService.RTPOptions options) {
@@ -0,0 +1,90 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.rtp.kernels;
+
+import com.flowpowered.math.vector.Vector3d;
+import com.flowpowered.math.vector.Vector3i;
+import io.github.nucleuspowered.nucleus.Util;
+import io.github.nucleuspowered.nucleus.api.module.rtp.NucleusRTPService;
+import org.spongepowered.api.world.Location;
+import org.spongepowered.api.world.World;
+import org.spongepowered.api.world.WorldBorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A search for a random location by a {@link DefaultKernel}.
+ *
+ * <p>Everything the search needs to know about the world to pick candidate
+ * locations is copied when it is created on the main thread, so that
+ * {@link #getCandidates(int)} can be called from any thread. Only
+ * {@link #check(Vector3d)}, which looks at the blocks, needs the main
+ * thread.</p>
+ */
+public final class RTPSearch {
+
+    private static final int ATTEMPTS_PER_CANDIDATE = 25;
+
+    private final DefaultKernel kernel;
+    private final World world;
+    private final NucleusRTPService.RTPOptions options;
+    private final Vector3i centre;
+    private final Vector3d borderCentre;
+    private final double borderDiameter;
+
+    RTPSearch(DefaultKernel kernel, World world, NucleusRTPService.RTPOptions options, Vector3i centre) {
+        this.kernel = kernel;
+        this.world = world;
+        this.options = options;
+        this.centre = centre;
+
+        WorldBorder border = world.getWorldBorder();
+        this.borderCentre = border.getCenter();
+        this.borderDiameter = border.getDiameter();
+    }
+
+    /**
+     * Picks up to the given number of locations within the world border. This
+     * can be called from any thread.
+     *
+     * @param count The number of locations to pick
+     * @return The locations
+     */
+    public List<Vector3d> getCandidates(int count) {
+        List<Vector3d> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            for (int attempt = 0; attempt < ATTEMPTS_PER_CANDIDATE; attempt++) {
+                Vector3d location = KernelHelper.INSTANCE.getLocationWithOffset(this.centre, this.options);
+                if (Util.isLocationInWorldBorder(location, this.borderCentre, this.borderDiameter)) {
+                    candidates.add(location);
+                    break;
+                }
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Checks whether a candidate is safe to teleport to, and returns the
+     * location to teleport to if so. This must be called on the main thread.
+     *
+     * @param candidate The candidate
+     * @return The location, if any
+     */
+    public Optional<Location<World>> check(Vector3d candidate) {
+        return this.kernel.checkCandidate(this.world, candidate, this.options);
+    }
+
+    public World getWorld() {
+        return this.world;
+    }
+
+    public String getKernelId() {
+        return this.kernel.getId();
+    }
+}
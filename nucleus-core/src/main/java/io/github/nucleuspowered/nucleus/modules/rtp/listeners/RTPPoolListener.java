@@ -0,0 +1,60 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.rtp.listeners;
+
+import io.github.nucleuspowered.nucleus.modules.rtp.config.RTPConfig;
+import io.github.nucleuspowered.nucleus.modules.rtp.services.RTPService;
+import io.github.nucleuspowered.nucleus.scaffold.listener.ListenerBase;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import org.spongepowered.api.block.BlockSnapshot;
+import org.spongepowered.api.data.Transaction;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.block.ChangeBlockEvent;
+import org.spongepowered.api.event.world.ChangeWorldBorderEvent;
+import org.spongepowered.api.event.world.UnloadWorldEvent;
+import org.spongepowered.api.world.Location;
+import org.spongepowered.api.world.World;
+
+import java.util.Optional;
+
+import javax.inject.Inject;
+
+/**
+ * Drops pooled RTP locations that may no longer be safe.
+ */
+public class RTPPoolListener implements ListenerBase.Conditional {
+
+    private final RTPService service;
+
+    @Inject
+    public RTPPoolListener(INucleusServiceCollection serviceCollection) {
+        this.service = serviceCollection.getServiceUnchecked(RTPService.class);
+    }
+
+    @Listener(order = Order.POST)
+    public void onBlockChange(ChangeBlockEvent.Post event) {
+        for (Transaction<BlockSnapshot> transaction : event.getTransactions()) {
+            Optional<Location<World>> location = transaction.getOriginal().getLocation();
+            if (location.isPresent()) {
+                this.service.invalidatePooledChunk(location.get().getExtent().getUniqueId(), location.get().getBlockX(), location.get().getBlockZ());
+            }
+        }
+    }
+
+    @Listener(order = Order.POST)
+    public void onWorldBorderChange(ChangeWorldBorderEvent.TargetWorld event) {
+        this.service.clearPool(event.getTargetWorld().getUniqueId());
+    }
+
+    @Listener
+    public void onWorldUnload(UnloadWorldEvent event) {
+        this.service.clearPool(event.getTargetWorld().getUniqueId());
+    }
+
+    @Override public boolean shouldEnable(INucleusServiceCollection serviceCollection) {
+        return serviceCollection.moduleDataProvider().getModuleConfig(RTPConfig.class).getPoolSize() > 0;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.rtp.runnables;
+
+import io.github.nucleuspowered.nucleus.modules.rtp.services.RTPService;
+import io.github.nucleuspowered.nucleus.scaffold.task.TaskBase;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.time.Duration;
+
+import javax.inject.Inject;
+
+/**
+ * Fills the RTP location pools a few checks at a time.
+ */
+@NonnullByDefault
+public class RTPPoolTask implements TaskBase {
+
+    private final RTPService service;
+
+    @Inject
+    public RTPPoolTask(INucleusServiceCollection serviceCollection) {
+        this.service = serviceCollection.getServiceUnchecked(RTPService.class);
+    }
+
+    @Override
+    public boolean isAsync() {
+        return false;
+    }
+
+    @Override
+    public Duration interval() {
+        // Every tick.
+        return Duration.ofMillis(50);
+    }
+
+    @Override
+    public void accept(Task task) {
+        this.service.refillPools();
+    }
+
+}
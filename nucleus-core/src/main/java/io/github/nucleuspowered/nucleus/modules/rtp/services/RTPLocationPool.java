@@ -0,0 +1,102 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.rtp.services;
+
+import com.flowpowered.math.vector.Vector3d;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nullable;
+
+/**
+ * Safe locations in a world that have been found ahead of time, oldest first.
+ * They are indexed by chunk so that every location in a chunk can be dropped
+ * when a block in it changes, as that can make a location that is not in the
+ * same column unsafe too.
+ *
+ * <p>Candidates whose chunks are being loaded are also kept here until they
+ * can be checked, so that candidates in unloaded chunks are not skipped.</p>
+ *
+ * <p>This is only used on the main thread.</p>
+ */
+final class RTPLocationPool {
+
+    private final SetMultimap<Long, Vector3d> locations = LinkedHashMultimap.create();
+    private final Deque<Pending> pending = new ArrayDeque<>();
+
+    int size() {
+        return this.locations.size();
+    }
+
+    void add(Vector3d position) {
+        this.locations.put(key(position.getFloorX() >> 4, position.getFloorZ() >> 4), position);
+    }
+
+    Optional<Vector3d> take() {
+        Iterator<Map.Entry<Long, Vector3d>> iterator = this.locations.entries().iterator();
+        if (iterator.hasNext()) {
+            Vector3d position = iterator.next().getValue();
+            iterator.remove();
+            return Optional.of(position);
+        }
+
+        return Optional.empty();
+    }
+
+    void invalidateChunk(int chunkX, int chunkZ) {
+        this.locations.removeAll(key(chunkX, chunkZ));
+    }
+
+    int pendingSize() {
+        return this.pending.size();
+    }
+
+    void addPending(Vector3d candidate, CompletableFuture<?> chunkLoad) {
+        this.pending.add(new Pending(candidate, chunkLoad));
+    }
+
+    /**
+     * Takes the oldest candidate whose chunk has finished loading, if there
+     * is one.
+     *
+     * @return The candidate, or null
+     */
+    @Nullable Vector3d takeLoadedCandidate() {
+        Iterator<Pending> iterator = this.pending.iterator();
+        while (iterator.hasNext()) {
+            Pending next = iterator.next();
+            if (next.chunkLoad.isDone()) {
+                iterator.remove();
+                if (!next.chunkLoad.isCompletedExceptionally()) {
+                    return next.candidate;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static long key(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private static final class Pending {
+
+        private final Vector3d candidate;
+        private final CompletableFuture<?> chunkLoad;
+
+        private Pending(Vector3d candidate, CompletableFuture<?> chunkLoad) {
+            this.candidate = candidate;
+            this.chunkLoad = chunkLoad;
+        }
+    }
+}
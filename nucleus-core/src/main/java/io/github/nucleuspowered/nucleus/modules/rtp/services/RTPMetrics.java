@@ -0,0 +1,173 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.modules.rtp.services;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How well each RTP kernel is doing at finding locations, and how long it
+ * takes.
+ */
+public final class RTPMetrics {
+
+    private final Map<String, KernelStats> stats = new ConcurrentHashMap<>();
+    private final long created = System.nanoTime();
+    private final LongAdder poolHits = new LongAdder();
+    private final LongAdder poolMisses = new LongAdder();
+    private final LongAdder poolAdded = new LongAdder();
+    private final KernelStats poolStats = new KernelStats();
+
+    /**
+     * Records a check of a single location on the main thread for a search.
+     *
+     * @param kernelId The ID of the kernel
+     * @param success Whether the location was safe
+     * @param nanos How long the check took
+     */
+    public void recordCheck(String kernelId, boolean success, long nanos) {
+        recordCheck(get(kernelId), success, nanos);
+    }
+
+    /**
+     * Records a check of a single location on the main thread while filling
+     * the location pools. These are kept apart from the checks made for
+     * searches, so that the pools do not hide how long players wait.
+     *
+     * @param success Whether the location was safe
+     * @param nanos How long the check took
+     */
+    public void recordPoolCheck(boolean success, long nanos) {
+        recordCheck(this.poolStats, success, nanos);
+    }
+
+    /**
+     * Records the end of a search, from when /rtp was run to when the player
+     * was teleported or the search gave up.
+     *
+     * @param kernelId The ID of the kernel
+     * @param success Whether a location was found
+     * @param nanos How long the search took
+     */
+    public void recordSearch(String kernelId, boolean success, long nanos) {
+        KernelStats kernelStats = get(kernelId);
+        kernelStats.searches.increment();
+        if (success) {
+            kernelStats.successfulSearches.increment();
+            kernelStats.successfulSearchNanos.add(nanos);
+        }
+    }
+
+    public void recordPoolHit() {
+        this.poolHits.increment();
+    }
+
+    public void recordPoolMiss() {
+        this.poolMisses.increment();
+    }
+
+    public void recordPoolAdded() {
+        this.poolAdded.increment();
+    }
+
+    /**
+     * Gets the statistics for the checks made while filling the location
+     * pools. Only the check statistics are used.
+     *
+     * @return The statistics
+     */
+    public KernelStats getPoolStats() {
+        return this.poolStats;
+    }
+
+    public long getPoolHits() {
+        return this.poolHits.sum();
+    }
+
+    public long getPoolMisses() {
+        return this.poolMisses.sum();
+    }
+
+    /**
+     * Gets the average number of locations added to the location pools each
+     * minute since the server started.
+     *
+     * @return The number of locations
+     */
+    public double getPoolAddedPerMinute() {
+        double minutes = (System.nanoTime() - this.created) / 60_000_000_000.0;
+        return minutes <= 0 ? 0 : this.poolAdded.sum() / minutes;
+    }
+
+    /**
+     * Gets the statistics for each kernel that has been used, by ID.
+     *
+     * @return The statistics
+     */
+    public Map<String, KernelStats> getStats() {
+        return new TreeMap<>(this.stats);
+    }
+
+    private KernelStats get(String kernelId) {
+        return this.stats.computeIfAbsent(kernelId, k -> new KernelStats());
+    }
+
+    private static void recordCheck(KernelStats kernelStats, boolean success, long nanos) {
+        kernelStats.checks.increment();
+        if (success) {
+            kernelStats.successfulChecks.increment();
+        }
+
+        kernelStats.checkNanos.add(nanos);
+        kernelStats.maxCheckNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public static final class KernelStats {
+
+        private final LongAdder searches = new LongAdder();
+        private final LongAdder successfulSearches = new LongAdder();
+        private final LongAdder successfulSearchNanos = new LongAdder();
+        private final LongAdder checks = new LongAdder();
+        private final LongAdder successfulChecks = new LongAdder();
+        private final LongAdder checkNanos = new LongAdder();
+        private final AtomicLong maxCheckNanos = new AtomicLong();
+
+        private KernelStats() {
+        }
+
+        public long getSearches() {
+            return this.searches.sum();
+        }
+
+        public long getSuccessfulSearches() {
+            return this.successfulSearches.sum();
+        }
+
+        public double getAverageSuccessfulSearchMillis() {
+            long count = getSuccessfulSearches();
+            return count == 0 ? 0 : this.successfulSearchNanos.sum() / (count * 1_000_000.0);
+        }
+
+        public long getChecks() {
+            return this.checks.sum();
+        }
+
+        public long getSuccessfulChecks() {
+            return this.successfulChecks.sum();
+        }
+
+        public double getAverageCheckMillis() {
+            long count = getChecks();
+            return count == 0 ? 0 : this.checkNanos.sum() / (count * 1_000_000.0);
+        }
+
+        public double getMaxCheckMillis() {
+            return this.maxCheckNanos.get() / 1_000_000.0;
+        }
+    }
+}
@@ -4,10 +4,13 @@
  */
 package io.github.nucleuspowered.nucleus.modules.rtp.services;
 
+import com.flowpowered.math.vector.Vector3d;
 import io.github.nucleuspowered.nucleus.api.module.rtp.NucleusRTPService;
 import io.github.nucleuspowered.nucleus.api.module.rtp.kernel.RTPKernel;
 import io.github.nucleuspowered.nucleus.api.module.rtp.kernel.RTPKernels;
 import io.github.nucleuspowered.nucleus.modules.rtp.config.RTPConfig;
+import io.github.nucleuspowered.nucleus.modules.rtp.kernels.DefaultKernel;
+import io.github.nucleuspowered.nucleus.modules.rtp.kernels.RTPSearch;
 import io.github.nucleuspowered.nucleus.modules.rtp.options.RTPOptionsBuilder;
 import io.github.nucleuspowered.nucleus.modules.rtp.registry.RTPRegistryModule;
 import io.github.nucleuspowered.nucleus.scaffold.service.ServiceBase;
@@ -17,10 +20,18 @@ import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.spongepowered.api.Sponge;
+import org.spongepowered.api.util.PositionOutOfBoundsException;
+import org.spongepowered.api.world.Location;
+import org.spongepowered.api.world.World;
 import org.spongepowered.api.world.storage.WorldProperties;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.WeakHashMap;
 
 import javax.inject.Inject;
@@ -28,10 +39,19 @@ import javax.inject.Inject;
 @APIService(NucleusRTPService.class)
 public class RTPService implements NucleusRTPService, IReloadableService.Reloadable, ServiceBase {
 
+    // Stops the pools spending the whole tick on worlds that are waiting for chunks.
+    private static final int MAX_POOL_CANDIDATES_PER_TICK = 64;
+
+    // The number of chunks each pool may be waiting on at once.
+    private static final int MAX_PENDING_CHUNK_LOADS = 4;
+
     private final Logger logger;
     private RTPConfig config = new RTPConfig();
     @Nullable private RTPKernel lazyLoadedKernel = null;
     private final Map<RTPConfig.PerWorldRTPConfig, RTPKernel> perWorldLazyLoadedKernel = new WeakHashMap<>();
+    private final RTPMetrics metrics = new RTPMetrics();
+    private final Map<UUID, RTPLocationPool> pools = new HashMap<>();
+    private int nextPoolWorld = 0;
 
     @Inject
     public RTPService(INucleusServiceCollection serviceCollection) {
@@ -92,6 +112,156 @@ public class RTPService implements NucleusRTPService, IReloadableService.Reloada
         }).orElseGet(this::getDefaultKernel);
     }
 
+    public RTPMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public int getPoolSize() {
+        return this.config.getPoolSize();
+    }
+
+    /**
+     * Gets the number of locations in the pool for each world that locations
+     * are pooled for, by world name.
+     *
+     * @return The number of locations
+     */
+    public Map<String, Integer> getPoolFill() {
+        Map<String, Integer> fill = new TreeMap<>();
+        for (World world : Sponge.getServer().getWorlds()) {
+            if (canPool(world)) {
+                RTPLocationPool pool = this.pools.get(world.getUniqueId());
+                fill.put(world.getName(), pool == null ? 0 : pool.size());
+            }
+        }
+
+        return fill;
+    }
+
+    /**
+     * Takes a location that was found ahead of time for the given world, if
+     * there is one. This must be called on the main thread.
+     *
+     * @param world The world
+     * @return The location, if any
+     */
+    public Optional<Location<World>> takePooledLocation(World world) {
+        if (!canPool(world)) {
+            return Optional.empty();
+        }
+
+        RTPLocationPool pool = this.pools.get(world.getUniqueId());
+        Optional<Vector3d> position = pool == null ? Optional.empty() : pool.take();
+        if (position.isPresent()) {
+            this.metrics.recordPoolHit();
+            return Optional.of(new Location<>(world, position.get()));
+        }
+
+        this.metrics.recordPoolMiss();
+        return Optional.empty();
+    }
+
+    /**
+     * Checks locations to add to the pools of worlds that are not full, until
+     * the configured time for each tick has been used up. A location in a
+     * chunk that is not loaded is kept until its chunk has been loaded off the
+     * main thread and checked then, rather than skipped, so that the pools are
+     * not biased towards where players are. This must be called on the main
+     * thread.
+     */
+    public void refillPools() {
+        int size = this.config.getPoolSize();
+        if (size <= 0) {
+            return;
+        }
+
+        List<World> toFill = new ArrayList<>();
+        for (World world : Sponge.getServer().getWorlds()) {
+            if (canPool(world)) {
+                RTPLocationPool pool = this.pools.get(world.getUniqueId());
+                if (pool == null || pool.size() < size) {
+                    toFill.add(world);
+                }
+            }
+        }
+
+        if (toFill.isEmpty()) {
+            return;
+        }
+
+        long tickStart = System.nanoTime();
+        long budget = this.config.getPoolNanosPerTick();
+        Map<UUID, RTPSearch> searches = new HashMap<>();
+        int candidates = 0;
+        do {
+            this.nextPoolWorld = (this.nextPoolWorld + 1) % toFill.size();
+            World world = toFill.get(this.nextPoolWorld);
+            DefaultKernel kernel = (DefaultKernel) getKernel(world.getProperties());
+            RTPSearch search = searches.computeIfAbsent(world.getUniqueId(),
+                    k -> kernel.createSearch(null, world, options(world.getProperties())));
+            RTPLocationPool pool = this.pools.computeIfAbsent(world.getUniqueId(), k -> new RTPLocationPool());
+            Vector3d candidate = pool.takeLoadedCandidate();
+            if (candidate == null) {
+                if (pool.pendingSize() >= MAX_PENDING_CHUNK_LOADS) {
+                    // Drawing more now would only queue up more chunks.
+                    continue;
+                }
+
+                List<Vector3d> drawn = search.getCandidates(1);
+                if (drawn.isEmpty()) {
+                    continue;
+                }
+
+                candidate = drawn.get(0);
+                if (!world.getChunkAtBlock(candidate.toInt()).isPresent()) {
+                    pool.addPending(candidate,
+                            world.loadChunkAsync(Sponge.getServer().getChunkLayout().forceToChunk(candidate.toInt()), true));
+                    continue;
+                }
+            }
+
+            try {
+                long start = System.nanoTime();
+                Optional<Location<World>> location = search.check(candidate);
+                this.metrics.recordPoolCheck(location.isPresent(), System.nanoTime() - start);
+                if (location.isPresent() && pool.size() < size) {
+                    pool.add(location.get().getPosition());
+                    this.metrics.recordPoolAdded();
+                }
+            } catch (PositionOutOfBoundsException ignore) {
+                // treat as fail.
+            }
+        } while (++candidates < MAX_POOL_CANDIDATES_PER_TICK && System.nanoTime() - tickStart < budget);
+    }
+
+    /**
+     * Drops any pooled location in the chunk that the given block is in,
+     * because the block has changed.
+     *
+     * @param world The {@link UUID} of the world
+     * @param x The x co-ordinate of the block
+     * @param z The z co-ordinate of the block
+     */
+    public void invalidatePooledChunk(UUID world, int x, int z) {
+        RTPLocationPool pool = this.pools.get(world);
+        if (pool != null) {
+            pool.invalidateChunk(x >> 4, z >> 4);
+        }
+    }
+
+    public void clearPool(UUID world) {
+        this.pools.remove(world);
+    }
+
+    private boolean canPool(World world) {
+        if (this.config.getPoolSize() <= 0) {
+            return false;
+        }
+
+        RTPKernel kernel = getKernel(world.getProperties());
+        return kernel instanceof DefaultKernel && ((DefaultKernel) kernel).canSearch() && ((DefaultKernel) kernel).canPool();
+    }
+
     @Override
     public void registerKernel(RTPKernel kernel) {
         RTPRegistryModule.getInstance().registerAdditionalCatalog(kernel);
@@ -101,5 +271,8 @@ public class RTPService implements NucleusRTPService, IReloadableService.Reloada
     public void onReload(INucleusServiceCollection serviceCollection) {
         // create the new RTPOptions
         this.config = serviceCollection.moduleDataProvider().getModuleConfig(RTPConfig.class);
+
+        // The kernels or options may have changed.
+        this.pools.clear();
     }
 }
@@ -10,8 +10,10 @@ import io.github.nucleuspowered.nucleus.api.EventContexts;
 import io.github.nucleuspowered.nucleus.api.teleport.data.NucleusTeleportHelperFilters;
 import io.github.nucleuspowered.nucleus.api.teleport.data.TeleportScanners;
 import io.github.nucleuspowered.nucleus.configurate.datatypes.LocationNode;
+import io.github.nucleuspowered.nucleus.datatypes.UserSession;
 import io.github.nucleuspowered.nucleus.modules.core.CoreKeys;
 import io.github.nucleuspowered.nucleus.modules.core.config.CoreConfig;
+import io.github.nucleuspowered.nucleus.modules.core.services.UserSessionService;
 import io.github.nucleuspowered.nucleus.modules.spawn.SpawnKeys;
 import io.github.nucleuspowered.nucleus.modules.spawn.SpawnPermissions;
 import io.github.nucleuspowered.nucleus.modules.spawn.config.GlobalSpawnConfig;
@@ -52,10 +54,12 @@ public class SpawnListener implements IReloadableService.Reloadable, ListenerBas
     private boolean checkSponge;
 
     private final INucleusServiceCollection serviceCollection;
+    private final UserSessionService sessionService;
 
     @Inject
     public SpawnListener(INucleusServiceCollection serviceCollection) {
         this.serviceCollection = serviceCollection;
+        this.sessionService = serviceCollection.getServiceUnchecked(UserSessionService.class);
     }
 
     @Listener
@@ -64,7 +68,10 @@ public class SpawnListener implements IReloadableService.Reloadable, ListenerBas
         IStorageManager storageManager = this.serviceCollection.storageManager();
         IMessageProviderService messageProviderService = this.serviceCollection.messageProvider();
         final boolean first;
-        if (!storageManager.getOrCreateUserOnThread(pl).get(CoreKeys.FIRST_JOIN_PROCESSED).orElse(false)) {
+        final boolean firstJoinProcessed = this.sessionService.get(pl)
+                .map(UserSession::isFirstJoinProcessed)
+                .orElseGet(() -> storageManager.getOrCreateUserOnThread(pl).get(CoreKeys.FIRST_JOIN_PROCESSED).orElse(false));
+        if (!firstJoinProcessed) {
             first = !this.checkSponge || !Util.hasPlayedBeforeSponge(loginEvent.getTargetUser());
         } else {
             first = false;
@@ -4,66 +4,248 @@
  */
 package io.github.nucleuspowered.nucleus.services.impl.cooldown;
 
+import com.google.common.reflect.TypeToken;
+import io.github.nucleuspowered.nucleus.modules.core.config.CoreConfig;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import io.github.nucleuspowered.nucleus.services.interfaces.IConfigurateHelper;
 import io.github.nucleuspowered.nucleus.services.interfaces.ICooldownService;
+import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.ConfigurationOptions;
+import ninja.leaping.configurate.SimpleConfigurationNode;
+import ninja.leaping.configurate.gson.GsonConfigurationLoader;
+import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import org.spongepowered.api.util.Identifiable;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
+/**
+ * Holds cooldowns against a key (normally a command) and a UUID.
+ *
+ * <p>Keys are interned to an integer when first seen and cooldowns hold the
+ * time they end in epoch milliseconds. Lookups treat an ended cooldown as
+ * absent, and ended cooldowns are removed from memory by
+ * {@link #expireCooldowns()} using a timing wheel, so that no lookup has to
+ * look at any cooldown but its own.</p>
+ */
 @Singleton
-public class CooldownService implements ICooldownService {
-
-    private final Map<DualKey, Instant> cooldowns = new HashMap<>();
-
-    private Map<DualKey, Instant> cleanUp() {
-        Instant now = Instant.now();
-        Collection<DualKey> keys = this.cooldowns.entrySet()
-                .stream()
-                .filter(x -> x.getValue().isBefore(now))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        for (DualKey key : keys) {
-            this.cooldowns.remove(key);
+public class CooldownService implements ICooldownService, IReloadableService.DataLocationReloadable {
+
+    // Each slot holds the cooldowns that end in the same second, modulo the
+    // number of slots. Cooldowns longer than the wheel are put back when
+    // their slot comes round before they have ended.
+    private static final int WHEEL_SLOTS = 64;
+
+    private final Map<String, Integer> keyIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> keyNames = new ConcurrentHashMap<>();
+    private final AtomicInteger nextKeyId = new AtomicInteger();
+
+    private final Map<CooldownKey, Cooldown> cooldowns = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private final Queue<Cooldown>[] wheel = new Queue[WHEEL_SLOTS];
+    private final Object wheelLock = new Object();
+    private long lastExpiredSecond = System.currentTimeMillis() / 1000;
+
+    private final INucleusServiceCollection serviceCollection;
+    private final Supplier<Path> dataDirectory;
+    private final IConfigurateHelper configurateHelper;
+
+    @Inject
+    public CooldownService(INucleusServiceCollection serviceCollection) {
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            this.wheel[i] = new ConcurrentLinkedQueue<>();
         }
 
-        return this.cooldowns;
+        this.serviceCollection = serviceCollection;
+        this.dataDirectory = serviceCollection.dataDir();
+        this.configurateHelper = serviceCollection.configurateHelper();
+        serviceCollection.reloadableService().registerDataFileReloadable(this);
+        load();
     }
 
     @Override public boolean hasCooldown(String key, Identifiable identifiable) {
-        return cleanUp().containsKey(new DualKey(key, identifiable.getUniqueId()));
+        return getActive(key, identifiable.getUniqueId(), System.currentTimeMillis()) != null;
     }
 
     @Override public Optional<Duration> getCooldown(String key, Identifiable identifiable) {
-        return Optional.ofNullable(cleanUp()
-                .get(new DualKey(key, identifiable.getUniqueId())))
-                .map(x -> Duration.between(Instant.now(), x));
+        long now = System.currentTimeMillis();
+        Cooldown cooldown = getActive(key, identifiable.getUniqueId(), now);
+        return cooldown == null ? Optional.empty() : Optional.of(Duration.ofMillis(cooldown.endMillis - now));
     }
 
     @Override public void setCooldown(String key, Identifiable identifiable, Duration cooldownLength) {
-        this.cooldowns.put(new DualKey(key, identifiable.getUniqueId()), Instant.now().plus(cooldownLength));
+        put(new CooldownKey(intern(key), identifiable.getUniqueId()), System.currentTimeMillis() + cooldownLength.toMillis());
     }
 
     @Override public void clearCooldown(String key, Identifiable identifiable) {
-        this.cooldowns.remove(new DualKey(key, identifiable.getUniqueId()));
+        Integer keyId = this.keyIds.get(key);
+        if (keyId != null) {
+            // Anything left in the wheel will not match the map and so is ignored.
+            this.cooldowns.remove(new CooldownKey(keyId, identifiable.getUniqueId()));
+        }
     }
 
-    private static class DualKey {
+    @Override public void expireCooldowns() {
+        long now = System.currentTimeMillis();
+        long currentSecond = now / 1000;
+        synchronized (this.wheelLock) {
+            // If we have fallen more than a full turn behind, every slot needs a look.
+            long from = Math.max(this.lastExpiredSecond + 1, currentSecond - WHEEL_SLOTS + 1);
+            for (long second = from; second <= currentSecond; second++) {
+                Queue<Cooldown> slot = this.wheel[slotFor(second)];
+                for (int i = slot.size(); i > 0; i--) {
+                    Cooldown cooldown = slot.poll();
+                    if (cooldown == null) {
+                        break;
+                    } else if (cooldown.endMillis <= now) {
+                        this.cooldowns.remove(cooldown.key, cooldown);
+                    } else if (this.cooldowns.get(cooldown.key) == cooldown) {
+                        // Not this time round.
+                        slot.add(cooldown);
+                    }
+                }
+            }
 
-        private final String key;
-        private final UUID uuid;
+            this.lastExpiredSecond = currentSecond;
+        }
+    }
 
-        private DualKey(String key, UUID uuid) {
-            this.key = key;
-            this.uuid = uuid;
+    @Override public void save() {
+        // Only cooldowns with more than this many seconds left are kept, if any.
+        long persistAfter = this.serviceCollection.moduleDataProvider().getModuleConfig(CoreConfig.class).getPersistCooldownsLongerThan();
+        Map<String, Map<UUID, Long>> toSave = new HashMap<>();
+        if (persistAfter > 0) {
+            long persistFrom = System.currentTimeMillis() + persistAfter * 1000;
+            for (Cooldown cooldown : this.cooldowns.values()) {
+                if (cooldown.endMillis >= persistFrom) {
+                    toSave.computeIfAbsent(this.keyNames.get(cooldown.key.keyId), k -> new HashMap<>())
+                            .put(cooldown.key.getUniqueId(), cooldown.endMillis);
+                }
+            }
+        }
+
+        try {
+            Path file = dataFile();
+            if (toSave.isEmpty()) {
+                Files.deleteIfExists(file);
+                return;
+            }
+
+            ConfigurationNode node = SimpleConfigurationNode.root(this.configurateHelper.setOptions(ConfigurationOptions.defaults()));
+            node.setValue(new TypeToken<Map<String, Map<UUID, Long>>>() {}, toSave);
+            Files.createDirectories(file.getParent());
+            createLoader(file).save(node);
+        } catch (IOException | ObjectMappingException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override public void onDataFileLocationChange(INucleusServiceCollection serviceCollection) {
+        load();
+    }
+
+    private void load() {
+        Path file = dataFile();
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            Map<String, Map<UUID, Long>> loaded = createLoader(file).load()
+                    .getValue(new TypeToken<Map<String, Map<UUID, Long>>>() {});
+            if (loaded != null) {
+                loaded.forEach((key, entries) -> {
+                    int keyId = intern(key);
+                    entries.forEach((uuid, endMillis) -> {
+                        if (endMillis > now) {
+                            put(new CooldownKey(keyId, uuid), endMillis);
+                        }
+                    });
+                });
+            }
+        } catch (IOException | ObjectMappingException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Cooldown getActive(String key, UUID uuid, long now) {
+        Integer keyId = this.keyIds.get(key);
+        if (keyId == null) {
+            return null;
+        }
+
+        CooldownKey cooldownKey = new CooldownKey(keyId, uuid);
+        Cooldown cooldown = this.cooldowns.get(cooldownKey);
+        if (cooldown != null && cooldown.endMillis <= now) {
+            this.cooldowns.remove(cooldownKey, cooldown);
+            return null;
+        }
+
+        return cooldown;
+    }
+
+    private void put(CooldownKey key, long endMillis) {
+        Cooldown cooldown = new Cooldown(key, endMillis);
+        this.cooldowns.put(key, cooldown);
+        this.wheel[slotFor(endMillis / 1000)].add(cooldown);
+    }
+
+    private int intern(String key) {
+        return this.keyIds.computeIfAbsent(key, k -> {
+            int id = this.nextKeyId.getAndIncrement();
+            this.keyNames.put(id, k);
+            return id;
+        });
+    }
+
+    private static int slotFor(long second) {
+        return (int) (second % WHEEL_SLOTS);
+    }
+
+    private Path dataFile() {
+        return this.dataDirectory.get().resolve("cooldowns.json");
+    }
+
+    private GsonConfigurationLoader createLoader(Path file) {
+        return GsonConfigurationLoader.builder()
+                .setPath(file)
+                .setDefaultOptions(this.configurateHelper.setOptions(ConfigurationOptions.defaults()))
+                .build();
+    }
+
+    private static final class CooldownKey {
+
+        private final int keyId;
+        private final long mostSignificantBits;
+        private final long leastSignificantBits;
+        private final int hashCode;
+
+        private CooldownKey(int keyId, UUID uuid) {
+            this.keyId = keyId;
+            this.mostSignificantBits = uuid.getMostSignificantBits();
+            this.leastSignificantBits = uuid.getLeastSignificantBits();
+            this.hashCode = 31 * keyId + uuid.hashCode();
+        }
+
+        private UUID getUniqueId() {
+            return new UUID(this.mostSignificantBits, this.leastSignificantBits);
         }
 
         @Override public boolean equals(Object o) {
@@ -73,13 +255,26 @@ public class CooldownService implements ICooldownService {
             if (o == null || getClass() != o.getClass()) {
                 return false;
             }
-            DualKey dualKey = (DualKey) o;
-            return Objects.equals(key, dualKey.key) &&
-                    Objects.equals(uuid, dualKey.uuid);
+            CooldownKey that = (CooldownKey) o;
+            return this.keyId == that.keyId
+                    && this.mostSignificantBits == that.mostSignificantBits
+                    && this.leastSignificantBits == that.leastSignificantBits;
         }
 
         @Override public int hashCode() {
-            return Objects.hash(key, uuid.getLeastSignificantBits(), uuid.getMostSignificantBits());
+            return this.hashCode;
+        }
+    }
+
+    // Compared by identity, so that an entry is only removed if it has not been replaced.
+    private static final class Cooldown {
+
+        private final CooldownKey key;
+        private final long endMillis;
+
+        private Cooldown(CooldownKey key, long endMillis) {
+            this.key = key;
+            this.endMillis = endMillis;
         }
     }
 }
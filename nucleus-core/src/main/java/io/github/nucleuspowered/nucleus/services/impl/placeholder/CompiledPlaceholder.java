@@ -0,0 +1,63 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.services.impl.placeholder;
+
+import com.google.common.collect.ImmutableList;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.TextRepresentable;
+import org.spongepowered.api.text.placeholder.PlaceholderContext;
+import org.spongepowered.api.text.placeholder.PlaceholderParser;
+
+import java.util.function.Function;
+
+/**
+ * A placeholder token that has been parsed into the parser, argument and
+ * modifiers that it refers to, so that it only needs to be bound to a source
+ * each time it is used.
+ */
+final class CompiledPlaceholder {
+
+    private final PlaceholderParser parser;
+    @Nullable private final String argument;
+    private final ImmutableList<Function<Text, Text>> modifiers;
+    private final boolean requiresSource;
+    private final boolean sourceIndependent;
+
+    CompiledPlaceholder(
+            final PlaceholderParser parser,
+            @Nullable final String argument,
+            final ImmutableList<Function<Text, Text>> modifiers,
+            final boolean requiresSource,
+            final boolean sourceIndependent) {
+        this.parser = parser;
+        this.argument = argument;
+        this.modifiers = modifiers;
+        this.requiresSource = requiresSource;
+        this.sourceIndependent = sourceIndependent;
+    }
+
+    PlaceholderParser getParser() {
+        return this.parser;
+    }
+
+    boolean isSourceIndependent() {
+        return this.sourceIndependent;
+    }
+
+    TextRepresentable bind(@Nullable final CommandSource commandSource) {
+        if (this.requiresSource && commandSource == null) {
+            return Text.EMPTY;
+        }
+
+        final PlaceholderContext context = PlaceholderContext.builder()
+                .setAssociatedObject(commandSource)
+                .setArgumentString(this.argument)
+                .build();
+        return new NucleusPlaceholderText(context, this.parser, this.modifiers);
+    }
+
+}
@@ -4,6 +4,8 @@
  */
 package io.github.nucleuspowered.nucleus.services.impl.placeholder;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import io.github.nucleuspowered.nucleus.Util;
@@ -30,9 +32,8 @@ import org.spongepowered.api.text.placeholder.PlaceholderText;
 import org.spongepowered.api.world.Locatable;
 import org.spongepowered.api.world.World;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -54,6 +55,12 @@ public class PlaceholderService implements IPlaceholderService, IInitService {
     private final Map<String, PlaceholderMetadata> parsers = new HashMap<>();
     private final PluginContainer pluginContainer;
 
+    // Tokens come from templates, so the same few are parsed over and over.
+    private final Cache<String, CompiledPlaceholder> compiledPlaceholders = Caffeine.newBuilder().maximumSize(2048).build();
+
+    // Parsers that give the same result for every source, so can be parsed once when sending to many people.
+    private final Set<PlaceholderParser> sourceIndependentParsers = new HashSet<>();
+
     static {
         SEPARATOR = buildModifiers();
     }
@@ -77,6 +84,7 @@ public class PlaceholderService implements IPlaceholderService, IInitService {
     @Override
     public void init(final INucleusServiceCollection serviceCollection) {
         // player, variables, map?
+        this.sourceIndependentParsers.add(this.emptyParser);
         registerToken("empty", this.emptyParser, false);
         NamePlaceholder normalName = new NamePlaceholder(
                 serviceCollection.playerDisplayNameService(),
@@ -106,13 +114,13 @@ public class PlaceholderService implements IPlaceholderService, IInitService {
         registerToken("prefix", new NamedOptionPlaceholder(permissionService, "prefix"));
         registerToken("suffix", new NamedOptionPlaceholder(permissionService, "suffix"));
 
-        registerToken("maxplayers", PlaceholderParser.builder()
+        registerSourceIndependentToken("maxplayers", PlaceholderParser.builder()
                 .plugin(this.pluginContainer)
                 .id("maxplayers")
                 .name("Nucleus Max Players parser")
                 .parser(p -> Text.of(Sponge.getServer().getMaxPlayers()))
                 .build());
-        registerToken("onlineplayers", PlaceholderParser.builder()
+        registerSourceIndependentToken("onlineplayers", PlaceholderParser.builder()
                         .plugin(this.pluginContainer)
                         .id("onlineplayers")
                         .name("Nucleus Online Player Count parser")
@@ -133,7 +141,7 @@ public class PlaceholderService implements IPlaceholderService, IInitService {
                                 Text.of(Util.getTimeFromTicks(serviceCollection.messageProvider(), getWorld(placeholder).getProperties().getWorldTime())))
                         .build());
 
-        registerToken("uniquevisitor",
+        registerSourceIndependentToken("uniquevisitor",
                 PlaceholderParser.builder()
                         .plugin(this.pluginContainer)
                         .id("uniquevisitor")
@@ -158,44 +166,66 @@ public class PlaceholderService implements IPlaceholderService, IInitService {
 
     @Override
     public TextRepresentable parse(@Nullable CommandSource commandSource, String input) {
+        return getCompiled(input).bind(commandSource);
+    }
+
+    @Override
+    public boolean isSourceIndependent(String token) {
+        return getCompiled(token).isSourceIndependent();
+    }
+
+    private CompiledPlaceholder getCompiled(String input) {
+        CompiledPlaceholder compiled = this.compiledPlaceholders.getIfPresent(input);
+        if (compiled == null) {
+            compiled = compile(input);
+            // Parsers from the Sponge registry may turn up later, so don't remember that we couldn't find one.
+            if (compiled.getParser() != this.emptyParser || !isRegistryToken(input)) {
+                this.compiledPlaceholders.put(input, compiled);
+            }
+        }
+
+        return compiled;
+    }
+
+    private CompiledPlaceholder compile(String input) {
         String token = input.toLowerCase().trim().replace("{{", "").replace("}}", "");
         final Matcher m = SUFFIX_PATTERN.matcher(token);
-        final List<Function<Text, Text>> modifiersCollection;
+        final ImmutableList<Function<Text, Text>> modifiersCollection;
         if (m.find(0)) {
             String match = m.group(1).toLowerCase();
-            modifiersCollection = new ArrayList<>();
+            ImmutableList.Builder<Function<Text, Text>> builder = ImmutableList.builder();
             for (TextModifiers modifier : TextModifiers.values()) {
                 if (match.contains(modifier.getKey())) {
-                    modifiersCollection.add(modifier);
+                    builder.add(modifier);
                 }
             }
 
-            token = token.replaceAll(SUFFIX_PATTERN.pattern(), "");
+            modifiersCollection = builder.build();
+            token = token.substring(0, m.start());
         } else {
             modifiersCollection = ImmutableList.of();
         }
 
-        final PlaceholderParser parser;
-        final PlaceholderContext context;
         if (token.startsWith("o:")) {
-            if (commandSource == null) {
-                return Text.EMPTY;
-            }
             // option
-            parser = this.optionParser;
-            context = contextForSubjectAndOption(commandSource, token.substring(2));
-        } else {
-            final String[] s = token.split("\\|", 2);
-            final String tokenIn = s[0].toLowerCase();
-            final String arg = s.length == 2 ? s[1] : null;
-            context = PlaceholderContext.builder()
-                    .setAssociatedObject(commandSource)
-                    .setArgumentString(arg)
-                    .build();
-            parser = getParser(tokenIn).orElse(this.emptyParser);
+            return new CompiledPlaceholder(this.optionParser, token.substring(2), modifiersCollection, true, false);
         }
 
-        return new NucleusPlaceholderText(context, parser, modifiersCollection);
+        final String[] s = token.split("\\|", 2);
+        final String tokenIn = s[0].toLowerCase();
+        final String arg = s.length == 2 ? s[1] : null;
+        final PlaceholderParser parser = getParser(tokenIn).orElse(this.emptyParser);
+        return new CompiledPlaceholder(parser, arg, modifiersCollection, false, this.sourceIndependentParsers.contains(parser));
+    }
+
+    private static boolean isRegistryToken(String input) {
+        String token = input.toLowerCase().trim().replace("{{", "").replace("}}", "");
+        return !token.startsWith("o:") && token.indexOf(':') >= 0;
+    }
+
+    private void registerSourceIndependentToken(String tokenName, PlaceholderParser parser) {
+        this.sourceIndependentParsers.add(parser);
+        registerToken(tokenName, parser);
     }
 
     @Override
@@ -212,6 +242,8 @@ public class PlaceholderService implements IPlaceholderService, IInitService {
         String token = tokenName.toLowerCase();
         if (!this.parsers.containsKey(token)) {
             this.parsers.put(token, new PlaceholderMetadata(token, parser, document));
+            // Anything that referred to this token before will have been compiled to the empty parser.
+            this.compiledPlaceholders.invalidateAll();
         } else {
             throw new IllegalStateException("Token " + tokenName.toLowerCase() + " has already been registered.");
         }
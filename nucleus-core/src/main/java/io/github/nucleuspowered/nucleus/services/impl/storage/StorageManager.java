@@ -5,7 +5,11 @@
 package io.github.nucleuspowered.nucleus.services.impl.storage;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.github.nucleuspowered.nucleus.guice.DataDirectory;
+import io.github.nucleuspowered.nucleus.modules.core.config.CoreConfig;
+import io.github.nucleuspowered.nucleus.modules.core.config.StorageConfig;
+import io.github.nucleuspowered.nucleus.services.IInitService;
 import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataaccess.IConfigurateBackedDataTranslator;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.GeneralDataObject;
@@ -17,6 +21,8 @@ import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modula
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.standard.IKitDataObject;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.standard.KitDataObject;
 import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.FlatFileStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.JournalledStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.LogStructuredStorageRepositoryFactory;
 import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IUserQueryObject;
 import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IWorldQueryObject;
 import io.github.nucleuspowered.nucleus.services.impl.storage.registry.IStorageRepositoryFactoryRegistryModule;
@@ -29,7 +35,13 @@ import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
 import io.github.nucleuspowered.nucleus.services.interfaces.IStorageManager;
 import io.github.nucleuspowered.storage.dataaccess.IDataTranslator;
 import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import io.github.nucleuspowered.storage.persistence.IStorageRepositoryFactory;
 import io.github.nucleuspowered.storage.services.IStorageService;
+import io.github.nucleuspowered.storage.services.MainThreadProfiler;
+import io.github.nucleuspowered.storage.services.ServicesUtil;
+import io.github.nucleuspowered.storage.services.ShutdownFlush;
+import io.github.nucleuspowered.storage.services.StorageExecutor;
+import io.github.nucleuspowered.storage.util.ThrownBiConsumer;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.ConfigurationOptions;
 import ninja.leaping.configurate.SimpleConfigurationNode;
@@ -37,8 +49,12 @@ import org.slf4j.Logger;
 import org.spongepowered.api.plugin.PluginContainer;
 
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
@@ -46,14 +62,25 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 @Singleton
-public final class StorageManager implements IStorageManager, IReloadableService.Reloadable {
+public final class StorageManager implements IStorageManager, IReloadableService.Reloadable, IInitService {
+
+    private static final String USER_JOURNAL_NAME = "user";
+    private static final String WORLD_JOURNAL_NAME = "world";
 
     private final FlatFileStorageRepositoryFactory flatFileStorageRepositoryFactory;
+    private final JournalledStorageRepositoryFactory journalledStorageRepositoryFactory;
+    private final LogStructuredStorageRepositoryFactory logStructuredStorageRepositoryFactory;
+    private final IStorageRepositoryFactoryRegistryModule repositoryFactoryRegistryModule;
+    private volatile IStorageRepositoryFactory<JsonObject> repositoryFactory;
     private final IConfigurateHelper configurateHelper;
     private final IStorageService.SingleCached<IGeneralDataObject> generalService;
     private final UserService userService;
     private final WorldService worldService;
     private final IStorageService.SingleCached<IKitDataObject> kitsService;
+    private final Logger logger;
+    private final Supplier<Path> dataDirectory;
+    @Nullable private StorageConfig.ShutdownFlushConfig shutdownFlushConfig;
+    private CompletableFuture<Void> storeSwitch = CompletableFuture.completedFuture(null);
 
     @Inject
     public StorageManager(@DataDirectory Supplier<Path> dataDirectory,
@@ -62,8 +89,19 @@ public final class StorageManager implements IStorageManager, IReloadableService
             PluginContainer pluginContainer,
             IDataVersioning dataVersioning) {
         this.flatFileStorageRepositoryFactory = new FlatFileStorageRepositoryFactory(dataDirectory, logger);
-        new IStorageRepositoryFactoryRegistryModule(this.flatFileStorageRepositoryFactory);
+        this.journalledStorageRepositoryFactory =
+                new JournalledStorageRepositoryFactory(dataDirectory, logger, this.flatFileStorageRepositoryFactory);
+        this.logStructuredStorageRepositoryFactory = new LogStructuredStorageRepositoryFactory(dataDirectory, logger);
+        this.repositoryFactory = this.flatFileStorageRepositoryFactory;
+        this.repositoryFactoryRegistryModule = new IStorageRepositoryFactoryRegistryModule(
+                this.flatFileStorageRepositoryFactory,
+                this.logStructuredStorageRepositoryFactory,
+                this.journalledStorageRepositoryFactory);
+        // Registered here so that the store can be selected before the registries are loaded.
+        this.repositoryFactoryRegistryModule.registerModuleDefaults();
         this.configurateHelper = configurateHelper;
+        this.logger = logger;
+        this.dataDirectory = dataDirectory;
         this.userService = new UserService(this, pluginContainer, dataVersioning);
         this.worldService = new WorldService(this, pluginContainer, dataVersioning);
         this.generalService = new SingleCachedService<>(
@@ -81,16 +119,16 @@ public final class StorageManager implements IStorageManager, IReloadableService
     }
 
     @Nullable
-    private IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> userRepository;
+    private volatile IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> userRepository;
 
     @Nullable
-    private IStorageRepository.Keyed<UUID, IWorldQueryObject, JsonObject> worldRepository;
+    private volatile IStorageRepository.Keyed<UUID, IWorldQueryObject, JsonObject> worldRepository;
 
     @Nullable
-    private IStorageRepository.Single<JsonObject> generalRepository;
+    private volatile IStorageRepository.Single<JsonObject> generalRepository;
 
     @Nullable
-    private IStorageRepository.Single<JsonObject> kitsRepository;
+    private volatile IStorageRepository.Single<JsonObject> kitsRepository;
 
     private final IConfigurateBackedDataTranslator<IUserDataObject> userDataAccess = new IConfigurateBackedDataTranslator<IUserDataObject>() {
         @Override public ConfigurationNode createNewNode() {
@@ -176,17 +214,23 @@ public final class StorageManager implements IStorageManager, IReloadableService
     @Override
     public IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> getUserRepository() {
         if (this.userRepository == null) {
-            // fallback to flat file
-            this.userRepository = this.flatFileStorageRepositoryFactory.userRepository();
+            this.userRepository = this.repositoryFactory.userRepository();
+            if (this.userRepository == null) {
+                // fallback to flat file
+                this.userRepository = this.flatFileStorageRepositoryFactory.userRepository();
+            }
         }
         return this.userRepository;
     }
 
     @Override
     public IStorageRepository.Keyed<UUID, IWorldQueryObject, JsonObject> getWorldRepository() {
-        if (this.worldRepository== null) {
-            // fallback to flat file
-            this.worldRepository = this.flatFileStorageRepositoryFactory.worldRepository();
+        if (this.worldRepository == null) {
+            this.worldRepository = this.repositoryFactory.worldRepository();
+            if (this.worldRepository == null) {
+                // fallback to flat file
+                this.worldRepository = this.flatFileStorageRepositoryFactory.worldRepository();
+            }
         }
         return this.worldRepository;
     }
@@ -194,16 +238,22 @@ public final class StorageManager implements IStorageManager, IReloadableService
     @Override
     public IStorageRepository.Single<JsonObject> getGeneralRepository() {
         if (this.generalRepository == null) {
-            // fallback to flat file
-            this.generalRepository = this.flatFileStorageRepositoryFactory.generalRepository();
+            this.generalRepository = this.repositoryFactory.generalRepository();
+            if (this.generalRepository == null) {
+                // fallback to flat file
+                this.generalRepository = this.flatFileStorageRepositoryFactory.generalRepository();
+            }
         }
         return this.generalRepository;
     }
 
     @Override public IStorageRepository.Single<JsonObject> getKitsRepository() {
         if (this.kitsRepository == null) {
-            // fallback to flat file
-            this.kitsRepository = this.flatFileStorageRepositoryFactory.kitsRepository();
+            this.kitsRepository = this.repositoryFactory.kitsRepository();
+            if (this.kitsRepository == null) {
+                // fallback to flat file
+                this.kitsRepository = this.flatFileStorageRepositoryFactory.kitsRepository();
+            }
         }
         return this.kitsRepository;
     }
@@ -225,32 +275,190 @@ public final class StorageManager implements IStorageManager, IReloadableService
         return CompletableFuture.allOf(a, b, c, d);
     }
 
+    @Override public void stopWriteBehind() {
+        this.userService.stopWriteBehind();
+        this.worldService.stopWriteBehind();
+    }
+
+    @Override public boolean isShutdownFlushEnabled() {
+        final StorageConfig.ShutdownFlushConfig config = this.shutdownFlushConfig;
+        return config != null && config.isEnabled();
+    }
+
+    @Override public boolean flushForShutdown() {
+        final StorageConfig.ShutdownFlushConfig config = this.shutdownFlushConfig;
+        if (config == null || !config.isEnabled()) {
+            return false;
+        }
+
+        final ShutdownFlush flush = new ShutdownFlush(
+                this.logger,
+                config.getThreads(),
+                TimeUnit.SECONDS.toMillis(config.getDeadlineSeconds()),
+                getShutdownJournal());
+        flush.add(USER_JOURNAL_NAME,
+                this.userService.takeDirtyForShutdown(),
+                this.userService::writeForShutdown,
+                x -> this.userDataAccess.toDataAccessObject(x).toString());
+        flush.add(WORLD_JOURNAL_NAME,
+                this.worldService.takeDirtyForShutdown(),
+                this.worldService::writeForShutdown,
+                x -> this.worldDataAccess.toDataAccessObject(x).toString());
+        flush.run();
+
+        // One sync per store for everything that was just written.
+        getUserRepository().sync();
+        getWorldRepository().sync();
+        return true;
+    }
+
+    @Override public void stopExecutor() {
+        final StorageExecutor executor = ServicesUtil.setExecutor(null);
+        if (executor != null && !executor.shutdown(30, TimeUnit.SECONDS)) {
+            this.logger.warn("Timed out waiting for Nucleus storage operations to complete.");
+        }
+    }
+
+    @Override
+    public void init(INucleusServiceCollection serviceCollection) {
+        serviceCollection.reloadableService().registerReloadable(this);
+    }
+
+    @Override
+    public void prepareForStart(INucleusServiceCollection serviceCollection) {
+        // Nothing has been loaded yet, so this is quick, and the store has to be settled before the journal is replayed.
+        applyConfig(serviceCollection).join();
+        recoverShutdownJournal();
+    }
+
     @Override
     public void onReload(INucleusServiceCollection serviceCollection) {
-        // TODO: Data registry
+        // Not waited on, as moving everything to another store shouldn't hold up the server.
+        applyConfig(serviceCollection).whenComplete((x, t) -> {
+            if (t != null) {
+                this.logger.error("Could not switch the Nucleus data store, \"{}\" is still in use.", this.repositoryFactory.getId());
+                t.printStackTrace();
+            }
+        });
+    }
+
+    private CompletableFuture<Void> applyConfig(INucleusServiceCollection serviceCollection) {
+        final StorageConfig storageConfig = serviceCollection.moduleDataProvider().getModuleConfig(CoreConfig.class).getStorageConfig();
+        final StorageConfig.WriteBehindConfig writeBehindConfig = storageConfig.getWriteBehindConfig();
+        this.userService.setWriteBehind(
+                writeBehindConfig.isEnabled(), writeBehindConfig.getMaxLatencyMillis(), writeBehindConfig.getMaxBatchSize());
+        this.worldService.setWriteBehind(
+                writeBehindConfig.isEnabled(), writeBehindConfig.getMaxLatencyMillis(), writeBehindConfig.getMaxBatchSize());
+
+        final StorageConfig.ExecutorConfig executorConfig = storageConfig.getExecutorConfig();
+        final StorageExecutor current = ServicesUtil.getExecutor().orElse(null);
+        if (current == null
+                || current.getWorkers() != executorConfig.getWorkerThreads()
+                || current.getQueueSize() != executorConfig.getQueueSize()) {
+            final StorageExecutor previous =
+                    ServicesUtil.setExecutor(new StorageExecutor(executorConfig.getWorkerThreads(), executorConfig.getQueueSize()));
+            if (previous != null) {
+                // Anything already queued on the old executor will still run.
+                previous.shutdown();
+            }
+        }
+
+        if (!storageConfig.isProfileMainThread()) {
+            ServicesUtil.setProfiler(null);
+        } else if (!ServicesUtil.getProfiler().isPresent()) {
+            ServicesUtil.setProfiler(new MainThreadProfiler());
+        }
+
+        this.flatFileStorageRepositoryFactory.setCompact(storageConfig.isCompactJson());
+        final StorageConfig.JournalConfig journalConfig = storageConfig.getJournalConfig();
+        this.journalledStorageRepositoryFactory.setCheckpointSettings(
+                TimeUnit.SECONDS.toMillis(journalConfig.getCheckpointIntervalSeconds()),
+                journalConfig.getMaxJournalSizeMb() * 1024L * 1024L);
+
+        this.shutdownFlushConfig = storageConfig.getShutdownFlushConfig();
+
+        final IStorageRepositoryFactory<JsonObject> factory = getRepositoryFactory(storageConfig.getDataStore(), serviceCollection.logger());
+        // After any switch that is still going, so that two reloads in quick succession are applied in order.
+        final CompletableFuture<Void> result = this.storeSwitch.thenCompose(x -> switchRepositoryFactory(factory));
+        this.storeSwitch = result.handle((x, t) -> null);
+        return result;
+    }
+
+    private CompletableFuture<Void> switchRepositoryFactory(IStorageRepositoryFactory<JsonObject> factory) {
+        if (factory == this.repositoryFactory) {
+            retireUnusedStores();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Make sure everything is in the old store before we move away from it. If that fails, the old store is kept.
+        return saveAndInvalidateAllCaches().thenRun(() -> {
+            shutdownRepositories();
+            this.repositoryFactory = factory;
+            retireUnusedStores();
+        });
+    }
+
+    private void retireUnusedStores() {
+        if (this.repositoryFactory != this.logStructuredStorageRepositoryFactory) {
+            // The data files won't see anything saved from now on, so must not be used again if the store is switched back.
+            this.logStructuredStorageRepositoryFactory.retire();
+        }
+
+        if (this.repositoryFactory != this.journalledStorageRepositoryFactory) {
+            // Likewise, anything left in the journals must not be replayed over what is saved from now on.
+            this.journalledStorageRepositoryFactory.retire();
+        }
+    }
+
+    private void recoverShutdownJournal() {
+        // Through the services, so that nothing they have in memory for these keys outlives the restored data.
+        final Map<String, ThrownBiConsumer<UUID, String, Exception>> replayers = new HashMap<>();
+        replayers.put(USER_JOURNAL_NAME, (key, data) ->
+                this.userService.restore(key, this.userDataAccess.fromDataAccessObject(new JsonParser().parse(data).getAsJsonObject())));
+        replayers.put(WORLD_JOURNAL_NAME, (key, data) ->
+                this.worldService.restore(key, this.worldDataAccess.fromDataAccessObject(new JsonParser().parse(data).getAsJsonObject())));
+        ShutdownFlush.recover(this.logger, getShutdownJournal(), replayers);
+    }
+
+    private Path getShutdownJournal() {
+        return this.dataDirectory.get().resolve("shutdown-recovery.dat");
+    }
+
+    @SuppressWarnings("unchecked")
+    private IStorageRepositoryFactory<JsonObject> getRepositoryFactory(final String id, final Logger logger) {
+        final Optional<IStorageRepositoryFactory> factory = this.repositoryFactoryRegistryModule.getById(id);
+        if (factory.isPresent()) {
+            return (IStorageRepositoryFactory<JsonObject>) factory.get();
+        }
+
+        logger.warn("The data store \"{}\" does not exist, using \"{}\" instead.", id, this.flatFileStorageRepositoryFactory.getId());
+        return this.flatFileStorageRepositoryFactory;
+    }
+
+    private void shutdownRepositories() {
         if (this.generalRepository != null) {
             this.generalRepository.shutdown();
         }
 
-        this.generalRepository = null; // TODO: config
+        this.generalRepository = null;
 
         if (this.worldRepository != null) {
             this.worldRepository.shutdown();
         }
 
-        this.worldRepository = null; // TODO: config
+        this.worldRepository = null;
 
         if (this.userRepository != null) {
             this.userRepository.shutdown();
         }
 
-        this.userRepository = null; // TODO: config
+        this.userRepository = null;
 
         if (this.kitsRepository != null) {
             this.kitsRepository.shutdown();
         }
 
-        this.kitsRepository = null; // TODO: config
+        this.kitsRepository = null;
     }
 
 }
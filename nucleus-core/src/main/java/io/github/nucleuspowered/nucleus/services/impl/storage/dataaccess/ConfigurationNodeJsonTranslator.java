@@ -8,9 +8,13 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.ValueType;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +29,133 @@ public class ConfigurationNodeJsonTranslator {
         return nodeToPopulate;
     }
 
+    /**
+     * Populates the node with the JSON object that the reader is at, without
+     * building a {@link JsonObject} first. The reader is made lenient.
+     *
+     * @param nodeToPopulate The node
+     * @param reader The reader
+     * @return The node
+     * @throws IOException if the JSON could not be read
+     */
+    public ConfigurationNode from(ConfigurationNode nodeToPopulate, JsonReader reader) throws IOException {
+        // Lenient, as JsonParser is, so that files the tree path accepts (such as those with
+        // NaN in them) are accepted here too.
+        reader.setLenient(true);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new IOException("Expected a JSON object, found " + reader.peek());
+        }
+
+        readElement(reader, nodeToPopulate);
+        return nodeToPopulate;
+    }
+
+    /**
+     * Writes the node as a JSON object, as {@link #jsonFrom(ConfigurationNode)}
+     * would create it, without building a {@link JsonObject} first.
+     *
+     * @param node The node
+     * @param writer The writer
+     * @throws IOException if the JSON could not be written
+     */
+    public void write(ConfigurationNode node, JsonWriter writer) throws IOException {
+        writer.beginObject();
+        if (node.hasMapChildren()) {
+            for (Map.Entry<Object, ? extends ConfigurationNode> entry : node.getChildrenMap().entrySet()) {
+                ConfigurationNode value = entry.getValue();
+                if (!value.isVirtual() && value.getValueType() != ValueType.NULL) {
+                    writer.name(String.valueOf(entry.getKey()));
+                    writeNode(value, writer);
+                }
+            }
+        }
+
+        writer.endObject();
+    }
+
+    private void writeNode(ConfigurationNode value, JsonWriter writer) throws IOException {
+        if (value.getValueType() == ValueType.MAP) {
+            write(value, writer);
+        } else if (value.getValueType() == ValueType.LIST) {
+            writer.beginArray();
+            for (ConfigurationNode child : value.getChildrenList()) {
+                writeNode(child, writer);
+            }
+
+            writer.endArray();
+        } else if (value.getValueType() == ValueType.SCALAR) {
+            Object scalar = value.getValue();
+            if (scalar instanceof Number) {
+                writer.value((Number) scalar);
+            } else if (scalar instanceof Boolean) {
+                writer.value((Boolean) scalar);
+            } else {
+                writer.value(scalar.toString());
+            }
+        } else {
+            writer.nullValue();
+        }
+    }
+
+    private void readElement(JsonReader reader, ConfigurationNode node) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    readElement(reader, node.getNode(reader.nextName()));
+                }
+
+                reader.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        readElement(reader, node.getAppendedNode());
+                    }
+                }
+
+                reader.endArray();
+                break;
+            case BOOLEAN:
+                node.setValue(reader.nextBoolean());
+                break;
+            case STRING:
+                node.setValue(reader.nextString());
+                break;
+            case NUMBER:
+                readNumber(reader.nextString(), node);
+                break;
+            default:
+                reader.skipValue();
+                break;
+        }
+    }
+
+    // Matches parsePrimitive, so that both paths give the same node.
+    private void readNumber(String number, ConfigurationNode node) {
+        long l;
+        try {
+            l = Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            double d = Double.parseDouble(number);
+            l = (long) d;
+            if (d != l) {
+                node.setValue(d);
+                return;
+            }
+        }
+
+        int i = (int) l;
+        if (i == l) {
+            node.setValue(i);
+        } else {
+            node.setValue(l);
+        }
+    }
+
     // The node has map
     public JsonObject jsonFrom(ConfigurationNode node) {
         JsonObject object = new JsonObject();
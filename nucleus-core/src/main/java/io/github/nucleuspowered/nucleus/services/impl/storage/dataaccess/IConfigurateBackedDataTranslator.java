@@ -5,11 +5,17 @@
 package io.github.nucleuspowered.nucleus.services.impl.storage.dataaccess;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.configurate.IConfigurateBackedDataObject;
 import io.github.nucleuspowered.storage.dataaccess.IDataTranslator;
+import io.github.nucleuspowered.storage.dataaccess.IStreamingDataTranslator;
 import ninja.leaping.configurate.ConfigurationNode;
 
-public interface IConfigurateBackedDataTranslator<R extends IConfigurateBackedDataObject> extends IDataTranslator<R, JsonObject> {
+import java.io.IOException;
+
+public interface IConfigurateBackedDataTranslator<R extends IConfigurateBackedDataObject>
+        extends IDataTranslator<R, JsonObject>, IStreamingDataTranslator<R> {
 
     @Override
     default R fromDataAccessObject(JsonObject object) {
@@ -26,6 +32,19 @@ public interface IConfigurateBackedDataTranslator<R extends IConfigurateBackedDa
         return ConfigurationNodeJsonTranslator.INSTANCE.jsonFrom(node);
     }
 
+    @Override
+    default R fromStream(JsonReader reader) throws IOException {
+        ConfigurationNode node = ConfigurationNodeJsonTranslator.INSTANCE.from(createNewNode(), reader);
+        R obj = createNew();
+        obj.setBackingNode(node);
+        return obj;
+    }
+
+    @Override
+    default void toStream(R object, JsonWriter writer) throws IOException {
+        ConfigurationNodeJsonTranslator.INSTANCE.write(object.getBackingNode(), writer);
+    }
+
     ConfigurationNode createNewNode();
 
 }
@@ -6,10 +6,13 @@ package io.github.nucleuspowered.nucleus.services.impl.storage.persistence;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Striped;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import io.github.nucleuspowered.nucleus.util.ThrownFunction;
 import io.github.nucleuspowered.storage.exceptions.DataDeleteException;
 import io.github.nucleuspowered.storage.exceptions.DataLoadException;
@@ -18,11 +21,15 @@ import io.github.nucleuspowered.storage.exceptions.DataSaveException;
 import io.github.nucleuspowered.storage.persistence.IStorageRepository;
 import io.github.nucleuspowered.storage.queryobjects.IQueryObject;
 import io.github.nucleuspowered.storage.util.KeyedObject;
+import io.github.nucleuspowered.storage.util.ThrownConsumer;
 import org.slf4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -31,38 +38,82 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 
 abstract class FlatFileStorageRepository implements IStorageRepository {
 
     private final Logger logger;
+    private final BooleanSupplier compact;
+
+    private static final Gson GSON = new Gson();
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    // Writes to the same file take the same lock, so that they don't share a temporary file,
+    // while writes to different files almost always go ahead together.
+    private static final Striped<Lock> FILE_LOCKS = Striped.lock(64);
+
+    // Bounded so that bulk loads can't flood the disk with reads.
+    private static final ExecutorService IO_EXECUTOR;
+
+    static {
+        final int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        final AtomicInteger counter = new AtomicInteger();
+        // A short queue, and the caller reads the file itself when it is full, so a large
+        // query can't queue up a task for every file it reads.
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 8), r -> {
+            final Thread thread = new Thread(r, "Nucleus flat file loader " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        IO_EXECUTOR = executor;
+    }
 
-    private static Gson gson = new GsonBuilder().setPrettyPrinting().create();
-
-    protected FlatFileStorageRepository(Logger logger) {
+    protected FlatFileStorageRepository(Logger logger, BooleanSupplier compact) {
         this.logger = logger;
+        this.compact = compact;
     }
 
     Optional<JsonObject> get(@Nullable Path path) throws DataLoadException {
+        return read(path, reader -> new JsonParser().parse(reader).getAsJsonObject());
+    }
+
+    <R> Optional<R> read(@Nullable Path path,
+            io.github.nucleuspowered.storage.util.ThrownFunction<JsonReader, R, IOException> function) throws DataLoadException {
         if (path != null) {
             try {
                 if (Files.size(path) == 0) {
                     return Optional.empty(); // nothing in the file, don't do anything with it.
                 }
-                // Read the file.
-                try (BufferedReader reader = Files.newBufferedReader(path)) {
-                    return Optional.of(new JsonParser()
-                            .parse(reader.lines().collect(Collectors.joining()))
-                            .getAsJsonObject());
+                // Parse straight from the file, rather than reading it all in first.
+                try (JsonReader reader = new JsonReader(Files.newBufferedReader(path))) {
+                    final R result = function.apply(reader);
+                    if (reader.peek() != JsonToken.END_DOCUMENT) {
+                        throw new IOException("Unexpected content after the end of the JSON object");
+                    }
+
+                    return Optional.of(result);
                 }
             } catch (Exception e) {
                 throw new DataLoadException("Could not load file at " + path.toAbsolutePath().toString(), e);
@@ -72,25 +123,99 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
         return Optional.empty();
     }
 
-    synchronized void save(Path file, JsonObject object) throws DataSaveException {
+    void save(Path file, JsonObject object) throws DataSaveException {
+        write(file, writer -> GSON.toJson(object, writer));
+    }
+
+    void write(Path file, ThrownConsumer<JsonWriter, IOException> content) throws DataSaveException {
+        final Lock lock = FILE_LOCKS.get(file);
+        lock.lock();
         try {
             // Backup the file
             if (Files.exists(file)) {
                 Files.copy(file, file.resolveSibling(file.getFileName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
             }
 
-            // Write the new file
+            // Write the new file alongside the old one, and only swap it in once it has all
+            // been written, so a failure part way through leaves the old file as it was.
             Files.createDirectories(file.getParent());
-            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                writer.write(gson.toJson(object));
+            final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                try (JsonWriter writer = createWriter(
+                        Files.newBufferedWriter(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+                    content.save(writer);
+                }
+
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
             }
         } catch (Exception ex) {
             this.logger.error("Could not save " + file.toString());
             ex.printStackTrace();
             throw new DataSaveException("Could not save " + file.toString(), ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the object to a temporary file that then replaces the existing
+     * file, so that the file is never left partly written. No backup is made.
+     *
+     * @param file The file
+     * @param object The object to write
+     * @return The number of bytes written
+     * @throws DataSaveException if the file could not be written
+     */
+    long replace(Path file, JsonObject object) throws DataSaveException {
+        final Lock lock = FILE_LOCKS.get(file);
+        lock.lock();
+        try {
+            final long size;
+            Files.createDirectories(file.getParent());
+            final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                // Not closed, as that would close the channel before it is forced.
+                final JsonWriter writer = createWriter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1)));
+                GSON.toJson(object, writer);
+                writer.flush();
+                channel.force(false);
+                size = channel.size();
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } catch (Exception ex) {
+            throw new DataSaveException("Could not save " + file.toString(), ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories can't be opened like this on Windows, where renames are journalled by the file system anyway.
+            if (!IS_WINDOWS) {
+                throw e;
+            }
         }
     }
 
+    private JsonWriter createWriter(Writer out) {
+        final JsonWriter writer = new JsonWriter(out);
+        // As Gson#toJson(JsonElement, JsonWriter) does, so that NaN and infinite values can be written.
+        writer.setLenient(true);
+        if (!this.compact.getAsBoolean()) {
+            writer.setIndent("  ");
+        }
+
+        return writer;
+    }
+
     @Override
     public void shutdown() {
         // nothing to do
@@ -108,8 +233,8 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
 
         private final Supplier<Path> FILENAME_RESOLVER;
 
-        Single(Logger logger, Supplier<Path> filename_resolver) {
-            super(logger);
+        Single(Logger logger, BooleanSupplier compact, Supplier<Path> filename_resolver) {
+            super(logger, compact);
             this.FILENAME_RESOLVER = filename_resolver;
         }
 
@@ -131,7 +256,7 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
 
     static class UUIDKeyed<Q extends IQueryObject<UUID, Q>>
             extends FlatFileStorageRepository
-            implements Keyed<UUID, Q, JsonObject> {
+            implements Keyed<UUID, Q, JsonObject>, Streaming<UUID> {
 
         private final ThrownFunction<Q, Path, DataQueryException> FILENAME_RESOLVER;
         private final Supplier<Path> BASE_PATH;
@@ -139,10 +264,11 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
 
         UUIDKeyed(
                 Logger logger,
+                BooleanSupplier compact,
                 ThrownFunction<Q, Path, DataQueryException> filename_resolver,
                 Function<UUID, Path> uuid_filename_resolver,
                 Supplier<Path> basePath) {
-            super(logger);
+            super(logger, compact);
             this.FILENAME_RESOLVER = filename_resolver;
             this.UUID_FILENAME_RESOLVER = uuid_filename_resolver;
             this.BASE_PATH = basePath;
@@ -185,6 +311,17 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
             return get(existsInternal(uuid));
         }
 
+        @Override
+        public <R> Optional<R> read(UUID uuid,
+                io.github.nucleuspowered.storage.util.ThrownFunction<JsonReader, R, IOException> reader) throws DataLoadException {
+            return read(existsInternal(uuid), reader);
+        }
+
+        @Override
+        public void write(UUID key, ThrownConsumer<JsonWriter, IOException> writer) throws DataSaveException {
+            write(UUID_FILENAME_RESOLVER.apply(key), writer);
+        }
+
         @Override
         public Collection<UUID> getAllKeys() throws DataLoadException {
             return ImmutableSet.copyOf(getAllKeysInternal());
@@ -192,9 +329,31 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
 
         @Override
         public Map<UUID, JsonObject> getAll(Q query) throws DataLoadException, DataQueryException {
-            ImmutableMap.Builder<UUID, JsonObject> j = ImmutableMap.builder();
-            for (UUID key : getAllKeys(query)) {
-                j.put(key, get(key).get()); // should be there
+            final Collection<UUID> keys = getAllKeys(query);
+            final ImmutableMap.Builder<UUID, JsonObject> j = ImmutableMap.builder();
+            if (keys.size() == 1) {
+                final UUID key = keys.iterator().next();
+                get(key).ifPresent(x -> j.put(key, x));
+                return j.build();
+            }
+
+            // Each file is independent, so read them concurrently.
+            final Map<UUID, Future<Optional<JsonObject>>> futures = new HashMap<>();
+            for (final UUID key : keys) {
+                futures.put(key, IO_EXECUTOR.submit(() -> get(key)));
+            }
+
+            try {
+                for (final Map.Entry<UUID, Future<Optional<JsonObject>>> entry : futures.entrySet()) {
+                    entry.getValue().get().ifPresent(x -> j.put(entry.getKey(), x));
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataLoadException("Interrupted while loading data", e);
+            } catch (final ExecutionException e) {
+                throw new DataLoadException("Could not load data", e);
+            } finally {
+                futures.values().forEach(x -> x.cancel(false));
             }
 
             return j.build();
@@ -202,17 +361,27 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
 
         @Override
         public Collection<UUID> getAllKeys(Q query) throws DataLoadException, DataQueryException {
+            if (!query.queries().isEmpty()) {
+                // We can't do anything other than keys with flat files.
+                return ImmutableSet.of();
+            }
+
             if (query.restrictedToKeys()) {
-                getAllKeysInternal().retainAll(query.keys());
+                return query.keys().stream().filter(x -> existsInternal(x) != null).collect(ImmutableSet.toImmutableSet());
             }
 
-            throw new DataQueryException("There must only a key", query);
+            return getAllKeys();
         }
 
         private Set<UUID> getAllKeysInternal() throws DataLoadException {
-            UUIDFileWalker u = new UUIDFileWalker();
+            Path base = BASE_PATH.get();
+            if (!Files.isDirectory(base)) {
+                return new HashSet<>();
+            }
+
+            UUIDFileWalker u = new UUIDFileWalker(base);
             try {
-                Files.walkFileTree(BASE_PATH.get(), u);
+                Files.walkFileTree(base, u);
                 return u.uuidSet;
             } catch (IOException e) {
                 throw new DataLoadException("Could not walk the file tree", e);
@@ -241,6 +410,50 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
             save(file, object);
         }
 
+        /**
+         * Replaces the file for the key, see {@link #replace(Path, JsonObject)}.
+         *
+         * @param key The key
+         * @param object The object to write
+         * @return The number of bytes written
+         * @throws DataSaveException if the file could not be written
+         */
+        long replace(UUID key, JsonObject object) throws DataSaveException {
+            return replace(UUID_FILENAME_RESOLVER.apply(key), object);
+        }
+
+        /**
+         * Forces the directories that hold the files for the keys to disk, so
+         * that files replaced or deleted in them stay that way after a crash.
+         *
+         * @param keys The keys
+         * @throws IOException if a directory could not be forced
+         */
+        void syncDirectories(Collection<UUID> keys) throws IOException {
+            final Set<Path> directories = new LinkedHashSet<>();
+            for (UUID key : keys) {
+                directories.add(UUID_FILENAME_RESOLVER.apply(key).getParent());
+            }
+
+            // New sub-directories are entries in the base directory.
+            directories.add(BASE_PATH.get());
+            for (Path directory : directories) {
+                if (Files.isDirectory(directory)) {
+                    syncDirectory(directory);
+                }
+            }
+        }
+
+        void deleteIfExists(UUID key) throws DataDeleteException {
+            Path filename = UUID_FILENAME_RESOLVER.apply(key);
+
+            try {
+                Files.deleteIfExists(filename);
+            } catch (IOException e) {
+                throw new DataDeleteException("Could not delete " + filename, e);
+            }
+        }
+
         @Override
         public void delete(UUID key) throws DataDeleteException {
             Path filename = UUID_FILENAME_RESOLVER.apply(key);
@@ -266,9 +479,15 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
 
             private final Set<UUID> uuidSet = new HashSet<>();
 
+            private final Path root;
+
+            private UUIDFileWalker(Path root) {
+                this.root = root;
+            }
+
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                if (dir.getFileName().toString().length() == 2) {
+                if (dir.equals(this.root) || dir.getFileName().toString().length() == 2) {
                     return super.preVisitDirectory(dir, attrs);
                 }
 
@@ -280,9 +499,9 @@ abstract class FlatFileStorageRepository implements IStorageRepository {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attr) {
                 if (attr.isRegularFile()) {
-                    if (file.endsWith(".json")) {
-                        String f = file.getFileName().toString();
-                        if (f.length() == 41 && f.startsWith(file.getParent().toString().toLowerCase())) {
+                    String f = file.getFileName().toString();
+                    if (f.endsWith(".json")) {
+                        if (f.length() == 41 && f.startsWith(file.getParent().getFileName().toString().toLowerCase())) {
                             try {
                                 this.uuidSet.add(UUID.fromString(f.substring(0, 36)));
                             } catch (Exception e) {
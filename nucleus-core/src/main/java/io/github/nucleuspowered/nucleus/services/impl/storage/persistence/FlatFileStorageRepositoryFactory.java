@@ -25,12 +25,13 @@ import javax.inject.Singleton;
 @Singleton
 public final class FlatFileStorageRepositoryFactory implements IStorageRepositoryFactory<JsonObject> {
 
-    private static final String WORLD_DATA_DIRECTORY = "worlddata";
-    private static final String USER_DATA_DIRECTORY = "userdata";
+    static final String WORLD_DATA_DIRECTORY = "worlddata";
+    static final String USER_DATA_DIRECTORY = "userdata";
     private static final String GENERAL_FILE = "general.json";
     private static final String KITS_FILE = "kits.json";
     private final Supplier<Path> dataPath;
     private final Logger logger;
+    private volatile boolean compact = false;
 
     @Inject
     public FlatFileStorageRepositoryFactory(@DataDirectory Supplier<Path> path, Logger logger) {
@@ -38,6 +39,16 @@ public final class FlatFileStorageRepositoryFactory implements IStorageRepositor
         this.logger = logger;
     }
 
+    /**
+     * Sets whether files are written without whitespace, for both existing
+     * and new repositories. Either form can be read.
+     *
+     * @param compact Whether to write compact JSON
+     */
+    public void setCompact(final boolean compact) {
+        this.compact = compact;
+    }
+
     @Override
     public IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> userRepository() {
         return repository(USER_DATA_DIRECTORY);
@@ -48,8 +59,8 @@ public final class FlatFileStorageRepositoryFactory implements IStorageRepositor
         return repository(WORLD_DATA_DIRECTORY);
     }
 
-    private <R extends IQueryObject<UUID, R>> IStorageRepository.Keyed<UUID, R, JsonObject> repository(final String p) {
-        return new FlatFileStorageRepository.UUIDKeyed<>(this.logger, query -> {
+    <R extends IQueryObject<UUID, R>> FlatFileStorageRepository.UUIDKeyed<R> repository(final String p) {
+        return new FlatFileStorageRepository.UUIDKeyed<>(this.logger, () -> this.compact, query -> {
             if (query.keys().size() == 1) {
                 Collection<UUID> uuids = query.keys();
                 String uuid = uuids.iterator().next().toString();
@@ -64,12 +75,12 @@ public final class FlatFileStorageRepositoryFactory implements IStorageRepositor
 
     @Override
     public IStorageRepository.Single<JsonObject> generalRepository() {
-        return new FlatFileStorageRepository.Single(this.logger, () -> this.dataPath.get().resolve(GENERAL_FILE));
+        return new FlatFileStorageRepository.Single(this.logger, () -> this.compact, () -> this.dataPath.get().resolve(GENERAL_FILE));
     }
 
     @Override
     public IStorageRepository.Single<JsonObject> kitsRepository() {
-        return new FlatFileStorageRepository.Single(this.logger, () -> this.dataPath.get().resolve(KITS_FILE));
+        return new FlatFileStorageRepository.Single(this.logger, () -> this.compact, () -> this.dataPath.get().resolve(KITS_FILE));
     }
 
     @Override public String getId() {
@@ -0,0 +1,694 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.services.impl.storage.persistence;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.github.nucleuspowered.storage.exceptions.DataDeleteException;
+import io.github.nucleuspowered.storage.exceptions.DataLoadException;
+import io.github.nucleuspowered.storage.exceptions.DataQueryException;
+import io.github.nucleuspowered.storage.exceptions.DataSaveException;
+import io.github.nucleuspowered.storage.persistence.IJournalledRepository;
+import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import io.github.nucleuspowered.storage.queryobjects.IQueryObject;
+import io.github.nucleuspowered.storage.util.KeyedObject;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * A keyed repository that appends each change to a write-ahead journal and
+ * periodically writes them into flat files in a checkpoint.
+ *
+ * <p>A save is a small, sequential append to the journal followed by a sync.
+ * Threads that are saving at the same time share a sync, so that one sync
+ * covers all of their records. Changes are held in memory until they have
+ * been checkpointed, so reads see them straight away.</p>
+ *
+ * <p>A checkpoint starts a new journal segment, writes the changes from the
+ * old one to the flat files, each via a temporary file that replaces the
+ * original, and then deletes the old segment. Any segments left when the
+ * repository is opened, such as after a crash, are replayed and
+ * checkpointed.</p>
+ *
+ * <p>Each segment consists of a header followed by records in the form</p>
+ *
+ * <pre>[type: 1][uuid: 16][length: 4][json: length][crc32: 4]</pre>
+ *
+ * <p>where the checksum covers everything but itself. A partially written
+ * record at the end of a segment is discarded on replay.</p>
+ *
+ * @param <Q> The query object type
+ */
+final class JournalledStorageRepository<Q extends IQueryObject<UUID, Q>>
+        implements IStorageRepository.Keyed<UUID, Q, JsonObject>, IJournalledRepository {
+
+    private static final int MAGIC = 0x4E4A4E4C; // NJNL
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 5;
+    private static final int RECORD_HEADER_SIZE = 21;
+    private static final int RECORD_TRAILER_SIZE = 4;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final long MINUTE_MILLIS = 60000;
+
+    // Compared by identity.
+    private static final byte[] DELETED = new byte[0];
+
+    private static final Gson GSON = new Gson();
+
+    private final Logger logger;
+    private final FlatFileStorageRepository.UUIDKeyed<Q> store;
+    private final Path directory;
+    private final String name;
+    private final LongSupplier checkpointIntervalMillis;
+    private final LongSupplier maxJournalBytes;
+    private final ScheduledExecutorService executor;
+
+    // Guards the journal and the changes. If both are needed, the sync lock is taken first.
+    private final Object lock = new Object();
+    private final Object syncLock = new Object();
+    private final Object checkpointLock = new Object();
+
+    // Changes since the current segment was started, and those from the segment being checkpointed.
+    private Map<UUID, byte[]> pending = new HashMap<>();
+    private Map<UUID, byte[]> checkpointing = Collections.emptyMap();
+    private final List<Path> retiredSegments = new ArrayList<>();
+    private long retiredBytes;
+    private FileChannel channel;
+    private long segment;
+    private volatile long endOfSegment;
+
+    // Positions across all segments, so that a sync can tell if an earlier one covered it.
+    private long appended;
+    private long syncedTo;
+
+    private final AtomicLong checkpointCount = new AtomicLong();
+    private volatile long lastCheckpointMillis;
+    private volatile long lastCheckpointTime = System.currentTimeMillis();
+    private final AtomicLong bytesThisMinute = new AtomicLong();
+    private volatile long bytesLastMinute;
+    private long minuteStart = System.currentTimeMillis();
+
+    /**
+     * Opens the journal in the supplied directory, replaying and
+     * checkpointing anything left in it.
+     *
+     * @param logger The logger
+     * @param store The flat file store that checkpoints are written to
+     * @param directory The directory that holds the journal segments
+     * @param name The name of the journal
+     * @param checkpointIntervalMillis The longest time between checkpoints
+     * @param maxJournalBytes The journal size that causes a checkpoint
+     * @throws IOException if the journal could not be opened
+     */
+    JournalledStorageRepository(
+            final Logger logger,
+            final FlatFileStorageRepository.UUIDKeyed<Q> store,
+            final Path directory,
+            final String name,
+            final LongSupplier checkpointIntervalMillis,
+            final LongSupplier maxJournalBytes) throws IOException {
+        this.logger = logger;
+        this.store = store;
+        this.directory = directory;
+        this.name = name;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.maxJournalBytes = maxJournalBytes;
+        Files.createDirectories(directory);
+
+        final TreeMap<Long, Path> segments = findSegments(directory, name);
+        int replayed = 0;
+        for (final Path path : segments.values()) {
+            replayed += replay(path);
+            this.retiredSegments.add(path);
+            this.retiredBytes += Files.size(path);
+        }
+
+        this.segment = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        openSegment();
+        if (replayed > 0) {
+            this.logger.info("Replayed {} changes from the {} journal", replayed, name);
+            checkpoint();
+        }
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "Nucleus " + name + " journal checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void shutdown() {
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        checkpoint();
+        synchronized (this.syncLock) {
+            synchronized (this.lock) {
+                try {
+                    if (this.channel.isOpen()) {
+                        this.channel.force(false);
+                        this.channel.close();
+                    }
+                } catch (IOException e) {
+                    this.logger.error("Could not close the " + this.name + " journal", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sync() {
+        final long position;
+        synchronized (this.lock) {
+            position = this.appended;
+        }
+
+        try {
+            syncTo(position);
+        } catch (IOException e) {
+            this.logger.error("Could not sync the " + this.name + " journal", e);
+        }
+    }
+
+    @Override
+    public void clearCache() {
+        // noop - changes that have not been checkpointed are not a cache
+    }
+
+    @Override
+    public boolean hasCache() {
+        return false;
+    }
+
+    @Override
+    public void clearCache(final Iterable<UUID> keys) {
+        // noop
+    }
+
+    @Override
+    public boolean exists(final Q query) {
+        return query.keys().stream().anyMatch(this::exists);
+    }
+
+    @Override
+    public Optional<KeyedObject<UUID, JsonObject>> get(final Q query) throws DataLoadException, DataQueryException {
+        if (query.keys().size() != 1) {
+            throw new DataQueryException("There must only a key", query);
+        }
+
+        final UUID key = query.keys().iterator().next();
+        return get(key).map(x -> new KeyedObject<>(key, x));
+    }
+
+    @Override
+    public int count(final Q query) {
+        return (int) query.keys().stream().filter(this::exists).count();
+    }
+
+    @Override
+    public void save(final UUID key, final JsonObject object) throws DataSaveException {
+        final byte[] data = GSON.toJson(object).getBytes(StandardCharsets.UTF_8);
+        try {
+            final long position;
+            synchronized (this.lock) {
+                position = append(PUT, key, data);
+                this.pending.put(key, data);
+            }
+
+            syncTo(position);
+        } catch (IOException e) {
+            throw new DataSaveException("Could not save " + key.toString() + " to the " + this.name + " journal", e);
+        }
+    }
+
+    @Override
+    public void delete(final UUID key) throws DataDeleteException {
+        try {
+            final long position;
+            synchronized (this.lock) {
+                position = append(DELETE, key, DELETED);
+                this.pending.put(key, DELETED);
+            }
+
+            syncTo(position);
+        } catch (IOException e) {
+            throw new DataDeleteException("Could not delete " + key.toString() + " in the " + this.name + " journal", e);
+        }
+    }
+
+    @Override
+    public boolean exists(final UUID key) {
+        final byte[] change = getChange(key);
+        if (change != null) {
+            return change != DELETED;
+        }
+
+        return this.store.exists(key);
+    }
+
+    @Override
+    public Optional<JsonObject> get(final UUID key) throws DataLoadException {
+        final byte[] change = getChange(key);
+        if (change == DELETED) {
+            return Optional.empty();
+        } else if (change != null) {
+            return Optional.of(parse(change));
+        }
+
+        return this.store.get(key);
+    }
+
+    @Override
+    public Collection<UUID> getAllKeys() throws DataLoadException {
+        final Set<UUID> keys = new HashSet<>(this.store.getAllKeys());
+        applyChangesToKeys(keys, getChanges(), null);
+        return ImmutableSet.copyOf(keys);
+    }
+
+    @Override
+    public Map<UUID, JsonObject> getAll(final Q query) throws DataLoadException, DataQueryException {
+        if (!query.queries().isEmpty()) {
+            return this.store.getAll(query);
+        }
+
+        final Map<UUID, JsonObject> result = new HashMap<>(this.store.getAll(query));
+        for (final Map.Entry<UUID, byte[]> entry : getChanges().entrySet()) {
+            if (query.restrictedToKeys() && !query.keys().contains(entry.getKey())) {
+                continue;
+            }
+
+            if (entry.getValue() == DELETED) {
+                result.remove(entry.getKey());
+            } else {
+                result.put(entry.getKey(), parse(entry.getValue()));
+            }
+        }
+
+        return ImmutableMap.copyOf(result);
+    }
+
+    @Override
+    public Collection<UUID> getAllKeys(final Q query) throws DataLoadException, DataQueryException {
+        if (!query.queries().isEmpty()) {
+            return this.store.getAllKeys(query);
+        }
+
+        final Set<UUID> keys = new HashSet<>(this.store.getAllKeys(query));
+        applyChangesToKeys(keys, getChanges(), query.restrictedToKeys() ? query.keys() : null);
+        return ImmutableSet.copyOf(keys);
+    }
+
+    @Override
+    public long getJournalSize() {
+        // Segments that have been retired but not yet checkpointed are still on disk.
+        synchronized (this.lock) {
+            return this.retiredBytes + this.endOfSegment;
+        }
+    }
+
+    @Override
+    public long getCheckpointCount() {
+        return this.checkpointCount.get();
+    }
+
+    @Override
+    public long getLastCheckpointMillis() {
+        return this.lastCheckpointMillis;
+    }
+
+    @Override
+    public long getBytesWrittenLastMinute() {
+        return this.bytesLastMinute;
+    }
+
+    /**
+     * Writes the changes in the journal into the flat files, and deletes the
+     * journal segments that held them.
+     */
+    void checkpoint() {
+        synchronized (this.checkpointLock) {
+            final long start = System.currentTimeMillis();
+            final Map<UUID, byte[]> toWrite;
+            synchronized (this.syncLock) {
+                synchronized (this.lock) {
+                    if (this.pending.isEmpty()) {
+                        this.lastCheckpointTime = start;
+                        return;
+                    }
+
+                    try {
+                        // New changes go to a new segment while this one is written out.
+                        this.channel.force(false);
+                        this.syncedTo = this.appended;
+                        this.channel.close();
+                        this.retiredSegments.add(segmentPath(this.segment));
+                        this.retiredBytes += this.endOfSegment;
+                        this.segment++;
+                        openSegment();
+                    } catch (IOException e) {
+                        this.logger.error("Could not start a new " + this.name + " journal segment", e);
+                        return;
+                    }
+
+                    toWrite = this.pending;
+                    this.checkpointing = toWrite;
+                    this.pending = new HashMap<>();
+                }
+            }
+
+            long bytes = 0;
+            try {
+                for (final Map.Entry<UUID, byte[]> entry : toWrite.entrySet()) {
+                    if (entry.getValue() == DELETED) {
+                        this.store.deleteIfExists(entry.getKey());
+                    } else {
+                        bytes += this.store.replace(entry.getKey(), parse(entry.getValue()));
+                    }
+                }
+
+                // The renames and deletes must be on disk before the segments that hold the changes are deleted.
+                this.store.syncDirectories(toWrite.keySet());
+            } catch (Exception e) {
+                // Keep the segments, and write these changes again with the next checkpoint.
+                this.logger.error("Could not checkpoint the " + this.name + " journal", e);
+                synchronized (this.lock) {
+                    toWrite.forEach(this.pending::putIfAbsent);
+                    this.checkpointing = Collections.emptyMap();
+                }
+
+                this.bytesThisMinute.addAndGet(bytes);
+                return;
+            }
+
+            synchronized (this.lock) {
+                this.checkpointing = Collections.emptyMap();
+            }
+
+            final List<Path> failed = new ArrayList<>();
+            long failedBytes = 0;
+            for (final Path path : this.retiredSegments) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // Only holds changes that are now in the flat files, so it is tried again next time.
+                    this.logger.error("Could not delete " + path.toString(), e);
+                    failed.add(path);
+                    failedBytes += sizeOf(path);
+                }
+            }
+
+            synchronized (this.lock) {
+                this.retiredSegments.clear();
+                this.retiredSegments.addAll(failed);
+                this.retiredBytes = failedBytes;
+            }
+
+            this.bytesThisMinute.addAndGet(bytes);
+            this.checkpointCount.incrementAndGet();
+            this.lastCheckpointTime = System.currentTimeMillis();
+            this.lastCheckpointMillis = this.lastCheckpointTime - start;
+            this.logger.debug("Checkpointed {} changes ({} bytes) from the {} journal in {} ms",
+                    toWrite.size(), bytes, this.name, this.lastCheckpointMillis);
+        }
+    }
+
+    private void tick() {
+        try {
+            final long now = System.currentTimeMillis();
+            if (now - this.minuteStart >= MINUTE_MILLIS) {
+                this.bytesLastMinute = this.bytesThisMinute.getAndSet(0);
+                this.minuteStart = now;
+            }
+
+            if (now - this.lastCheckpointTime >= this.checkpointIntervalMillis.getAsLong()
+                    || this.endOfSegment >= this.maxJournalBytes.getAsLong()) {
+                checkpoint();
+            }
+        } catch (Exception e) {
+            this.logger.error("Could not checkpoint the " + this.name + " journal", e);
+        }
+    }
+
+    // Must not be called while holding the main lock.
+    private void syncTo(final long position) throws IOException {
+        synchronized (this.syncLock) {
+            if (this.syncedTo >= position) {
+                // Another thread's sync covered this record.
+                return;
+            }
+
+            final FileChannel current;
+            final long end;
+            synchronized (this.lock) {
+                current = this.channel;
+                end = this.appended;
+            }
+
+            current.force(false);
+            this.syncedTo = end;
+        }
+    }
+
+    // Must hold the lock to call this.
+    private long append(final byte type, final UUID key, final byte[] data) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length + RECORD_TRAILER_SIZE);
+        buffer.put(type)
+                .putLong(key.getMostSignificantBits())
+                .putLong(key.getLeastSignificantBits())
+                .putInt(data.length)
+                .put(data);
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        final long size = buffer.limit();
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer, this.endOfSegment + buffer.position());
+        }
+
+        this.endOfSegment += size;
+        this.appended += size;
+        this.bytesThisMinute.addAndGet(size);
+        return this.appended;
+    }
+
+    private void openSegment() throws IOException {
+        this.channel = FileChannel.open(segmentPath(this.segment),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).put(FORMAT_VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            this.channel.write(header);
+        }
+
+        this.endOfSegment = FILE_HEADER_SIZE;
+    }
+
+    private int replay(final Path path) throws IOException {
+        int count = 0;
+        try (FileChannel segmentChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = segmentChannel.size();
+            final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            if (!tryReadFully(segmentChannel, fileHeader, 0) || fileHeader.getInt(0) != MAGIC || fileHeader.get(4) != FORMAT_VERSION) {
+                this.logger.warn("{} is not a Nucleus journal segment, it will be ignored", path.toString());
+                return 0;
+            }
+
+            final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            long position = FILE_HEADER_SIZE;
+            while (position < size) {
+                header.clear();
+                if (!tryReadFully(segmentChannel, header, position)) {
+                    break;
+                }
+
+                final byte type = header.get(0);
+                final UUID key = new UUID(header.getLong(1), header.getLong(9));
+                final int length = header.getInt(17);
+                if ((type != PUT && type != DELETE) || length < 0 || position + RECORD_HEADER_SIZE + length + RECORD_TRAILER_SIZE > size) {
+                    break;
+                }
+
+                final ByteBuffer body = ByteBuffer.allocate(length + RECORD_TRAILER_SIZE);
+                if (!tryReadFully(segmentChannel, body, position + RECORD_HEADER_SIZE)) {
+                    break;
+                }
+
+                final CRC32 crc = new CRC32();
+                crc.update(header.array(), 0, RECORD_HEADER_SIZE);
+                crc.update(body.array(), 0, length);
+                if ((int) crc.getValue() != body.getInt(length)) {
+                    break;
+                }
+
+                final byte[] data = new byte[length];
+                System.arraycopy(body.array(), 0, data, 0, length);
+                this.pending.put(key, type == PUT ? data : DELETED);
+                position += RECORD_HEADER_SIZE + length + RECORD_TRAILER_SIZE;
+                count++;
+            }
+
+            if (position < size) {
+                this.logger.warn("Discarding {} bytes of incomplete or corrupt data at the end of {}", size - position, path.toString());
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets whether there are segments in the supplied directory that hold
+     * changes, which have not been written to the flat files.
+     *
+     * @param directory The directory that holds the journal segments
+     * @param name The name of the journal
+     * @return true if there are changes in the journal
+     * @throws IOException if the directory could not be read
+     */
+    static boolean hasChanges(final Path directory, final String name) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+
+        for (final Path path : findSegments(directory, name).values()) {
+            if (Files.size(path) > FILE_HEADER_SIZE) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves all segments of a journal into a new directory next to them, where
+     * they will not be replayed.
+     *
+     * @param directory The directory that holds the journal segments
+     * @param name The name of the journal
+     * @return The directory the segments were moved to
+     * @throws IOException if the segments could not be moved
+     */
+    static Path moveSegmentsAside(final Path directory, final String name) throws IOException {
+        final Path target = directory.resolve(name + ".failed-" + System.currentTimeMillis());
+        Files.createDirectories(target);
+        for (final Path path : findSegments(directory, name).values()) {
+            Files.move(path, target.resolve(path.getFileName()));
+        }
+
+        FlatFileStorageRepository.syncDirectory(directory);
+        return target;
+    }
+
+    private static TreeMap<Long, Path> findSegments(final Path directory, final String name) throws IOException {
+        final TreeMap<Long, Path> segments = new TreeMap<>();
+        final String prefix = name + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + SEGMENT_SUFFIX)) {
+            for (final Path path : stream) {
+                final String fileName = path.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(fileName.substring(prefix.length(), fileName.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+
+        return segments;
+    }
+
+    private Path segmentPath(final long number) {
+        return this.directory.resolve(this.name + "." + number + SEGMENT_SUFFIX);
+    }
+
+    private byte[] getChange(final UUID key) {
+        synchronized (this.lock) {
+            final byte[] change = this.pending.get(key);
+            return change != null ? change : this.checkpointing.get(key);
+        }
+    }
+
+    private Map<UUID, byte[]> getChanges() {
+        synchronized (this.lock) {
+            final Map<UUID, byte[]> changes = new LinkedHashMap<>(this.checkpointing);
+            changes.putAll(this.pending);
+            return changes;
+        }
+    }
+
+    private static void applyChangesToKeys(final Set<UUID> keys, final Map<UUID, byte[]> changes, final Collection<UUID> restrictTo) {
+        for (final Map.Entry<UUID, byte[]> entry : changes.entrySet()) {
+            if (restrictTo != null && !restrictTo.contains(entry.getKey())) {
+                continue;
+            }
+
+            if (entry.getValue() == DELETED) {
+                keys.remove(entry.getKey());
+            } else {
+                keys.add(entry.getKey());
+            }
+        }
+    }
+
+    private static long sizeOf(final Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static JsonObject parse(final byte[] data) {
+        return new JsonParser().parse(new String(data, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static boolean tryReadFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
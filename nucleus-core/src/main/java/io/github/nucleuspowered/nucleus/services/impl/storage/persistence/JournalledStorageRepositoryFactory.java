@@ -0,0 +1,142 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.services.impl.storage.persistence;
+
+import com.google.gson.JsonObject;
+import io.github.nucleuspowered.nucleus.guice.DataDirectory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IUserQueryObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IWorldQueryObject;
+import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import io.github.nucleuspowered.storage.persistence.IStorageRepositoryFactory;
+import io.github.nucleuspowered.storage.queryobjects.IQueryObject;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Stores user and world data in the same flat files as
+ * {@link FlatFileStorageRepositoryFactory}, but writes changes to a journal
+ * first and into the files in periodic checkpoints. General and kit data are
+ * not supported, and so will continue to be stored in flat files.
+ *
+ * <p>A journal that cannot be opened stops the store from being used, rather
+ * than flat files being used without it, as the changes left in it would
+ * otherwise be replayed over newer data the next time it is opened.</p>
+ */
+@Singleton
+public final class JournalledStorageRepositoryFactory implements IStorageRepositoryFactory<JsonObject> {
+
+    private static final String JOURNAL_DIRECTORY = "journal";
+    private final FlatFileStorageRepositoryFactory flatFileStorageRepositoryFactory;
+    private final Supplier<Path> dataPath;
+    private final Logger logger;
+    private volatile long checkpointIntervalMillis = 60000;
+    private volatile long maxJournalBytes = 16L * 1024L * 1024L;
+
+    @Inject
+    public JournalledStorageRepositoryFactory(@DataDirectory Supplier<Path> path, Logger logger,
+            FlatFileStorageRepositoryFactory flatFileStorageRepositoryFactory) {
+        this.dataPath = path;
+        this.logger = logger;
+        this.flatFileStorageRepositoryFactory = flatFileStorageRepositoryFactory;
+    }
+
+    /**
+     * Sets when checkpoints happen, for both existing and new repositories.
+     *
+     * @param checkpointIntervalMillis The longest time between checkpoints
+     * @param maxJournalBytes The journal size that causes a checkpoint
+     */
+    public void setCheckpointSettings(final long checkpointIntervalMillis, final long maxJournalBytes) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.maxJournalBytes = maxJournalBytes;
+    }
+
+    /**
+     * Writes anything left in the journals into the flat files, so that it
+     * is not replayed over newer data if this store is selected again. If
+     * that can't be done, the journals are moved aside. Must only be called
+     * when this store is not in use.
+     */
+    public void retire() {
+        final Path directory = this.dataPath.get().resolve(JOURNAL_DIRECTORY);
+        for (final String p : new String[] { FlatFileStorageRepositoryFactory.USER_DATA_DIRECTORY,
+                FlatFileStorageRepositoryFactory.WORLD_DATA_DIRECTORY }) {
+            try {
+                if (!JournalledStorageRepository.hasChanges(directory, p)) {
+                    continue;
+                }
+
+                try {
+                    // Opening replays and checkpoints the journal, and closing checkpoints anything left.
+                    repository(p).shutdown();
+                } catch (IllegalStateException e) {
+                    // logged when opening
+                }
+
+                if (JournalledStorageRepository.hasChanges(directory, p)) {
+                    final Path target = JournalledStorageRepository.moveSegmentsAside(directory, p);
+                    this.logger.warn("The {} journal could not be written to the flat files, and has been moved to {}.", p, target);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not move the " + p + " journal in " + directory + " aside. Delete it before selecting "
+                        + "the " + getName() + " store again, or it will be replayed over newer data.", e);
+            }
+        }
+    }
+
+    @Override
+    public IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> userRepository() {
+        return repository(FlatFileStorageRepositoryFactory.USER_DATA_DIRECTORY);
+    }
+
+    @Override
+    public IStorageRepository.Keyed<UUID, IWorldQueryObject, JsonObject> worldRepository() {
+        return repository(FlatFileStorageRepositoryFactory.WORLD_DATA_DIRECTORY);
+    }
+
+    private <R extends IQueryObject<UUID, R>> IStorageRepository.Keyed<UUID, R, JsonObject> repository(final String p) {
+        try {
+            return new JournalledStorageRepository<R>(
+                    this.logger,
+                    this.flatFileStorageRepositoryFactory.repository(p),
+                    this.dataPath.get().resolve(JOURNAL_DIRECTORY),
+                    p,
+                    () -> this.checkpointIntervalMillis,
+                    () -> this.maxJournalBytes);
+        } catch (IOException e) {
+            // Not null, which would mean that flat files should be used and the journal replayed over them later.
+            this.logger.error("Could not open the " + p + " journal. Nothing will be loaded or saved until it can be opened.", e);
+            throw new IllegalStateException("Could not open the " + p + " journal", e);
+        }
+    }
+
+    @Override
+    @Nullable
+    public IStorageRepository.Single<JsonObject> generalRepository() {
+        return null;
+    }
+
+    @Override
+    @Nullable
+    public IStorageRepository.Single<JsonObject> kitsRepository() {
+        return null;
+    }
+
+    @Override public String getId() {
+        return "nucleus:journalled";
+    }
+
+    @Override public String getName() {
+        return "Journalled Flat File";
+    }
+}
@@ -0,0 +1,664 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.services.impl.storage.persistence;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.github.nucleuspowered.storage.exceptions.DataDeleteException;
+import io.github.nucleuspowered.storage.exceptions.DataLoadException;
+import io.github.nucleuspowered.storage.exceptions.DataQueryException;
+import io.github.nucleuspowered.storage.exceptions.DataSaveException;
+import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import io.github.nucleuspowered.storage.queryobjects.IQueryObject;
+import io.github.nucleuspowered.storage.util.KeyedObject;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+/**
+ * A keyed repository that stores every object in a single append-only file.
+ *
+ * <p>Each save appends a record to the end of the file, and an in-memory index
+ * maps each key to the latest record for it, so lookups and existence checks
+ * never touch the file system and reads are a single positional read. Deletions
+ * are recorded as tombstones. When superseded records take up more space than
+ * the live ones, the file is compacted by copying the live records to a new
+ * file that atomically replaces the old one. Records are only ever appended, so
+ * most of the copy is done while saves and loads carry on, and only the records
+ * written during the copy are moved while everything else waits.</p>
+ *
+ * <p>A new log is built under a temporary name and only moved into place once
+ * any existing flat file data has been imported into it, so an import that is
+ * interrupted is started again from the beginning the next time. The import is
+ * done on its own thread. Other threads wait for it to finish, but the main
+ * thread is told that the store is not ready yet rather than being held up.</p>
+ *
+ * <p>The file consists of a header followed by records in the form</p>
+ *
+ * <pre>[type: 1][uuid: 16][length: 4][json: length][crc32: 4]</pre>
+ *
+ * <p>where the checksum covers everything but itself. A partially written
+ * record at the end of the file, such as one left by a crash, is discarded
+ * when the file is opened.</p>
+ *
+ * @param <Q> The query object type
+ */
+final class LogStructuredStorageRepository<Q extends IQueryObject<UUID, Q>> implements IStorageRepository.Keyed<UUID, Q, JsonObject> {
+
+    private static final int MAGIC = 0x4E4C4F47; // NLOG
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 5;
+    private static final int RECORD_HEADER_SIZE = 21;
+    private static final int RECORD_TRAILER_SIZE = 4;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final long MIN_COMPACTION_BYTES = 64L * 1024L * 1024L;
+    private static final long PROGRESS_INTERVAL_MILLIS = 10000;
+
+    private static final Gson GSON = new Gson();
+
+    private final Logger logger;
+    private final Path file;
+    private final Map<UUID, Location> index = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final CompletableFuture<Void> opened;
+    private final BooleanSupplier isMainThread;
+    private volatile boolean closed;
+    private FileChannel channel;
+    private long endOfLog;
+    private long deadBytes;
+
+    /**
+     * Opens the log at the supplied path, creating it if it does not exist.
+     *
+     * @param logger The logger
+     * @param file The log file
+     * @param importDirectory If the log is being created, a flat file directory to import existing data from
+     * @param isMainThread Whether the calling thread is one that must not wait for an import
+     * @throws IOException if the log could not be opened
+     */
+    LogStructuredStorageRepository(final Logger logger, final Path file, @Nullable final Path importDirectory,
+            final BooleanSupplier isMainThread) throws IOException {
+        this.logger = logger;
+        this.file = file;
+        this.isMainThread = isMainThread;
+        Files.createDirectories(file.getParent());
+        if (Files.exists(file) && Files.size(file) > 0) {
+            this.channel = open(file);
+            readIndex();
+            if (shouldCompact()) {
+                compact();
+            }
+
+            this.opened = CompletableFuture.completedFuture(null);
+        } else if (importDirectory != null && Files.isDirectory(importDirectory)) {
+            final CompletableFuture<Void> opened = new CompletableFuture<>();
+            this.opened = opened;
+            final Thread thread = new Thread(() -> {
+                try {
+                    create(importDirectory);
+                    opened.complete(null);
+                } catch (Throwable e) {
+                    if (this.closed) {
+                        this.logger.warn(e.getMessage());
+                    } else {
+                        this.logger.error("Could not import existing data into " + file.toString(), e);
+                    }
+
+                    opened.completeExceptionally(e);
+                }
+            }, "Nucleus data import - " + file.getFileName());
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            create(null);
+            this.opened = CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        // Stops an import that is still running, it'll start again next time.
+        this.closed = true;
+        try {
+            this.opened.join();
+        } catch (CompletionException | CancellationException e) {
+            // nothing was opened
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            if (this.channel.isOpen()) {
+                this.channel.force(true);
+                this.channel.close();
+            }
+        } catch (IOException e) {
+            this.logger.error("Could not close " + this.file.toString(), e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void sync() {
+        try {
+            awaitOpen();
+        } catch (IOException e) {
+            this.logger.error("Could not sync " + this.file.toString(), e);
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            if (this.channel.isOpen()) {
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            this.logger.error("Could not sync " + this.file.toString(), e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clearCache() {
+        // noop - the index is not a cache
+    }
+
+    @Override
+    public boolean hasCache() {
+        return false;
+    }
+
+    @Override
+    public void clearCache(final Iterable<UUID> keys) {
+        // noop
+    }
+
+    @Override
+    public boolean exists(final Q query) {
+        awaitOpenUnchecked();
+        return query.keys().stream().anyMatch(this.index::containsKey);
+    }
+
+    @Override
+    public Optional<KeyedObject<UUID, JsonObject>> get(final Q query) throws DataLoadException, DataQueryException {
+        if (query.keys().size() != 1) {
+            throw new DataQueryException("There must only a key", query);
+        }
+
+        final UUID key = query.keys().iterator().next();
+        return get(key).map(x -> new KeyedObject<>(key, x));
+    }
+
+    @Override
+    public int count(final Q query) {
+        awaitOpenUnchecked();
+        return (int) query.keys().stream().filter(this.index::containsKey).count();
+    }
+
+    @Override
+    public void save(final UUID key, final JsonObject object) throws DataSaveException {
+        final byte[] data = GSON.toJson(object).getBytes(StandardCharsets.UTF_8);
+        try {
+            awaitOpen();
+            this.lock.writeLock().lock();
+            try {
+                final Location location = append(PUT, key, data);
+                final Location previous = this.index.put(key, location);
+                if (previous != null) {
+                    this.deadBytes += previous.recordSize();
+                }
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new DataSaveException("Could not save " + key.toString() + " to " + this.file.toString(), e);
+        }
+
+        compactIfRequired();
+    }
+
+    @Override
+    public void delete(final UUID key) throws DataDeleteException {
+        try {
+            awaitOpen();
+            this.lock.writeLock().lock();
+            try {
+                final Location previous = this.index.get(key);
+                if (previous != null) {
+                    final Location tombstone = append(DELETE, key, new byte[0]);
+                    this.index.remove(key);
+                    this.deadBytes += previous.recordSize() + tombstone.recordSize();
+                }
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new DataDeleteException("Could not delete " + key.toString() + " from " + this.file.toString(), e);
+        }
+
+        compactIfRequired();
+    }
+
+    @Override
+    public boolean exists(final UUID key) {
+        awaitOpenUnchecked();
+        return this.index.containsKey(key);
+    }
+
+    @Override
+    public Optional<JsonObject> get(final UUID key) throws DataLoadException {
+        try {
+            awaitOpen();
+        } catch (IOException e) {
+            throw new DataLoadException("Could not load " + key.toString() + " from " + this.file.toString(), e);
+        }
+
+        this.lock.readLock().lock();
+        try {
+            final Location location = this.index.get(key);
+            if (location == null) {
+                return Optional.empty();
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate(location.length);
+            readFully(this.channel, buffer, location.offset + RECORD_HEADER_SIZE);
+            return Optional.of(new JsonParser()
+                    .parse(new String(buffer.array(), StandardCharsets.UTF_8))
+                    .getAsJsonObject());
+        } catch (Exception e) {
+            throw new DataLoadException("Could not load " + key.toString() + " from " + this.file.toString(), e);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<UUID> getAllKeys() {
+        awaitOpenUnchecked();
+        return ImmutableSet.copyOf(this.index.keySet());
+    }
+
+    @Override
+    public Map<UUID, JsonObject> getAll(final Q query) throws DataLoadException, DataQueryException {
+        final ImmutableMap.Builder<UUID, JsonObject> builder = ImmutableMap.builder();
+        for (final UUID key : getAllKeys(query)) {
+            get(key).ifPresent(x -> builder.put(key, x));
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public Collection<UUID> getAllKeys(final Q query) {
+        awaitOpenUnchecked();
+        if (!query.queries().isEmpty()) {
+            return ImmutableSet.of();
+        }
+
+        if (!query.restrictedToKeys()) {
+            return getAllKeys();
+        }
+
+        return query.keys().stream().filter(this.index::containsKey).collect(ImmutableSet.toImmutableSet());
+    }
+
+    /**
+     * Rewrites the log so that it only contains the latest record for each key.
+     *
+     * @throws IOException if the log could not be compacted
+     */
+    void compact() throws IOException {
+        if (!this.compacting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            final long start = System.currentTimeMillis();
+            final FileChannel source;
+            final Map<UUID, Location> snapshot;
+            final long snapshotEnd;
+            this.lock.readLock().lock();
+            try {
+                source = this.channel;
+                snapshot = new HashMap<>(this.index);
+                snapshotEnd = this.endOfLog;
+            } finally {
+                this.lock.readLock().unlock();
+            }
+
+            // Records never change once they are written, so everything up to the snapshot can be
+            // copied while saves carry on appending after it.
+            final Path temp = this.file.resolveSibling(this.file.getFileName() + ".compact");
+            final Map<UUID, Location> copied = new HashMap<>();
+            final FileChannel target = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            try {
+                writeFileHeader(target);
+                long position = FILE_HEADER_SIZE;
+                for (final Map.Entry<UUID, Location> entry : snapshot.entrySet()) {
+                    final Location location = entry.getValue();
+                    transfer(source, location.offset, location.recordSize(), target);
+                    copied.put(entry.getKey(), new Location(position, location.length));
+                    position += location.recordSize();
+                }
+
+                this.lock.writeLock().lock();
+                try {
+                    if (this.channel != source || !source.isOpen()) {
+                        throw new IOException(this.file.toString() + " was closed during compaction");
+                    }
+
+                    // Then whatever was written during the copy, which moves back by the space that was freed.
+                    final long previousSize = this.endOfLog;
+                    final long shift = snapshotEnd - position;
+                    transfer(source, snapshotEnd, previousSize - snapshotEnd, target);
+                    target.force(true);
+                    target.close();
+
+                    final Map<UUID, Location> newIndex = new HashMap<>();
+                    long live = 0;
+                    for (final Map.Entry<UUID, Location> entry : this.index.entrySet()) {
+                        final Location location = entry.getValue();
+                        final Location moved = location.offset < snapshotEnd
+                                ? copied.get(entry.getKey())
+                                : new Location(location.offset - shift, location.length);
+                        newIndex.put(entry.getKey(), moved);
+                        live += moved.recordSize();
+                    }
+
+                    source.close();
+                    Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    this.channel = open(this.file);
+                    this.index.clear();
+                    this.index.putAll(newIndex);
+                    this.endOfLog = previousSize - shift;
+                    this.deadBytes = this.endOfLog - FILE_HEADER_SIZE - live;
+                    this.logger.info("Compacted {} from {} to {} bytes in {} ms", this.file.getFileName(), previousSize, this.endOfLog,
+                            System.currentTimeMillis() - start);
+                } finally {
+                    this.lock.writeLock().unlock();
+                }
+            } finally {
+                target.close();
+            }
+        } finally {
+            this.compacting.set(false);
+        }
+    }
+
+    private void compactIfRequired() {
+        final boolean compact;
+        this.lock.readLock().lock();
+        try {
+            compact = shouldCompact();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        if (compact) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The log is still consistent, so just try again later.
+                this.logger.error("Could not compact " + this.file.toString(), e);
+            }
+        }
+    }
+
+    private boolean shouldCompact() {
+        return this.deadBytes > MIN_COMPACTION_BYTES && this.deadBytes > this.endOfLog - this.deadBytes;
+    }
+
+    private Location append(final byte type, final UUID key, final byte[] data) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length + RECORD_TRAILER_SIZE);
+        buffer.put(type)
+                .putLong(key.getMostSignificantBits())
+                .putLong(key.getLeastSignificantBits())
+                .putInt(data.length)
+                .put(data);
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        final long offset = this.endOfLog;
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer, this.endOfLog + buffer.position());
+        }
+
+        this.endOfLog += buffer.limit();
+        return new Location(offset, data.length);
+    }
+
+    private void readIndex() throws IOException {
+        final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        if (!tryReadFully(this.channel, fileHeader, 0) || fileHeader.getInt(0) != MAGIC || fileHeader.get(4) != FORMAT_VERSION) {
+            throw new IOException(this.file.toString() + " is not a Nucleus data log");
+        }
+
+        final long size = this.channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = FILE_HEADER_SIZE;
+        while (position < size) {
+            header.clear();
+            if (!tryReadFully(this.channel, header, position)) {
+                break;
+            }
+
+            final byte type = header.get(0);
+            final UUID key = new UUID(header.getLong(1), header.getLong(9));
+            final int length = header.getInt(17);
+            if ((type != PUT && type != DELETE) || length < 0 || position + RECORD_HEADER_SIZE + length + RECORD_TRAILER_SIZE > size) {
+                break;
+            }
+
+            final ByteBuffer body = ByteBuffer.allocate(length + RECORD_TRAILER_SIZE);
+            if (!tryReadFully(this.channel, body, position + RECORD_HEADER_SIZE)) {
+                break;
+            }
+
+            final CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, RECORD_HEADER_SIZE);
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != body.getInt(length)) {
+                break;
+            }
+
+            final Location location = new Location(position, length);
+            final Location previous = type == PUT ? this.index.put(key, location) : this.index.remove(key);
+            if (previous != null) {
+                this.deadBytes += previous.recordSize();
+            }
+
+            if (type == DELETE) {
+                this.deadBytes += location.recordSize();
+            }
+
+            position += location.recordSize();
+        }
+
+        if (position < size) {
+            this.logger.warn("Discarding {} bytes of incomplete or corrupt data at the end of {}", size - position, this.file.toString());
+            this.channel.truncate(position);
+        }
+
+        this.endOfLog = position;
+    }
+
+    // Built under a temporary name and moved into place when complete, so that if this is
+    // interrupted, there is no log and it's all done again next time.
+    private void create(@Nullable final Path importDirectory) throws IOException {
+        final Path temp = this.file.resolveSibling(this.file.getFileName() + ".importing");
+        this.channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            writeFileHeader(this.channel);
+            this.endOfLog = FILE_HEADER_SIZE;
+            if (importDirectory != null) {
+                importFlatFiles(importDirectory);
+            }
+
+            this.channel.force(true);
+        } finally {
+            this.channel.close();
+        }
+
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FlatFileStorageRepository.syncDirectory(this.file.getParent());
+        this.channel = open(this.file);
+    }
+
+    private void importFlatFiles(final Path directory) throws IOException {
+        final List<Path> paths;
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            paths = files.filter(x -> x.getFileName().toString().endsWith(".json")).collect(Collectors.toList());
+        }
+
+        this.logger.info("Importing {} files from {} into {}", paths.size(), directory.toString(), this.file.getFileName());
+        long lastReport = System.currentTimeMillis();
+        int count = 0;
+        for (int i = 0; i < paths.size(); i++) {
+            if (this.closed) {
+                throw new IOException("Stopped before the import into " + this.file.getFileName() + " was complete, it will start again next time");
+            }
+
+            if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                lastReport = System.currentTimeMillis();
+                this.logger.info("Imported {} of {} files into {} ({}%)", i, paths.size(), this.file.getFileName(), i * 100 / paths.size());
+            }
+
+            final Path path = paths.get(i);
+            final String name = path.getFileName().toString();
+            final UUID key;
+            try {
+                key = UUID.fromString(name.substring(0, name.length() - 5));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+
+            if (Files.size(path) == 0) {
+                continue;
+            }
+
+            try (BufferedReader reader = Files.newBufferedReader(path)) {
+                final JsonObject object = new JsonParser().parse(reader).getAsJsonObject();
+                this.index.put(key, append(PUT, key, GSON.toJson(object).getBytes(StandardCharsets.UTF_8)));
+                count++;
+            } catch (Exception e) {
+                this.logger.warn("Could not import " + path.toString(), e);
+            }
+        }
+
+        this.logger.info("Imported {} entries into {}", count, this.file.getFileName());
+    }
+
+    private void awaitOpen() throws IOException {
+        if (!this.opened.isDone() && this.isMainThread.getAsBoolean()) {
+            throw new IOException(this.file.getFileName() + " is still importing existing data and is not ready yet");
+        }
+
+        try {
+            this.opened.join();
+        } catch (CompletionException | CancellationException e) {
+            throw new IOException("Could not open " + this.file.toString(), e.getCause());
+        }
+    }
+
+    private void awaitOpenUnchecked() {
+        try {
+            awaitOpen();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static FileChannel open(final Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void writeFileHeader(final FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).put(FORMAT_VERSION);
+        header.flip();
+        // Relative, so that the channel is left positioned at the first record.
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    private static void transfer(final FileChannel source, final long position, final long size, final FileChannel target)
+            throws IOException {
+        long transferred = 0;
+        while (transferred < size) {
+            transferred += source.transferTo(position + transferred, size - transferred, target);
+        }
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        if (!tryReadFully(channel, buffer, position)) {
+            throw new IOException("Unexpected end of file");
+        }
+    }
+
+    private static boolean tryReadFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Location {
+
+        private final long offset;
+        private final int length;
+
+        private Location(final long offset, final int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private long recordSize() {
+            return RECORD_HEADER_SIZE + this.length + RECORD_TRAILER_SIZE;
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.services.impl.storage.persistence;
+
+import com.google.gson.JsonObject;
+import io.github.nucleuspowered.nucleus.guice.DataDirectory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IUserQueryObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IWorldQueryObject;
+import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import io.github.nucleuspowered.storage.persistence.IStorageRepositoryFactory;
+import io.github.nucleuspowered.storage.queryobjects.IQueryObject;
+import org.slf4j.Logger;
+import org.spongepowered.api.Sponge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Stores user and world data in single, append-only files. General and kit data
+ * are not supported, and so will continue to be stored in flat files.
+ *
+ * <p>When a data file is first created, any existing flat file data for that type is
+ * imported into it. Data files are retired when another store is selected, as they
+ * would not see anything saved to that store, and so are imported again if this
+ * store is selected later.</p>
+ */
+@Singleton
+public final class LogStructuredStorageRepositoryFactory implements IStorageRepositoryFactory<JsonObject> {
+
+    private static final String WORLD_DATA_DIRECTORY = "worlddata";
+    private static final String USER_DATA_DIRECTORY = "userdata";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final String RETIRED_SUFFIX = ".retired-";
+    private final Supplier<Path> dataPath;
+    private final Logger logger;
+    private final BooleanSupplier isMainThread;
+
+    @Inject
+    public LogStructuredStorageRepositoryFactory(@DataDirectory Supplier<Path> path, Logger logger) {
+        this(path, logger, () -> Sponge.getServer().isMainThread());
+    }
+
+    public LogStructuredStorageRepositoryFactory(Supplier<Path> path, Logger logger, BooleanSupplier isMainThread) {
+        this.dataPath = path;
+        this.logger = logger;
+        this.isMainThread = isMainThread;
+    }
+
+    /**
+     * Moves any data files out of the way, so that they are imported again
+     * from the flat files if this store is used again. Must only be called
+     * when this store is not in use.
+     */
+    public void retire() {
+        final Path path = this.dataPath.get();
+        for (final String p : new String[] { USER_DATA_DIRECTORY, WORLD_DATA_DIRECTORY }) {
+            final Path file = path.resolve(p + FILE_SUFFIX);
+            if (Files.exists(file)) {
+                final Path retired = file.resolveSibling(file.getFileName() + RETIRED_SUFFIX + System.currentTimeMillis());
+                try {
+                    Files.move(file, retired);
+                    this.logger.warn("Another data store is in use, so {} has been moved to {}. Anything saved to it that is not in the "
+                            + "flat files is only in that file.", file.getFileName(), retired.getFileName());
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not move " + file + " aside. Delete it before selecting the " + getName()
+                            + " store again, or it will be used in place of newer data.", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> userRepository() {
+        return repository(USER_DATA_DIRECTORY);
+    }
+
+    @Override
+    public IStorageRepository.Keyed<UUID, IWorldQueryObject, JsonObject> worldRepository() {
+        return repository(WORLD_DATA_DIRECTORY);
+    }
+
+    private <R extends IQueryObject<UUID, R>> IStorageRepository.Keyed<UUID, R, JsonObject> repository(final String p) {
+        final Path path = this.dataPath.get();
+        try {
+            return new LogStructuredStorageRepository<>(this.logger, path.resolve(p + FILE_SUFFIX), path.resolve(p), this.isMainThread);
+        } catch (IOException e) {
+            // Not null, which would mean that flat files should be used and split the data between the two.
+            this.logger.error("Could not open the " + p + " data file. Nothing will be loaded or saved until it can be opened.", e);
+            throw new IllegalStateException("Could not open the " + p + " data file", e);
+        }
+    }
+
+    @Override
+    @Nullable
+    public IStorageRepository.Single<JsonObject> generalRepository() {
+        return null;
+    }
+
+    @Override
+    @Nullable
+    public IStorageRepository.Single<JsonObject> kitsRepository() {
+        return null;
+    }
+
+    @Override public String getId() {
+        return "nucleus:logstructured";
+    }
+
+    @Override public String getName() {
+        return "Log Structured";
+    }
+}
@@ -92,7 +92,7 @@ public class SingleCachedService<O extends IDataObject> implements IStorageServi
         }
 
         try {
-            return getFromRepo();
+            return ServicesUtil.runOnThread(getClass().getSimpleName() + ".getOnThread", this::getFromRepo);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
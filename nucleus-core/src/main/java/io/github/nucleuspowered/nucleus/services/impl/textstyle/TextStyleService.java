@@ -4,6 +4,8 @@
  */
 package io.github.nucleuspowered.nucleus.services.impl.textstyle;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.ImmutableList;
@@ -17,6 +19,7 @@ import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
 import io.github.nucleuspowered.nucleus.services.interfaces.ITextStyleService;
 import org.slf4j.Logger;
 import org.spongepowered.api.Sponge;
+import org.spongepowered.api.service.context.Context;
 import org.spongepowered.api.service.permission.Subject;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.TextElement;
@@ -37,7 +40,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -56,6 +62,25 @@ public class TextStyleService implements ITextStyleService, IReloadableService.R
 
     private final static TextFormat EMPTY = new TextFormatImpl(TextColors.NONE, TextStyles.NONE);
 
+    // The formatting codes we check permissions for, and the bit that each one
+    // takes up in the masks of codes a subject may not use.
+    private static final String CODES = "0123456789abcdefklmnor";
+    private static final int[] CODE_INDEX = new int[128];
+
+    static {
+        Arrays.fill(CODE_INDEX, -1);
+        for (int i = 0; i < CODES.length(); i++) {
+            CODE_INDEX[CODES.charAt(i)] = i;
+        }
+    }
+
+    // Permission changes don't fire an event we can listen to, so these only
+    // live for a short while.
+    private final Cache<DisallowedCodesKey, Integer> disallowedCodes = Caffeine.newBuilder()
+            .expireAfterWrite(30, TimeUnit.SECONDS)
+            .maximumSize(1000)
+            .build();
+
     private final Logger logger;
     private final IPermissionService permissionService;
     private final IMessageProviderService messageProviderService;
@@ -208,20 +233,55 @@ public class TextStyleService implements ITextStyleService, IReloadableService.R
     }
 
     private String stripPermissionless(List<String> permissionPrefixColour, String permissionPrefixStyle, Subject source, final String oldMessage) {
-        String message = oldMessage;
-        if (message.contains("&")) {
-            // Find the next
-            String p = getRegexForPermissionless(source, permissionPrefixColour, permissionPrefixStyle);
-            if (p != null) {
-                int oldlength;
-                do {
-                    oldlength = message.length();
-                    message = message.replaceAll(p, "");
-                } while (oldlength != message.length());
+        if (oldMessage.indexOf('&') == -1) {
+            return oldMessage;
+        }
+
+        final int disallowed = getDisallowedCodes(source, permissionPrefixColour, permissionPrefixStyle);
+        if (disallowed == 0) {
+            return oldMessage;
+        }
+
+        return stripCodes(oldMessage, disallowed);
+    }
+
+    /**
+     * Removes the given formatting codes from a message, including any that
+     * only appear once others have been removed, such as in {@code &&aa}.
+     *
+     * @param message The message
+     * @param codes The codes to remove, without ampersands, such as {@code "0l"}
+     * @return The message without the codes
+     */
+    public static String stripCodes(String message, String codes) {
+        int disallowed = 0;
+        for (int i = 0; i < codes.length(); i++) {
+            final char c = codes.charAt(i);
+            if (c < CODE_INDEX.length && CODE_INDEX[c] != -1) {
+                disallowed |= 1 << CODE_INDEX[c];
             }
         }
 
-        return message;
+        return stripCodes(message, disallowed);
+    }
+
+    private static String stripCodes(final String message, final int disallowed) {
+        // Removing a code can bring an ampersand up against another code (&&aa),
+        // so we treat the output as a stack and pop the ampersand whenever it is
+        // followed by a code that should go - the same result as stripping until
+        // nothing changes, but in one pass.
+        final char[] result = new char[message.length()];
+        int length = 0;
+        for (int i = 0; i < message.length(); i++) {
+            final char c = message.charAt(i);
+            if (length > 0 && result[length - 1] == '&' && isIn(disallowed, c)) {
+                length--;
+            } else {
+                result[length++] = c;
+            }
+        }
+
+        return length == result.length ? message : new String(result, 0, length);
     }
 
     @Override public Collection<String> wouldStrip(Collection<String> permissionPrefixColour, String permissionPrefixStyle, Subject source,
@@ -233,19 +293,22 @@ public class TextStyleService implements ITextStyleService, IReloadableService.R
             String permissionPrefixStyle,
             Subject source,
             final String oldMessage) {
-        if (oldMessage.contains("&")) {
-            // Find the next
-            final String p = getRegexForPermissionless(source, permissionPrefixColour, permissionPrefixStyle);
-            if (p != null) {
-                // Scan the message for any of these tokens.
-                final Pattern pattern = Pattern.compile(p);
-                if (pattern.matcher(oldMessage).find()) {
-                    ImmutableList.Builder<String> name = ImmutableList.builder();
-                    // We don't support these.
-                    for (char a : p.toCharArray()) {
-                        if (a == '&' || a == '[' || a == ']') {
-                            continue;
-                        }
+        if (oldMessage.indexOf('&') == -1) {
+            return Collections.emptyList();
+        }
+
+        final int disallowed = getDisallowedCodes(source, permissionPrefixColour, permissionPrefixStyle);
+        if (disallowed == 0) {
+            return Collections.emptyList();
+        }
+
+        for (int i = oldMessage.indexOf('&'); i != -1 && i < oldMessage.length() - 1; i = oldMessage.indexOf('&', i + 1)) {
+            if (isIn(disallowed, oldMessage.charAt(i + 1))) {
+                // We don't support these.
+                ImmutableList.Builder<String> name = ImmutableList.builder();
+                for (int code = 0; code < CODES.length(); code++) {
+                    if ((disallowed & (1 << code)) != 0) {
+                        char a = CODES.charAt(code);
                         TextColor textColor = this.idToColour.get(a);
                         if (textColor != null) {
                             name.add(textColor.getName());
@@ -254,9 +317,9 @@ public class TextStyleService implements ITextStyleService, IReloadableService.R
                             name.add(this.styleToPerms.get(this.idToStyle.get(a)));
                         }
                     }
-
-                    return name.build();
                 }
+
+                return name.build();
             }
         }
 
@@ -269,28 +332,32 @@ public class TextStyleService implements ITextStyleService, IReloadableService.R
         }
     }
 
-    @Nullable
-    private String getRegexForPermissionless(Subject subject, List<String> permissionPrefixColour, String stylePrefix) {
-        String keys = getKeys(subject, permissionPrefixColour, stylePrefix);
-        if (keys != null) {
-            return "&[" + keys + "]";
+    private static boolean isIn(int codes, char code) {
+        if (code < CODE_INDEX.length) {
+            final int index = CODE_INDEX[code];
+            return index != -1 && (codes & (1 << index)) != 0;
         }
 
-        return null;
+        return false;
     }
 
-    @Nullable
-    private String getKeys(Subject subject, List<String> permissionPrefixColour, String stylePrefix) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (Map.Entry<TextColor, String> suffix : this.colourToPermissionSuffix.entrySet()) {
-            if (permissionPrefixColour.stream().noneMatch(prefix -> {
-                final String p = prefix.endsWith(".") ? prefix : prefix + ".";
-                return this.permissionService.hasPermission(subject, p + suffix.getValue());
-            })) {
-                Character c = this.idToColour.inverse().get(suffix.getKey());
-                if (c != null) {
-                    stringBuilder.append(c);
-                }
+    private int getDisallowedCodes(Subject subject, List<String> permissionPrefixColour, String stylePrefix) {
+        final DisallowedCodesKey key = new DisallowedCodesKey(subject, permissionPrefixColour, stylePrefix);
+        //noinspection ConstantConditions
+        return this.disallowedCodes.get(key, k -> calculateDisallowedCodes(subject, permissionPrefixColour, stylePrefix));
+    }
+
+    private int calculateDisallowedCodes(Subject subject, List<String> permissionPrefixColour, String stylePrefix) {
+        final List<String> colourPrefixes = new ArrayList<>(permissionPrefixColour.size());
+        for (String prefix : permissionPrefixColour) {
+            colourPrefixes.add(prefix.endsWith(".") ? prefix : prefix + ".");
+        }
+
+        int codes = 0;
+        for (Map.Entry<Character, TextColor> entry : this.idToColour.entrySet()) {
+            final String suffix = this.colourToPermissionSuffix.get(entry.getValue());
+            if (suffix != null && colourPrefixes.stream().noneMatch(prefix -> this.permissionService.hasPermission(subject, prefix + suffix))) {
+                codes |= 1 << CODE_INDEX[entry.getKey()];
             }
         }
 
@@ -301,20 +368,14 @@ public class TextStyleService implements ITextStyleService, IReloadableService.R
             p = stylePrefix + ".";
         }
 
-        for (Map.Entry<TextStyle, String> suffix : this.styleToPerms.entrySet()) {
-            if (!this.permissionService.hasPermission(subject, p + suffix.getValue())) {
-                Character c = this.idToStyle.inverse().get(suffix.getKey());
-                if (c != null) {
-                    stringBuilder.append(c);
-                }
+        for (Map.Entry<Character, TextStyle> entry : this.idToStyle.entrySet()) {
+            final String suffix = this.styleToPerms.get(entry.getValue());
+            if (suffix != null && !this.permissionService.hasPermission(subject, p + suffix)) {
+                codes |= 1 << CODE_INDEX[entry.getKey()];
             }
         }
 
-        if (stringBuilder.length() > 0) {
-            return stringBuilder.toString();
-        }
-
-        return null;
+        return codes;
     }
 
     @Override
@@ -536,6 +597,42 @@ public class TextStyleService implements ITextStyleService, IReloadableService.R
 
     @Override public void onReload(INucleusServiceCollection serviceCollection) {
         String commandNameOnClick = serviceCollection.moduleDataProvider().getModuleConfig(CoreConfig.class).getCommandOnNameClick();
+        this.disallowedCodes.invalidateAll();
+    }
+
+    private static final class DisallowedCodesKey {
+
+        private final String identifier;
+        private final Set<Context> contexts;
+        private final List<String> colourPrefixes;
+        private final String stylePrefix;
+
+        private DisallowedCodesKey(Subject subject, List<String> colourPrefixes, String stylePrefix) {
+            this.identifier = subject.getContainingCollection().getIdentifier() + ":" + subject.getIdentifier();
+            this.contexts = subject.getActiveContexts();
+            this.colourPrefixes = colourPrefixes;
+            this.stylePrefix = stylePrefix;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            DisallowedCodesKey that = (DisallowedCodesKey) o;
+            return this.identifier.equals(that.identifier)
+                    && this.contexts.equals(that.contexts)
+                    && this.colourPrefixes.equals(that.colourPrefixes)
+                    && this.stylePrefix.equals(that.stylePrefix);
+        }
+
+        @Override public int hashCode() {
+            return Objects.hash(this.identifier, this.contexts, this.colourPrefixes, this.stylePrefix);
+        }
     }
 
     public static class TextFormatImpl implements TextFormat {
@@ -12,6 +12,7 @@ import com.google.common.reflect.TypeToken;
 import io.github.nucleuspowered.nucleus.api.text.NucleusTextTemplate;
 import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
 import io.github.nucleuspowered.nucleus.services.interfaces.IMessageProviderService;
+import io.github.nucleuspowered.nucleus.services.interfaces.IPlaceholderService;
 import io.github.nucleuspowered.nucleus.services.interfaces.ITextStyleService;
 import io.github.nucleuspowered.nucleus.util.JsonConfigurateStringHelper;
 import io.github.nucleuspowered.nucleus.util.Tuples;
@@ -20,12 +21,16 @@ import ninja.leaping.configurate.SimpleConfigurationNode;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import ninja.leaping.configurate.objectmapping.serialize.TypeSerializer;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.TextRepresentable;
 import org.spongepowered.api.text.TextTemplate;
 import org.spongepowered.api.text.action.HoverAction;
 import org.spongepowered.api.text.action.TextActions;
+import org.spongepowered.api.text.channel.MessageChannel;
+import org.spongepowered.api.text.channel.MessageReceiver;
+import org.spongepowered.api.text.chat.ChatTypes;
 import org.spongepowered.api.text.format.TextStyle;
 import org.spongepowered.api.text.format.TextStyles;
 import org.spongepowered.api.text.serializer.TextSerializers;
@@ -35,6 +40,7 @@ import org.spongepowered.api.util.annotation.NonnullByDefault;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -53,9 +59,11 @@ public abstract class NucleusTextTemplateImpl implements NucleusTextTemplate {
     private final String representation;
     private final TextTemplate textTemplate;
     private final Map<String, Function<CommandSource, Text>> tokenMap = Maps.newHashMap();
+    @Nullable private volatile ITextStyleService.TextFormat prefixFormat;
     final INucleusServiceCollection serviceCollection;
 
-    private final Pattern enhancedUrlParser =
+    private static final Pattern LEADING_RESET = Pattern.compile("^\\s+&r.*");
+    public static final Pattern ENHANCED_URL_PARSER =
             Pattern.compile("(?<first>(^|\\s))(?<reset>&r)?(?<colour>(&[0-9a-flmnrok])+)?"
                             + "((?<options>\\{[a-z]+?})?(?<url>(http(s)?://)?([A-Za-z0-9]+\\.)+[A-Za-z0-9-]{2,}\\S*)|"
                             + "(?<specialUrl>(\\[(?<msg>.+?)](?<optionssurl>\\{[a-z]+})?\\((?<sUrl>(http(s)?://)?([A-Za-z0-9-]+\\.)+[A-Za-z0-9]{2,}[^\\s)]*)\\)))|"
@@ -125,9 +133,54 @@ public abstract class NucleusTextTemplateImpl implements NucleusTextTemplate {
     @Override @SuppressWarnings("SameParameterValue")
     public Text getForCommandSource(CommandSource source,
             @Nullable Map<String, Function<CommandSource, Optional<Text>>> tokensArray) {
+        return render(source, tokensArray, null);
+    }
+
+    /**
+     * Sends this template to each member of the {@link MessageChannel}, rendered once for the subject of the
+     * message rather than once for each member. The channel may still change what each member sees.
+     *
+     * @param channel The channel to send to
+     * @param subject The subject of the message, such as the player that joined
+     * @param sender The sender to pass to the channel
+     * @param tokensArray Any additional tokens
+     * @see #sendTo(Collection, Map)
+     */
+    public void sendTo(MessageChannel channel, CommandSource subject, Object sender,
+            @Nullable Map<String, Function<CommandSource, Optional<Text>>> tokensArray) {
+        Text message = render(subject, tokensArray, Maps.newHashMap());
+        for (MessageReceiver receiver : channel.getMembers()) {
+            channel.transformMessage(sender, receiver, message, ChatTypes.SYSTEM).ifPresent(receiver::sendMessage);
+        }
+    }
+
+    /**
+     * Sends this template to each receiver, rendered for that receiver.
+     *
+     * <p>Placeholders that give the same result for everyone, such as the online player count, are only
+     * parsed once for the whole set of receivers rather than once per receiver.</p>
+     *
+     * @param receivers The receivers to send to
+     * @param tokensArray Any additional tokens
+     */
+    public void sendTo(Collection<? extends MessageReceiver> receivers, @Nullable Map<String, Function<CommandSource, Optional<Text>>> tokensArray) {
+        Map<String, Text> batch = Maps.newHashMap();
+        for (MessageReceiver receiver : receivers) {
+            receiver.sendMessage(render(asCommandSource(receiver), tokensArray, batch));
+        }
+    }
+
+    private static CommandSource asCommandSource(MessageReceiver receiver) {
+        return receiver instanceof CommandSource ? (CommandSource) receiver : Sponge.getServer().getConsole();
+    }
+
+    private Text render(CommandSource source,
+            @Nullable Map<String, Function<CommandSource, Optional<Text>>> tokensArray,
+            @Nullable Map<String, Text> batch) {
 
         Map<String, TextTemplate.Arg> tokens = this.textTemplate.getArguments();
         Map<String, TextRepresentable> finalArgs = Maps.newHashMap();
+        IPlaceholderService placeholderService = this.serviceCollection.placeholderService();
 
         tokens.forEach((k, v) -> {
             String key = k.toLowerCase();
@@ -137,8 +190,10 @@ public abstract class NucleusTextTemplateImpl implements NucleusTextTemplate {
                 t = this.tokenMap.get(key).apply(source);
             } else if (tokensArray != null && tokensArray.containsKey(key)) {
                 t = tokensArray.get(key).apply(source).orElse(null);
+            } else if (batch != null && placeholderService.isSourceIndependent(key)) {
+                t = batch.computeIfAbsent(key, x -> placeholderService.parse(source, x).toText());
             } else {
-                t = this.serviceCollection.placeholderService().parse(source, key);
+                t = placeholderService.parse(source, key);
             }
 
             if (t != null) {
@@ -150,7 +205,7 @@ public abstract class NucleusTextTemplateImpl implements NucleusTextTemplate {
         ITextStyleService.TextFormat st = null;
         if (this.prefix != null) {
             builder.append(this.prefix);
-            st = this.serviceCollection.textStyleService().getLastColourAndStyle(this.prefix, null);
+            st = getPrefixFormat(this.prefix);
         }
 
         Text finalText = this.textTemplate.apply(finalArgs).build();
@@ -175,13 +230,24 @@ public abstract class NucleusTextTemplateImpl implements NucleusTextTemplate {
         return this.textTemplate.toText();
     }
 
+    private ITextStyleService.TextFormat getPrefixFormat(Text prefix) {
+        // The prefix never changes, so neither does the format it leaves behind.
+        ITextStyleService.TextFormat format = this.prefixFormat;
+        if (format == null) {
+            format = this.serviceCollection.textStyleService().getLastColourAndStyle(prefix, null);
+            this.prefixFormat = format;
+        }
+
+        return format;
+    }
+
     Tuples.NullableTuple<List<TextRepresentable>, Map<String, Function<CommandSource, Text>>> createTextTemplateFragmentWithLinks(String message) {
         Preconditions.checkNotNull(message, "message");
         if (message.isEmpty()) {
             return new Tuples.NullableTuple<>(Lists.newArrayList(Text.EMPTY), null);
         }
 
-        Matcher m = this.enhancedUrlParser.matcher(message);
+        LinkScanner m = new LinkScanner(message);
         ITextStyleService textStyleService = this.serviceCollection.textStyleService();
         if (!m.find()) {
             return new Tuples.NullableTuple<>(Lists.newArrayList(textStyleService.oldLegacy(message)), null);
@@ -189,24 +255,15 @@ public abstract class NucleusTextTemplateImpl implements NucleusTextTemplate {
 
         Map<String, Function<CommandSource, Text>> args = Maps.newHashMap();
         List<TextRepresentable> texts = Lists.newArrayList();
-        String remaining = message;
         ITextStyleService.TextFormat st = ITextStyleService.EMPTY;
         do {
-            // We found a URL. We split on the URL that we have.
-            String[] textArray = remaining.split(this.enhancedUrlParser.pattern(), 2);
+            // We found a URL. Everything between the last one and this one is plain text.
             TextRepresentable first = Text.builder().color(st.colour()).style(st.style())
-                    .append(textStyleService.oldLegacy(textArray[0])).build();
+                    .append(textStyleService.oldLegacy(m.getTextBefore())).build();
 
             // Add this text to the list regardless.
             texts.add(first);
 
-            // If we have more to do, shove it into the "remaining" variable.
-            if (textArray.length == 2) {
-                remaining = textArray[1];
-            } else {
-                remaining = null;
-            }
-
             // Get the last colour & styles
             String colourMatch = m.group("colour");
             if (colourMatch != null && !colourMatch.isEmpty()) {
@@ -249,22 +306,62 @@ public abstract class NucleusTextTemplateImpl implements NucleusTextTemplate {
                     texts.add(Text.of(st.colour(), st.style(), getCmd(msg, cmd, optionList, whiteSpace)));
                 }
             }
-        } while (remaining != null && m.find());
+        } while (m.find());
 
         // Add the last bit.
-        if (remaining != null) {
-            Text.Builder tb = Text.builder().color(st.colour()).style(st.style()).append(TextSerializers.FORMATTING_CODE.deserialize(remaining));
-            if (remaining.matches("^\\s+&r.*")) {
-                tb.style(TextStyles.RESET);
-            }
-
-            texts.add(tb.build());
+        String remaining = m.getRemaining();
+        Text.Builder tb = Text.builder().color(st.colour()).style(st.style()).append(TextSerializers.FORMATTING_CODE.deserialize(remaining));
+        if (LEADING_RESET.matcher(remaining).matches()) {
+            tb.style(TextStyles.RESET);
         }
 
+        texts.add(tb.build());
+
         // Return the list.
         return new Tuples.NullableTuple<>(texts, args);
     }
 
+    /**
+     * Walks a message once, finding each link in turn along with the plain
+     * text between it and the previous one.
+     */
+    public static final class LinkScanner {
+
+        private final String message;
+        private final Matcher matcher;
+        private int position = 0;
+        private String textBefore = "";
+
+        public LinkScanner(String message) {
+            this.message = message;
+            // Without anchoring bounds, so that the start of the message is the only start of input, even
+            // when the search starts from the end of the previous link.
+            this.matcher = ENHANCED_URL_PARSER.matcher(message).useAnchoringBounds(false);
+        }
+
+        public boolean find() {
+            if (!this.matcher.region(this.position, this.message.length()).find()) {
+                return false;
+            }
+
+            this.textBefore = this.message.substring(this.position, this.matcher.start());
+            this.position = this.matcher.end();
+            return true;
+        }
+
+        public String getTextBefore() {
+            return this.textBefore;
+        }
+
+        @Nullable public String group(String name) {
+            return this.matcher.group(name);
+        }
+
+        public String getRemaining() {
+            return this.message.substring(this.position);
+        }
+    }
+
     private Text getCmd(String msg, String cmd, @org.checkerframework.checker.nullness.qual.Nullable String optionList, String whiteSpace) {
         Text.Builder textBuilder = Text.builder(msg)
                 .onClick(TextActions.runCommand(cmd))
@@ -417,7 +514,7 @@ public abstract class NucleusTextTemplateImpl implements NucleusTextTemplate {
                         texts.push(style.textOf());
                     }
 
-                    createTextTemplateFragmentWithLinks(s.get(i + 1)).mapIfPresent(texts::addAll, tokens::putAll);
+                    tt.mapIfPresent(texts::addAll, tokens::putAll);
                 }
             }
 
@@ -79,7 +79,11 @@ public class NucleusTextTemplateMessageSender {
             Map<String, Function<CommandSource, Optional<Text>>> m = Maps.newHashMap();
             Optional<Text> sender = Optional.of(this.placeholderService.parse(this.sender, "displayname").toText());
             m.put("sender", cs -> sender);
-            event.getRecipients().forEach(x -> x.sendMessage(this.textTemplate.getForCommandSource(x, m)));
+            if (this.textTemplate instanceof NucleusTextTemplateImpl) {
+                ((NucleusTextTemplateImpl) this.textTemplate).sendTo(event.getRecipients(), m);
+            } else {
+                event.getRecipients().forEach(x -> x.sendMessage(this.textTemplate.getForCommandSource(x, m)));
+            }
         }
         return true;
     }
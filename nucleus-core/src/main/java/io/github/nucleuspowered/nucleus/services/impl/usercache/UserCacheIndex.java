@@ -0,0 +1,249 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.services.impl.usercache;
+
+import com.google.common.collect.ImmutableList;
+import io.github.nucleuspowered.nucleus.configurate.datatypes.UserCacheDataNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+/**
+ * The user cache, along with indexes for the lookups that are made against it.
+ *
+ * <p>The indexes are kept up to date as entries change, so lookups only cost
+ * as much as their result. All access is synchronised on this object.</p>
+ *
+ * <p>The on-disk format is a simple binary file:</p>
+ *
+ * <pre>
+ *     [magic:4][format:2][version:4][walk in progress:1][entries:4]
+ *     entry:  [uuid:16][flags:1][ip:utf?][jail:utf?]
+ *     [walked:4] walked: [uuid:16]
+ * </pre>
+ */
+public final class UserCacheIndex {
+
+    private static final int MAGIC = 0x4E554343; // NUCC
+    private static final short FORMAT = 1;
+
+    private static final byte HAS_IP = 1;
+    private static final byte HAS_JAIL = 2;
+    private static final byte MUTED = 4;
+
+    private final Map<UUID, UserCacheDataNode> entries = new HashMap<>();
+    private final Map<String, Set<UUID>> byIp = new HashMap<>();
+    private final Map<String, Set<UUID>> byJail = new HashMap<>();
+    private final Set<UUID> muted = new HashSet<>();
+
+    // Users processed by the current file walk, so that it can resume after a restart
+    private final Set<UUID> walked = new HashSet<>();
+    private boolean walkInProgress = false;
+    private int version;
+
+    public UserCacheIndex(final int version) {
+        this.version = version;
+    }
+
+    public synchronized int getVersion() {
+        return this.version;
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    public synchronized void put(final UUID uuid, final UserCacheDataNode node) {
+        // Anything added during a walk is up to date, so the end of the walk must not remove it.
+        if (this.walkInProgress) {
+            this.walked.add(uuid);
+        }
+
+        final UserCacheDataNode previous = this.entries.put(uuid, node);
+        if (previous != null) {
+            unindex(uuid, previous);
+        }
+
+        node.getIpAddress().ifPresent(ip -> this.byIp.computeIfAbsent(ip, x -> new HashSet<>()).add(uuid));
+        node.getJailName().ifPresent(jail -> this.byJail.computeIfAbsent(jailKey(jail), x -> new HashSet<>()).add(uuid));
+        if (node.isMuted()) {
+            this.muted.add(uuid);
+        }
+    }
+
+    public synchronized List<UUID> getForIp(final String ip) {
+        return copyOf(this.byIp.get(ip));
+    }
+
+    public synchronized List<UUID> getJailed() {
+        final ImmutableList.Builder<UUID> builder = ImmutableList.builder();
+        this.byJail.values().forEach(builder::addAll);
+        return builder.build();
+    }
+
+    public synchronized List<UUID> getJailedIn(final String name) {
+        return copyOf(this.byJail.get(jailKey(name)));
+    }
+
+    public synchronized List<UUID> getMuted() {
+        return ImmutableList.copyOf(this.muted);
+    }
+
+    public synchronized List<UUID> getAll() {
+        return ImmutableList.copyOf(this.entries.keySet());
+    }
+
+    public synchronized boolean isWalkInProgress() {
+        return this.walkInProgress;
+    }
+
+    /**
+     * Starts a file walk, unless one was interrupted, in which case the walk
+     * carries on from where it stopped.
+     */
+    public synchronized void startWalk() {
+        if (!this.walkInProgress) {
+            this.walked.clear();
+            this.walkInProgress = true;
+        }
+    }
+
+    public synchronized boolean hasWalked(final UUID uuid) {
+        return this.walked.contains(uuid);
+    }
+
+    public synchronized void markWalked(final Collection<UUID> uuids) {
+        this.walked.addAll(uuids);
+    }
+
+    /**
+     * Completes the file walk, removing anyone who was neither seen by it nor
+     * added while it was running.
+     *
+     * @param version The version of the cache that was built
+     */
+    public synchronized void finishWalk(final int version) {
+        final Iterator<Map.Entry<UUID, UserCacheDataNode>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<UUID, UserCacheDataNode> entry = iterator.next();
+            if (!this.walked.contains(entry.getKey())) {
+                unindex(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        this.walked.clear();
+        this.walkInProgress = false;
+        this.version = version;
+    }
+
+    public synchronized void write(final Path file) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT);
+            out.writeInt(this.version);
+            out.writeBoolean(this.walkInProgress);
+            out.writeInt(this.entries.size());
+            for (final Map.Entry<UUID, UserCacheDataNode> entry : this.entries.entrySet()) {
+                writeUUID(out, entry.getKey());
+                final UserCacheDataNode node = entry.getValue();
+                final String ip = node.getIpAddress().orElse(null);
+                final String jail = node.getJailName().orElse(null);
+                out.writeByte((ip == null ? 0 : HAS_IP) | (jail == null ? 0 : HAS_JAIL) | (node.isMuted() ? MUTED : 0));
+                if (ip != null) {
+                    out.writeUTF(ip);
+                }
+
+                if (jail != null) {
+                    out.writeUTF(jail);
+                }
+            }
+
+            out.writeInt(this.walked.size());
+            for (final UUID uuid : this.walked) {
+                writeUUID(out, uuid);
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static UserCacheIndex read(final Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != FORMAT) {
+                throw new IOException(file + " is not a user cache file that can be read.");
+            }
+
+            final UserCacheIndex index = new UserCacheIndex(in.readInt());
+            // Only set once the entries are in, as they would otherwise all count as walked.
+            final boolean walkInProgress = in.readBoolean();
+            final int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                final UUID uuid = readUUID(in);
+                final byte flags = in.readByte();
+                final String ip = (flags & HAS_IP) != 0 ? in.readUTF() : null;
+                final String jail = (flags & HAS_JAIL) != 0 ? in.readUTF() : null;
+                index.put(uuid, new UserCacheDataNode(ip, jail, (flags & MUTED) != 0));
+            }
+
+            index.walkInProgress = walkInProgress;
+            final int walked = in.readInt();
+            for (int i = 0; i < walked; i++) {
+                index.walked.add(readUUID(in));
+            }
+
+            return index;
+        }
+    }
+
+    private void unindex(final UUID uuid, final UserCacheDataNode node) {
+        node.getIpAddress().ifPresent(ip -> removeFrom(this.byIp, ip, uuid));
+        node.getJailName().ifPresent(jail -> removeFrom(this.byJail, jailKey(jail), uuid));
+        this.muted.remove(uuid);
+    }
+
+    private static void removeFrom(final Map<String, Set<UUID>> map, final String key, final UUID uuid) {
+        final Set<UUID> set = map.get(key);
+        if (set != null && set.remove(uuid) && set.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private static String jailKey(final String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static List<UUID> copyOf(@Nullable final Set<UUID> set) {
+        return set == null ? ImmutableList.of() : ImmutableList.copyOf(set);
+    }
+
+    private static void writeUUID(final DataOutputStream out, final UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUUID(final DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+}
@@ -4,7 +4,7 @@
  */
 package io.github.nucleuspowered.nucleus.services.impl.usercache;
 
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
 import com.google.common.reflect.TypeToken;
 import io.github.nucleuspowered.nucleus.configurate.datatypes.UserCacheDataNode;
 import io.github.nucleuspowered.nucleus.configurate.datatypes.UserCacheVersionNode;
@@ -16,7 +16,6 @@ import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
 import io.github.nucleuspowered.nucleus.services.interfaces.IStorageManager;
 import io.github.nucleuspowered.nucleus.services.interfaces.IUserCacheService;
 import io.github.nucleuspowered.storage.services.IStorageService;
-import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.gson.GsonConfigurationLoader;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import org.spongepowered.api.Sponge;
@@ -24,9 +23,9 @@ import org.spongepowered.api.service.user.UserStorageService;
 import org.spongepowered.api.util.Identifiable;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -38,13 +37,15 @@ import javax.inject.Singleton;
 public class UserCacheService implements IUserCacheService, IReloadableService.DataLocationReloadable {
 
     private static final int expectedVersion = new UserCacheVersionNode().getVersion();
-    private boolean isWalking = false;
+    private static final int WALK_BATCH_SIZE = 100;
+    private static final int WALK_CHECKPOINT_INTERVAL = 2000;
+    private volatile boolean isWalking = false;
 
     private final Supplier<Path> dataDirectory;
     private final Object lockingObject = new Object();
     private final IStorageManager storageManager;
 
-    private UserCacheVersionNode data;
+    private volatile UserCacheIndex index;
 
     @Inject
     public UserCacheService(INucleusServiceCollection serviceCollection) {
@@ -56,63 +57,67 @@ public class UserCacheService implements IUserCacheService, IReloadableService.D
 
     @Override public void load() {
         try {
-            this.data = configurationLoader()
-                    .load()
-                    .getValue(TypeToken.of(UserCacheVersionNode.class), (Supplier<UserCacheVersionNode>) UserCacheVersionNode::new);
+            Path file = dataFile();
+            if (Files.exists(file)) {
+                this.index = UserCacheIndex.read(file);
+                return;
+            }
+
+            // Pick up the cache from before it was stored in binary form.
+            Path legacyFile = this.dataDirectory.get().resolve("usercache.json");
+            if (Files.exists(legacyFile)) {
+                this.index = loadLegacy(legacyFile);
+                return;
+            }
         } catch (IOException | ObjectMappingException e) {
             e.printStackTrace();
-            this.data = new UserCacheVersionNode();
         }
+
+        this.index = new UserCacheIndex(expectedVersion);
     }
 
     @Override public void save() {
         try {
-            GsonConfigurationLoader gsonConfigurationLoader = configurationLoader();
-            ConfigurationNode node = gsonConfigurationLoader.createEmptyNode();
-            node.setValue(TypeToken.of(UserCacheVersionNode.class), this.data);
-            gsonConfigurationLoader.save(node);
-        } catch (ObjectMappingException | IOException e) {
+            Path file = dataFile();
+            Files.createDirectories(file.getParent());
+            this.index.write(file);
+        } catch (IOException e) {
             e.printStackTrace();
         }
-
     }
 
     @Override public List<UUID> getForIp(String ip) {
         updateCacheForOnlinePlayers();
-        String ipToCheck = ip.replace("/", "");
-        return this.data.getNode().entrySet().stream().filter(x -> x.getValue()
-                .getIpAddress().map(y -> y.equals(ipToCheck)).orElse(false))
-                .map(Map.Entry::getKey).collect(Collectors.toList());
+        return this.index.getForIp(ip.replace("/", ""));
     }
 
     @Override public List<UUID> getJailed() {
         updateCacheForOnlinePlayers();
-        return this.data.getNode().entrySet().stream().filter(x -> x.getValue().isJailed())
-                .map(Map.Entry::getKey).collect(Collectors.toList());
+        return this.index.getJailed();
     }
 
     @Override public List<UUID> getJailedIn(String name) {
         updateCacheForOnlinePlayers();
-        return this.data.getNode().entrySet().stream()
-                .filter(x -> x.getValue().getJailName().map(y -> y.equalsIgnoreCase(name)).orElse(false))
-                .map(Map.Entry::getKey).collect(Collectors.toList());
+        return this.index.getJailedIn(name);
     }
 
     @Override public List<UUID> getMuted() {
         updateCacheForOnlinePlayers();
-        return this.data.getNode().entrySet().stream().filter(x -> x.getValue().isMuted())
-                .map(Map.Entry::getKey).collect(Collectors.toList());
+        return this.index.getMuted();
+    }
+
+    @Override public List<UUID> getKnownUsers() {
+        return this.index.getAll();
     }
 
     @Override public void updateCacheForOnlinePlayers() {
         IUserQueryObject iuq = new UserQueryObject();
         iuq.addAllKeys(Sponge.getServer().getOnlinePlayers().stream().map(Identifiable::getUniqueId).collect(Collectors.toList()));
-        this.storageManager.getUserService().getAll(iuq).thenAccept(result ->
-                result.forEach((uuid, obj) -> this.data.getNode().computeIfAbsent(uuid, x -> new UserCacheDataNode()).set(obj)));
+        this.storageManager.getUserService().getAll(iuq).thenAccept(result -> result.forEach(this::updateCacheForPlayer));
     }
 
     @Override public void updateCacheForPlayer(UUID uuid, IUserDataObject u) {
-        this.data.getNode().computeIfAbsent(uuid, x -> new UserCacheDataNode()).set(u);
+        this.index.put(uuid, new UserCacheDataNode(u));
     }
 
     @Override public void updateCacheForPlayer(UUID uuid) {
@@ -120,13 +125,13 @@ public class UserCacheService implements IUserCacheService, IReloadableService.D
     }
 
     @Override public void startFilewalkIfNeeded() {
-        if (!this.isWalking && (!isCorrectVersion() || this.data.getNode().isEmpty())) {
+        if (!this.isWalking && (!isCorrectVersion() || this.index.isEmpty() || this.index.isWalkInProgress())) {
             fileWalk();
         }
     }
 
     @Override public boolean isCorrectVersion() {
-        return expectedVersion == this.data.getVersion();
+        return expectedVersion == this.index.getVersion();
     }
 
     @Override public boolean fileWalk() {
@@ -139,24 +144,33 @@ public class UserCacheService implements IUserCacheService, IReloadableService.D
         }
 
         try {
-            Map<UUID, UserCacheDataNode> data = Maps.newHashMap();
+            UserCacheIndex index = this.index;
+
+            // If the server stopped part way through a walk, we carry on where we left off.
+            index.startWalk();
             List<UUID> knownUsers = Sponge.getServiceManager().provideUnchecked(UserStorageService.class).getAll().stream()
-                    .map(Identifiable::getUniqueId).collect(Collectors.toList());
+                    .map(Identifiable::getUniqueId)
+                    .filter(x -> !index.hasWalked(x))
+                    .collect(Collectors.toList());
 
-            int count = 0;
+            // Users are loaded a batch at a time, which the storage layer can read in parallel.
             IStorageService.Keyed<UUID, IUserQueryObject, IUserDataObject> manager = this.storageManager.getUserService();
-            for (UUID user : knownUsers) {
-                if (manager.exists(user).join()) {
-                    manager.get(user).join().ifPresent(x -> data.put(user, new UserCacheDataNode(x)));
-                    if (++count >= 10) {
-                        manager.clearCache();
-                        count = 0;
-                    }
+            int sinceCheckpoint = 0;
+            for (List<UUID> batch : Lists.partition(knownUsers, WALK_BATCH_SIZE)) {
+                IUserQueryObject query = new UserQueryObject();
+                query.addAllKeys(batch);
+                manager.getAll(query).join().forEach((uuid, user) -> index.put(uuid, new UserCacheDataNode(user)));
+                index.markWalked(batch);
+                manager.clearCacheUnless(Sponge.getServer().getOnlinePlayers().stream().map(Identifiable::getUniqueId).collect(Collectors.toSet()));
+
+                sinceCheckpoint += batch.size();
+                if (sinceCheckpoint >= WALK_CHECKPOINT_INTERVAL) {
+                    save();
+                    sinceCheckpoint = 0;
                 }
             }
 
-            this.data = new UserCacheVersionNode();
-            this.data.getNode().putAll(data);
+            index.finishWalk(expectedVersion);
             save();
         } finally {
             this.isWalking = false;
@@ -165,10 +179,19 @@ public class UserCacheService implements IUserCacheService, IReloadableService.D
         return true;
     }
 
-    private GsonConfigurationLoader configurationLoader() {
-        return GsonConfigurationLoader.builder()
-                .setPath(this.dataDirectory.get().resolve("usercache.json"))
-                .build();
+    private Path dataFile() {
+        return this.dataDirectory.get().resolve("usercache.dat");
+    }
+
+    private UserCacheIndex loadLegacy(Path legacyFile) throws IOException, ObjectMappingException {
+        UserCacheVersionNode data = GsonConfigurationLoader.builder()
+                .setPath(legacyFile)
+                .build()
+                .load()
+                .getValue(TypeToken.of(UserCacheVersionNode.class), (Supplier<UserCacheVersionNode>) UserCacheVersionNode::new);
+        UserCacheIndex legacyIndex = new UserCacheIndex(data.getVersion());
+        data.getNode().forEach(legacyIndex::put);
+        return legacyIndex;
     }
 
     @Override
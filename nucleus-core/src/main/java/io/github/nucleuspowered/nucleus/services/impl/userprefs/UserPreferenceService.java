@@ -10,8 +10,10 @@ import com.google.inject.Singleton;
 import io.github.nucleuspowered.nucleus.api.core.NucleusUserPreferenceService;
 import io.github.nucleuspowered.nucleus.scaffold.command.NucleusParameters;
 import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
 import io.github.nucleuspowered.nucleus.services.interfaces.IUserPreferenceService;
 import io.github.nucleuspowered.nucleus.util.LazyLoadFunction;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.command.args.ArgumentParseException;
 import org.spongepowered.api.command.args.CommandArgs;
@@ -29,6 +31,9 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -39,6 +44,12 @@ public class UserPreferenceService implements IUserPreferenceService {
     private final NucleusKeysProvider provider;
 
     private final Map<String, NucleusUserPreferenceService.PreferenceKey<?>> registered = new HashMap<>();
+
+    // Preferences of online players, in the order the keys were registered, so
+    // that reads for them don't go to storage.
+    private final Map<String, Integer> keyIndexes = new HashMap<>();
+    private final Map<UUID, AtomicReferenceArray<Object>> preloaded = new ConcurrentHashMap<>();
+    private final LongAdder mainThreadMisses = new LongAdder();
     private final Element element;
 
     public static final Text PREFERENCE_ARG = Text.of("preference");
@@ -66,6 +77,7 @@ public class UserPreferenceService implements IUserPreferenceService {
             throw new IllegalArgumentException("ID already registered");
         }
         this.registered.put(key.getID(), key);
+        this.keyIndexes.put(key.getID(), this.keyIndexes.size());
         this.element.keys.put(key.getID().toLowerCase().replaceAll("^nucleus:", ""), key);
         this.element.keys.put(key.getID().toLowerCase(), key);
     }
@@ -85,11 +97,21 @@ public class UserPreferenceService implements IUserPreferenceService {
     }
 
     @Override public <T> void set(UUID uuid, PreferenceKeyImpl<T> key, @Nullable T value) {
+        AtomicReferenceArray<Object> table = this.preloaded.get(uuid);
+        Integer index = this.keyIndexes.get(key.getID());
+        if (table != null && index != null && index < table.length()) {
+            table.set(index, value == null ? key.getDefaultValue().orElse(null) : value);
+        }
+
+        // If write behind is on, this will be batched up with other saves.
         this.serviceCollection
                 .storageManager()
                 .getUserService()
                 .getOrNew(uuid)
-                .thenAccept(x -> x.set(key, value));
+                .thenAccept(x -> {
+                    x.set(key, value);
+                    this.serviceCollection.storageManager().getUserService().save(uuid, x);
+                });
     }
 
     @Override public Map<NucleusUserPreferenceService.PreferenceKey<?>, Object> get(User user) {
@@ -104,15 +126,25 @@ public class UserPreferenceService implements IUserPreferenceService {
     }
 
     @Override public <T> Optional<T> get(UUID uuid, NucleusUserPreferenceService.PreferenceKey<T> key) {
-        if (!this.registered.containsValue(key)) {
-            throw new IllegalArgumentException("Key is not registered.");
-        }
-
         if (!(key instanceof PreferenceKeyImpl)) {
             throw new IllegalArgumentException("Custom preference keys are not supported.");
         }
 
         PreferenceKeyImpl<T> prefKey = (PreferenceKeyImpl<T>) key;
+        if (this.registered.get(prefKey.getID()) != key) {
+            throw new IllegalArgumentException("Key is not registered.");
+        }
+
+        AtomicReferenceArray<Object> table = this.preloaded.get(uuid);
+        int index = this.keyIndexes.get(prefKey.getID());
+        if (table != null && index < table.length()) {
+            return Optional.ofNullable((T) table.get(index));
+        }
+
+        if (Sponge.getServer().isMainThread()) {
+            this.mainThreadMisses.increment();
+        }
+
         Optional<T> ot = Optional.empty();
         try {
             ot = this.serviceCollection
@@ -131,6 +163,28 @@ public class UserPreferenceService implements IUserPreferenceService {
         return get(uuid, key).orElse(null);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override public void preload(UUID uuid, IUserDataObject dataObject) {
+        AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(this.keyIndexes.size());
+        for (Map.Entry<String, Integer> entry : this.keyIndexes.entrySet()) {
+            try {
+                table.set(entry.getValue(), dataObject.getOrDefault((PreferenceKeyImpl<Object>) this.registered.get(entry.getKey())));
+            } catch (ClassCastException e) {
+                e.printStackTrace();
+            }
+        }
+
+        this.preloaded.put(uuid, table);
+    }
+
+    @Override public void unload(UUID uuid) {
+        this.preloaded.remove(uuid);
+    }
+
+    @Override public long getMainThreadMisses() {
+        return this.mainThreadMisses.sum();
+    }
+
     @Override
     public NucleusKeysProvider keys() {
         return this.provider;
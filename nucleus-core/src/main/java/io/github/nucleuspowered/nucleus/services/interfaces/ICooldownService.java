@@ -53,4 +53,16 @@ public interface ICooldownService {
      */
     void clearCooldown(String key, Identifiable identifiable);
 
+    /**
+     * Removes cooldowns that have ended from memory. Cooldowns that have
+     * ended are never returned whether or not this has been called.
+     */
+    void expireCooldowns();
+
+    /**
+     * Saves the cooldowns that have long enough left to be kept over a
+     * restart, if this is enabled.
+     */
+    void save();
+
 }
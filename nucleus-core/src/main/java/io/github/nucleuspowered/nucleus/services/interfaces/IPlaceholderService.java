@@ -23,4 +23,13 @@ public interface IPlaceholderService extends NucleusPlaceholderService {
     void registerToken(String tokenName, PlaceholderParser parser, boolean document);
 
     Map<String, PlaceholderMetadata> getNucleusParsers();
+
+    /**
+     * Gets whether the given token produces the same text whichever source it
+     * is parsed for, such as the online player count.
+     *
+     * @param token The token
+     * @return true if the source does not affect the result
+     */
+    boolean isSourceIndependent(String token);
 }
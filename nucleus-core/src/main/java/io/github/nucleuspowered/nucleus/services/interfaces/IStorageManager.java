@@ -6,6 +6,7 @@ package io.github.nucleuspowered.nucleus.services.interfaces;
 
 import com.google.gson.JsonObject;
 import com.google.inject.ImplementedBy;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
 import io.github.nucleuspowered.nucleus.services.impl.storage.StorageManager;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IGeneralDataObject;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
@@ -89,4 +90,43 @@ public interface IStorageManager {
     }
 
     CompletableFuture<Void> saveAll();
+
+    /**
+     * Writes any saves held by write-behind queues on the calling thread, and
+     * causes any future saves to be written immediately.
+     */
+    void stopWriteBehind();
+
+    /**
+     * Gets whether changed player and world data will be written by
+     * {@link #flushForShutdown()} when the server stops.
+     *
+     * @return true if the shutdown flush is enabled
+     */
+    boolean isShutdownFlushEnabled();
+
+    /**
+     * Writes all changed player and world data in parallel, if enabled in the
+     * config, putting anything that is not written in time into a recovery
+     * journal that is restored on the next start. Write-behind saving is
+     * stopped without writing what it holds, as that is written here too.
+     *
+     * @return false if the shutdown flush is disabled, in which case nothing was done
+     */
+    boolean flushForShutdown();
+
+    /**
+     * Selects the data store from the config and restores anything left in
+     * the shutdown recovery journal. This must be called before anything is
+     * read from storage as the server starts.
+     *
+     * @param serviceCollection The {@link INucleusServiceCollection}
+     */
+    void prepareForStart(INucleusServiceCollection serviceCollection);
+
+    /**
+     * Stops the storage executor, waiting for operations that have already
+     * been queued to complete. Later operations are run on the Sponge scheduler.
+     */
+    void stopExecutor();
 }
@@ -26,6 +26,14 @@ public interface IUserCacheService {
 
     List<UUID> getMuted();
 
+    /**
+     * Gets every user that Nucleus has data for, without going through every
+     * profile that the server knows of.
+     *
+     * @return The {@link UUID}s of the users
+     */
+    List<UUID> getKnownUsers();
+
     void updateCacheForOnlinePlayers();
 
     void updateCacheForPlayer(UUID uuid, IUserDataObject u);
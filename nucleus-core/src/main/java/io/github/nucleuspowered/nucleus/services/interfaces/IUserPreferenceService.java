@@ -6,6 +6,7 @@ package io.github.nucleuspowered.nucleus.services.interfaces;
 
 import com.google.inject.ImplementedBy;
 import io.github.nucleuspowered.nucleus.api.core.NucleusUserPreferenceService;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
 import io.github.nucleuspowered.nucleus.services.impl.userprefs.NucleusKeysProvider;
 import io.github.nucleuspowered.nucleus.services.impl.userprefs.PreferenceKeyImpl;
 import io.github.nucleuspowered.nucleus.services.impl.userprefs.UserPreferenceService;
@@ -37,6 +38,25 @@ public interface IUserPreferenceService extends NucleusUserPreferenceService {
 
     <T> T getUnwrapped(UUID uuid, PreferenceKey<T> key);
 
+    /**
+     * Reads all preferences for the user into memory, so that they can be
+     * read without going to storage while the user is online.
+     *
+     * @param uuid The {@link UUID} of the user
+     * @param dataObject The user's data
+     */
+    void preload(UUID uuid, IUserDataObject dataObject);
+
+    void unload(UUID uuid);
+
+    /**
+     * Gets the number of preference reads on the main thread that were not
+     * preloaded and had to go to storage.
+     *
+     * @return The number of reads
+     */
+    long getMainThreadMisses();
+
     @Override NucleusKeysProvider keys();
 
 }
@@ -0,0 +1,26 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.storage.dataaccess;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import io.github.nucleuspowered.storage.dataobjects.IDataObject;
+
+import java.io.IOException;
+
+/**
+ * A translator that can read and write data objects as a stream of JSON, for
+ * use with repositories that implement
+ * {@link io.github.nucleuspowered.storage.persistence.IStorageRepository.Streaming}.
+ *
+ * @param <R> The type of data object
+ */
+public interface IStreamingDataTranslator<R extends IDataObject> {
+
+    R fromStream(JsonReader reader) throws IOException;
+
+    void toStream(R object, JsonWriter writer) throws IOException;
+
+}
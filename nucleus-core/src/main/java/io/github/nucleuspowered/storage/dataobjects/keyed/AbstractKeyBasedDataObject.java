@@ -4,11 +4,22 @@
  */
 package io.github.nucleuspowered.storage.dataobjects.keyed;
 
+import io.github.nucleuspowered.nucleus.configurate.datatypes.LocationNode;
+import io.github.nucleuspowered.nucleus.datatypes.EndTimestamp;
 import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.configurate.AbstractConfigurateBackedDataObject;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 
@@ -16,6 +27,12 @@ public class AbstractKeyBasedDataObject<T extends IKeyedDataObject<T>> extends A
 
     private transient boolean isDirty = false;
 
+    // Decoded values, so that repeated reads of a key don't run the object mapper each time.
+    // Cleared whenever the backing node changes; the generation stops a read that raced with a
+    // change from caching the old value.
+    private final transient Map<DataKey<?, ?>, Optional<?>> decodedValues = new ConcurrentHashMap<>();
+    private transient volatile long generation = 0;
+
     @Override
     public final void markDirty() {
         this.isDirty = true;
@@ -40,14 +57,47 @@ public class AbstractKeyBasedDataObject<T extends IKeyedDataObject<T>> extends A
         return new ValueImpl<>(getNullable(dataKey), dataKey);
     }
 
+    /**
+     * Gets the value associated with the {@link DataKey}.
+     *
+     * <p>Decoded values are cached until the key is next set or removed, but only if they
+     * cannot be changed by the caller or are copied for each caller: strings, boxed primitives,
+     * enums, {@link UUID}s, {@link LocationNode}s, {@link EndTimestamp}s (such as mute and jail
+     * data) and collections of those. Anything else is decoded again on each call. Either way,
+     * changes to the returned value are not seen by other callers until it is set.</p>
+     *
+     * @param dataKey The key
+     * @param <V> The type of value
+     * @return The value, or {@code null}
+     */
     @Nullable
+    @SuppressWarnings("unchecked")
     public <V> V getNullable(DataKey<V, ? extends T> dataKey) {
+        final Optional<?> cached = this.decodedValues.get(dataKey);
+        if (cached != null) {
+            return copyOf((V) cached.orElse(null));
+        }
+
+        final long currentGeneration = this.generation;
+        final V value;
         try {
-            return getNode(dataKey.getKey()).getValue(dataKey.getType());
+            value = getNode(dataKey.getKey()).getValue(dataKey.getType());
         } catch (ObjectMappingException e) {
             e.printStackTrace();
             return null;
         }
+
+        if (!canCache(value)) {
+            return value;
+        }
+
+        synchronized (this.decodedValues) {
+            if (currentGeneration == this.generation) {
+                this.decodedValues.put(dataKey, Optional.ofNullable(value));
+            }
+        }
+
+        return copyOf(value);
     }
 
     @Nullable
@@ -67,6 +117,7 @@ public class AbstractKeyBasedDataObject<T extends IKeyedDataObject<T>> extends A
     public <V> boolean set(DataKey<V, ? extends T> dataKey, V data) {
         try {
             getNode(dataKey.getKey()).setValue(dataKey.getType(), data);
+            this.invalidateDecodedValues();
             this.markDirty();
             return true;
         } catch (ObjectMappingException e) {
@@ -77,6 +128,7 @@ public class AbstractKeyBasedDataObject<T extends IKeyedDataObject<T>> extends A
 
     public void remove(DataKey<?, ? extends T> dataKey) {
         getNode(dataKey.getKey()).setValue(null);
+        this.invalidateDecodedValues();
         this.markDirty();
     }
 
@@ -93,6 +145,72 @@ public class AbstractKeyBasedDataObject<T extends IKeyedDataObject<T>> extends A
     public void setBackingNode(ConfigurationNode node) {
         this.markDirty(false);
         super.setBackingNode(node);
+        this.invalidateDecodedValues();
+    }
+
+    private void invalidateDecodedValues() {
+        // Keys may overlap, so everything goes.
+        synchronized (this.decodedValues) {
+            this.generation++;
+            this.decodedValues.clear();
+        }
+    }
+
+    // Only values that a caller can't change underneath another caller are kept, unless copyOf
+    // gives each caller their own. LocationNode has no setters, but subclasses such as WarpNode do.
+    private static boolean canCache(@Nullable Object value) {
+        if (value == null
+                || value instanceof String
+                || value instanceof Number && value.getClass().getName().startsWith("java.lang.")
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum
+                || value instanceof UUID
+                || value instanceof EndTimestamp
+                || value.getClass() == LocationNode.class) {
+            return true;
+        } else if (value instanceof Collection) {
+            for (Object o : (Collection<?>) value) {
+                if (!canCache(o)) {
+                    return false;
+                }
+            }
+
+            return value instanceof List || value instanceof Set;
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!canCache(entry.getKey()) || !canCache(entry.getValue())) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    // Callers commonly modify a collection or a mute and set it again, so they each get their own.
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static <V> V copyOf(@Nullable V value) {
+        if (value instanceof EndTimestamp) {
+            return (V) ((EndTimestamp) value).copy();
+        } else if (value instanceof List) {
+            final List<Object> copy = new ArrayList<>(((List<?>) value).size());
+            ((List<?>) value).forEach(x -> copy.add(copyOf(x)));
+            return (V) copy;
+        } else if (value instanceof Set) {
+            final Set<Object> copy = new LinkedHashSet<>();
+            ((Set<?>) value).forEach(x -> copy.add(copyOf(x)));
+            return (V) copy;
+        } else if (value instanceof Map) {
+            final Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> copy.put(k, copyOf(v)));
+            return (V) copy;
+        }
+
+        return value;
     }
 
     public class ValueImpl<V, B extends T> implements IKeyedDataObject.Value<V> {
@@ -0,0 +1,42 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.storage.persistence;
+
+/**
+ * A repository that appends changes to a journal, and periodically writes
+ * them into the store itself in a checkpoint.
+ */
+public interface IJournalledRepository {
+
+    /**
+     * Gets the size, in bytes, of the journal that has not been checkpointed.
+     *
+     * @return The size
+     */
+    long getJournalSize();
+
+    /**
+     * Gets the number of checkpoints that have been completed.
+     *
+     * @return The number of checkpoints
+     */
+    long getCheckpointCount();
+
+    /**
+     * Gets how long the last checkpoint took, in milliseconds.
+     *
+     * @return The time taken, or 0 if there has not been a checkpoint
+     */
+    long getLastCheckpointMillis();
+
+    /**
+     * Gets the number of bytes written to the journal and the store in the
+     * last full minute.
+     *
+     * @return The number of bytes
+     */
+    long getBytesWrittenLastMinute();
+
+}
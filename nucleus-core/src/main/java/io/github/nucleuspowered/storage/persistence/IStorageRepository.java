@@ -5,14 +5,19 @@
 package io.github.nucleuspowered.storage.persistence;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import io.github.nucleuspowered.storage.exceptions.DataDeleteException;
 import io.github.nucleuspowered.storage.exceptions.DataLoadException;
 import io.github.nucleuspowered.storage.exceptions.DataQueryException;
 import io.github.nucleuspowered.storage.exceptions.DataSaveException;
 import io.github.nucleuspowered.storage.queryobjects.IQueryObject;
 import io.github.nucleuspowered.storage.util.KeyedObject;
+import io.github.nucleuspowered.storage.util.ThrownConsumer;
+import io.github.nucleuspowered.storage.util.ThrownFunction;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
@@ -43,6 +48,17 @@ public interface IStorageRepository {
      */
     void shutdown();
 
+    /**
+     * Forces anything that has been written but may still be held by the
+     * operating system to the disk. This is called once after a batch of
+     * writes, such as when the server stops, rather than after each write.
+     *
+     * <p>By default, this does nothing.</p>
+     */
+    default void sync() {
+        // noop
+    }
+
     /**
      * Requests that any cache that the repository provides is cleared.
      */
@@ -184,4 +200,31 @@ public interface IStorageRepository {
         Collection<K> getAllKeys(Q query) throws DataLoadException, DataQueryException;
     }
 
+    /**
+     * Interface for keyed repositories that can read and write an object as a
+     * stream of JSON, without building a {@link JsonObject} for it first.
+     *
+     * @param <K> The key
+     */
+    interface Streaming<K> {
+
+        /**
+         * Reads the object with the supplied key.
+         *
+         * @param key The key
+         * @param reader Reads the object from the JSON
+         * @param <R> The type of object
+         * @return The object, if it exists
+         */
+        <R> Optional<R> read(K key, ThrownFunction<JsonReader, R, IOException> reader) throws DataLoadException;
+
+        /**
+         * Writes the object with the supplied key.
+         *
+         * @param key The key
+         * @param writer Writes the object as JSON
+         */
+        void write(K key, ThrownConsumer<JsonWriter, IOException> writer) throws DataSaveException;
+    }
+
 }
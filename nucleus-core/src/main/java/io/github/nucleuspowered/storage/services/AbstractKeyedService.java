@@ -5,12 +5,12 @@
 package io.github.nucleuspowered.storage.services;
 
 import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Striped;
 import io.github.nucleuspowered.storage.dataaccess.IDataTranslator;
+import io.github.nucleuspowered.storage.dataaccess.IStreamingDataTranslator;
 import io.github.nucleuspowered.storage.dataobjects.keyed.DataKey;
 import io.github.nucleuspowered.storage.dataobjects.keyed.IKeyedDataObject;
 import io.github.nucleuspowered.storage.persistence.IStorageRepository;
@@ -22,13 +22,15 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.spongepowered.api.plugin.PluginContainer;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.Lock;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -39,20 +41,20 @@ import javax.annotation.Nullable;
 public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D extends IKeyedDataObject<D>>
         implements IStorageService.Keyed.KeyedData<UUID, Q, D> {
 
-    private final LoadingCache<UUID, ReentrantReadWriteLock> dataLocks =
-            Caffeine.newBuilder().expireAfterAccess(5, TimeUnit.MINUTES).build(new CacheLoader<UUID, ReentrantReadWriteLock>() {
-                @NonNull
-                @Override
-                public ReentrantReadWriteLock load(@NonNull UUID key) {
-                    return new ReentrantReadWriteLock();
-                }
-            });
+    private static final int LOCK_STRIPES = 64;
+
+    // A fixed set of locks shared between keys, so taking a lock never allocates and a
+    // lock can't be replaced while another thread is holding it.
+    private final Striped<Lock> dataLocks = Striped.lock(LOCK_STRIPES);
     private final Cache<UUID, D> cache = Caffeine
             .newBuilder()
             .removalListener(this::onRemoval)
             .expireAfterAccess(5, TimeUnit.MINUTES)
             .build();
 
+    // Data that must stay in memory whatever the cache does, such as that of online players.
+    private final Map<UUID, D> pinned = new ConcurrentHashMap<>();
+
     private final Supplier<IStorageRepository.Keyed<UUID, Q, ?>> storageRepositorySupplier;
     private final Supplier<D> createNew;
     private final ThrownBiConsumer<UUID, D, Exception> save;
@@ -62,7 +64,9 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
     private final PluginContainer pluginContainer;
     private final Consumer<D> upgrader;
     private final Consumer<D> versionSetter;
+    @Nullable private volatile WriteBehindQueue<UUID, D> writeBehindQueue;
 
+    @SuppressWarnings("unchecked")
     public <O> AbstractKeyedService(
         Supplier<IDataTranslator<D, O>> dts,
         Supplier<IStorageRepository.Keyed<UUID, Q, O>> srs,
@@ -72,10 +76,17 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
     ) {
         this(
                 () -> dts.get().createNew(),
-                (key, udo) -> srs.get().save(
-                        key,
-                        dts.get().toDataAccessObject(udo)
-                ),
+                (key, udo) -> {
+                    final IStorageRepository.Keyed<UUID, Q, O> repository = srs.get();
+                    final IDataTranslator<D, O> translator = dts.get();
+                    if (repository instanceof IStorageRepository.Streaming && translator instanceof IStreamingDataTranslator) {
+                        // Straight to the file, rather than through an intermediate object.
+                        ((IStorageRepository.Streaming<UUID>) repository).write(key,
+                                writer -> ((IStreamingDataTranslator<D>) translator).toStream(udo, writer));
+                    } else {
+                        repository.save(key, translator.toDataAccessObject(udo));
+                    }
+                },
                 query -> srs.get()
                         .getAll(query)
                         .entrySet().stream()
@@ -86,7 +97,16 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
                                         x -> dts.get().fromDataAccessObject(x.getValue())
                                 )
                         ),
-                uuid -> srs.get().get(uuid).map(dts.get()::fromDataAccessObject),
+                uuid -> {
+                    final IStorageRepository.Keyed<UUID, Q, O> repository = srs.get();
+                    final IDataTranslator<D, O> translator = dts.get();
+                    if (repository instanceof IStorageRepository.Streaming && translator instanceof IStreamingDataTranslator) {
+                        return ((IStorageRepository.Streaming<UUID>) repository).read(uuid,
+                                ((IStreamingDataTranslator<D>) translator)::fromStream);
+                    }
+
+                    return repository.get(uuid).map(translator::fromDataAccessObject);
+                },
                 query -> srs.get().get(query).map(x -> x.mapValue(dts.get()::fromDataAccessObject)),
                 srs::get,
                 upgrader,
@@ -116,6 +136,65 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
         this.storageRepositorySupplier = storageRepositorySupplier;
     }
 
+    /**
+     * Enables write-behind saving with the given parameters, or disables it if
+     * {@code enabled} is false. Any writes pending on a previous queue are
+     * written before the new settings take effect.
+     *
+     * @param enabled Whether write-behind is enabled
+     * @param maxLatencyMillis The maximum time a save may be held before being written
+     * @param maxBatchSize The number of pending saves that will trigger an immediate flush
+     */
+    public synchronized void setWriteBehind(final boolean enabled, final long maxLatencyMillis, final int maxBatchSize) {
+        final WriteBehindQueue<UUID, D> current = this.writeBehindQueue;
+        if (current != null) {
+            if (enabled && current.getMaxLatencyMillis() == maxLatencyMillis && current.getMaxBatchSize() == maxBatchSize) {
+                return;
+            }
+
+            // New saves are written directly while the old queue drains.
+            this.writeBehindQueue = null;
+            current.close();
+        }
+
+        if (enabled) {
+            this.writeBehindQueue = new WriteBehindQueue<>(
+                    getClass().getSimpleName(),
+                    this::writeOnThread,
+                    this.pluginContainer.getLogger(),
+                    maxLatencyMillis,
+                    maxBatchSize);
+        }
+    }
+
+    /**
+     * Writes any pending write-behind saves on the calling thread and disables write-behind
+     * saving, so that subsequent saves are written immediately.
+     */
+    public void stopWriteBehind() {
+        setWriteBehind(false, 0, 0);
+    }
+
+    /**
+     * Gets the write-behind queue, if write-behind saving is enabled.
+     *
+     * @return The queue, if it exists
+     */
+    public Optional<WriteBehindQueue<UUID, D>> getWriteBehindQueue() {
+        return Optional.ofNullable(this.writeBehindQueue);
+    }
+
+    @Override
+    public void pin(@NonNull final UUID key, @NonNull final D value) {
+        this.pinned.put(key, value);
+        this.cache.put(key, value);
+    }
+
+    @Override
+    public void unpin(@NonNull final UUID key) {
+        this.pinned.remove(key);
+    }
+
     public D createNew() {
         final D data = this.createNew.get();
         this.versionSetter.accept(data);
@@ -143,15 +222,10 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
 
     @Override
     public CompletableFuture<Optional<D>> get(@NonNull final UUID key) {
-        ReentrantReadWriteLock.ReadLock lock = this.dataLocks.get(key).readLock();
-        try {
-            lock.lock();
-            D result = this.cache.getIfPresent(key);
-            if (result != null) {
-                return CompletableFuture.completedFuture(Optional.of(result));
-            }
-        } finally {
-            lock.unlock();
+        // The cache is safe to read without a lock, anything missing is loaded under the key's lock.
+        D result = getCached(key);
+        if (result != null) {
+            return CompletableFuture.completedFuture(Optional.of(result));
         }
 
         return ServicesUtil.run(() -> getFromRepo(key), this.pluginContainer);
@@ -159,30 +233,38 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
 
     @Override
     public CompletableFuture<D> getOrNew(@Nonnull final UUID key) {
-        return get(key).thenApply(d -> d.orElseGet(() -> {
-            D result = createNew();
-            save(key, result);
+        D result = getCached(key);
+        if (result != null) {
+            return CompletableFuture.completedFuture(result);
+        }
+
+        return ServicesUtil.run(() -> getOrNewFromRepo(key), this.pluginContainer);
+    }
+
+    @Override
+    public D getOrNewOnThread(@Nonnull final UUID key) {
+        D result = getCached(key);
+        if (result != null) {
             return result;
-        }));
+        }
+
+        try {
+            return ServicesUtil.runOnThread(getClass().getSimpleName() + ".getOrNewOnThread", () -> getOrNewFromRepo(key));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
     @SuppressWarnings("ConstantConditions")
     public Optional<D> getOnThread(@NonNull UUID key) {
-        // Read lock for the cache
-        ReentrantReadWriteLock.ReadLock lock = this.dataLocks.get(key).readLock();
-        try {
-            lock.lock();
-            D result = this.cache.getIfPresent(key);
-            if (result != null) {
-                return Optional.of(result);
-            }
-        } finally {
-            lock.unlock();
+        D result = getCached(key);
+        if (result != null) {
+            return Optional.of(result);
         }
 
         try {
-            return getFromRepo(key);
+            return ServicesUtil.runOnThread(getClass().getSimpleName() + ".getOnThread", () -> getFromRepo(key));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -190,14 +272,28 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
 
     @SuppressWarnings("ConstantConditions")
     private Optional<D> getFromRepo(@NonNull UUID key) throws Exception {
-        // Write lock because of the cache
-        ReentrantReadWriteLock.WriteLock lock = this.dataLocks.get(key).writeLock();
+        // Locked because of the cache
+        Lock lock = this.dataLocks.get(key);
+        lock.lock();
         try {
-            lock.lock();
+            // Someone else may have loaded it while we were waiting for the lock.
+            final D cached = getCached(key);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+
+            final WriteBehindQueue<UUID, D> queue = this.writeBehindQueue;
+            final D pending = queue == null ? null : queue.getPending(key);
+            if (pending != null) {
+                // Not yet written, so what is on disk is stale.
+                putCached(key, pending);
+                return Optional.of(pending);
+            }
+
             Optional<D> r = this.get.apply(key);
             r.ifPresent(d -> {
                 this.upgrader.accept(d);
-                this.cache.put(key, d);
+                putCached(key, d);
             });
             return r;
         } finally {
@@ -205,13 +301,31 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
         }
     }
 
+    // Under the key's lock, so that two callers cannot each create their own copy.
+    private D getOrNewFromRepo(@NonNull UUID key) throws Exception {
+        Lock lock = this.dataLocks.get(key);
+        lock.lock();
+        try {
+            final Optional<D> existing = getFromRepo(key);
+            if (existing.isPresent()) {
+                return existing.get();
+            }
+
+            final D result = createNew();
+            saveOnThread(key, result);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public CompletableFuture<Optional<KeyedObject<UUID, D>>> get(@NonNull final Q query) {
         return ServicesUtil.run(() -> {
             Optional<KeyedObject<UUID, D>> r = this.getQuery.apply(query);
             r.ifPresent(d -> {
                 if (d.getValue().isPresent()) {
-                    this.cache.put(d.getKey(), d.getValue().get());
+                    putCached(d.getKey(), d.getValue().get());
                 } else {
                     this.cache.invalidate(d.getKey());
                 }
@@ -222,13 +336,65 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
 
     @Override
     public CompletableFuture<Map<UUID, D>> getAll(@NonNull Q query) {
+        if (query.restrictedToKeys() && query.queries().isEmpty()) {
+            // If everything is already in memory, there is no need to touch the disk.
+            final ImmutableMap.Builder<UUID, D> cached = ImmutableMap.builder();
+            boolean allCached = true;
+            for (final UUID key : query.keys()) {
+                final D value = getCached(key);
+                if (value == null) {
+                    allCached = false;
+                    break;
+                }
+
+                cached.put(key, value);
+            }
+
+            if (allCached) {
+                return CompletableFuture.completedFuture(cached.build());
+            }
+        }
+
         return ServicesUtil.run(() -> {
-            Map<UUID, D> res = this.getAll.apply(query);
-            res.forEach(this.cache::put);
-            return res;
+            final Map<UUID, D> loaded = this.getAll.apply(query);
+            // Something like a query for every user should not push everyone else out of the cache.
+            final boolean cache = query.restrictedToKeys();
+            final ImmutableMap.Builder<UUID, D> result = ImmutableMap.builder();
+            for (final Map.Entry<UUID, D> entry : loaded.entrySet()) {
+                result.put(entry.getKey(), merge(entry.getKey(), entry.getValue(), cache));
+            }
+
+            return result.build();
         }, this.pluginContainer);
     }
 
+    // Anything in memory or waiting to be written is newer than what was just read.
+    private D merge(final UUID key, final D loaded, final boolean cache) {
+        Lock lock = this.dataLocks.get(key);
+        lock.lock();
+        try {
+            final D current = cache ? getCached(key) : getInMemory(key);
+            if (current != null) {
+                return current;
+            }
+
+            final WriteBehindQueue<UUID, D> queue = this.writeBehindQueue;
+            final D pending = queue == null ? null : queue.getPending(key);
+            final D result = pending == null ? loaded : pending;
+            if (pending == null) {
+                this.upgrader.accept(loaded);
+            }
+
+            if (cache) {
+                putCached(key, result);
+            }
+
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public CompletableFuture<Boolean> exists(@NonNull UUID key) {
         return ServicesUtil.run(() -> this.storageRepositorySupplier.get().exists(key), this.pluginContainer);
@@ -266,18 +432,94 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
 
     @Override
     public CompletableFuture<Void> save(@NonNull final UUID key, @NonNull final D value) {
-        return ServicesUtil.run(() -> {
+        final WriteBehindQueue<UUID, D> queue = this.writeBehindQueue;
+        if (queue != null && enqueueSave(queue, key, value)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final CompletableFuture<Void> future = ServicesUtil.run(() -> {
             this.saveOnThread(key, value);
             return null;
         }, this.pluginContainer);
+        future.whenComplete((x, t) -> {
+            if (t != null) {
+                // Not written, possibly because the storage queue was full, so leave it for the next save.
+                putCached(key, value);
+                value.markDirty();
+            }
+        });
+        return future;
     }
 
     private void saveOnThread(@NonNull final UUID key, @NonNull final D value) throws Exception {
-        ReentrantReadWriteLock reentrantReadWriteLock = this.dataLocks.get(key);
-        ReentrantReadWriteLock.WriteLock lock = reentrantReadWriteLock.writeLock();
+        final WriteBehindQueue<UUID, D> queue = this.writeBehindQueue;
+        if (queue != null && enqueueSave(queue, key, value)) {
+            return;
+        }
+
+        Lock lock = this.dataLocks.get(key);
+        lock.lock();
+        try {
+            putCached(key, value);
+            this.save.apply(key, value);
+            value.markDirty(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean enqueueSave(final WriteBehindQueue<UUID, D> queue, @NonNull final UUID key, @NonNull final D value) {
+        putCached(key, value);
+        value.markDirty();
+        return queue.enqueue(key, value);
+    }
+
+    // Used by the write-behind queue, which manages the dirty flag itself.
+    private void writeOnThread(@NonNull final UUID key, @NonNull final D value) throws Exception {
+        Lock lock = this.dataLocks.get(key);
+        lock.lock();
+        try {
+            this.save.apply(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops write-behind saving without writing what it holds, and gets
+     * everything it held along with any other dirty data in memory, so that
+     * it can be written by a {@link ShutdownFlush}.
+     *
+     * @return The data to write, by key
+     */
+    public Map<UUID, D> takeDirtyForShutdown() {
+        final WriteBehindQueue<UUID, D> queue;
+        synchronized (this) {
+            queue = this.writeBehindQueue;
+            this.writeBehindQueue = null;
+        }
+
+        final Map<UUID, D> result = queue == null ? new LinkedHashMap<>() : queue.closeAndTakePending();
+        for (final Map.Entry<UUID, D> entry : getAllInMemory().entrySet()) {
+            if (entry.getValue() != null && entry.getValue().isDirty()) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes the data on the calling thread, for use by a {@link ShutdownFlush}.
+     *
+     * @param key The key
+     * @param value The data
+     * @throws Exception if the data could not be written
+     */
+    public void writeForShutdown(@NonNull final UUID key, @NonNull final D value) throws Exception {
+        Lock lock = this.dataLocks.get(key);
+        lock.lock();
         try {
-            lock.lock();
-            this.cache.put(key, value);
             this.save.apply(key, value);
             value.markDirty(false);
         } finally {
@@ -285,19 +527,55 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
         }
     }
 
+    /**
+     * Writes data restored from a {@link ShutdownFlush} journal on the calling
+     * thread, dropping anything held in memory for the key so that the next
+     * read gets what was restored.
+     *
+     * @param key The key
+     * @param value The data
+     * @throws Exception if the data could not be written
+     */
+    public void restore(@NonNull final UUID key, @NonNull final D value) throws Exception {
+        Lock lock = this.dataLocks.get(key);
+        lock.lock();
+        try {
+            final WriteBehindQueue<UUID, D> queue = this.writeBehindQueue;
+            if (queue != null) {
+                queue.discard(key);
+            }
+
+            this.save.apply(key, value);
+            final D o = getCached(key);
+            if (o != null) {
+                o.markDirty(false); // older than what was restored
+            }
+
+            this.cache.invalidate(key);
+            this.pinned.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public CompletableFuture<Void> delete(@NonNull UUID key) {
         return ServicesUtil.run(() -> {
-            ReentrantReadWriteLock reentrantReadWriteLock = this.dataLocks.get(key);
-            ReentrantReadWriteLock.WriteLock lock = reentrantReadWriteLock.writeLock();
+            Lock lock = this.dataLocks.get(key);
+            lock.lock();
             try {
-                lock.lock();
+                final WriteBehindQueue<UUID, D> queue = this.writeBehindQueue;
+                if (queue != null) {
+                    queue.discard(key);
+                }
+
                 this.storageRepositorySupplier.get().delete(key);
-                final D o = this.cache.getIfPresent(key);
+                final D o = getCached(key);
                 if (o != null) {
                     o.markDirty(false); // don't want to save it
                 }
                 this.cache.invalidate(key);
+                this.pinned.remove(key);
                 return null;
             } finally {
                 lock.unlock();
@@ -307,8 +585,31 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
 
     @Override
     public CompletableFuture<Void> ensureSaved() {
+        final WriteBehindQueue<UUID, D> queue = this.writeBehindQueue;
+        if (queue != null) {
+            final Map<UUID, D> notQueued = new LinkedHashMap<>();
+            for (final Map.Entry<UUID, D> objectToSave : getAllInMemory().entrySet()) {
+                if (objectToSave.getValue() != null && objectToSave.getValue().isDirty()
+                        && !queue.enqueue(objectToSave.getKey(), objectToSave.getValue())) {
+                    notQueued.put(objectToSave.getKey(), objectToSave.getValue());
+                }
+            }
+
+            if (notQueued.isEmpty()) {
+                return queue.flushAll();
+            }
+
+            // The queue was closed while this was running, so what it would not take is written here.
+            return CompletableFuture.allOf(queue.flushAll(), ServicesUtil.run(() -> {
+                for (final Map.Entry<UUID, D> objectToSave : notQueued.entrySet()) {
+                    this.saveOnThread(objectToSave.getKey(), objectToSave.getValue());
+                }
+                return null;
+            }, this.pluginContainer));
+        }
+
         return ServicesUtil.run(() -> {
-            for (final Map.Entry<UUID, D> objectToSave : new HashMap<>(this.cache.asMap()).entrySet()) {
+            for (final Map.Entry<UUID, D> objectToSave : getAllInMemory().entrySet()) {
                 if (objectToSave.getValue() != null && objectToSave.getValue().isDirty()) {
                     this.save(objectToSave.getKey(), objectToSave.getValue());
                 }
@@ -317,6 +618,39 @@ public abstract class AbstractKeyedService<Q extends IQueryObject<UUID, Q>, D ex
         }, this.pluginContainer);
     }
 
+    @Nullable
+    private D getCached(final UUID key) {
+        final D result = this.cache.getIfPresent(key);
+        if (result != null) {
+            return result;
+        }
+
+        final D pinnedValue = this.pinned.get(key);
+        if (pinnedValue != null) {
+            this.cache.put(key, pinnedValue);
+        }
+
+        return pinnedValue;
+    }
+
+    // Like getCached, but without adding anything to the cache.
+    @Nullable
+    private D getInMemory(final UUID key) {
+        final D result = this.cache.getIfPresent(key);
+        return result != null ? result : this.pinned.get(key);
+    }
+
+    private void putCached(final UUID key, final D value) {
+        this.cache.put(key, value);
+        this.pinned.replace(key, value);
+    }
+
+    private Map<UUID, D> getAllInMemory() {
+        final Map<UUID, D> result = new HashMap<>(this.pinned);
+        result.putAll(this.cache.asMap());
+        return result;
+    }
+
     void onRemoval(@Nullable UUID uuid, @Nullable D dataObject, @Nonnull RemovalCause removalCause) {
         // If evicted normally, make sure it's saved.
         if (removalCause.wasEvicted() && uuid != null && dataObject != null && dataObject.isDirty()) {
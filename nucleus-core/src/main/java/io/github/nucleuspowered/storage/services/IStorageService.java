@@ -295,6 +295,23 @@ public interface IStorageService<D extends IDataObject> {
             <T2> CompletableFuture<Void> setAndSave(@Nonnull K key, DataKey<T2, ? extends D> dataKey, T2 data);
 
             <T2> CompletableFuture<Void> removeAndSave(@Nonnull K key, DataKey<T2, ? extends D> dataKey);
+
+            /**
+             * Keeps the given object in memory as the object for the key until
+             * {@link #unpin(Object)} is called, so that requests for it never
+             * have to go to the repository, whatever the cache does.
+             *
+             * @param key The key
+             * @param value The object
+             */
+            void pin(@Nonnull K key, @Nonnull D value);
+
+            /**
+             * Allows the object for the key to leave memory as normal again.
+             *
+             * @param key The key
+             */
+            void unpin(@Nonnull K key);
         }
     }
 
@@ -0,0 +1,210 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.storage.services;
+
+import org.spongepowered.api.Sponge;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records where the main thread had to wait for storage, either because
+ * something was loaded on the main thread or because a future for a load was
+ * waited on, and for how long.
+ *
+ * <p>This walks the stack each time the main thread waits, so is only enabled
+ * when asked for in the config.</p>
+ */
+public final class MainThreadProfiler {
+
+    /**
+     * The upper bounds, in milliseconds, of each bucket in the histograms. The
+     * last bucket holds everything else.
+     */
+    public static final long[] BUCKETS = { 1, 5, 10, 50, 100, 500 };
+
+    private static final String[] IGNORED_PACKAGES = {
+            "io.github.nucleuspowered.storage.",
+            "io.github.nucleuspowered.nucleus.services.impl.storage.",
+            "java.",
+            "sun.",
+            "com.github.benmanes."
+    };
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Records that the main thread waited for the given time, if this is the main thread.
+     *
+     * @param operation What the main thread was waiting for
+     * @param nanos How long it waited
+     */
+    public void record(final String operation, final long nanos) {
+        if (Sponge.getServer().isMainThread()) {
+            this.stats.computeIfAbsent(operation + " from " + getCallSite(), k -> new Stats()).record(nanos);
+        }
+    }
+
+    /**
+     * Creates a future that records when the main thread waits on it.
+     *
+     * @param <R> The type of result
+     * @return The future
+     */
+    public <R> CompletableFuture<R> createFuture() {
+        return new ProfiledFuture<>(this);
+    }
+
+    /**
+     * Gets the call sites that the main thread has waited at, longest total wait first.
+     *
+     * @return The call sites and their statistics
+     */
+    public List<Map.Entry<String, Stats>> getStats() {
+        final List<Map.Entry<String, Stats>> result = new ArrayList<>(this.stats.entrySet());
+        result.sort(Comparator.comparingLong((Map.Entry<String, Stats> x) -> x.getValue().getTotalNanos()).reversed());
+        return result;
+    }
+
+    public void reset() {
+        this.stats.clear();
+    }
+
+    private static String getCallSite() {
+        for (final StackTraceElement element : new Throwable().getStackTrace()) {
+            if (!isIgnored(element.getClassName())) {
+                final String className = element.getClassName();
+                return className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName() + ":" + element.getLineNumber();
+            }
+        }
+
+        return "unknown";
+    }
+
+    private static boolean isIgnored(final String className) {
+        for (final String ignored : IGNORED_PACKAGES) {
+            if (className.startsWith(ignored)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public static final class Stats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder[] histogram = new LongAdder[BUCKETS.length + 1];
+
+        private Stats() {
+            for (int i = 0; i < this.histogram.length; i++) {
+                this.histogram[i] = new LongAdder();
+            }
+        }
+
+        private void record(final long nanos) {
+            this.count.increment();
+            this.totalNanos.add(nanos);
+            this.maxNanos.accumulateAndGet(nanos, Math::max);
+
+            final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis >= BUCKETS[bucket]) {
+                bucket++;
+            }
+
+            this.histogram[bucket].increment();
+        }
+
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        public long getTotalNanos() {
+            return this.totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return this.maxNanos.get();
+        }
+
+        /**
+         * Gets the number of waits in each bucket, see {@link #BUCKETS}.
+         *
+         * @return The counts
+         */
+        public long[] getHistogram() {
+            final long[] result = new long[this.histogram.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = this.histogram[i].sum();
+            }
+
+            return result;
+        }
+    }
+
+    private static final class ProfiledFuture<R> extends CompletableFuture<R> {
+
+        private final MainThreadProfiler profiler;
+
+        private ProfiledFuture(final MainThreadProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+        @Override
+        public R join() {
+            if (isDone()) {
+                return super.join();
+            }
+
+            final long start = System.nanoTime();
+            try {
+                return super.join();
+            } finally {
+                this.profiler.record("join", System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public R get() throws InterruptedException, ExecutionException {
+            if (isDone()) {
+                return super.get();
+            }
+
+            final long start = System.nanoTime();
+            try {
+                return super.get();
+            } finally {
+                this.profiler.record("get", System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public R get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (isDone()) {
+                return super.get(timeout, unit);
+            }
+
+            final long start = System.nanoTime();
+            try {
+                return super.get(timeout, unit);
+            } finally {
+                this.profiler.record("get", System.nanoTime() - start);
+            }
+        }
+    }
+
+}
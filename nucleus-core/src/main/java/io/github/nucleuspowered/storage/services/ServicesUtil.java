@@ -9,19 +9,98 @@ import org.spongepowered.api.Sponge;
 import org.spongepowered.api.plugin.PluginContainer;
 import org.spongepowered.api.scheduler.Task;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nullable;
 
 public class ServicesUtil {
 
-    public static <R> CompletableFuture<R> run(ThrownSupplier<R, Exception> taskConsumer, PluginContainer pluginContainer) {
-        CompletableFuture<R> future = new CompletableFuture<>();
+    @Nullable private static volatile StorageExecutor executor;
+    @Nullable private static volatile MainThreadProfiler profiler;
+
+    /**
+     * Sets the executor that operations requested on the main thread are run on.
+     *
+     * @param storageExecutor The executor, or {@code null} to use the Sponge scheduler
+     * @return The previous executor, if any
+     */
+    @Nullable
+    public static StorageExecutor setExecutor(@Nullable StorageExecutor storageExecutor) {
+        StorageExecutor previous = executor;
+        executor = storageExecutor;
+        return previous;
+    }
+
+    public static Optional<StorageExecutor> getExecutor() {
+        return Optional.ofNullable(executor);
+    }
+
+    /**
+     * Sets the profiler that records where the main thread waits for storage.
+     *
+     * @param mainThreadProfiler The profiler, or {@code null} to turn profiling off
+     */
+    public static void setProfiler(@Nullable MainThreadProfiler mainThreadProfiler) {
+        profiler = mainThreadProfiler;
+    }
+
+    public static Optional<MainThreadProfiler> getProfiler() {
+        return Optional.ofNullable(profiler);
+    }
 
+    /**
+     * Runs a load that may go to storage on the current thread, recording the
+     * time taken if this is the main thread and profiling is on.
+     *
+     * @param operation The name of the operation
+     * @param taskConsumer The load
+     * @param <R> The type of result
+     * @return The result
+     * @throws Exception if the load fails
+     */
+    public static <R> R runOnThread(String operation, ThrownSupplier<R, Exception> taskConsumer) throws Exception {
+        MainThreadProfiler mainThreadProfiler = profiler;
+        if (mainThreadProfiler == null) {
+            return taskConsumer.get();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return taskConsumer.get();
+        } finally {
+            mainThreadProfiler.record(operation, System.nanoTime() - start);
+        }
+    }
+
+    public static <R> CompletableFuture<R> run(ThrownSupplier<R, Exception> taskConsumer, PluginContainer pluginContainer) {
         if (Sponge.getServer().isMainThread()) {
-            Task.builder().async().execute(t -> runInternal(future, taskConsumer)).submit(pluginContainer);
-        } else {
-            runInternal(future, taskConsumer);
+            MainThreadProfiler mainThreadProfiler = profiler;
+            CompletableFuture<R> future = mainThreadProfiler == null ? new CompletableFuture<>() : mainThreadProfiler.createFuture();
+            StorageExecutor storageExecutor = executor;
+            while (storageExecutor != null && !storageExecutor.trySubmit(() -> runInternal(future, taskConsumer))) {
+                StorageExecutor current = executor;
+                if (!storageExecutor.isShutdown() || current == storageExecutor) {
+                    // The queue is full. Running it somewhere else would undo the bound, so push back on the caller.
+                    future.completeExceptionally(new RejectedExecutionException("The Nucleus storage queue is full"));
+                    return future;
+                }
+
+                // Replaced or removed by a reload while this was being submitted.
+                storageExecutor = current;
+            }
+
+            if (storageExecutor == null) {
+                // Nothing to run it on, so fall back to the Sponge scheduler.
+                Task.builder().async().execute(t -> runInternal(future, taskConsumer)).submit(pluginContainer);
+            }
+
+            return future;
         }
 
+        CompletableFuture<R> future = new CompletableFuture<>();
+        runInternal(future, taskConsumer);
         return future;
     }
 
@@ -0,0 +1,367 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.storage.services;
+
+import io.github.nucleuspowered.storage.util.ThrownBiConsumer;
+import io.github.nucleuspowered.storage.util.ThrownFunction;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes dirty keyed data when the server stops.
+ *
+ * <p>Everything to be written is gathered before anything is written, and is
+ * then written in parallel on a fixed number of threads. Anything that has not
+ * been written by the deadline, or that could not be written, is put into a
+ * single recovery journal instead. The journal is replayed into the store by
+ * {@link #recover(Logger, Path, Map)} the next time the server starts, and is
+ * then removed, so that it is never replayed over data saved after it.</p>
+ *
+ * <p>The journal is GZIP compressed, and holds the version and the number of
+ * entries, followed by the service name, key and serialised data of each.</p>
+ */
+public final class ShutdownFlush {
+
+    private static final int VERSION = 1;
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000;
+    private static final long IN_FLIGHT_GRACE_MILLIS = 10000;
+
+    private final Logger logger;
+    private final int threads;
+    private final long deadlineMillis;
+    private final Path journalFile;
+    private final List<Entry<?>> entries = new ArrayList<>();
+
+    public ShutdownFlush(Logger logger, int threads, long deadlineMillis, Path journalFile) {
+        this.logger = logger;
+        this.threads = Math.max(1, threads);
+        this.deadlineMillis = Math.max(0, deadlineMillis);
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Adds data to be written.
+     *
+     * @param name The name of the service the data belongs to, used to find it again on recovery
+     * @param toWrite The data to write
+     * @param writer Writes an object to the store
+     * @param serialiser Turns an object into the form that is put in the journal
+     * @param <D> The type of data
+     */
+    public <D> void add(
+            String name,
+            Map<UUID, D> toWrite,
+            ThrownBiConsumer<UUID, D, Exception> writer,
+            ThrownFunction<D, String, Exception> serialiser) {
+        for (Map.Entry<UUID, D> entry : toWrite.entrySet()) {
+            this.entries.add(new Entry<>(name, entry.getKey(), entry.getValue(), writer, serialiser));
+        }
+    }
+
+    /**
+     * Writes everything that has been added, waiting no longer than the
+     * deadline before putting what is left into the recovery journal.
+     *
+     * @return true if everything was written to the store
+     */
+    public boolean run() {
+        int total = this.entries.size();
+        if (total == 0) {
+            return true;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.deadlineMillis);
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "Nucleus shutdown flush " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        CountDownLatch latch = new CountDownLatch(total);
+        AtomicInteger written = new AtomicInteger();
+        this.logger.info("Saving {} changed player and world entries on {} threads.", total, this.threads);
+        for (Entry<?> entry : this.entries) {
+            executor.execute(() -> {
+                try {
+                    // Once the deadline has passed, what is left goes to the journal.
+                    if (System.nanoTime() < deadline) {
+                        entry.write();
+                        written.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    this.logger.error("Could not write " + entry.name + " data for " + entry.key, e);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        // Writes that are running are left to finish, as interrupting them may close the store.
+        executor.shutdown();
+        try {
+            boolean finished = false;
+            while (!finished && System.nanoTime() < deadline) {
+                long wait = Math.min(PROGRESS_INTERVAL_MILLIS, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                finished = latch.await(Math.max(1, wait), TimeUnit.MILLISECONDS);
+                if (!finished) {
+                    this.logger.info("Saved {} of {} entries ({} ms).", written.get(), total, elapsedMillis(start));
+                }
+            }
+
+            // Nothing new starts after the deadline, but writes already running are waited for, so that
+            // none are still going when the stores are shut down.
+            if (!executor.awaitTermination(IN_FLIGHT_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+                this.logger.warn("Some entries were still being saved {} ms after the deadline, they will also be put in the recovery journal.",
+                        IN_FLIGHT_GRACE_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Entry<?>> remaining = new ArrayList<>();
+        for (Entry<?> entry : this.entries) {
+            if (!entry.written) {
+                remaining.add(entry);
+            }
+        }
+
+        if (remaining.isEmpty()) {
+            this.logger.info("Saved {} entries in {} ms.", total, elapsedMillis(start));
+            return true;
+        }
+
+        this.logger.warn("{} of {} entries were not saved after {} ms, writing them to {} so that they can be restored on the next start.",
+                remaining.size(), total, elapsedMillis(start), this.journalFile);
+        try {
+            writeJournal(remaining);
+            this.logger.info("Wrote the recovery journal in {} ms.", elapsedMillis(start));
+        } catch (IOException e) {
+            this.logger.error("Could not write the recovery journal " + this.journalFile, e);
+        }
+
+        return false;
+    }
+
+    private void writeJournal(List<Entry<?>> remaining) throws IOException {
+        // Only what was not saved during this stop goes in the journal. Anything older was replayed when the
+        // server started, and may have been saved again since.
+        List<JournalEntry> toWrite = new ArrayList<>();
+        for (Entry<?> entry : remaining) {
+            try {
+                toWrite.add(entry.toJournalEntry());
+            } catch (Exception e) {
+                this.logger.error("Could not serialise " + entry.name + " data for " + entry.key, e);
+            }
+        }
+
+        if (Files.exists(this.journalFile)) {
+            // Not replayed since the server started, so it cannot be trusted to be newer than the store.
+            moveAside(this.logger, this.journalFile);
+        }
+
+        writeJournal(this.journalFile, toWrite);
+    }
+
+    private static void writeJournal(Path journalFile, List<JournalEntry> toWrite) throws IOException {
+        Files.createDirectories(journalFile.getParent());
+        Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                GZIPOutputStream gzip = new GZIPOutputStream(file);
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(gzip))) {
+            output.writeInt(VERSION);
+            output.writeInt(toWrite.size());
+            for (JournalEntry entry : toWrite) {
+                output.writeUTF(entry.name);
+                output.writeLong(entry.key.getMostSignificantBits());
+                output.writeLong(entry.key.getLeastSignificantBits());
+                byte[] data = entry.data.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(data.length);
+                output.write(data);
+            }
+
+            // The whole journal is synced once, rather than once per entry.
+            output.flush();
+            gzip.finish();
+            file.getFD().sync();
+        }
+
+        Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replays the recovery journal, if there is one, and then removes it.
+     *
+     * <p>The journal is only ever replayed once, as the data in it may be
+     * saved again while the server runs. Any entries that cannot be written
+     * are moved to a separate file for the server owner to look at, and are
+     * not replayed again.</p>
+     *
+     * @param logger The {@link Logger}
+     * @param journalFile The journal
+     * @param replayers Writes serialised data to the store, by service name
+     */
+    public static void recover(Logger logger, Path journalFile, Map<String, ThrownBiConsumer<UUID, String, Exception>> replayers) {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+
+        List<JournalEntry> entries;
+        try {
+            entries = readJournal(journalFile);
+        } catch (IOException e) {
+            logger.error("Could not read the recovery journal " + journalFile, e);
+            moveAside(logger, journalFile);
+            return;
+        }
+
+        List<JournalEntry> failed = new ArrayList<>();
+        for (JournalEntry entry : entries) {
+            ThrownBiConsumer<UUID, String, Exception> replayer = replayers.get(entry.name);
+            if (replayer == null) {
+                logger.warn("The recovery journal contains data for an unknown store \"{}\".", entry.name);
+                failed.add(entry);
+                continue;
+            }
+
+            try {
+                replayer.apply(entry.key, entry.data);
+            } catch (Exception e) {
+                logger.error("Could not restore " + entry.name + " data for " + entry.key, e);
+                failed.add(entry);
+            }
+        }
+
+        if (failed.isEmpty()) {
+            logger.info("Restored {} entries that were not saved when the server last stopped.", entries.size());
+        } else {
+            Path failedFile = failedFile(journalFile);
+            try {
+                writeJournal(failedFile, failed);
+                logger.warn("{} of {} entries in the recovery journal could not be restored. They have been written to {}, and will not be "
+                                + "restored automatically.", failed.size(), entries.size(), failedFile);
+            } catch (IOException e) {
+                logger.error("Could not write the entries that could not be restored to " + failedFile, e);
+                moveAside(logger, journalFile);
+                return;
+            }
+        }
+
+        try {
+            Files.delete(journalFile);
+        } catch (IOException e) {
+            logger.error("Could not delete the recovery journal " + journalFile + ", it will be moved aside instead.", e);
+            moveAside(logger, journalFile);
+        }
+    }
+
+    // Keeps a journal that must not be replayed again, without losing what is in it.
+    private static void moveAside(Logger logger, Path journalFile) {
+        Path failedFile = failedFile(journalFile);
+        try {
+            Files.move(journalFile, failedFile, StandardCopyOption.REPLACE_EXISTING);
+            logger.warn("The recovery journal has been moved to {}, and will not be restored automatically.", failedFile);
+        } catch (IOException e) {
+            logger.error("Could not move the recovery journal " + journalFile + " aside. Delete it before the server is next started, "
+                    + "or it will be restored over newer data.", e);
+        }
+    }
+
+    private static Path failedFile(Path journalFile) {
+        return journalFile.resolveSibling(journalFile.getFileName() + ".failed-" + System.currentTimeMillis());
+    }
+
+    private static List<JournalEntry> readJournal(Path journalFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(journalFile))))) {
+            if (input.readInt() != VERSION) {
+                throw new IOException("Unknown recovery journal version");
+            }
+
+            int count = input.readInt();
+            List<JournalEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = input.readUTF();
+                UUID key = new UUID(input.readLong(), input.readLong());
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+                entries.add(new JournalEntry(name, key, new String(data, StandardCharsets.UTF_8)));
+            }
+
+            return entries;
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static final class Entry<D> {
+
+        private final String name;
+        private final UUID key;
+        private final D value;
+        private final ThrownBiConsumer<UUID, D, Exception> writer;
+        private final ThrownFunction<D, String, Exception> serialiser;
+        private volatile boolean written = false;
+
+        private Entry(
+                String name,
+                UUID key,
+                D value,
+                ThrownBiConsumer<UUID, D, Exception> writer,
+                ThrownFunction<D, String, Exception> serialiser) {
+            this.name = name;
+            this.key = key;
+            this.value = value;
+            this.writer = writer;
+            this.serialiser = serialiser;
+        }
+
+        private void write() throws Exception {
+            this.writer.apply(this.key, this.value);
+            this.written = true;
+        }
+
+        private JournalEntry toJournalEntry() throws Exception {
+            return new JournalEntry(this.name, this.key, this.serialiser.apply(this.value));
+        }
+    }
+
+    private static final class JournalEntry {
+
+        private final String name;
+        private final UUID key;
+        private final String data;
+
+        private JournalEntry(String name, UUID key, String data) {
+            this.name = name;
+            this.key = key;
+            this.data = data;
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.storage.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size pool of threads with a bounded queue that storage operations
+ * requested from the main thread are run on.
+ *
+ * <p>When the queue is full, {@link #trySubmit(Runnable)} returns false. The
+ * task is not run anywhere else, so that a burst of work cannot grow without
+ * bound.</p>
+ */
+public final class StorageExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final int workers;
+    private final int queueSize;
+
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    public StorageExecutor(final int workers, final int queueSize) {
+        this.workers = Math.max(1, workers);
+        this.queueSize = Math.max(1, queueSize);
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                this.workers,
+                this.workers,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueSize),
+                r -> {
+                    final Thread thread = new Thread(r, "Nucleus storage worker " + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public int getWorkers() {
+        return this.workers;
+    }
+
+    public int getQueueSize() {
+        return this.queueSize;
+    }
+
+    /**
+     * Queues the task to be run.
+     *
+     * @param task The task
+     * @return false if the queue is full or the executor has been shut down, in which case the task will not be run
+     */
+    public boolean trySubmit(final Runnable task) {
+        final long queuedAt = System.nanoTime();
+        try {
+            this.executor.execute(() -> {
+                final long startedAt = System.nanoTime();
+                record(this.totalWaitNanos, this.maxWaitNanos, startedAt - queuedAt);
+                try {
+                    task.run();
+                } finally {
+                    record(this.totalRunNanos, this.maxRunNanos, System.nanoTime() - startedAt);
+                    this.completed.incrementAndGet();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            this.rejected.incrementAndGet();
+            return false;
+        }
+
+        this.submitted.incrementAndGet();
+        this.peakQueueDepth.accumulateAndGet(this.executor.getQueue().size(), Math::max);
+        return true;
+    }
+
+    /**
+     * Stops accepting new tasks and waits for up to the given time for queued tasks to complete.
+     *
+     * @param timeout The time to wait
+     * @param unit The unit of time
+     * @return true if everything completed
+     */
+    public boolean shutdown(final long timeout, final TimeUnit unit) {
+        this.executor.shutdown();
+        try {
+            return this.executor.awaitTermination(timeout, unit);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting new tasks. Anything that is already queued will still run.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return this.executor.isShutdown();
+    }
+
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    public int getPeakQueueDepth() {
+        return this.peakQueueDepth.get();
+    }
+
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    public long getSubmitted() {
+        return this.submitted.get();
+    }
+
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    public long getCompleted() {
+        return this.completed.get();
+    }
+
+    public double getAverageWaitMillis() {
+        return average(this.totalWaitNanos);
+    }
+
+    public double getMaxWaitMillis() {
+        return this.maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public double getAverageRunMillis() {
+        return average(this.totalRunNanos);
+    }
+
+    public double getMaxRunMillis() {
+        return this.maxRunNanos.get() / 1_000_000.0;
+    }
+
+    private double average(final AtomicLong total) {
+        final long count = this.completed.get();
+        return count == 0 ? 0 : total.get() / (count * 1_000_000.0);
+    }
+
+    private static void record(final AtomicLong total, final AtomicLong max, final long nanos) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+}
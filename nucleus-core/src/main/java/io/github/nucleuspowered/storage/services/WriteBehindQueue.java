@@ -0,0 +1,304 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.storage.services;
+
+import io.github.nucleuspowered.storage.dataobjects.keyed.IKeyedDataObject;
+import io.github.nucleuspowered.storage.util.ThrownBiConsumer;
+import org.slf4j.Logger;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Collects saves for keyed data and writes them out on a dedicated thread.
+ *
+ * <p>Repeated saves for the same key before a flush are coalesced into a
+ * single physical write of the latest object. Pending objects are written at
+ * most {@code maxLatencyMillis} after they are queued, in batches of at most
+ * {@code maxBatchSize}; a full batch triggers an immediate flush.</p>
+ *
+ * @param <K> The key type
+ * @param <D> The data object type
+ */
+public final class WriteBehindQueue<K, D extends IKeyedDataObject<D>> {
+
+    private final Map<K, D> pending = new LinkedHashMap<>();
+    private final ThrownBiConsumer<K, D, Exception> writer;
+    private final Logger logger;
+    private final long maxLatencyMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean immediateFlushScheduled = new AtomicBoolean(false);
+    private boolean closed = false;
+
+    private final AtomicLong requestedWrites = new AtomicLong();
+    private final AtomicLong coalescedWrites = new AtomicLong();
+    private final AtomicLong physicalWrites = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+
+    public WriteBehindQueue(
+            final String name,
+            final ThrownBiConsumer<K, D, Exception> writer,
+            final Logger logger,
+            final long maxLatencyMillis,
+            final int maxBatchSize) {
+        this.writer = writer;
+        this.logger = logger;
+        this.maxLatencyMillis = Math.max(1, maxLatencyMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "Nucleus " + name + " write-behind flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::flushAvailable, this.maxLatencyMillis, this.maxLatencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public long getMaxLatencyMillis() {
+        return this.maxLatencyMillis;
+    }
+
+    public int getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    /**
+     * Queues the object for writing. If the key is already queued, the
+     * writes are coalesced.
+     *
+     * @param key The key
+     * @param value The value to write
+     * @return false if the queue has been closed, in which case the caller must write the value itself
+     */
+    public boolean enqueue(final K key, final D value) {
+        final int size;
+        synchronized (this.pending) {
+            if (this.closed) {
+                return false;
+            }
+
+            if (this.pending.put(key, value) != null) {
+                this.coalescedWrites.incrementAndGet();
+            }
+            size = this.pending.size();
+        }
+
+        this.requestedWrites.incrementAndGet();
+        if (size >= this.maxBatchSize && this.immediateFlushScheduled.compareAndSet(false, true) && !this.executor.isShutdown()) {
+            this.executor.execute(this::flushAvailable);
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the object waiting to be written for the given key, if any.
+     *
+     * @param key The key
+     * @return The pending object, or {@code null}
+     */
+    @Nullable
+    public D getPending(final K key) {
+        synchronized (this.pending) {
+            return this.pending.get(key);
+        }
+    }
+
+    /**
+     * Removes any pending write for the key, such as when the data is deleted.
+     *
+     * @param key The key
+     */
+    public void discard(final K key) {
+        synchronized (this.pending) {
+            this.pending.remove(key);
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (this.pending) {
+            return this.pending.size();
+        }
+    }
+
+    /**
+     * Requests that everything currently queued is written on the flusher thread.
+     *
+     * @return The {@link CompletableFuture} that completes when the queue has been drained, or
+     *      completes exceptionally with the first failure if anything could not be written
+     */
+    public CompletableFuture<Void> flushAll() {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        if (this.executor.isShutdown()) {
+            future.complete(null);
+            return future;
+        }
+
+        this.executor.execute(() -> {
+            try {
+                final Exception failure = drain(false);
+                if (failure == null) {
+                    future.complete(null);
+                } else {
+                    // Anything that failed is still queued, and will be tried again at the next interval.
+                    future.completeExceptionally(failure);
+                }
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Stops the flusher and writes anything that remains on the calling thread.
+     * Writes that fail are tried once more, and the keys of any that still
+     * fail are logged.
+     */
+    public void close() {
+        stopFlusher();
+        synchronized (this.pending) {
+            this.closed = true;
+        }
+
+        drain(false);
+        if (getPendingCount() > 0) {
+            drain(false);
+        }
+
+        final List<K> lost;
+        synchronized (this.pending) {
+            lost = new ArrayList<>(this.pending.keySet());
+            this.pending.clear();
+        }
+
+        if (!lost.isEmpty()) {
+            this.logger.error("Could not write data for {} keys when closing the write-behind queue, their changes may be lost: {}",
+                    lost.size(), lost);
+        }
+    }
+
+    /**
+     * Stops the flusher and returns anything that remains, rather than
+     * writing it. A flush that is already running is allowed to finish.
+     *
+     * @return The objects that have not been written, by key
+     */
+    public Map<K, D> closeAndTakePending() {
+        stopFlusher();
+        synchronized (this.pending) {
+            this.closed = true;
+            final Map<K, D> result = new LinkedHashMap<>(this.pending);
+            this.pending.clear();
+            return result;
+        }
+    }
+
+    private void stopFlusher() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushAvailable() {
+        this.immediateFlushScheduled.set(false);
+        drain(true);
+    }
+
+    // Returns the first failure, if any, with any later ones suppressed by it.
+    @Nullable
+    private Exception drain(final boolean stopOnFailure) {
+        // Anything queued again while we are writing will be picked up in the next run.
+        final Set<K> attempted = new HashSet<>();
+        Exception failure = null;
+        List<Map.Entry<K, D>> batch;
+        while (!(batch = takeBatch(attempted)).isEmpty()) {
+            for (final Map.Entry<K, D> entry : batch) {
+                final K key = entry.getKey();
+                final D value = entry.getValue();
+                try {
+                    // Clear the flag first so that changes made during the write are not lost.
+                    value.markDirty(false);
+                    this.writer.apply(key, value);
+                    this.physicalWrites.incrementAndGet();
+                    synchronized (this.pending) {
+                        if (this.pending.get(key) == value && !value.isDirty()) {
+                            this.pending.remove(key);
+                        }
+                    }
+                } catch (Exception e) {
+                    value.markDirty(true);
+                    this.failedWrites.incrementAndGet();
+                    this.logger.error("Could not write data for " + key, e);
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+
+                    if (stopOnFailure) {
+                        // Try again at the next interval rather than spinning on a failing store.
+                        return failure;
+                    }
+                }
+            }
+        }
+
+        return failure;
+    }
+
+    private List<Map.Entry<K, D>> takeBatch(final Set<K> attempted) {
+        synchronized (this.pending) {
+            final List<Map.Entry<K, D>> batch = new ArrayList<>(Math.min(this.maxBatchSize, this.pending.size()));
+            for (final Map.Entry<K, D> entry : this.pending.entrySet()) {
+                if (batch.size() >= this.maxBatchSize) {
+                    break;
+                }
+
+                if (attempted.add(entry.getKey())) {
+                    batch.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+                }
+            }
+
+            return batch;
+        }
+    }
+
+    public long getRequestedWrites() {
+        return this.requestedWrites.get();
+    }
+
+    public long getCoalescedWrites() {
+        return this.coalescedWrites.get();
+    }
+
+    public long getPhysicalWrites() {
+        return this.physicalWrites.get();
+    }
+
+    public long getFailedWrites() {
+        return this.failedWrites.get();
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.afk;
+
+import io.github.nucleuspowered.nucleus.modules.afk.services.AFKHandler;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import io.github.nucleuspowered.nucleus.services.interfaces.IMessageProviderService;
+import io.github.nucleuspowered.nucleus.services.interfaces.IPermissionService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.spongepowered.api.Server;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.data.key.Key;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.EventManager;
+import org.spongepowered.api.plugin.PluginContainer;
+import org.spongepowered.api.service.permission.Subject;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Sponge.class)
+@PowerMockIgnore({"javax.management.*", "org.slf4j.*"})
+public class AFKHandlerTests {
+
+    private static final long TIME_TO_AFK = 300_000;
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private OptionalLong afkTimeOption = OptionalLong.empty();
+
+    @Test
+    public void testPlayerGoesAfkWhenTheirTimeComes() {
+        Player player = setupPlayer();
+        AFKHandler handler = createHandler();
+        activeAt(handler, player, 0);
+
+        tickAt(handler, TIME_TO_AFK);
+        Assert.assertFalse(handler.isAFK(player));
+
+        tickAt(handler, TIME_TO_AFK + 1);
+        Assert.assertTrue(handler.isAFK(player));
+    }
+
+    @Test
+    public void testActivityPutsTheDeadlineBack() {
+        Player player = setupPlayer();
+        AFKHandler handler = createHandler();
+        activeAt(handler, player, 0);
+        activeAt(handler, player, 100_000);
+
+        tickAt(handler, TIME_TO_AFK + 1);
+        Assert.assertFalse(handler.isAFK(player));
+
+        tickAt(handler, 100_000 + TIME_TO_AFK);
+        Assert.assertFalse(handler.isAFK(player));
+
+        tickAt(handler, 100_000 + TIME_TO_AFK + 1);
+        Assert.assertTrue(handler.isAFK(player));
+    }
+
+    @Test
+    public void testStaleDeadlineIsIgnored() {
+        Player player = setupPlayer();
+        AFKHandler handler = createHandler();
+        activeAt(handler, player, 0);
+
+        // A shorter AFK time puts an earlier deadline in the queue, which leaves the first one behind.
+        this.afkTimeOption = OptionalLong.of(60);
+        handler.invalidateAfkCache();
+        tickAt(handler, 1);
+        tickAt(handler, 60_001);
+        Assert.assertTrue(handler.isAFK(player));
+
+        // The first deadline is dropped without the player being looked at.
+        this.lookups.set(0);
+        tickAt(handler, TIME_TO_AFK + 1);
+        Assert.assertEquals(0, this.lookups.get());
+        Assert.assertTrue(handler.isAFK(player));
+    }
+
+    private AFKHandler createHandler() {
+        return new AFKHandler(createServiceCollection(), this.now::get);
+    }
+
+    private void activeAt(AFKHandler handler, Player player, long time) {
+        handler.stageUserActivityUpdate(player);
+        tickAt(handler, time);
+    }
+
+    private void tickAt(AFKHandler handler, long time) {
+        this.now.set(time);
+        handler.onTick();
+    }
+
+    private Player setupPlayer() {
+        UUID uuid = UUID.randomUUID();
+        Player player = Mockito.mock(Player.class);
+        Mockito.when(player.getUniqueId()).thenReturn(uuid);
+        Mockito.when(player.isOnline()).thenReturn(true);
+        Mockito.doReturn(Optional.empty()).when(player).get(Mockito.any(Key.class));
+
+        PowerMockito.mockStatic(Sponge.class);
+        Server server = Mockito.mock(Server.class);
+        Mockito.when(server.isMainThread()).thenReturn(false);
+        Mockito.when(server.getPlayer(Mockito.any(UUID.class))).then(invocation -> {
+            this.lookups.incrementAndGet();
+            return Optional.of(player).filter(x -> x.getUniqueId().equals(invocation.getArgumentAt(0, UUID.class)));
+        });
+        Mockito.when(Sponge.getServer()).thenReturn(server);
+        Mockito.when(Sponge.getEventManager()).thenReturn(Mockito.mock(EventManager.class));
+        return player;
+    }
+
+    private INucleusServiceCollection createServiceCollection() {
+        // No one is exempt, and the AFK and kick times come from the default config unless a test sets the AFK time.
+        IPermissionService permissionService = Mockito.mock(IPermissionService.class);
+        Mockito.when(permissionService.getPositiveLongOptionFromSubject(Mockito.any(Subject.class), Mockito.<String>anyVararg()))
+                .then(invocation -> "nucleus.afk.toggletime".equals(invocation.getArguments()[1]) ? this.afkTimeOption : OptionalLong.empty());
+        INucleusServiceCollection serviceCollection = Mockito.mock(INucleusServiceCollection.class);
+        Mockito.when(serviceCollection.permissionService()).thenReturn(permissionService);
+        Mockito.when(serviceCollection.messageProvider()).thenReturn(Mockito.mock(IMessageProviderService.class));
+        Mockito.when(serviceCollection.pluginContainer()).thenReturn(Mockito.mock(PluginContainer.class));
+        return serviceCollection;
+    }
+
+}
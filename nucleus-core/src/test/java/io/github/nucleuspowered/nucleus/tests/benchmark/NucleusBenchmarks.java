@@ -0,0 +1,542 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.benchmark;
+
+import com.flowpowered.math.vector.Vector3d;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.gson.JsonObject;
+import io.github.nucleuspowered.nucleus.api.core.NucleusUserPreferenceService;
+import io.github.nucleuspowered.nucleus.configurate.datatypes.LocationNode;
+import io.github.nucleuspowered.nucleus.modules.afk.services.AFKHandler;
+import io.github.nucleuspowered.nucleus.modules.home.HomeKeys;
+import io.github.nucleuspowered.nucleus.modules.ignore.IgnoreKeys;
+import io.github.nucleuspowered.nucleus.modules.message.MessagePermissions;
+import io.github.nucleuspowered.nucleus.modules.message.config.MessageConfig;
+import io.github.nucleuspowered.nucleus.modules.message.services.MessageHandler;
+import io.github.nucleuspowered.nucleus.modules.mute.MuteKeys;
+import io.github.nucleuspowered.nucleus.modules.mute.data.MuteData;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import io.github.nucleuspowered.nucleus.services.impl.cooldown.CooldownService;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataaccess.ConfigurationNodeJsonTranslator;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.UserDataObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.FlatFileStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IUserQueryObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.UserQueryObject;
+import io.github.nucleuspowered.nucleus.services.interfaces.IModuleDataProvider;
+import io.github.nucleuspowered.nucleus.services.interfaces.IPermissionService;
+import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
+import io.github.nucleuspowered.nucleus.services.interfaces.IUserPreferenceService;
+import io.github.nucleuspowered.nucleus.tests.storage.FlatFileStorageTests;
+import io.github.nucleuspowered.nucleus.tests.storage.KeyedServiceTests;
+import io.github.nucleuspowered.storage.dataobjects.keyed.DataKey;
+import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.SimpleConfigurationNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.slf4j.LoggerFactory;
+import org.spongepowered.api.Game;
+import org.spongepowered.api.Server;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.entity.living.player.User;
+import org.spongepowered.api.service.permission.Subject;
+import org.spongepowered.api.util.Identifiable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Times the parts of Nucleus that have been made faster against how they
+ * used to work, where that is still possible.
+ *
+ * <p>These are not unit tests, and are left out of the test task. Run them
+ * with {@code gradlew :nucleus-core:benchmark}.</p>
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Sponge.class)
+@PowerMockIgnore({"javax.management.*", "org.slf4j.*"})
+public class NucleusBenchmarks {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Server server;
+
+    @Before
+    public void setup() {
+        // Never the main thread, so that everything runs on the thread that asks for it.
+        PowerMockito.mockStatic(Sponge.class);
+        this.server = Mockito.mock(Server.class);
+        Mockito.when(this.server.isMainThread()).thenReturn(false);
+        Mockito.when(Sponge.getServer()).thenReturn(this.server);
+    }
+
+    /**
+     * Loads 10,000 users with getAll from disk, from the cache, and with a
+     * query for everyone.
+     */
+    @Test
+    public void getAll() throws Exception {
+        Path root = this.folder.newFolder().toPath();
+        FlatFileStorageRepositoryFactory factory = new FlatFileStorageRepositoryFactory(() -> root, LoggerFactory.getLogger("test"));
+        KeyedServiceTests.TestService creator = new KeyedServiceTests.TestService(factory);
+        UserQueryObject query = new UserQueryObject();
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            UUID key = UUID.randomUUID();
+            IUserDataObject data = creator.createNew();
+            data.set(KeyedServiceTests.COUNTER, i);
+            creator.save(key, data).join();
+            query.addKey(key);
+        }
+
+        KeyedServiceTests.TestService service = new KeyedServiceTests.TestService(factory);
+        measure("getAll from disk", count, "users", () -> Assert.assertEquals(count, service.getAll(query).join().size()));
+        measure("getAll from cache", count, "users", () -> Assert.assertEquals(count, service.getAll(query).join().size()));
+
+        KeyedServiceTests.TestService everyone = new KeyedServiceTests.TestService(factory);
+        measure("getAll of everyone", count, "users",
+                () -> Assert.assertEquals(count, everyone.getAll(new UserQueryObject()).join().size()));
+    }
+
+    /**
+     * Saves and loads 10,000 user files through the streaming and
+     * {@link JsonObject} paths, in both the pretty and compact formats.
+     */
+    @Test
+    public void flatFileLoadAndSave() throws Exception {
+        ConfigurationNodeJsonTranslator translator = ConfigurationNodeJsonTranslator.INSTANCE;
+        int count = 10000;
+        Random random = new Random(0);
+        List<UUID> uuids = new ArrayList<>(count);
+        List<ConfigurationNode> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(new UUID(random.nextLong(), random.nextLong()));
+            nodes.add(FlatFileStorageTests.createUserNode(random));
+        }
+
+        for (boolean compact : new boolean[] { false, true }) {
+            Path root = this.folder.newFolder().toPath();
+            FlatFileStorageRepositoryFactory factory = new FlatFileStorageRepositoryFactory(() -> root, LoggerFactory.getLogger("test"));
+            factory.setCompact(compact);
+            IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = factory.userRepository();
+            @SuppressWarnings("unchecked")
+            IStorageRepository.Streaming<UUID> streaming = (IStorageRepository.Streaming<UUID>) repository;
+            String format = compact ? "compact" : "pretty";
+
+            measure(format + " tree save", count, "files", () -> {
+                for (int i = 0; i < count; i++) {
+                    repository.save(uuids.get(i), translator.jsonFrom(nodes.get(i)));
+                }
+            });
+            measure(format + " streaming save", count, "files", () -> {
+                for (int i = 0; i < count; i++) {
+                    ConfigurationNode node = nodes.get(i);
+                    streaming.write(uuids.get(i), writer -> translator.write(node, writer));
+                }
+            });
+            measure(format + " tree load", count, "files", () -> {
+                for (UUID uuid : uuids) {
+                    translator.from(SimpleConfigurationNode.root(), repository.get(uuid).get());
+                }
+            });
+            measure(format + " streaming load", count, "files", () -> {
+                for (UUID uuid : uuids) {
+                    streaming.read(uuid, reader -> translator.from(SimpleConfigurationNode.root(), reader)).get();
+                }
+            });
+
+            try (Stream<Path> paths = Files.walk(root.resolve("userdata"))) {
+                System.out.printf("%s: %d bytes on disk%n", format,
+                        paths.filter(x -> x.toString().endsWith(".json")).mapToLong(x -> x.toFile().length()).sum());
+            }
+        }
+    }
+
+    /**
+     * Reads 1,000 cached users a million times from 1, 4 and 16 threads,
+     * through the service and with a lock per user as cached reads used to.
+     */
+    @Test
+    public void cachedReads() throws Exception {
+        Path root = this.folder.newFolder().toPath();
+        FlatFileStorageRepositoryFactory factory = new FlatFileStorageRepositoryFactory(() -> root, LoggerFactory.getLogger("test"));
+        KeyedServiceTests.TestService service = new KeyedServiceTests.TestService(factory);
+        LockPerKeyModel model = new LockPerKeyModel();
+        List<UUID> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID key = UUID.randomUUID();
+            IUserDataObject data = service.createNew();
+            service.save(key, data).join();
+            model.cache.put(key, data);
+            keys.add(key);
+        }
+
+        int reads = 1000000;
+        for (int threads : new int[] { 1, 4, 16 }) {
+            Action striped = readConcurrently(threads, reads, keys, service::getOnThread);
+            Action lockPerKey = readConcurrently(threads, reads, keys, model::get);
+            striped.run();
+            lockPerKey.run();
+            measure("striped locks, " + threads + " threads", reads, "reads", striped);
+            measure("lock per user, " + threads + " threads", reads, "reads", lockPerKey);
+        }
+    }
+
+    /**
+     * Reads a player's homes, mute and ignore list 100,000 times each, by
+     * decoding the node every time as reads used to and through the decoded
+     * value cache.
+     */
+    @Test
+    public void decodedReads() throws Exception {
+        UserDataObject data = new UserDataObject();
+        data.setBackingNode(SimpleConfigurationNode.root());
+        Map<String, LocationNode> homes = new HashMap<>();
+        List<UUID> ignored = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            homes.put("home" + i, new LocationNode(UUID.randomUUID(), new Vector3d(i * 100, 64, i * 100), Vector3d.ZERO));
+            ignored.add(UUID.randomUUID());
+        }
+
+        data.set(HomeKeys.HOMES, homes);
+        data.set(MuteKeys.MUTE_DATA, new MuteData(UUID.randomUUID(), "spam", Duration.ofHours(1)));
+        data.set(IgnoreKeys.IGNORED, ignored);
+
+        int reads = 100000;
+        ConfigurationNode root = data.getBackingNode();
+        List<DataKey<?, IUserDataObject>> keys = Arrays.asList(HomeKeys.HOMES, MuteKeys.MUTE_DATA, IgnoreKeys.IGNORED);
+        for (DataKey<?, IUserDataObject> key : keys) {
+            String name = String.join(".", key.getKey());
+            ConfigurationNode node = root.getNode((Object[]) key.getKey());
+            Action decode = () -> {
+                for (int i = 0; i < reads; i++) {
+                    Assert.assertNotNull(node.getValue(key.getType()));
+                }
+            };
+            Action cached = () -> {
+                for (int i = 0; i < reads; i++) {
+                    Assert.assertNotNull(data.getNullable(key));
+                }
+            };
+
+            decode.run();
+            cached.run();
+            measure(name + " decoded on each read", reads, "reads", decode);
+            measure(name + " from the cache", reads, "reads", cached);
+        }
+    }
+
+    /**
+     * Looks up cooldowns when 10,000 are active, with the cooldown service
+     * and with the map that was scanned for ended cooldowns on every lookup.
+     */
+    @Test
+    public void cooldownLookups() throws Exception {
+        Path root = this.folder.newFolder().toPath();
+        INucleusServiceCollection serviceCollection = Mockito.mock(INucleusServiceCollection.class);
+        Mockito.when(serviceCollection.dataDir()).thenReturn(() -> root);
+        Mockito.when(serviceCollection.reloadableService()).thenReturn(Mockito.mock(IReloadableService.class));
+        CooldownService service = new CooldownService(serviceCollection);
+        CooldownScanningModel model = new CooldownScanningModel();
+
+        String[] commands = { "home", "warp", "spawn", "tpa", "back", "rtp", "kit", "heal", "feed", "repair" };
+        List<Identifiable> players = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID uuid = UUID.randomUUID();
+            players.add(() -> uuid);
+        }
+
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            Identifiable player = players.get(i % players.size());
+            String command = commands[i / players.size()];
+            service.setCooldown(command, player, Duration.ofMinutes(10));
+            model.setCooldown(command, player, Duration.ofMinutes(10));
+        }
+
+        int lookups = 20000;
+        Random random = new Random(0);
+        Action cooldownService = () -> {
+            for (int i = 0; i < lookups; i++) {
+                service.hasCooldown(commands[random.nextInt(commands.length)], players.get(random.nextInt(players.size())));
+            }
+        };
+        Action scanOnLookup = () -> {
+            for (int i = 0; i < lookups; i++) {
+                model.hasCooldown(commands[random.nextInt(commands.length)], players.get(random.nextInt(players.size())));
+            }
+        };
+
+        cooldownService.run();
+        scanOnLookup.run();
+        measure("cooldown service", lookups, "lookups", cooldownService);
+        measure("cooldowns scanned on lookup", lookups, "lookups", scanOnLookup);
+    }
+
+    /**
+     * Works out who sees a private message on a server with 500 players, 10
+     * of them spying, with the social spy registry and by checking every
+     * player as it was done before.
+     */
+    @Test
+    public void socialSpyFanOut() throws Exception {
+        List<Player> players = createPlayers(500);
+        Set<UUID> spies = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            spies.add(players.get(i).getUniqueId());
+        }
+
+        Game game = Mockito.mock(Game.class);
+        Mockito.when(game.isServerAvailable()).thenReturn(true);
+        Mockito.when(Sponge.getGame()).thenReturn(game);
+
+        // Everyone may use social spy, but only the spies have turned it on.
+        IPermissionService permissionService = Mockito.mock(IPermissionService.class);
+        Mockito.when(permissionService.hasPermission(Mockito.any(User.class), Mockito.eq(MessagePermissions.BASE_SOCIALSPY))).thenReturn(true);
+        Mockito.when(permissionService.getPositiveIntOptionFromSubject(Mockito.any(User.class), Mockito.<String>anyVararg()))
+                .thenReturn(OptionalInt.empty());
+        IUserPreferenceService userPreferenceService = Mockito.mock(IUserPreferenceService.class);
+        Mockito.when(userPreferenceService.getUnwrapped(Mockito.any(UUID.class), Mockito.any(NucleusUserPreferenceService.PreferenceKey.class)))
+                .then(invocation -> spies.contains(invocation.getArgumentAt(0, UUID.class)));
+        IModuleDataProvider moduleDataProvider = Mockito.mock(IModuleDataProvider.class);
+        Mockito.when(moduleDataProvider.getModuleConfig(MessageConfig.class)).thenReturn(new MessageConfig());
+
+        INucleusServiceCollection serviceCollection = Mockito.mock(INucleusServiceCollection.class);
+        Mockito.when(serviceCollection.permissionService()).thenReturn(permissionService);
+        Mockito.when(serviceCollection.userPreferenceService()).thenReturn(userPreferenceService);
+        Mockito.when(serviceCollection.moduleDataProvider()).thenReturn(moduleDataProvider);
+        MessageHandler handler = new MessageHandler(serviceCollection);
+
+        Player sender = players.get(0);
+        Player receiver = players.get(players.size() - 1);
+        int messages = 10000;
+        Action registry = () -> {
+            for (int i = 0; i < messages; i++) {
+                handler.onlinePlayersCanSpyOn(false, sender, receiver);
+            }
+        };
+        Action everyPlayer = () -> {
+            for (int i = 0; i < messages; i++) {
+                for (Player player : players) {
+                    handler.canSpyOn(player, sender, receiver);
+                }
+            }
+        };
+
+        registry.run();
+        everyPlayer.run();
+        measure("social spy registry", messages, "messages", registry);
+        measure("social spy on every player", messages, "messages", everyPlayer);
+    }
+
+    /**
+     * Runs server ticks of the AFK handler, which only looks at players whose
+     * time has come, and of scanning every player each tick as it did
+     * before, with 100, 500 and 2,000 players. Five percent of players do
+     * something each tick.
+     */
+    @Test
+    public void afkTicks() throws Exception {
+        // No one is exempt, and the AFK and kick times come from the default config.
+        IPermissionService permissionService = Mockito.mock(IPermissionService.class);
+        Mockito.when(permissionService.getPositiveLongOptionFromSubject(Mockito.any(Subject.class), Mockito.<String>anyVararg()))
+                .thenReturn(OptionalLong.empty());
+        INucleusServiceCollection serviceCollection = Mockito.mock(INucleusServiceCollection.class);
+        Mockito.when(serviceCollection.permissionService()).thenReturn(permissionService);
+
+        for (int count : new int[] { 100, 500, 2000 }) {
+            List<Player> players = createPlayers(count);
+            AFKHandler handler = new AFKHandler(serviceCollection);
+            players.forEach(handler::stageUserActivityUpdate);
+            handler.onTick();
+
+            AfkScanningModel model = new AfkScanningModel();
+            players.forEach(x -> model.lastActivity.put(x.getUniqueId(), System.currentTimeMillis()));
+
+            int ticks = 2000;
+            Random random = new Random(count);
+            Action deadlines = () -> {
+                for (int i = 0; i < ticks; i++) {
+                    for (int j = 0; j < count / 20; j++) {
+                        handler.stageUserActivityUpdate(players.get(random.nextInt(count)));
+                    }
+
+                    handler.onTick();
+                }
+            };
+            Action everyPlayer = () -> {
+                for (int i = 0; i < ticks; i++) {
+                    model.tick(players, random);
+                }
+            };
+
+            deadlines.run();
+            everyPlayer.run();
+            measure("AFK deadline queue, " + count + " players", ticks, "ticks", deadlines);
+            measure("AFK check of every player, " + count + " players", ticks, "ticks", everyPlayer);
+        }
+    }
+
+    // Players that are online, as far as the server is concerned.
+    private List<Player> createPlayers(int count) {
+        List<Player> players = new ArrayList<>();
+        Map<UUID, Player> byUuid = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            UUID uuid = UUID.randomUUID();
+            Player player = Mockito.mock(Player.class);
+            Mockito.when(player.getUniqueId()).thenReturn(uuid);
+            Mockito.when(player.isOnline()).thenReturn(true);
+            players.add(player);
+            byUuid.put(uuid, player);
+        }
+
+        Mockito.when(this.server.getOnlinePlayers()).thenReturn(players);
+        Mockito.when(this.server.getPlayer(Mockito.any(UUID.class)))
+                .then(invocation -> Optional.ofNullable(byUuid.get(invocation.getArgumentAt(0, UUID.class))));
+        return players;
+    }
+
+    private static Action readConcurrently(int threads, int reads, List<UUID> keys, Function<UUID, Optional<?>> read) {
+        return () -> {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(t);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < reads / threads; i++) {
+                        Assert.assertTrue(read.apply(keys.get(random.nextInt(keys.size()))).isPresent());
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            executor.shutdown();
+        };
+    }
+
+    private static void measure(String name, int count, String unit, Action action) throws Exception {
+        long start = System.nanoTime();
+        action.run();
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        System.out.printf("%s: %d %s in %.0f ms (%.2f us each)%n", name, count, unit, millis, millis * 1000 / count);
+    }
+
+    // How cooldowns were held before: every lookup first removed every cooldown that had ended.
+    private static final class CooldownScanningModel {
+
+        private final Map<List<Object>, Instant> cooldowns = new HashMap<>();
+
+        private void setCooldown(String key, Identifiable identifiable, Duration cooldownLength) {
+            this.cooldowns.put(key(key, identifiable), Instant.now().plus(cooldownLength));
+        }
+
+        private boolean hasCooldown(String key, Identifiable identifiable) {
+            Instant now = Instant.now();
+            this.cooldowns.entrySet().removeIf(x -> x.getValue().isBefore(now));
+            return this.cooldowns.containsKey(key(key, identifiable));
+        }
+
+        private static List<Object> key(String key, Identifiable identifiable) {
+            List<Object> result = new ArrayList<>(2);
+            result.add(Objects.requireNonNull(key));
+            result.add(identifiable.getUniqueId());
+            return result;
+        }
+    }
+
+    // How an AFK tick worked before there was a deadline queue: drop offline
+    // players by searching a list of who is online, then check every player.
+    private static final class AfkScanningModel {
+
+        private static final long TIME_TO_AFK = 300_000;
+
+        private final Map<UUID, Long> lastActivity = new HashMap<>();
+        private final Set<UUID> afk = new HashSet<>();
+
+        private void tick(List<Player> players, Random random) {
+            for (int j = 0; j < players.size() / 20; j++) {
+                this.lastActivity.put(players.get(random.nextInt(players.size())).getUniqueId(), System.currentTimeMillis());
+            }
+
+            List<UUID> online = Sponge.getServer().getOnlinePlayers().stream().map(Player::getUniqueId).collect(Collectors.toList());
+            this.lastActivity.entrySet().removeIf(x -> !online.contains(x.getKey()));
+
+            long now = System.currentTimeMillis();
+            this.lastActivity.entrySet().stream()
+                    .filter(x -> this.afk.contains(x.getKey()))
+                    .forEach(x -> Sponge.getServer().getPlayer(x.getKey()));
+            this.lastActivity.entrySet().stream()
+                    .filter(x -> !this.afk.contains(x.getKey()) && now - x.getValue() > TIME_TO_AFK)
+                    .forEach(x -> this.afk.add(x.getKey()));
+        }
+    }
+
+    // How cached reads worked before the locks were striped: every read took its user's read
+    // lock, which was held in a cache and made when it was missing.
+    private static final class LockPerKeyModel {
+
+        private final LoadingCache<UUID, ReentrantReadWriteLock> locks =
+                Caffeine.newBuilder().expireAfterAccess(5, TimeUnit.MINUTES).build(x -> new ReentrantReadWriteLock());
+        private final Cache<UUID, IUserDataObject> cache = Caffeine.newBuilder().build();
+
+        private Optional<IUserDataObject> get(UUID key) {
+            ReentrantReadWriteLock.ReadLock lock = this.locks.get(key).readLock();
+            lock.lock();
+            try {
+                return Optional.ofNullable(this.cache.getIfPresent(key));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Action {
+
+        void run() throws Exception;
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.cooldown;
+
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import io.github.nucleuspowered.nucleus.services.impl.cooldown.CooldownService;
+import io.github.nucleuspowered.nucleus.services.interfaces.IReloadableService;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.spongepowered.api.util.Identifiable;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+
+public class CooldownServiceTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCooldownsEndAndCanBeCleared() throws Exception {
+        CooldownService service = createService(this.folder.getRoot().toPath());
+        Identifiable first = create();
+        Identifiable second = create();
+        service.setCooldown("home", first, Duration.ofMinutes(1));
+        service.setCooldown("home", second, Duration.ZERO);
+
+        Assert.assertTrue(service.hasCooldown("home", first));
+        Assert.assertFalse(service.hasCooldown("warp", first));
+        Assert.assertFalse(service.hasCooldown("home", second));
+        Assert.assertTrue(service.getCooldown("home", first).get().compareTo(Duration.ofSeconds(59)) > 0);
+
+        service.expireCooldowns();
+        Assert.assertTrue(service.hasCooldown("home", first));
+        service.clearCooldown("home", first);
+        Assert.assertFalse(service.getCooldown("home", first).isPresent());
+    }
+
+    private static CooldownService createService(Path root) {
+        INucleusServiceCollection serviceCollection = Mockito.mock(INucleusServiceCollection.class);
+        Mockito.when(serviceCollection.dataDir()).thenReturn(() -> root);
+        Mockito.when(serviceCollection.reloadableService()).thenReturn(Mockito.mock(IReloadableService.class));
+        return new CooldownService(serviceCollection);
+    }
+
+    private static Identifiable create() {
+        UUID uuid = UUID.randomUUID();
+        return () -> uuid;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.core;
+
+import com.google.common.collect.ImmutableList;
+import io.github.nucleuspowered.nucleus.modules.core.services.UniqueVisitorSet;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class UniqueVisitorSetTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSetSurvivesBeingSavedAndLoaded() throws Exception {
+        Path file = this.folder.getRoot().toPath().resolve("uniquevisitors.dat");
+        List<UUID> saved = create(100);
+        UUID logged = UUID.randomUUID();
+
+        UniqueVisitorSet set = new UniqueVisitorSet();
+        set.replace(saved);
+        set.save(file);
+        Assert.assertTrue(set.add(logged));
+        set.log(file, logged);
+
+        UniqueVisitorSet loaded = new UniqueVisitorSet();
+        loaded.load(file);
+        Assert.assertEquals(101, loaded.size());
+        for (UUID uuid : saved) {
+            Assert.assertFalse(loaded.add(uuid));
+        }
+
+        Assert.assertFalse(loaded.add(logged));
+
+        // Saving merges the log into the saved set.
+        loaded.save(file);
+        Assert.assertFalse(Files.exists(logFor(file)));
+        UniqueVisitorSet merged = new UniqueVisitorSet();
+        merged.load(file);
+        Assert.assertEquals(101, merged.size());
+        Assert.assertFalse(merged.add(logged));
+    }
+
+    @Test
+    public void testTornLogRecordIsDropped() throws Exception {
+        Path file = this.folder.getRoot().toPath().resolve("uniquevisitors.dat");
+        List<UUID> logged = create(3);
+
+        UniqueVisitorSet set = new UniqueVisitorSet();
+        for (UUID uuid : logged) {
+            set.add(uuid);
+            set.log(file, uuid);
+        }
+
+        // Cut the last user short, as a crash part way through the write would.
+        try (FileChannel channel = FileChannel.open(logFor(file), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        UniqueVisitorSet loaded = new UniqueVisitorSet();
+        loaded.load(file);
+        Assert.assertEquals(2, loaded.size());
+        Assert.assertEquals(32, Files.size(logFor(file)));
+
+        UUID next = UUID.randomUUID();
+        loaded.add(next);
+        loaded.log(file, next);
+        UniqueVisitorSet reloaded = new UniqueVisitorSet();
+        reloaded.load(file);
+        Assert.assertEquals(3, reloaded.size());
+        for (UUID uuid : ImmutableList.of(logged.get(0), logged.get(1), next)) {
+            Assert.assertFalse(reloaded.add(uuid));
+        }
+    }
+
+    @Test
+    public void testLongLogIsMerged() throws Exception {
+        Path file = this.folder.getRoot().toPath().resolve("uniquevisitors.dat");
+        List<UUID> logged = create(UniqueVisitorSet.MERGE_AFTER + 1);
+
+        UniqueVisitorSet set = new UniqueVisitorSet();
+        for (UUID uuid : logged) {
+            set.add(uuid);
+            set.log(file, uuid);
+        }
+
+        Assert.assertTrue(Files.exists(file));
+        Assert.assertFalse(Files.exists(logFor(file)));
+
+        UniqueVisitorSet loaded = new UniqueVisitorSet();
+        loaded.load(file);
+        Assert.assertEquals(logged.size(), loaded.size());
+    }
+
+    private static List<UUID> create(int count) {
+        List<UUID> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(UUID.randomUUID());
+        }
+
+        return result;
+    }
+
+    private static Path logFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".log");
+    }
+
+}
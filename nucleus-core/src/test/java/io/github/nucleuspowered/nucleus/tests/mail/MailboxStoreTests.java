@@ -0,0 +1,133 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.mail;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import io.github.nucleuspowered.nucleus.modules.mail.data.MailData;
+import io.github.nucleuspowered.nucleus.modules.mail.services.MailboxStore;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.UUID;
+
+public class MailboxStoreTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMailSurvivesBeingReopened() {
+        Path root = this.folder.getRoot().toPath();
+        UUID uuid = UUID.randomUUID();
+        // Longer than writeUTF could write, and not all single byte characters.
+        MailData first = create(Strings.repeat("\u00e9a", 40000));
+        MailData second = create("second");
+        MailData third = create("third");
+
+        MailboxStore store = createStore(root);
+        store.append(uuid, first);
+        store.append(uuid, ImmutableList.of(second, third));
+        Assert.assertTrue(store.remove(uuid, second::equals));
+        store.saveIndex();
+
+        MailboxStore reopened = createStore(root);
+        Assert.assertEquals(2, reopened.count(uuid));
+        Assert.assertEquals(ImmutableList.of(first, third), reopened.getMail(uuid));
+    }
+
+    @Test
+    public void testTornRecordIsCutOffBeforeAppending() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        UUID uuid = UUID.randomUUID();
+        MailData first = create("first");
+        MailData second = create("second");
+        MailData third = create("third");
+
+        MailboxStore store = createStore(root);
+        store.append(uuid, ImmutableList.of(first, second));
+        store.saveIndex();
+
+        // Cut the last record short, as a crash part way through the write would.
+        try (FileChannel channel = FileChannel.open(root.resolve(uuid + ".mail"), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        MailboxStore reopened = createStore(root);
+        reopened.append(uuid, third);
+        Assert.assertEquals(ImmutableList.of(first, third), createStore(root).getMail(uuid));
+    }
+
+    @Test
+    public void testImportedMailGoesFirstAndIsOnlyImportedOnce() {
+        Path root = this.folder.getRoot().toPath();
+        UUID uuid = UUID.randomUUID();
+        MailData sent = create("sent");
+        MailData old = create("old");
+
+        MailboxStore store = createStore(root);
+        store.append(uuid, sent);
+        store.importIfRequired(uuid, () -> ImmutableList.of(old));
+        store.importIfRequired(uuid, () -> {
+            throw new AssertionError("Imported twice");
+        });
+        store.saveIndex();
+
+        MailboxStore reopened = createStore(root);
+        reopened.importIfRequired(uuid, () -> {
+            throw new AssertionError("Imported twice");
+        });
+        Assert.assertEquals(ImmutableList.of(old, sent), reopened.getMail(uuid));
+    }
+
+    @Test
+    public void testMailboxWrittenAfterTheIndexWasSavedIsCountedAgain() {
+        Path root = this.folder.getRoot().toPath();
+        UUID uuid = UUID.randomUUID();
+
+        MailboxStore store = createStore(root);
+        store.append(uuid, create("first"));
+        store.saveIndex();
+
+        // The server stops before the index is saved again.
+        store.append(uuid, ImmutableList.of(create("second"), create("third")));
+        Assert.assertEquals(3, store.count(uuid));
+
+        Assert.assertEquals(3, createStore(root).count(uuid));
+    }
+
+    @Test
+    public void testMailCanBeReadAPageAtATime() {
+        Path root = this.folder.getRoot().toPath();
+        UUID uuid = UUID.randomUUID();
+        MailData first = create("first");
+        MailData second = create("second");
+        MailData third = create("third");
+
+        MailboxStore store = createStore(root);
+        store.append(uuid, ImmutableList.of(first, second, third));
+
+        Assert.assertEquals(ImmutableList.of(first, second), store.getMail(uuid, 0, 2));
+        Assert.assertEquals(ImmutableList.of(third), store.getMail(uuid, 2, 2));
+        Assert.assertEquals(ImmutableList.of(), store.getMail(uuid, 3, 2));
+    }
+
+    private static MailboxStore createStore(Path root) {
+        MailboxStore store = new MailboxStore();
+        store.setDirectory(root);
+        return store;
+    }
+
+    private static MailData create(String message) {
+        return new MailData(UUID.randomUUID(), Instant.ofEpochMilli(System.currentTimeMillis()), message);
+    }
+
+}
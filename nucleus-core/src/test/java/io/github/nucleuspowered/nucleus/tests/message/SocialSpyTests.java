@@ -0,0 +1,124 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.message;
+
+import io.github.nucleuspowered.nucleus.api.core.NucleusUserPreferenceService;
+import io.github.nucleuspowered.nucleus.modules.message.MessagePermissions;
+import io.github.nucleuspowered.nucleus.modules.message.config.MessageConfig;
+import io.github.nucleuspowered.nucleus.modules.message.services.MessageHandler;
+import io.github.nucleuspowered.nucleus.services.INucleusServiceCollection;
+import io.github.nucleuspowered.nucleus.services.interfaces.IModuleDataProvider;
+import io.github.nucleuspowered.nucleus.services.interfaces.IPermissionService;
+import io.github.nucleuspowered.nucleus.services.interfaces.IUserPreferenceService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.spongepowered.api.Game;
+import org.spongepowered.api.Server;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.entity.living.player.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.UUID;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Sponge.class)
+@PowerMockIgnore({"javax.management.*", "org.slf4j.*"})
+public class SocialSpyTests {
+
+    private static final int PLAYERS = 500;
+    private static final int SPIES = 10;
+
+    private final List<Player> players = new ArrayList<>();
+    private final Set<UUID> spies = new HashSet<>();
+    private MessageHandler handler;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        Map<UUID, Player> byUuid = new HashMap<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            UUID uuid = UUID.randomUUID();
+            Player player = Mockito.mock(Player.class);
+            Mockito.when(player.getUniqueId()).thenReturn(uuid);
+            Mockito.when(player.isOnline()).thenReturn(true);
+            this.players.add(player);
+            byUuid.put(uuid, player);
+            if (i < SPIES) {
+                this.spies.add(uuid);
+            }
+        }
+
+        PowerMockito.mockStatic(Sponge.class);
+        Game game = Mockito.mock(Game.class);
+        Server server = Mockito.mock(Server.class);
+        Mockito.when(game.isServerAvailable()).thenReturn(true);
+        Mockito.when(server.getOnlinePlayers()).thenReturn(this.players);
+        Mockito.when(server.getPlayer(Mockito.any(UUID.class)))
+                .then(invocation -> Optional.ofNullable(byUuid.get(invocation.getArgumentAt(0, UUID.class))));
+        Mockito.when(Sponge.getGame()).thenReturn(game);
+        Mockito.when(Sponge.getServer()).thenReturn(server);
+
+        // Everyone may use social spy, but only the spies have turned it on.
+        IPermissionService permissionService = Mockito.mock(IPermissionService.class);
+        Mockito.when(permissionService.hasPermission(Mockito.any(User.class), Mockito.eq(MessagePermissions.BASE_SOCIALSPY))).thenReturn(true);
+        Mockito.when(permissionService.getPositiveIntOptionFromSubject(Mockito.any(User.class), Mockito.<String>anyVararg()))
+                .thenReturn(OptionalInt.empty());
+        IUserPreferenceService userPreferenceService = Mockito.mock(IUserPreferenceService.class);
+        Mockito.when(userPreferenceService.getUnwrapped(Mockito.any(UUID.class), Mockito.any(NucleusUserPreferenceService.PreferenceKey.class)))
+                .then(invocation -> this.spies.contains(invocation.getArgumentAt(0, UUID.class)));
+        IModuleDataProvider moduleDataProvider = Mockito.mock(IModuleDataProvider.class);
+        Mockito.when(moduleDataProvider.getModuleConfig(MessageConfig.class)).thenReturn(new MessageConfig());
+
+        INucleusServiceCollection serviceCollection = Mockito.mock(INucleusServiceCollection.class);
+        Mockito.when(serviceCollection.permissionService()).thenReturn(permissionService);
+        Mockito.when(serviceCollection.userPreferenceService()).thenReturn(userPreferenceService);
+        Mockito.when(serviceCollection.moduleDataProvider()).thenReturn(moduleDataProvider);
+        this.handler = new MessageHandler(serviceCollection);
+    }
+
+    @Test
+    public void testRegistryFindsTheSameSpiesAsCheckingEveryone() {
+        Player sender = this.players.get(0);
+        Player receiver = this.players.get(PLAYERS - 1);
+        Set<CommandSource> expected = new HashSet<>(checkEveryone(sender, receiver));
+        Assert.assertEquals(SPIES - 1, expected.size());
+        Assert.assertEquals(expected, this.handler.onlinePlayersCanSpyOn(false, sender, receiver));
+
+        // A spy that turns it off is dropped when the registry is refreshed.
+        this.spies.remove(this.players.get(1).getUniqueId());
+        expected.remove(this.players.get(1));
+        this.players.forEach(this.handler::refreshSocialSpy);
+        Assert.assertEquals(expected, this.handler.onlinePlayersCanSpyOn(false, sender, receiver));
+    }
+
+    // How the spies were found before there was a registry.
+    private List<Player> checkEveryone(Player sender, Player receiver) {
+        List<Player> result = new ArrayList<>();
+        for (Player player : this.players) {
+            if (this.handler.canSpyOn(player, sender, receiver)) {
+                result.add(player);
+            }
+        }
+
+        return result;
+    }
+
+}
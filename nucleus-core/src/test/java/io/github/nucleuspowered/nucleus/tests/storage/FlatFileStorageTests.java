@@ -0,0 +1,146 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.storage;
+
+import com.google.gson.JsonObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataaccess.ConfigurationNodeJsonTranslator;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.FlatFileStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IUserQueryObject;
+import io.github.nucleuspowered.storage.exceptions.DataLoadException;
+import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.SimpleConfigurationNode;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+public class FlatFileStorageTests {
+
+    private static final ConfigurationNodeJsonTranslator TRANSLATOR = ConfigurationNodeJsonTranslator.INSTANCE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStreamingAndTreeRoundTripsMatch() throws Exception {
+        for (boolean compact : new boolean[] { false, true }) {
+            Path root = this.folder.newFolder().toPath();
+            FlatFileStorageRepositoryFactory factory = createFactory(root, compact);
+            IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = factory.userRepository();
+            @SuppressWarnings("unchecked")
+            IStorageRepository.Streaming<UUID> streaming = (IStorageRepository.Streaming<UUID>) repository;
+
+            Random random = new Random(compact ? 1 : 2);
+            for (int i = 0; i < 100; i++) {
+                UUID uuid = new UUID(random.nextLong(), random.nextLong());
+                ConfigurationNode node = createUserNode(random);
+                JsonObject expected = TRANSLATOR.jsonFrom(node);
+
+                // Written by one path, read by the other.
+                streaming.write(uuid, writer -> TRANSLATOR.write(node, writer));
+                Assert.assertEquals(expected, repository.get(uuid).get());
+
+                repository.save(uuid, expected);
+                ConfigurationNode read = streaming.read(uuid, reader -> TRANSLATOR.from(SimpleConfigurationNode.root(), reader)).get();
+                Assert.assertEquals(expected, TRANSLATOR.jsonFrom(read));
+            }
+        }
+    }
+
+    @Test
+    public void testNonFiniteValuesAreReadTheSameByBothPaths() throws Exception {
+        Path root = this.folder.newFolder().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = createFactory(root, false).userRepository();
+        @SuppressWarnings("unchecked")
+        IStorageRepository.Streaming<UUID> streaming = (IStorageRepository.Streaming<UUID>) repository;
+
+        ConfigurationNode node = SimpleConfigurationNode.root();
+        node.getNode("nan").setValue(Double.NaN);
+        node.getNode("positive").setValue(Double.POSITIVE_INFINITY);
+        node.getNode("negative").setValue(Double.NEGATIVE_INFINITY);
+
+        UUID tree = UUID.randomUUID();
+        UUID stream = UUID.randomUUID();
+        repository.save(tree, TRANSLATOR.jsonFrom(node));
+        streaming.write(stream, writer -> TRANSLATOR.write(node, writer));
+
+        for (UUID uuid : new UUID[] { tree, stream }) {
+            ConfigurationNode fromTree = TRANSLATOR.from(SimpleConfigurationNode.root(), repository.get(uuid).get());
+            ConfigurationNode fromStream = streaming.read(uuid, reader -> TRANSLATOR.from(SimpleConfigurationNode.root(), reader)).get();
+            Assert.assertEquals(TRANSLATOR.jsonFrom(fromTree), TRANSLATOR.jsonFrom(fromStream));
+            Assert.assertTrue(Double.isNaN(fromStream.getNode("nan").getDouble()));
+            Assert.assertEquals(Double.POSITIVE_INFINITY, fromStream.getNode("positive").getDouble(), 0);
+            Assert.assertEquals(Double.NEGATIVE_INFINITY, fromStream.getNode("negative").getDouble(), 0);
+        }
+    }
+
+    @Test
+    public void testTrailingContentIsRejected() throws Exception {
+        Path root = this.folder.newFolder().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = createFactory(root, false).userRepository();
+        @SuppressWarnings("unchecked")
+        IStorageRepository.Streaming<UUID> streaming = (IStorageRepository.Streaming<UUID>) repository;
+
+        UUID uuid = UUID.randomUUID();
+        streaming.write(uuid, writer -> writer.beginObject().name("a").value(1).endObject());
+        Path file;
+        try (Stream<Path> paths = Files.walk(root)) {
+            file = paths.filter(x -> x.toString().endsWith(".json")).findFirst().get();
+        }
+
+        Files.write(file, "{\"a\":1}{\"b\":2}".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            streaming.read(uuid, reader -> TRANSLATOR.from(SimpleConfigurationNode.root(), reader));
+            Assert.fail("Trailing content was accepted");
+        } catch (DataLoadException e) {
+            // expected
+        }
+    }
+
+    private static FlatFileStorageRepositoryFactory createFactory(Path root, boolean compact) {
+        FlatFileStorageRepositoryFactory factory = new FlatFileStorageRepositoryFactory(() -> root, LoggerFactory.getLogger("test"));
+        factory.setCompact(compact);
+        return factory;
+    }
+
+    // Roughly the shape of a player that has been on a server for a while.
+    public static ConfigurationNode createUserNode(Random random) {
+        ConfigurationNode node = SimpleConfigurationNode.root();
+        ConfigurationNode core = node.getNode("core");
+        core.getNode("firstJoin").setValue(random.nextLong());
+        core.getNode("lastLogin").setValue(random.nextLong());
+        core.getNode("lastLogout").setValue(random.nextLong());
+        core.getNode("ipAddress").setValue("/10.0." + random.nextInt(256) + "." + random.nextInt(256));
+        core.getNode("lastKnownName").setValue("Player" + random.nextInt(100000));
+        core.getNode("flying").setValue(random.nextBoolean());
+        node.getNode("nickname").setValue("&" + random.nextInt(10) + "Nick" + random.nextInt(1000));
+        for (int i = 0; i < 3; i++) {
+            ConfigurationNode home = node.getNode("home", "homes", "home" + i);
+            home.getNode("world").setValue(new UUID(random.nextLong(), random.nextLong()).toString());
+            home.getNode("x").setValue(random.nextDouble() * 10000);
+            home.getNode("y").setValue(random.nextInt(256));
+            home.getNode("z").setValue(random.nextDouble() * 10000);
+            home.getNode("rotx").setValue(random.nextDouble() * 360);
+            home.getNode("roty").setValue(random.nextDouble() * 360);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            node.getNode("ignoreList").getAppendedNode().setValue(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+
+        return node;
+    }
+
+}
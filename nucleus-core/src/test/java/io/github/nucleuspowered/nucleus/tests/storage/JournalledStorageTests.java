@@ -0,0 +1,192 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.storage;
+
+import com.google.gson.JsonObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.FlatFileStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.JournalledStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IUserQueryObject;
+import io.github.nucleuspowered.storage.persistence.IJournalledRepository;
+import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JournalledStorageTests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("test");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChangesAreReplayedAfterACrash() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> journalled = createJournalled(root);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID deleted = UUID.randomUUID();
+        journalled.save(first, createObject(1));
+        journalled.save(second, createObject(2));
+        journalled.save(deleted, createObject(3));
+        journalled.delete(deleted);
+        journalled.save(first, createObject(4));
+
+        // Nothing has been checkpointed, but reads see the changes.
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> flatFile = createFlatFile(root);
+        Assert.assertFalse(flatFile.exists(first));
+        Assert.assertEquals(createObject(4), journalled.get(first).get());
+        Assert.assertFalse(journalled.exists(deleted));
+        Assert.assertTrue(((IJournalledRepository) journalled).getJournalSize() > 0);
+
+        // No shutdown, as if the server had crashed. Opening it again replays and checkpoints the journal.
+        createJournalled(root);
+        Assert.assertEquals(createObject(4), flatFile.get(first).get());
+        Assert.assertEquals(createObject(2), flatFile.get(second).get());
+        Assert.assertFalse(flatFile.exists(deleted));
+        Assert.assertEquals(1, segments(root).size());
+    }
+
+    @Test
+    public void testTornRecordIsDiscardedOnReplay() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> journalled = createJournalled(root);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        journalled.save(first, createObject(1));
+        journalled.save(second, createObject(2));
+        journalled.save(first, createObject(3));
+
+        // Cut the last record short, as a crash part way through the write would.
+        List<Path> segments = segments(root);
+        Assert.assertEquals(1, segments.size());
+        try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        createJournalled(root);
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> flatFile = createFlatFile(root);
+        Assert.assertEquals(createObject(1), flatFile.get(first).get());
+        Assert.assertEquals(createObject(2), flatFile.get(second).get());
+    }
+
+    @Test
+    public void testFailedCheckpointKeepsTheJournal() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> journalled = createJournalled(root);
+        UUID uuid = UUID.randomUUID();
+        journalled.save(uuid, createObject(1));
+
+        // A directory where the temporary file goes stops the file from being replaced.
+        String name = uuid.toString();
+        Path blocker = root.resolve("userdata").resolve(name.substring(0, 2)).resolve(name + ".json.tmp");
+        Files.createDirectories(blocker);
+        long size = ((IJournalledRepository) journalled).getJournalSize();
+        journalled.shutdown();
+
+        // The segment with the change is kept, along with the one started for the checkpoint.
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> flatFile = createFlatFile(root);
+        Assert.assertFalse(flatFile.exists(uuid));
+        List<Path> segments = segments(root);
+        Assert.assertEquals(2, segments.size());
+        Assert.assertEquals(size, Files.size(segments.get(0)));
+        Assert.assertEquals(size + Files.size(segments.get(1)), ((IJournalledRepository) journalled).getJournalSize());
+
+        // Once the problem has gone, the next start writes it.
+        Files.delete(blocker);
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> reopened = createJournalled(root);
+        Assert.assertEquals(createObject(1), flatFile.get(uuid).get());
+        Assert.assertEquals(createObject(1), reopened.get(uuid).get());
+        Assert.assertEquals(1, segments(root).size());
+        reopened.shutdown();
+    }
+
+    @Test
+    public void testRetiredJournalIsNotReplayedOverNewerData() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> journalled = createJournalled(root);
+        UUID uuid = UUID.randomUUID();
+        journalled.save(uuid, createObject(1));
+
+        // The server crashes, and then starts with flat files selected.
+        createFactory(root).retire();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> flatFile = createFlatFile(root);
+        Assert.assertEquals(createObject(1), flatFile.get(uuid).get());
+        flatFile.save(uuid, createObject(2));
+
+        // The journal is selected again later.
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> reopened = createJournalled(root);
+        Assert.assertEquals(createObject(2), reopened.get(uuid).get());
+        Assert.assertEquals(createObject(2), flatFile.get(uuid).get());
+        reopened.shutdown();
+    }
+
+    @Test
+    public void testJournalThatCannotBeWrittenIsMovedAsideWhenRetired() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> journalled = createJournalled(root);
+        UUID uuid = UUID.randomUUID();
+        journalled.save(uuid, createObject(1));
+
+        String name = uuid.toString();
+        Path blocker = root.resolve("userdata").resolve(name.substring(0, 2)).resolve(name + ".json.tmp");
+        Files.createDirectories(blocker);
+        createFactory(root).retire();
+        Assert.assertTrue(segments(root).isEmpty());
+
+        Files.delete(blocker);
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> flatFile = createFlatFile(root);
+        flatFile.save(uuid, createObject(2));
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> reopened = createJournalled(root);
+        Assert.assertEquals(createObject(2), flatFile.get(uuid).get());
+        reopened.shutdown();
+    }
+
+    private IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> createJournalled(Path root) {
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = createFactory(root).userRepository();
+        Assert.assertNotNull(repository);
+        return repository;
+    }
+
+    private static JournalledStorageRepositoryFactory createFactory(Path root) {
+        JournalledStorageRepositoryFactory factory = new JournalledStorageRepositoryFactory(() -> root, LOGGER,
+                new FlatFileStorageRepositoryFactory(() -> root, LOGGER));
+        // Only checkpointed when opened or shut down.
+        factory.setCheckpointSettings(Long.MAX_VALUE, Long.MAX_VALUE);
+        return factory;
+    }
+
+    private static IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> createFlatFile(Path root) {
+        return new FlatFileStorageRepositoryFactory(() -> root, LOGGER).userRepository();
+    }
+
+    private static List<Path> segments(Path root) throws IOException {
+        try (Stream<Path> paths = Files.list(root.resolve("journal"))) {
+            return paths.filter(x -> x.getFileName().toString().startsWith("userdata.") && x.getFileName().toString().endsWith(".wal"))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static JsonObject createObject(int value) {
+        JsonObject object = new JsonObject();
+        object.addProperty("value", value);
+        object.addProperty("name", "Player" + value);
+        return object;
+    }
+
+}
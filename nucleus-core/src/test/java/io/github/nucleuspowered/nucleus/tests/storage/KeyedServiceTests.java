@@ -0,0 +1,211 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.storage;
+
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataaccess.IConfigurateBackedDataTranslator;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.IUserDataObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.dataobjects.modular.UserDataObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.FlatFileStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IUserQueryObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.UserQueryObject;
+import io.github.nucleuspowered.nucleus.util.TypeTokens;
+import io.github.nucleuspowered.storage.dataobjects.keyed.DataKey;
+import io.github.nucleuspowered.storage.services.AbstractKeyedService;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.SimpleConfigurationNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.slf4j.LoggerFactory;
+import org.spongepowered.api.Server;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.plugin.PluginContainer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Sponge.class)
+@PowerMockIgnore({"javax.management.*", "org.slf4j.*"})
+public class KeyedServiceTests {
+
+    public static final DataKey<Integer, IUserDataObject> COUNTER =
+            DataKey.of(0, TypeTokens.INTEGER, IUserDataObject.class, "test", "counter");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        // Never the main thread, so that everything runs on the thread that asks for it.
+        PowerMockito.mockStatic(Sponge.class);
+        Server server = Mockito.mock(Server.class);
+        Mockito.when(server.isMainThread()).thenReturn(false);
+        Mockito.when(Sponge.getServer()).thenReturn(server);
+    }
+
+    @Test
+    public void testConcurrentLoadsAndSavesDoNotLoseUpdates() throws Exception {
+        Path root = this.folder.newFolder().toPath();
+        FlatFileStorageRepositoryFactory factory = new FlatFileStorageRepositoryFactory(() -> root, LoggerFactory.getLogger("test"));
+
+        // Half are on disk, so the threads race to load them, and half are new, so they race to create them.
+        TestService creator = new TestService(factory);
+        List<UUID> keys = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            UUID key = UUID.randomUUID();
+            if (i % 2 == 0) {
+                creator.save(key, creator.createNew()).join();
+            }
+
+            keys.add(key);
+        }
+
+        TestService service = new TestService(factory);
+
+        int threads = 8;
+        int iterations = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < iterations; i++) {
+                    UUID key = keys.get(random.nextInt(keys.size()));
+                    IUserDataObject data = random.nextBoolean()
+                            ? service.getOrNewOnThread(key)
+                            : service.getOrNew(key).join();
+
+                    // If two threads ever loaded their own copy of a key, one of their increments would be lost.
+                    synchronized (data) {
+                        data.set(COUNTER, data.getOrDefault(COUNTER) + 1);
+                        service.save(key, data).join();
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+        int total = 0;
+        for (UUID key : keys) {
+            total += service.getOnThread(key).get().getOrDefault(COUNTER);
+        }
+
+        Assert.assertEquals(threads * iterations, total);
+
+        // What is on disk is what is in memory.
+        TestService reloaded = new TestService(factory);
+        for (UUID key : keys) {
+            Assert.assertEquals(
+                    service.getOnThread(key).get().getOrDefault(COUNTER),
+                    reloaded.getOnThread(key).get().getOrDefault(COUNTER));
+        }
+    }
+
+    @Test
+    public void testGetAllPrefersWhatIsInMemory() throws Exception {
+        Path root = this.folder.newFolder().toPath();
+        FlatFileStorageRepositoryFactory factory = new FlatFileStorageRepositoryFactory(() -> root, LoggerFactory.getLogger("test"));
+        TestService service = new TestService(factory);
+        UUID changed = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        service.save(changed, service.createNew()).join();
+        service.save(other, service.createNew()).join();
+
+        // Changed but not saved, so what is on disk is stale.
+        IUserDataObject inMemory = service.getOnThread(changed).get();
+        inMemory.set(COUNTER, 5);
+
+        UserQueryObject query = new UserQueryObject();
+        query.addKey(changed);
+        query.addKey(other);
+        Map<UUID, IUserDataObject> result = service.getAll(query).join();
+        Assert.assertSame(inMemory, result.get(changed));
+        Assert.assertSame(result.get(other), service.getOnThread(other).get());
+        Assert.assertSame(inMemory, service.getAll(new UserQueryObject()).join().get(changed));
+    }
+
+    @Test
+    public void testFailedWriteBehindFlushIsReported() throws Exception {
+        Path root = this.folder.newFolder().toPath();
+        FlatFileStorageRepositoryFactory factory = new FlatFileStorageRepositoryFactory(() -> root, LoggerFactory.getLogger("test"));
+        TestService service = new TestService(factory);
+        service.setWriteBehind(true, 60000, 100);
+        UUID key = UUID.randomUUID();
+
+        // A directory with something in it where the temporary file goes stops the file from being written.
+        String name = key.toString();
+        Path blocker = root.resolve("userdata").resolve(name.substring(0, 2)).resolve(name + ".json.tmp");
+        Files.createDirectories(blocker);
+        Files.createFile(blocker.resolve("file"));
+
+        IUserDataObject data = service.createNew();
+        data.set(COUNTER, 1);
+        service.save(key, data).join();
+        try {
+            service.ensureSaved().join();
+            Assert.fail("The flush should have failed");
+        } catch (CompletionException e) {
+            // expected
+        }
+
+        Assert.assertTrue(data.isDirty());
+
+        // Still queued, so it is written once the problem has gone.
+        Files.delete(blocker.resolve("file"));
+        Files.delete(blocker);
+        service.ensureSaved().join();
+        Assert.assertEquals(1, (int) new TestService(factory).getOnThread(key).get().getOrDefault(COUNTER));
+        service.stopWriteBehind();
+    }
+
+    public static final class TestService extends AbstractKeyedService<IUserQueryObject, IUserDataObject> {
+
+        private static final IConfigurateBackedDataTranslator<IUserDataObject> TRANSLATOR =
+                new IConfigurateBackedDataTranslator<IUserDataObject>() {
+                    @Override public ConfigurationNode createNewNode() {
+                        return SimpleConfigurationNode.root();
+                    }
+
+                    @Override public IUserDataObject createNew() {
+                        UserDataObject d = new UserDataObject();
+                        d.setBackingNode(SimpleConfigurationNode.root());
+                        return d;
+                    }
+                };
+
+        public TestService(FlatFileStorageRepositoryFactory factory) {
+            super(() -> TRANSLATOR, factory::userRepository, x -> {}, x -> {}, Mockito.mock(PluginContainer.class));
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.storage;
+
+import com.google.gson.JsonObject;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.FlatFileStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.persistence.LogStructuredStorageRepositoryFactory;
+import io.github.nucleuspowered.nucleus.services.impl.storage.queryobjects.IUserQueryObject;
+import io.github.nucleuspowered.storage.persistence.IStorageRepository;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+
+public class LogStructuredStorageTests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("test");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDataSurvivesBeingReopened() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = createLog(root);
+        Map<UUID, JsonObject> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            UUID uuid = UUID.randomUUID();
+            repository.save(uuid, createObject(i));
+            expected.put(uuid, createObject(i));
+        }
+
+        UUID changed = expected.keySet().iterator().next();
+        repository.save(changed, createObject(1000));
+        expected.put(changed, createObject(1000));
+        UUID deleted = UUID.randomUUID();
+        repository.save(deleted, createObject(2000));
+        repository.delete(deleted);
+        assertContents(expected, deleted, repository);
+        repository.shutdown();
+
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> reopened = createLog(root);
+        assertContents(expected, deleted, reopened);
+        reopened.shutdown();
+    }
+
+    @Test
+    public void testTornRecordIsDiscardedWhenReopened() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = createLog(root);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        repository.save(first, createObject(1));
+        repository.save(second, createObject(2));
+        repository.save(first, createObject(3));
+        repository.shutdown();
+
+        // Cut the last record short, as a crash part way through the write would.
+        try (FileChannel channel = FileChannel.open(root.resolve("userdata.dat"), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> reopened = createLog(root);
+        Assert.assertEquals(createObject(1), reopened.get(first).get());
+        Assert.assertEquals(createObject(2), reopened.get(second).get());
+
+        // New records go where the torn one was.
+        reopened.save(first, createObject(4));
+        reopened.shutdown();
+        Assert.assertEquals(createObject(4), createLog(root).get(first).get());
+    }
+
+    @Test
+    public void testFlatFilesAreImported() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        Map<UUID, JsonObject> expected = createFlatFiles(root, 50);
+
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = createLog(root);
+        assertContents(expected, UUID.randomUUID(), repository);
+        repository.shutdown();
+        Assert.assertFalse(Files.exists(root.resolve("userdata.dat.importing")));
+
+        // The import only happens once, so later flat file changes aren't picked up.
+        UUID late = UUID.randomUUID();
+        new FlatFileStorageRepositoryFactory(() -> root, LOGGER).userRepository().save(late, createObject(100));
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> reopened = createLog(root);
+        assertContents(expected, late, reopened);
+        reopened.shutdown();
+    }
+
+    @Test
+    public void testInterruptedImportIsStartedAgain() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        Map<UUID, JsonObject> expected = createFlatFiles(root, 50);
+
+        // What a crash part way through the import leaves behind.
+        Files.write(root.resolve("userdata.dat.importing"), new byte[] { 1, 2, 3 });
+
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = createLog(root);
+        assertContents(expected, UUID.randomUUID(), repository);
+        repository.shutdown();
+        Assert.assertFalse(Files.exists(root.resolve("userdata.dat.importing")));
+    }
+
+    @Test
+    public void testRetiredLogIsImportedAgain() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        Map<UUID, JsonObject> expected = createFlatFiles(root, 10);
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository = createLog(root);
+        assertContents(expected, UUID.randomUUID(), repository);
+        repository.shutdown();
+
+        // Flat files are used for a while, then the log is selected again.
+        new LogStructuredStorageRepositoryFactory(() -> root, LOGGER, () -> false).retire();
+        UUID changed = expected.keySet().iterator().next();
+        new FlatFileStorageRepositoryFactory(() -> root, LOGGER).userRepository().save(changed, createObject(100));
+        expected.put(changed, createObject(100));
+
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> reopened = createLog(root);
+        assertContents(expected, UUID.randomUUID(), reopened);
+        reopened.shutdown();
+    }
+
+    private static void assertContents(Map<UUID, JsonObject> expected, UUID missing,
+            IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository) throws Exception {
+        Assert.assertEquals(expected.keySet(), new HashSet<>(repository.getAllKeys()));
+        for (Map.Entry<UUID, JsonObject> entry : expected.entrySet()) {
+            Assert.assertTrue(repository.exists(entry.getKey()));
+            Assert.assertEquals(entry.getValue(), repository.get(entry.getKey()).get());
+        }
+
+        Assert.assertFalse(repository.exists(missing));
+        Assert.assertFalse(repository.get(missing).isPresent());
+    }
+
+    private static Map<UUID, JsonObject> createFlatFiles(Path root, int count) throws Exception {
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> flatFile =
+                new FlatFileStorageRepositoryFactory(() -> root, LOGGER).userRepository();
+        Map<UUID, JsonObject> result = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            UUID uuid = UUID.randomUUID();
+            flatFile.save(uuid, createObject(i));
+            result.put(uuid, createObject(i));
+        }
+
+        return result;
+    }
+
+    private static IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> createLog(Path root) {
+        IStorageRepository.Keyed<UUID, IUserQueryObject, JsonObject> repository =
+                new LogStructuredStorageRepositoryFactory(() -> root, LOGGER, () -> false).userRepository();
+        Assert.assertNotNull(repository);
+        return repository;
+    }
+
+    private static JsonObject createObject(int value) {
+        JsonObject object = new JsonObject();
+        object.addProperty("value", value);
+        object.addProperty("name", "Player" + value);
+        return object;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.storage;
+
+import io.github.nucleuspowered.storage.services.ShutdownFlush;
+import io.github.nucleuspowered.storage.util.ThrownBiConsumer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+public class ShutdownFlushTests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("test");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEntriesThatAreNotWrittenAreRestored() throws Exception {
+        Path journal = this.folder.getRoot().toPath().resolve("shutdown-recovery.dat");
+        Map<UUID, String> users = createEntries(50, "user");
+        Map<UUID, String> worlds = createEntries(5, "world");
+        // Long enough to need more than a two byte length.
+        users.put(UUID.randomUUID(), createLongString(100000));
+
+        ShutdownFlush flush = new ShutdownFlush(LOGGER, 2, 10000, journal);
+        flush.add("user", users, (key, value) -> { throw new IllegalStateException("store unavailable"); }, x -> x);
+        flush.add("world", worlds, (key, value) -> { throw new IllegalStateException("store unavailable"); }, x -> x);
+        Assert.assertFalse(flush.run());
+        Assert.assertTrue(Files.exists(journal));
+
+        Map<UUID, String> restoredUsers = new HashMap<>();
+        Map<UUID, String> restoredWorlds = new HashMap<>();
+        Map<String, ThrownBiConsumer<UUID, String, Exception>> replayers = new HashMap<>();
+        replayers.put("user", restoredUsers::put);
+        replayers.put("world", restoredWorlds::put);
+        ShutdownFlush.recover(LOGGER, journal, replayers);
+
+        Assert.assertEquals(users, restoredUsers);
+        Assert.assertEquals(worlds, restoredWorlds);
+        Assert.assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    public void testDataSavedAfterRecoveryIsNotRolledBack() throws Exception {
+        Path journal = this.folder.getRoot().toPath().resolve("shutdown-recovery.dat");
+        Map<UUID, String> users = createEntries(10, "user");
+        Map<UUID, String> worlds = createEntries(2, "world");
+        ShutdownFlush flush = new ShutdownFlush(LOGGER, 1, 10000, journal);
+        flush.add("user", users, (key, value) -> { throw new IllegalStateException(); }, x -> x);
+        flush.add("world", worlds, (key, value) -> { throw new IllegalStateException(); }, x -> x);
+        Assert.assertFalse(flush.run());
+
+        // The world store is gone, so some of the journal cannot be restored.
+        Map<UUID, String> store = new HashMap<>();
+        Map<String, ThrownBiConsumer<UUID, String, Exception>> replayers = new HashMap<>();
+        replayers.put("user", store::put);
+        ShutdownFlush.recover(LOGGER, journal, replayers);
+        Assert.assertEquals(users, store);
+        Assert.assertFalse(Files.exists(journal));
+
+        // A restored user is saved again while the server runs, and another user is not saved when it stops.
+        UUID changed = users.keySet().iterator().next();
+        store.put(changed, "newer");
+        Map<UUID, String> unsaved = createEntries(1, "unsaved");
+        flush = new ShutdownFlush(LOGGER, 1, 10000, journal);
+        flush.add("user", unsaved, (key, value) -> { throw new IllegalStateException(); }, x -> x);
+        Assert.assertFalse(flush.run());
+
+        ShutdownFlush.recover(LOGGER, journal, replayers);
+        Assert.assertEquals("newer", store.get(changed));
+        Assert.assertEquals(unsaved.values().iterator().next(), store.get(unsaved.keySet().iterator().next()));
+        Assert.assertFalse(Files.exists(journal));
+
+        // Restarting again restores nothing.
+        store.put(changed, "newest");
+        ShutdownFlush.recover(LOGGER, journal, replayers);
+        Assert.assertEquals("newest", store.get(changed));
+    }
+
+    @Test
+    public void testEntriesThatCannotBeRestoredAreMovedAside() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        Path journal = root.resolve("shutdown-recovery.dat");
+        ShutdownFlush flush = new ShutdownFlush(LOGGER, 1, 10000, journal);
+        flush.add("user", createEntries(3, "user"), (key, value) -> { throw new IllegalStateException(); }, x -> x);
+        flush.run();
+
+        Map<String, ThrownBiConsumer<UUID, String, Exception>> failing = new HashMap<>();
+        failing.put("user", (key, value) -> { throw new IllegalStateException(); });
+        ShutdownFlush.recover(LOGGER, journal, failing);
+        Assert.assertFalse(Files.exists(journal));
+        try (Stream<Path> files = Files.list(root)) {
+            Assert.assertEquals(1, files.filter(x -> x.getFileName().toString().startsWith("shutdown-recovery.dat.failed-")).count());
+        }
+    }
+
+    @Test
+    public void testNoJournalIsWrittenIfEverythingIsSaved() {
+        Path journal = this.folder.getRoot().toPath().resolve("shutdown-recovery.dat");
+        Map<UUID, String> saved = new HashMap<>();
+        ShutdownFlush flush = new ShutdownFlush(LOGGER, 4, 10000, journal);
+        Map<UUID, String> entries = createEntries(100, "user");
+        flush.add("user", entries, (key, value) -> {
+            synchronized (saved) {
+                saved.put(key, value);
+            }
+        }, x -> x);
+
+        Assert.assertTrue(flush.run());
+        Assert.assertEquals(entries, saved);
+        Assert.assertFalse(Files.exists(journal));
+    }
+
+    private static Map<UUID, String> createEntries(int count, String prefix) {
+        Map<UUID, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            entries.put(UUID.randomUUID(), "{\"" + prefix + "\":" + i + ",\"name\":\"\u00e9\u4e2d\"}");
+        }
+
+        return entries;
+    }
+
+    private static String createLongString(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.textstyle;
+
+import io.github.nucleuspowered.nucleus.services.impl.textstyle.TextStyleService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TextStyleServiceTests {
+
+    private static final String CODES = "0123456789abcdefklmnor";
+
+    @Test
+    public void testStripMatchesTheRegexOnRandomMessages() {
+        // Mostly ampersands and codes, so that codes are often nested.
+        String alphabet = "&&&&0aflor&AFLz xé";
+        Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder message = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                message.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            StringBuilder codes = new StringBuilder();
+            for (char code : CODES.toCharArray()) {
+                if (random.nextBoolean()) {
+                    codes.append(code);
+                }
+            }
+
+            assertStripMatchesRegex(message.toString(), codes.toString());
+        }
+    }
+
+    @Test
+    public void testStripMatchesTheRegexOnAwkwardMessages() {
+        String[] messages = {
+                "", "&", "&&", "&&&", "text&", "text&&",
+                "&&aa", "&&&aaa", "&&&&aaaa", "&&a&aa", "&&&a&aa&a", "&&l&&aaa",
+                "&a&", "&&a", "&a&&", "a&&aa&",
+                "&l&&aa&rtext&", "&A&a&&Aa", "&z&&zz", "&&la&lb", "&é&&aé"
+        };
+
+        for (String message : messages) {
+            for (String codes : new String[] { "", "a", "al", "lr", CODES }) {
+                assertStripMatchesRegex(message, codes);
+            }
+        }
+    }
+
+    @Test
+    public void testUntouchedMessageIsReturnedAsIs() {
+        String message = "&btext &l";
+        Assert.assertSame(message, TextStyleService.stripCodes(message, "a"));
+        Assert.assertEquals("text", TextStyleService.stripCodes("&&bbtext", "b"));
+    }
+
+    private static void assertStripMatchesRegex(String message, String codes) {
+        Assert.assertEquals("Stripping " + codes + " from " + message,
+                stripWithRegex(message, codes), TextStyleService.stripCodes(message, codes));
+    }
+
+    // How codes were stripped before: remove them until nothing changes.
+    private static String stripWithRegex(String message, String codes) {
+        if (codes.isEmpty()) {
+            return message;
+        }
+
+        String regex = "&[" + codes + "]";
+        int length;
+        do {
+            length = message.length();
+            message = message.replaceAll(regex, "");
+        } while (length != message.length());
+
+        return message;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.texttemplate;
+
+import com.google.common.collect.ImmutableList;
+import io.github.nucleuspowered.nucleus.services.impl.texttemplatefactory.NucleusTextTemplateImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+/**
+ * Checks the single pass link scan against the split based scan it replaced.
+ */
+public class TemplateLinkParsingTests {
+
+    private static final List<String> MESSAGES = ImmutableList.of(
+            "No links here",
+            "www.nucleuspowered.org",
+            "Visit http://nucleuspowered.org for help",
+            "Visit &ahttps://ore.spongepowered.org/Nucleus/Nucleus and &r&lhttp://nucleuspowered.org/docs today",
+            "[Click here](http://nucleuspowered.org) or [here]{h}(https://nucleuspowered.org/docs/) &cnow",
+            "[Run]{s}(/spawn) then [Message me](/msg {{subject}} hi) and go to www.example.com",
+            "&a[Home](/home) &r &bwww.example.co.uk/path?a=b&c=d end",
+            "Text [not a link]( and [broken](/ ending",
+            "  leading whitespace http://a.bc  ",
+            "[a](/one) [b](/two) [c](/three)"
+    );
+
+    private static final String[] FRAGMENTS = {
+            "hello", "world", "www.example.com", "http://nucleuspowered.org/docs", "https://a.b.co/x?y=z",
+            "[click](http://x.org)", "[run]{h}(/say hi)", "[me](/msg {{subject}} hi)", "&a", "&r&l", "{h}",
+            "[bad](", "https://", ".", "a.b", "&c"
+    };
+
+    @Test
+    public void testMessagesAreSplitAsBefore() {
+        for (String message : MESSAGES) {
+            Assert.assertEquals(message, splitAsBefore(message), scan(message));
+        }
+    }
+
+    @Test
+    public void testRandomMessagesAreSplitAsBefore() {
+        Random random = new Random(0);
+        int compared = 0;
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int fragments = 1 + random.nextInt(8);
+            for (int j = 0; j < fragments; j++) {
+                if (j > 0 && random.nextInt(4) != 0) {
+                    builder.append(' ');
+                }
+
+                builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+
+            String message = builder.toString();
+            List<String> scanned = scan(message);
+            Assert.assertEquals(message, message, String.join("", scanned));
+
+            List<String> before = splitAsBefore(message);
+            if (before != null) {
+                Assert.assertEquals(message, before, scanned);
+                compared++;
+            }
+        }
+
+        Assert.assertTrue(compared > 5000);
+    }
+
+    @Test
+    public void testLinkStraightAfterALinkIsNotALink() {
+        // The old scan only treated the start of the message as a start of input, so neither should this.
+        Assert.assertEquals(ImmutableList.of("", "[a](/cmd)", "www.b.com"), scan("[a](/cmd)www.b.com"));
+        Assert.assertEquals(splitAsBefore("[a](/cmd)www.b.com"), scan("[a](/cmd)www.b.com"));
+
+        // Where the old scan lost "www.b.com" and repeated the last link, all of the text is now kept.
+        Assert.assertNull(splitAsBefore("[a](/cmd)www.b.com http://c.com"));
+        Assert.assertEquals(ImmutableList.of("", "[a](/cmd)", "www.b.com", " http://c.com", ""), scan("[a](/cmd)www.b.com http://c.com"));
+    }
+
+    // The text before each link, each link, then the text after the last link.
+    private static List<String> scan(String message) {
+        List<String> result = new ArrayList<>();
+        NucleusTextTemplateImpl.LinkScanner scanner = new NucleusTextTemplateImpl.LinkScanner(message);
+        if (!scanner.find()) {
+            result.add(message);
+            return result;
+        }
+
+        int position = 0;
+        do {
+            result.add(scanner.getTextBefore());
+            position += scanner.getTextBefore().length();
+            int end = message.length() - scanner.getRemaining().length();
+            result.add(message.substring(position, end));
+            position = end;
+        } while (scanner.find());
+
+        result.add(scanner.getRemaining());
+        return result;
+    }
+
+    /**
+     * The scan as it was before, splitting what was left of the message on the
+     * pattern each time the matcher found a link.
+     *
+     * @return The pieces, or null if the split and the matcher disagreed on
+     *     where a link was, in which case the old scan lost or repeated text
+     */
+    @Nullable
+    private static List<String> splitAsBefore(String message) {
+        Pattern pattern = NucleusTextTemplateImpl.ENHANCED_URL_PARSER;
+        List<String> result = new ArrayList<>();
+        Matcher m = pattern.matcher(message);
+        if (!m.find()) {
+            result.add(message);
+            return result;
+        }
+
+        String remaining = message;
+        do {
+            Matcher split = Pattern.compile(pattern.pattern()).matcher(remaining);
+            int offset = message.length() - remaining.length();
+            if (!split.find() || split.start() + offset != m.start() || split.end() + offset != m.end()) {
+                return null;
+            }
+
+            String[] textArray = remaining.split(pattern.pattern(), 2);
+            result.add(textArray[0]);
+            result.add(m.group());
+            remaining = textArray.length == 2 ? textArray[1] : null;
+        } while (remaining != null && m.find());
+
+        if (remaining != null) {
+            result.add(remaining);
+        }
+
+        return result;
+    }
+
+}
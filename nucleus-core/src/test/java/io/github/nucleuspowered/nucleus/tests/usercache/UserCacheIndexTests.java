@@ -0,0 +1,85 @@
+/*
+ * This file is part of Nucleus, licensed under the MIT License (MIT). See the LICENSE.txt file
+ * at the root of this project for more details.
+ */
+package io.github.nucleuspowered.nucleus.tests.usercache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import io.github.nucleuspowered.nucleus.configurate.datatypes.UserCacheDataNode;
+import io.github.nucleuspowered.nucleus.services.impl.usercache.UserCacheIndex;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.UUID;
+
+public class UserCacheIndexTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUsersThatJoinDuringAWalkAreKept() {
+        UserCacheIndex index = new UserCacheIndex(1);
+        UUID walked = UUID.randomUUID();
+        UUID joined = UUID.randomUUID();
+        UUID updated = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+        index.put(updated, new UserCacheDataNode("127.0.0.1", null, false));
+        index.put(removed, new UserCacheDataNode("127.0.0.1", null, false));
+
+        index.startWalk();
+        index.put(walked, new UserCacheDataNode("127.0.0.2", null, false));
+        index.markWalked(ImmutableList.of(walked));
+        index.put(joined, new UserCacheDataNode("127.0.0.1", "jail", false));
+        index.put(updated, new UserCacheDataNode("127.0.0.3", null, true));
+        index.finishWalk(2);
+
+        Assert.assertEquals(2, index.getVersion());
+        Assert.assertFalse(index.isWalkInProgress());
+        Assert.assertEquals(ImmutableList.of(joined), index.getForIp("127.0.0.1"));
+        Assert.assertEquals(ImmutableList.of(walked), index.getForIp("127.0.0.2"));
+        Assert.assertEquals(ImmutableList.of(updated), index.getForIp("127.0.0.3"));
+        Assert.assertEquals(ImmutableList.of(joined), index.getJailedIn("JAIL"));
+        Assert.assertEquals(ImmutableList.of(updated), index.getMuted());
+    }
+
+    @Test
+    public void testIndexSurvivesBeingWrittenAndRead() throws Exception {
+        UserCacheIndex index = new UserCacheIndex(3);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        index.put(first, new UserCacheDataNode("10.0.0.1", "Jail", true));
+        index.put(second, new UserCacheDataNode("10.0.0.1", null, false));
+        index.put(third, new UserCacheDataNode(null, "other", false));
+
+        // A walk that was interrupted part way through.
+        index.startWalk();
+        index.markWalked(ImmutableList.of(first));
+
+        Path file = this.folder.getRoot().toPath().resolve("usercache.dat");
+        index.write(file);
+        UserCacheIndex read = UserCacheIndex.read(file);
+
+        Assert.assertEquals(3, read.getVersion());
+        Assert.assertTrue(read.isWalkInProgress());
+        Assert.assertTrue(read.hasWalked(first));
+        Assert.assertFalse(read.hasWalked(second));
+        Assert.assertEquals(Sets.newHashSet(first, second), new HashSet<>(read.getForIp("10.0.0.1")));
+        Assert.assertEquals(Sets.newHashSet(first, third), new HashSet<>(read.getJailed()));
+        Assert.assertEquals(ImmutableList.of(first), read.getJailedIn("jail"));
+        Assert.assertEquals(ImmutableList.of(first), read.getMuted());
+
+        // Carrying on the walk keeps what was walked before the restart.
+        read.startWalk();
+        read.finishWalk(4);
+        Assert.assertEquals(ImmutableList.of(first), read.getForIp("10.0.0.1"));
+        Assert.assertTrue(read.getJailedIn("other").isEmpty());
+    }
+
+}